@@ -11,5 +11,20 @@ dependencies {
     implementation(libs.jakarta.annotation.api)
     implementation(libs.spring.boot)
     annotationProcessor(libs.spring.configuration.processor)
+
+    testImplementation(platform(libs.junit.bom))
+    testImplementation(platform(libs.testcontainers.bom))
+    testImplementation(libs.bundles.test)
+    testImplementation(libs.testcontainers.junit.jupiter)
+    testImplementation(libs.testcontainers.postgresql)
+    testImplementation(libs.testcontainers.mysql)
+    testRuntimeOnly(libs.junit.platform.launcher)
+    testRuntimeOnly(libs.r2dbc.h2)
+    testRuntimeOnly(libs.h2)
+    testImplementation(libs.r2dbc.postgresql)
+    testRuntimeOnly(libs.r2dbc.mysql)
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
@@ -1,10 +1,18 @@
 package com.jxpanda.r2dbc.spring.data.core;
 
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
 import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableJoin;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.InListStrategy;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.LruCache;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.StripedLruCache;
+import io.r2dbc.spi.ConnectionMetadata;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.mapping.context.MappingContext;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.r2dbc.dialect.MySqlDialect;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
 import org.springframework.data.r2dbc.dialect.R2dbcDialect;
 import org.springframework.data.r2dbc.query.BoundAssignments;
 import org.springframework.data.r2dbc.query.BoundCondition;
@@ -13,44 +21,279 @@ import org.springframework.data.relational.core.dialect.RenderContextFactory;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.data.relational.core.query.ValueFunction;
 import org.springframework.data.relational.core.sql.*;
 import org.springframework.data.relational.core.sql.render.RenderContext;
+import org.springframework.data.relational.core.sql.render.SelectRenderContext;
 import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.data.util.Pair;
+import org.springframework.data.util.TypeInformation;
 import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.Parameter;
 import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.r2dbc.core.binding.BindMarker;
 import org.springframework.r2dbc.core.binding.BindMarkers;
 import org.springframework.r2dbc.core.binding.BindTarget;
 import org.springframework.r2dbc.core.binding.Bindings;
+import org.springframework.r2dbc.core.binding.MutableBindings;
 import org.springframework.util.Assert;
 
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class R2dbcStatementMapper implements StatementMapper {
 
+    /**
+     * 查询SQL缓存的最大数量
+     */
+    private static final int SELECT_CACHE_SIZE = 1024;
+
+    /**
+     * DISTINCT查询做count时，子查询的别名
+     */
+    private static final String COUNT_SUBQUERY_ALIAS = "count_source";
+
+    /**
+     * 批量更新时，更新前的版本号在数据行中的key（也是派生表中的列名）
+     */
+    public static final SqlIdentifier BULK_EXPECTED_VERSION = SqlIdentifier.unquoted("expected_version__");
+
+    /**
+     * 批量更新时，目标表和数据行（派生表）的别名
+     */
+    private static final String BULK_TARGET_ALIAS = "bulk_target";
+    private static final String BULK_VALUES_ALIAS = "bulk_values";
+
+    /**
+     * MySQL的upsert中，待插入的行的别名
+     */
+    private static final String UPSERT_ROW_ALIAS = "new";
+
+    /**
+     * IN查询按BUCKET策略补齐时的最大分桶，超过的列表按这个值拆分为多个IN，用OR连接（NOT IN用AND连接）
+     */
+    public static final int IN_LIST_MAX_BUCKET = 1024;
+
     private final R2dbcDialect dialect;
     private final RenderContext renderContext;
-    private final UpdateMapper updateMapper;
+    private final R2dbcConverter converter;
+    private final PlanningUpdateMapper updateMapper;
     private final MappingContext<? extends RelationalPersistentEntity<?>, ? extends RelationalPersistentProperty> mappingContext;
 
+    /**
+     * 按类型缓存TypedStatementMapper，避免每次执行都创建新的对象
+     */
+    private final Map<Class<?>, TypedStatementMapper<?>> typedStatementMapperCache = new ConcurrentHashMap<>();
+
+    /**
+     * 查询SQL的缓存，key是查询的结构指纹 ${@link #fingerprint(SelectSpec, RelationalPersistentEntity)}
+     */
+    private final StripedLruCache<String, RenderedSelect> selectCache = new StripedLruCache<>(SELECT_CACHE_SIZE);
+
+    /**
+     * IN查询的渲染策略 ${@link InListStrategy}
+     */
+    private volatile InListStrategy inListStrategy;
+
+    /**
+     * MySQL的upsert是否使用行别名：INSERT ... AS new ON DUPLICATE KEY UPDATE c = new.c
+     * MySQL 8.0.19开始支持行别名，VALUES(c)从8.0.20开始废弃；MariaDB和更早的MySQL只能使用VALUES(c)
+     * 为null表示还没有按服务端的版本确定 ${@link #resolveUpsertRowAlias(ConnectionMetadata)}
+     */
+    @Nullable
+    private volatile Boolean upsertRowAlias;
+
     R2dbcStatementMapper(R2dbcDialect dialect, R2dbcConverter converter) {
 
         RenderContextFactory factory = new RenderContextFactory(dialect);
 
         this.dialect = dialect;
         this.renderContext = factory.createRenderContext();
-        this.updateMapper = new UpdateMapper(dialect, converter);
+        this.converter = converter;
+        this.updateMapper = new PlanningUpdateMapper(dialect, converter, false);
         this.mappingContext = converter.getMappingContext();
+        this.inListStrategy = dialect instanceof PostgresDialect ? InListStrategy.ARRAY
+                : dialect instanceof MySqlDialect ? InListStrategy.BUCKET : InListStrategy.EXPAND;
+    }
+
+    public InListStrategy getInListStrategy() {
+        return this.inListStrategy;
+    }
+
+    /**
+     * 设置IN查询的渲染策略，ARRAY只支持PostgreSQL
+     */
+    public void setInListStrategy(InListStrategy inListStrategy) {
+        Assert.notNull(inListStrategy, "InListStrategy must not be null");
+        Assert.isTrue(inListStrategy != InListStrategy.ARRAY || this.dialect instanceof PostgresDialect,
+                () -> "InListStrategy.ARRAY is not supported by dialect " + this.dialect.getClass().getName());
+        this.inListStrategy = inListStrategy;
+    }
+
+    /**
+     * 是否已经确定了upsert的写法，只有MySQL需要按服务端的版本确定
+     */
+    public boolean isUpsertRowAliasResolved() {
+        return !(this.dialect instanceof MySqlDialect) || this.upsertRowAlias != null;
+    }
+
+    /**
+     * 按服务端的产品和版本确定MySQL的upsert是否使用行别名，已经确定（或者手动设置过）的时候不会覆盖
+     */
+    public void resolveUpsertRowAlias(ConnectionMetadata metadata) {
+        if (this.upsertRowAlias == null) {
+            this.upsertRowAlias = isRowAliasSupported(metadata.getDatabaseProductName(), metadata.getDatabaseVersion());
+        }
+    }
+
+    /**
+     * 手动指定MySQL的upsert是否使用行别名
+     */
+    public void setUpsertRowAlias(boolean upsertRowAlias) {
+        this.upsertRowAlias = upsertRowAlias;
+    }
+
+    /**
+     * MySQL 8.0.19及以上的版本支持行别名，MariaDB（版本号中也可能带有MariaDB）不支持
+     */
+    static boolean isRowAliasSupported(@Nullable String productName, @Nullable String version) {
+        if (version == null || (productName != null && productName.toLowerCase().contains("mariadb")) || version.toLowerCase().contains("mariadb")) {
+            return false;
+        }
+        String[] parts = version.split("[^0-9]+", 4);
+        int[] numbers = new int[3];
+        for (int i = 0; i < numbers.length && i < parts.length; i++) {
+            if (parts[i].isEmpty()) {
+                return false;
+            }
+            numbers[i] = Integer.parseInt(parts[i]);
+        }
+        return numbers[0] > 8 || (numbers[0] == 8 && (numbers[1] > 0 || numbers[2] >= 19));
+    }
+
+    /**
+     * 把按IN查询的值拆分为多组，每一组执行一次
+     * 只有BUCKET策略会拆分（每组不超过最大分桶），其他策略总是返回一组
+     */
+    public <E> List<List<E>> partitionInList(Collection<E> values) {
+        List<E> list = new ArrayList<>(values);
+        if (this.inListStrategy != InListStrategy.BUCKET || list.size() <= IN_LIST_MAX_BUCKET) {
+            return List.of(list);
+        }
+        List<List<E>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += IN_LIST_MAX_BUCKET) {
+            chunks.add(list.subList(from, Math.min(from + IN_LIST_MAX_BUCKET, list.size())));
+        }
+        return chunks;
     }
 
 
+    /**
+     * 把绑定参数超过上限的条件拆分为多组条件，每一组执行一条语句，结果由调用方合并
+     * 只拆分AND连接的顶层IN条件中值最多的一个，拆分之前先去重，所以每一行最多匹配其中一组
+     * ARRAY策略整个列表只绑定一个参数，不需要拆分；参数不超过上限，或者没有可以拆分的IN的时候，返回只有原条件的一组
+     *
+     * @param reservedParameters 语句中条件以外的绑定参数的数量（例如UPDATE的SET）
+     */
+    public List<CriteriaDefinition> partitionCriteria(CriteriaDefinition criteria, int reservedParameters, int maxBindParameters) {
+        if (this.inListStrategy == InListStrategy.ARRAY || criteria.isEmpty()) {
+            return List.of(criteria);
+        }
+        List<CriteriaDefinition> chain = chain(criteria);
+        int target = -1;
+        int total = reservedParameters;
+        for (int i = 0; i < chain.size(); i++) {
+            CriteriaDefinition criterion = chain.get(i);
+            if (criterion.isEmpty()) {
+                continue;
+            }
+            if (i > 0 && criterion.getCombinator() == CriteriaDefinition.Combinator.OR) {
+                return List.of(criteria);
+            }
+            total += bindCount(criterion);
+            if (!criterion.isGroup() && criterion.getComparator() == CriteriaDefinition.Comparator.IN && criterion.getValue() instanceof Collection<?> values
+                && (target < 0 || values.size() > ((Collection<?>) chain.get(target).getValue()).size())) {
+                target = i;
+            }
+        }
+        if (total <= maxBindParameters || target < 0) {
+            return List.of(criteria);
+        }
+        CriteriaDefinition leaf = chain.get(target);
+        int chunkSize = maxBindParameters - (total - bindCount(leaf));
+        if (chunkSize <= 0) {
+            // 其他条件的参数已经超过了上限，拆分IN也没有用
+            return List.of(criteria);
+        }
+        if (this.inListStrategy == InListStrategy.BUCKET) {
+            // 按分桶对齐，保证补齐之后也不超过上限
+            chunkSize = chunkSize >= IN_LIST_MAX_BUCKET ? chunkSize - chunkSize % IN_LIST_MAX_BUCKET : Integer.highestOneBit(chunkSize);
+        }
+        List<?> values = new ArrayList<>(new LinkedHashSet<>((Collection<?>) leaf.getValue()));
+        List<CriteriaDefinition> partitions = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += chunkSize) {
+            CriteriaDefinition partition = new ChainedCriteria(leaf, leaf.hasPrevious() ? leaf.getPrevious() : null,
+                    values.subList(from, Math.min(from + chunkSize, values.size())));
+            for (int i = target + 1; i < chain.size(); i++) {
+                partition = new ChainedCriteria(chain.get(i), partition, chain.get(i).getValue());
+            }
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    /**
+     * 条件链是从后往前链接的，按从前往后的顺序返回
+     */
+    private static List<CriteriaDefinition> chain(CriteriaDefinition criteria) {
+        List<CriteriaDefinition> chain = new ArrayList<>();
+        for (CriteriaDefinition current = criteria; current != null; current = current.hasPrevious() ? current.getPrevious() : null) {
+            chain.add(0, current);
+        }
+        return chain;
+    }
+
+    /**
+     * 条件绑定的参数的数量
+     */
+    private int bindCount(CriteriaDefinition criteria) {
+        if (criteria.isEmpty()) {
+            return 0;
+        }
+        if (criteria.isGroup()) {
+            int count = 0;
+            for (CriteriaDefinition criterion : criteria.getGroup()) {
+                for (CriteriaDefinition current : chain(criterion)) {
+                    count += bindCount(current);
+                }
+            }
+            return count;
+        }
+        Object value = criteria.getValue();
+        if (value instanceof Collection<?> values) {
+            return this.inListStrategy == InListStrategy.BUCKET ? bucketSizes(values.size()).stream().mapToInt(Integer::intValue).sum() : values.size();
+        }
+        return value instanceof Pair ? 2 : value == null ? 0 : 1;
+    }
+
     @Override
     public <T> TypedStatementMapper<T> forType(Class<T> type) {
 
         Assert.notNull(type, "Type must not be null");
 
-        return new DefaultTypedStatementMapper<>((RelationalPersistentEntity<T>) this.mappingContext.getRequiredPersistentEntity(type));
+        return (TypedStatementMapper<T>) typedStatementMapperCache.computeIfAbsent(type,
+                key -> new DefaultTypedStatementMapper<>(this.mappingContext.getRequiredPersistentEntity(key)));
     }
 
     @Override
@@ -61,56 +304,838 @@ public class R2dbcStatementMapper implements StatementMapper {
     private PreparedOperation<Select> getMappedObject(SelectSpec selectSpec,
                                                       @Nullable RelationalPersistentEntity<?> entity) {
 
+        // 同样结构的查询（表、查询字段、条件结构、排序、锁都一样）渲染出来的SQL是一样的，只有绑定的参数和分页不同
+        // 所以命中缓存的时候，按缓存的绑定计划生成绑定参数，跳过条件的映射、Select语法树的构建和SQL的渲染
+        // 分页总是渲染在SQL的末尾（${@link SelectRenderContext#afterOrderBy(boolean)}），不参与缓存，每次按方言单独渲染之后拼接
+        String fingerprint = fingerprint(selectSpec, entity);
+        Table table = selectSpec.getTable();
+        CriteriaDefinition criteria = selectSpec.getCriteria();
+        boolean hasCriteria = criteria != null && !criteria.isEmpty();
+
+        RenderedSelect renderedSelect = this.selectCache.get(fingerprint);
+        if (renderedSelect == null) {
+            SelectBuilder.SelectAndFrom selectAndFrom = StatementBuilder.select(getSelectList(selectSpec, entity));
+
+            if (selectSpec.isDistinct()) {
+                selectAndFrom = selectAndFrom.distinct();
+            }
+
+            SelectBuilder.SelectFromAndJoin selectBuilder = selectAndFrom.from(table);
+
+            BoundCondition condition = null;
+            BindingPlan plan = null;
+            if (hasCriteria) {
+                CriteriaMapping mapping = planCriteria(table, entity);
+                condition = mapping.map(criteria);
+                plan = mapping.plan(condition.getBindings());
+                selectBuilder.where(condition.getCondition());
+            }
+
+            if (selectSpec.getSort().isSorted()) {
+                List<OrderByField> sort = this.updateMapper.getMappedSort(table, selectSpec.getSort(), entity);
+                selectBuilder.orderBy(sort);
+            }
+
+            if (selectSpec.getLock() != null) {
+                selectBuilder.lock(selectSpec.getLock());
+            }
+
+            Select select;
+            boolean isJoin = entity != null && EntityDescriptor.of(entity).isJoin();
+            if (!isJoin) {
+                select = selectBuilder.build();
+            } else {
+                TableJoin tableJoin = entity.getRequiredAnnotation(TableJoin.class);
+                select = tableJoin.joinType().getFunction().apply(selectBuilder, Table.create(tableJoin.rightTable()))
+                        .on(Conditions.just(tableJoin.on()))
+                        .build();
+            }
+
+            String sql = SqlRenderer.create(this.renderContext).render(select);
+            String suffix = renderAfterOrderBy(select);
+            Assert.state(sql.endsWith(suffix), () -> "Rendered select does not end with the dialect's ORDER BY suffix: " + sql);
+            renderedSelect = new RenderedSelect(select, sql, sql.substring(0, sql.length() - suffix.length()), plan);
+            this.selectCache.put(fingerprint, renderedSelect);
+
+            if (condition != null) {
+                return paged(renderedSelect, selectSpec, condition.getBindings());
+            }
+        }
+
+        Bindings bindings = hasCriteria ? getBindings(renderedSelect, criteria, table, entity) : Bindings.empty();
+        return paged(renderedSelect, selectSpec, bindings);
+    }
+
+    /**
+     * 给缓存的查询语句追加分页，没有分页的时候直接使用缓存的SQL
+     */
+    private PreparedOperation<Select> paged(RenderedSelect renderedSelect, SelectSpec selectSpec, Bindings bindings) {
+        if (selectSpec.getLimit() <= 0 && selectSpec.getOffset() <= 0) {
+            return new DefaultPreparedOperation<>(renderedSelect.select(), this.renderContext, bindings, renderedSelect.sql());
+        }
+        Select select = new PagedSelect(renderedSelect.select(), selectSpec.getLimit(), selectSpec.getOffset());
+        return new DefaultPreparedOperation<>(select, this.renderContext, bindings, renderedSelect.head() + renderAfterOrderBy(select));
+    }
+
+    /**
+     * 按方言渲染ORDER BY之后的部分（分页和锁）
+     */
+    private String renderAfterOrderBy(Select select) {
+        return this.renderContext.getSelectRenderContext().afterOrderBy(!select.getOrderBy().isEmpty()).apply(select).toString();
+    }
+
+    /**
+     * 生成缓存的语句的绑定参数
+     * 优先按绑定计划直接转换条件的值，无法按计划绑定的时候重新映射条件
+     */
+    private Bindings getBindings(RenderedSelect renderedSelect, CriteriaDefinition criteria, Table table,
+                                 @Nullable RelationalPersistentEntity<?> entity) {
+        BindingPlan plan = renderedSelect.plan();
+        Bindings bindings = plan == null ? null : new PlannedBinding(plan).bind(criteria);
+        if (bindings != null) {
+            return bindings;
+        }
+        return mapCriteria(this.dialect.getBindMarkersFactory().create(), criteria, table, entity).getBindings();
+    }
+
+    /**
+     * 生成count查询
+     * 基于数据查询的SelectSpec生成，保证条件（包括插件追加的条件）与数据查询是一致的
+     * 1、去掉ORDER BY、LIMIT、OFFSET和锁，这些都不影响总数
+     * 2、查询列表替换为COUNT(*)，不需要读取任何字段
+     * 3、"对一"的LEFT JOIN（${@link TableJoin#toOne()}），如果条件中没有引用右表，不会影响总数，直接去掉
+     * 4、DISTINCT查询的总数是去重之后的行数，包装为子查询：SELECT COUNT(*) FROM (SELECT DISTINCT ...) count_source
+     * 渲染好的SQL与查询SQL共用同一个缓存
+     *
+     * @param selectSpec 数据查询的SelectSpec
+     * @param entity     实体，聚合查询对象传null
+     */
+    public PreparedOperation<Select> getMappedCountObject(SelectSpec selectSpec, @Nullable RelationalPersistentEntity<?> entity) {
+
         Table table = selectSpec.getTable();
-        SelectBuilder.SelectAndFrom selectAndFrom = StatementBuilder.select(getSelectList(selectSpec, entity));
+        CriteriaDefinition criteria = selectSpec.getCriteria();
+        boolean hasCriteria = criteria != null && !criteria.isEmpty();
+        TableJoin tableJoin = getCountJoin(entity, hasCriteria ? criteria : null);
 
+        // 只保留影响总数的结构来生成指纹
+        SelectSpec countSpec = SelectSpec.create(table.getName());
         if (selectSpec.isDistinct()) {
-            selectAndFrom = selectAndFrom.distinct();
+            countSpec = countSpec.withProjection(selectSpec.getSelectList()).distinct();
         }
+        if (hasCriteria) {
+            countSpec = countSpec.withCriteria(criteria);
+        }
+        String fingerprint = "COUNT|JOIN" + (tableJoin != null) + '|' + fingerprint(countSpec, entity);
 
-        SelectBuilder.SelectFromAndJoin selectBuilder = selectAndFrom.from(table);
+        RenderedSelect renderedSelect = this.selectCache.get(fingerprint);
+        if (renderedSelect != null) {
+            Bindings bindings = hasCriteria ? getBindings(renderedSelect, criteria, table, entity) : Bindings.empty();
+            return new DefaultPreparedOperation<>(renderedSelect.select(), this.renderContext, bindings, renderedSelect.sql());
+        }
 
-        BindMarkers bindMarkers = this.dialect.getBindMarkersFactory().create();
+        BoundCondition condition = null;
+        BindingPlan plan = null;
         Bindings bindings = Bindings.empty();
-        CriteriaDefinition criteria = selectSpec.getCriteria();
+        if (hasCriteria) {
+            CriteriaMapping mapping = planCriteria(table, entity);
+            condition = mapping.map(criteria);
+            bindings = condition.getBindings();
+            plan = mapping.plan(bindings);
+        }
 
+        Select select;
+        if (selectSpec.isDistinct()) {
+            Select source = buildCountSource(StatementBuilder.select(getSelectList(selectSpec, entity)).distinct().from(table), condition, tableJoin);
+            select = StatementBuilder.select(Functions.count(Expressions.asterisk()))
+                    .from(InlineQuery.create(source, COUNT_SUBQUERY_ALIAS))
+                    .build();
+        } else {
+            select = buildCountSource(StatementBuilder.select(Functions.count(Expressions.asterisk())).from(table), condition, tableJoin);
+        }
+
+        String sql = SqlRenderer.create(this.renderContext).render(select);
+        this.selectCache.put(fingerprint, new RenderedSelect(select, sql, sql, plan));
+
+        return new DefaultPreparedOperation<>(select, this.renderContext, bindings, sql);
+    }
+
+    private Select buildCountSource(SelectBuilder.SelectFromAndJoin selectBuilder, @Nullable BoundCondition condition, @Nullable TableJoin tableJoin) {
+        if (condition != null) {
+            selectBuilder.where(condition.getCondition());
+        }
+        if (tableJoin == null) {
+            return selectBuilder.build();
+        }
+        return tableJoin.joinType().getFunction().apply(selectBuilder, Table.create(tableJoin.rightTable()))
+                .on(Conditions.just(tableJoin.on()))
+                .build();
+    }
+
+    /**
+     * 获取count查询需要保留的JOIN，不需要JOIN的时候返回null
+     * INNER JOIN会过滤左表的数据，"对多"的LEFT JOIN会使左表的行数翻倍，这两种情况都必须保留
+     */
+    @Nullable
+    private TableJoin getCountJoin(@Nullable RelationalPersistentEntity<?> entity, @Nullable CriteriaDefinition criteria) {
+        if (entity == null || !EntityDescriptor.of(entity).isJoin()) {
+            return null;
+        }
+        TableJoin tableJoin = entity.getRequiredAnnotation(TableJoin.class);
+        if (tableJoin.joinType() != TableJoin.JoinType.LEFT_JOIN || !tableJoin.toOne()) {
+            return tableJoin;
+        }
+        return criteria != null && isTableReferenced(criteria, entity, tableJoin.rightTable()) ? tableJoin : null;
+    }
+
+    /**
+     * 条件中是否引用了指定的表
+     * 无法确定字段属于哪个表的时候（不是实体的字段，且没有表名前缀），保守的认为引用了
+     */
+    private static boolean isTableReferenced(CriteriaDefinition criteria, RelationalPersistentEntity<?> entity, String tableName) {
+        if (criteria.hasPrevious() && isTableReferenced(criteria.getPrevious(), entity, tableName)) {
+            return true;
+        }
+        if (criteria.isGroup()) {
+            return criteria.getGroup().stream().anyMatch(group -> isTableReferenced(group, entity, tableName));
+        }
+        SqlIdentifier column = criteria.getColumn();
+        if (column == null) {
+            return false;
+        }
+        RelationalPersistentProperty property = entity.getPersistentProperty(column.getReference());
+        String columnName = property == null ? column.getReference() : property.getColumnName().getReference();
+        if (property != null) {
+            TableColumn tableColumn = property.findAnnotation(TableColumn.class);
+            if (tableColumn != null && tableName.equalsIgnoreCase(tableColumn.fromTable())) {
+                return true;
+            }
+        }
+        int index = columnName.lastIndexOf('.');
+        if (index < 0) {
+            return property == null;
+        }
+        String columnTable = columnName.substring(0, index).replace("`", "").replace("\"", "");
+        return columnTable.equalsIgnoreCase(tableName);
+    }
+
+    /**
+     * 返回查询SQL缓存的统计数据（命中次数、未命中次数等）
+     */
+    public LruCache.CacheStatistics getSqlCacheStatistics() {
+        return this.selectCache.statistics();
+    }
+
+    /**
+     * 生成查询的结构指纹
+     * 只描述会影响渲染结果的结构：方言、实体、表、查询字段、条件的字段/操作符/组合方式、排序、锁
+     * 条件的值只记录是否为空以及集合的长度（IN查询的占位符数量由集合长度决定，按IN查询的渲染策略换算）
+     * 分页是在命中缓存之后单独渲染的（${@link #paged(RenderedSelect, SelectSpec, Bindings)}），不记录在指纹中
+     */
+    private String fingerprint(SelectSpec selectSpec, @Nullable RelationalPersistentEntity<?> entity) {
+        StringBuilder builder = new StringBuilder(128)
+                .append(this.dialect.getClass().getName())
+                .append('|').append(entity == null ? null : entity.getType().getName())
+                .append('|').append(selectSpec.getTable());
+        if (selectSpec.isDistinct()) {
+            builder.append("|DISTINCT");
+        }
+        builder.append("|SELECT");
+        for (Expression expression : selectSpec.getSelectList()) {
+            builder.append(',').append(expression.getClass().getSimpleName()).append(':').append(expression);
+            if (expression instanceof Aliased aliased) {
+                builder.append(':').append(aliased.getAlias());
+            }
+        }
+        builder.append("|WHERE");
+        CriteriaDefinition criteria = selectSpec.getCriteria();
         if (criteria != null && !criteria.isEmpty()) {
+            appendCriteria(builder, criteria);
+        }
+        return builder.append("|ORDER BY").append(selectSpec.getSort())
+                .append("|LOCK").append(selectSpec.getLock())
+                .toString();
+    }
+
+    private void appendCriteria(StringBuilder builder, CriteriaDefinition criteria) {
+        if (criteria.hasPrevious()) {
+            appendCriteria(builder, criteria.getPrevious());
+        }
+        if (!criteria.isGroup() && criteria.getColumn() == null) {
+            return;
+        }
+        builder.append(' ').append(criteria.getCombinator()).append(' ');
+        if (criteria.isGroup()) {
+            builder.append('(');
+            for (CriteriaDefinition group : criteria.getGroup()) {
+                appendCriteria(builder, group);
+            }
+            builder.append(')');
+            return;
+        }
+        builder.append(criteria.getColumn())
+                .append(' ').append(criteria.getComparator());
+        if (criteria.isIgnoreCase()) {
+            builder.append(" IGNORE_CASE");
+        }
+        Object value = criteria.getValue();
+        if (value == null) {
+            builder.append(" NULL");
+        } else if (rewritableInList(criteria) != null) {
+            builder.append(" [").append(this.inListStrategy == InListStrategy.ARRAY ? "ANY" : bucketSizes(((Collection<?>) value).size())).append(']');
+        } else if (value instanceof Collection<?> collection) {
+            builder.append(" [").append(collection.size()).append(']');
+        } else if (value.getClass().isArray()) {
+            builder.append(" [").append(Array.getLength(value)).append(']');
+        } else {
+            builder.append(" ?");
+        }
+    }
+
+    /**
+     * 映射查询条件，按IN查询的渲染策略改写IN条件
+     * 条件中没有需要改写的IN条件的时候，直接交给UpdateMapper
+     * 否则按UpdateMapper的规则逐个映射条件再组合起来，只有IN条件使用自定义的渲染方式
+     */
+    private BoundCondition mapCriteria(BindMarkers bindMarkers, CriteriaDefinition criteria, Table table,
+                                       @Nullable RelationalPersistentEntity<?> entity) {
+        if (this.inListStrategy == InListStrategy.EXPAND || !hasRewritableInList(criteria)) {
+            return this.updateMapper.getMappedObject(bindMarkers, criteria, table, entity);
+        }
+        return new CriteriaMapping(bindMarkers, table, entity, this.inListStrategy, this.updateMapper, false).map(criteria);
+    }
 
-            BoundCondition mappedObject = this.updateMapper.getMappedObject(bindMarkers, criteria, table, entity);
+    /**
+     * 映射查询条件的同时记录绑定计划 ${@link BindingPlan}，用于缓存的查询语句
+     * 使用独立的UpdateMapper记录每个条件的值按什么类型转换，所以总是逐个映射条件
+     */
+    private CriteriaMapping planCriteria(Table table, @Nullable RelationalPersistentEntity<?> entity) {
+        return new CriteriaMapping(this.dialect.getBindMarkersFactory().create(), table, entity, this.inListStrategy,
+                new PlanningUpdateMapper(this.dialect, this.converter, true), true);
+    }
 
-            bindings = mappedObject.getBindings();
-            selectBuilder.where(mappedObject.getCondition());
+    private boolean hasRewritableInList(CriteriaDefinition criteria) {
+        if (criteria.hasPrevious() && hasRewritableInList(criteria.getPrevious())) {
+            return true;
+        }
+        if (criteria.isGroup()) {
+            return criteria.getGroup().stream().anyMatch(this::hasRewritableInList);
         }
+        return rewritableInList(criteria) != null;
+    }
 
-        if (selectSpec.getSort().isSorted()) {
-            List<OrderByField> sort = this.updateMapper.getMappedSort(table, selectSpec.getSort(), entity);
-            selectBuilder.orderBy(sort);
+    /**
+     * 需要按渲染策略改写的IN条件的值，不需要改写的时候返回null
+     * 只改写多于一个元素、没有null、元素类型一致的IN/NOT IN条件
+     */
+    @Nullable
+    private List<?> rewritableInList(CriteriaDefinition criteria) {
+        if (this.inListStrategy == InListStrategy.EXPAND || criteria.isGroup() || criteria.isIgnoreCase()
+            || (criteria.getComparator() != CriteriaDefinition.Comparator.IN && criteria.getComparator() != CriteriaDefinition.Comparator.NOT_IN)
+            || !(criteria.getValue() instanceof Collection<?> collection) || collection.size() < 2) {
+            return null;
+        }
+        List<?> values = new ArrayList<>(collection);
+        Object first = values.get(0);
+        if (first == null || first instanceof Boolean) {
+            return null;
         }
+        for (Object value : values) {
+            if (value == null || value.getClass() != first.getClass()) {
+                return null;
+            }
+        }
+        return values;
+    }
 
-        if (selectSpec.getLimit() > 0) {
-            selectBuilder.limit(selectSpec.getLimit());
+    /**
+     * BUCKET策略下，IN列表补齐之后的长度（不超过最大分桶）
+     */
+    private static int bucketSize(int size) {
+        if (size <= 1) {
+            return size;
         }
+        return Math.min(Integer.highestOneBit(size - 1) << 1, IN_LIST_MAX_BUCKET);
+    }
 
-        if (selectSpec.getOffset() > 0) {
-            selectBuilder.offset(selectSpec.getOffset());
+    /**
+     * BUCKET策略下，IN列表拆分并补齐之后每一组的长度，前面的组都是最大分桶，最后一组按剩余的元素数量补齐
+     */
+    private static List<Integer> bucketSizes(int size) {
+        List<Integer> sizes = new ArrayList<>();
+        for (int from = 0; from < size; from += IN_LIST_MAX_BUCKET) {
+            sizes.add(bucketSize(Math.min(IN_LIST_MAX_BUCKET, size - from)));
         }
+        return sizes;
+    }
 
-        if (selectSpec.getLock() != null) {
-            selectBuilder.lock(selectSpec.getLock());
+    /**
+     * 一次条件映射的过程，组合条件的规则与Spring的QueryMapper一致
+     * 所有条件共用一个BindMarkers，保证占位符是连续的
+     * 需要记录绑定计划的时候，按映射的顺序记录每个条件的值转换时使用的类型
+     */
+    private final class CriteriaMapping {
+
+        private final BindMarkers bindMarkers;
+        private final Table table;
+        @Nullable
+        private final RelationalPersistentEntity<?> entity;
+        private final InListStrategy strategy;
+        private final PlanningUpdateMapper mapper;
+        @Nullable
+        private List<TypeInformation<?>> typeHints;
+        private Bindings bindings = Bindings.empty();
+
+        private CriteriaMapping(BindMarkers bindMarkers, Table table, @Nullable RelationalPersistentEntity<?> entity, InListStrategy strategy,
+                                PlanningUpdateMapper mapper, boolean planning) {
+            this.bindMarkers = bindMarkers;
+            this.table = table;
+            this.entity = entity;
+            this.strategy = strategy;
+            this.mapper = mapper;
+            this.typeHints = planning ? new ArrayList<>() : null;
         }
 
-        Select select;
-        boolean isJoin = entity != null && entity.isAnnotationPresent(TableJoin.class);
-        if (!isJoin) {
-            select = selectBuilder.build();
-        } else {
-            TableJoin tableJoin = entity.getRequiredAnnotation(TableJoin.class);
-            select = tableJoin.joinType().getFunction().apply(selectBuilder, Table.create(tableJoin.rightTable()))
-                    .on(Conditions.just(tableJoin.on()))
-                    .build();
+        private BoundCondition map(CriteriaDefinition criteria) {
+            Condition condition = unroll(criteria);
+            return new BoundCondition(this.bindings, condition);
+        }
+
+        /**
+         * 映射过程中记录的绑定计划，有条件的值无法按计划转换的时候返回null
+         *
+         * @param bindings 映射得到的绑定参数，占位符按绑定的顺序记录
+         */
+        @Nullable
+        private BindingPlan plan(Bindings bindings) {
+            if (this.typeHints == null) {
+                return null;
+            }
+            List<BindMarker> markers = new ArrayList<>();
+            bindings.forEach(binding -> markers.add(binding.getBindMarker()));
+            return new BindingPlan(List.copyOf(markers), List.copyOf(this.typeHints));
+        }
+
+        /**
+         * 记录一个条件的值转换时使用的类型
+         * Parameter和ValueFunction的值需要经过额外的处理，出现这样的值的时候放弃记录绑定计划
+         */
+        private void recordTypeHint(CriteriaDefinition criteria) {
+            TypeInformation<?> typeHint = this.mapper.takeTypeHint();
+            if (this.typeHints == null) {
+                return;
+            }
+            if (typeHint == null || criteria.getValue() instanceof Parameter || criteria.getValue() instanceof ValueFunction<?>) {
+                this.typeHints = null;
+            } else {
+                this.typeHints.add(typeHint);
+            }
+        }
+
+        private Condition unroll(CriteriaDefinition criteria) {
+            Condition mapped = null;
+            for (CriteriaDefinition criterion : chain(criteria)) {
+                Condition condition = getCondition(criterion);
+                if (condition != null) {
+                    mapped = mapped == null ? condition : combine(mapped, criterion.getCombinator(), condition);
+                }
+            }
+            if (mapped == null) {
+                throw new IllegalStateException("Cannot map empty Criteria");
+            }
+            return mapped;
+        }
+
+        @Nullable
+        private Condition getCondition(CriteriaDefinition criteria) {
+            if (criteria.isEmpty()) {
+                return null;
+            }
+            if (criteria.isGroup()) {
+                Condition mapped = null;
+                for (CriteriaDefinition criterion : criteria.getGroup()) {
+                    if (criterion.isEmpty()) {
+                        continue;
+                    }
+                    Condition condition = unroll(criterion);
+                    mapped = mapped == null ? condition : combine(mapped, criteria.getCombinator(), condition);
+                }
+                return mapped == null ? null : Conditions.nest(mapped);
+            }
+            Condition condition = mapCriterion(criteria);
+            recordTypeHint(criteria);
+            return condition;
+        }
+
+        private Condition mapCriterion(CriteriaDefinition criteria) {
+            List<?> values = rewritableInList(criteria);
+            Leaf leaf = new Leaf(criteria.getColumn(), criteria.getComparator(), criteria.getValue(), criteria.isIgnoreCase());
+            if (values == null) {
+                return mapLeaf(leaf);
+            }
+            if (this.strategy == InListStrategy.ARRAY) {
+                return mapArray(leaf, values);
+            }
+            // 超过最大分桶的时候拆分为多个IN，IN之间是OR，NOT IN之间是AND
+            boolean notIn = leaf.comparator() == CriteriaDefinition.Comparator.NOT_IN;
+            Condition mapped = null;
+            for (int from = 0; from < values.size(); from += IN_LIST_MAX_BUCKET) {
+                Condition condition = mapBucket(leaf, values.subList(from, Math.min(from + IN_LIST_MAX_BUCKET, values.size())));
+                mapped = mapped == null ? condition : notIn ? mapped.and(condition) : mapped.or(condition);
+            }
+            return values.size() > IN_LIST_MAX_BUCKET ? Conditions.nest(mapped) : mapped;
+        }
+
+        /**
+         * 重复最后一个元素补齐到分桶的长度
+         */
+        private Condition mapBucket(Leaf leaf, List<?> values) {
+            List<Object> padded = new ArrayList<>(values);
+            Object last = values.get(values.size() - 1);
+            while (padded.size() < bucketSize(values.size())) {
+                padded.add(last);
+            }
+            return mapLeaf(new Leaf(leaf.column(), leaf.comparator(), padded, false));
+        }
+
+        private Condition mapLeaf(Leaf leaf) {
+            BoundCondition boundCondition = this.mapper.getMappedObject(this.bindMarkers, leaf, this.table, this.entity);
+            this.bindings = this.bindings.and(boundCondition.getBindings());
+            return boundCondition.getCondition();
+        }
+
+        /**
+         * c = ANY(?) / c <> ALL(?)
+         * 元素的类型转换和列的映射仍然交给UpdateMapper（使用独立的BindMarkers，不占用正式的占位符）
+         */
+        private Condition mapArray(Leaf leaf, List<?> values) {
+            BoundCondition expanded = this.mapper.getMappedObject(dialect.getBindMarkersFactory().create(), leaf, this.table, this.entity);
+            List<Object> converted = new ArrayList<>(values.size());
+            for (Bindings.Binding binding : expanded.getBindings()) {
+                converted.add(binding.hasValue() ? binding.getValue() : null);
+            }
+            Condition comparison = this.mapper.getMappedObject(dialect.getBindMarkersFactory().create(),
+                    new Leaf(leaf.column(), CriteriaDefinition.Comparator.EQ, values.get(0), false), this.table, this.entity).getCondition();
+            Class<?> elementType = converted.isEmpty() || converted.get(0) == null ? null : converted.get(0).getClass();
+            if (!(comparison instanceof Comparison equals) || elementType == null
+                || converted.stream().anyMatch(value -> value == null || value.getClass() != elementType)) {
+                throw new IllegalArgumentException("Cannot bind IN list of " + leaf.column() + " as an array");
+            }
+            Object array = Array.newInstance(elementType, converted.size());
+            for (int i = 0; i < converted.size(); i++) {
+                Array.set(array, i, converted.get(i));
+            }
+            MutableBindings arrayBindings = new MutableBindings(this.bindMarkers);
+            BindMarker bindMarker = arrayBindings.nextMarker();
+            arrayBindings.bind(bindMarker, array);
+            this.bindings = this.bindings.and(arrayBindings);
+
+            boolean notIn = leaf.comparator() == CriteriaDefinition.Comparator.NOT_IN;
+            Expression arrayExpression = SimpleFunction.create(notIn ? "ALL" : "ANY", List.of(SQL.bindMarker(bindMarker.getPlaceholder())));
+            return Comparison.create(equals.getLeft(), notIn ? "<>" : "=", arrayExpression);
         }
 
-        return new DefaultPreparedOperation<>(select, this.renderContext, bindings);
+        private static Condition combine(Condition current, CriteriaDefinition.Combinator combinator, Condition next) {
+            return switch (combinator) {
+                case INITIAL -> current.and(Conditions.nest(next));
+                case AND -> current.and(next);
+                case OR -> current.or(next);
+            };
+        }
+
+    }
+
+    /**
+     * 按绑定计划生成一次查询的绑定参数，遍历条件的顺序与 ${@link CriteriaMapping} 一致
+     * 值的转换与UpdateMapper一致（使用同样的类型调用同一个转换方法），占位符直接复用计划中记录的占位符
+     */
+    private final class PlannedBinding {
+
+        private final BindingPlan plan;
+        private final MutableBindings bindings;
+        private int typeHintIndex;
+        private int markerIndex;
+
+        private PlannedBinding(BindingPlan plan) {
+            this.plan = plan;
+            this.bindings = new MutableBindings(dialect.getBindMarkersFactory().create());
+        }
+
+        /**
+         * 条件中有无法按计划转换的值，或者参数的数量与计划不一致的时候返回null
+         */
+        @Nullable
+        private Bindings bind(CriteriaDefinition criteria) {
+            boolean bound = bindChain(criteria);
+            return bound && this.typeHintIndex == this.plan.typeHints().size() && this.markerIndex == this.plan.markers().size() ? this.bindings : null;
+        }
+
+        private boolean bindChain(CriteriaDefinition criteria) {
+            for (CriteriaDefinition criterion : chain(criteria)) {
+                if (criterion.isEmpty()) {
+                    continue;
+                }
+                if (criterion.isGroup()) {
+                    for (CriteriaDefinition group : criterion.getGroup()) {
+                        if (!group.isEmpty() && !bindChain(group)) {
+                            return false;
+                        }
+                    }
+                } else if (!bindCriterion(criterion)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 与QueryMapper的规则一致：IS NULL/IS NOT NULL不绑定参数，IN的集合逐个元素转换和绑定，BETWEEN绑定两个参数，其他情况绑定一个参数
+         */
+        private boolean bindCriterion(CriteriaDefinition criteria) {
+            if (this.typeHintIndex >= this.plan.typeHints().size()) {
+                return false;
+            }
+            TypeInformation<?> typeHint = this.plan.typeHints().get(this.typeHintIndex++);
+            Object value = criteria.getValue();
+            if (value instanceof Parameter || value instanceof ValueFunction<?>) {
+                return false;
+            }
+            CriteriaDefinition.Comparator comparator = criteria.getComparator();
+            if (comparator == CriteriaDefinition.Comparator.IS_NULL || comparator == CriteriaDefinition.Comparator.IS_NOT_NULL) {
+                return true;
+            }
+            Class<?> valueType = typeHint.getRequiredActualType().getType();
+            List<?> values = rewritableInList(criteria);
+            if (values != null) {
+                return bindInList(values, typeHint);
+            }
+            boolean in = comparator == CriteriaDefinition.Comparator.IN || comparator == CriteriaDefinition.Comparator.NOT_IN;
+            if (in && value instanceof Collection<?> collection && !collection.isEmpty()) {
+                for (Object element : collection) {
+                    if (!bindValue(updateMapper.convert(element, typeHint), valueType)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            Object mapped = updateMapper.convert(value, typeHint);
+            if (in && mapped instanceof Iterable<?> iterable) {
+                for (Object element : iterable) {
+                    if (!bindValue(element, valueType)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if ((comparator == CriteriaDefinition.Comparator.BETWEEN || comparator == CriteriaDefinition.Comparator.NOT_BETWEEN)
+                && mapped instanceof Pair<?, ?> pair) {
+                return bindValue(pair.getFirst(), valueType) && bindValue(pair.getSecond(), valueType);
+            }
+            return bindValue(mapped, valueType);
+        }
+
+        /**
+         * 按IN查询的渲染策略绑定改写过的IN条件：ARRAY绑定一个数组，BUCKET按分桶补齐之后逐个绑定
+         */
+        private boolean bindInList(List<?> values, TypeInformation<?> typeHint) {
+            List<Object> converted = new ArrayList<>(values.size());
+            for (Object value : values) {
+                converted.add(updateMapper.convert(value, typeHint));
+            }
+            if (inListStrategy == InListStrategy.ARRAY) {
+                Object first = converted.get(0);
+                if (first == null || converted.stream().anyMatch(value -> value == null || value.getClass() != first.getClass())) {
+                    return false;
+                }
+                Object array = Array.newInstance(first.getClass(), converted.size());
+                for (int i = 0; i < converted.size(); i++) {
+                    Array.set(array, i, converted.get(i));
+                }
+                return bindValue(array, array.getClass());
+            }
+            for (int from = 0; from < converted.size(); from += IN_LIST_MAX_BUCKET) {
+                List<Object> bucket = converted.subList(from, Math.min(from + IN_LIST_MAX_BUCKET, converted.size()));
+                int size = bucketSize(bucket.size());
+                for (int i = 0; i < size; i++) {
+                    Object value = bucket.get(Math.min(i, bucket.size() - 1));
+                    if (!bindValue(value, value.getClass())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean bindValue(@Nullable Object value, Class<?> valueType) {
+            if (this.markerIndex >= this.plan.markers().size()) {
+                return false;
+            }
+            BindMarker marker = this.plan.markers().get(this.markerIndex++);
+            if (value == null) {
+                this.bindings.bindNull(marker, valueType);
+            } else {
+                this.bindings.bind(marker, value);
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * 可以记录条件的值转换时使用的类型的UpdateMapper
+     * QueryMapper映射一个条件的时候，第一次转换值使用的就是字段的类型，后续同一个字段的值都按这个类型转换
+     */
+    private static final class PlanningUpdateMapper extends UpdateMapper {
+
+        private final boolean recording;
+
+        @Nullable
+        private TypeInformation<?> typeHint;
+
+        private PlanningUpdateMapper(R2dbcDialect dialect, R2dbcConverter converter, boolean recording) {
+            super(dialect, converter);
+            this.recording = recording;
+        }
+
+        @Override
+        protected Object convertValue(@Nullable Object value, TypeInformation<?> typeInformation) {
+            if (this.recording && this.typeHint == null) {
+                this.typeHint = typeInformation;
+            }
+            return super.convertValue(value, typeInformation);
+        }
+
+        /**
+         * 按指定的类型转换条件的值，不记录类型
+         */
+        @Nullable
+        private Object convert(@Nullable Object value, TypeInformation<?> typeInformation) {
+            return super.convertValue(value, typeInformation);
+        }
+
+        /**
+         * 取出上一个条件记录的类型，同时清空记录
+         */
+        @Nullable
+        private TypeInformation<?> takeTypeHint() {
+            TypeInformation<?> typeHint = this.typeHint;
+            this.typeHint = null;
+            return typeHint;
+        }
+
+    }
+
+    /**
+     * 单个条件（不带前后的条件链），用于逐个映射条件
+     */
+    private record Leaf(SqlIdentifier column, CriteriaDefinition.Comparator comparator, @Nullable Object value,
+                        boolean ignoreCase) implements CriteriaDefinition {
+
+        @Override
+        public boolean isGroup() {
+            return false;
+        }
+
+        @Override
+        public List<CriteriaDefinition> getGroup() {
+            return List.of();
+        }
+
+        @Override
+        public SqlIdentifier getColumn() {
+            return this.column;
+        }
+
+        @Override
+        public Comparator getComparator() {
+            return this.comparator;
+        }
+
+        @Override
+        public Object getValue() {
+            return this.value;
+        }
+
+        @Override
+        public boolean isIgnoreCase() {
+            return this.ignoreCase;
+        }
+
+        @Override
+        public CriteriaDefinition getPrevious() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public Combinator getCombinator() {
+            return Combinator.INITIAL;
+        }
+    }
+
+    /**
+     * 替换了值和前一个条件的条件，其他属性与原条件一致，用于拆分IN列表之后重新链接条件
+     */
+    private record ChainedCriteria(CriteriaDefinition source, @Nullable CriteriaDefinition previous,
+                                   @Nullable Object value) implements CriteriaDefinition {
+
+        @Override
+        public boolean isGroup() {
+            return this.source.isGroup();
+        }
+
+        @Override
+        public List<CriteriaDefinition> getGroup() {
+            return this.source.getGroup();
+        }
+
+        @Override
+        public SqlIdentifier getColumn() {
+            return this.source.getColumn();
+        }
+
+        @Override
+        public Comparator getComparator() {
+            return this.source.getComparator();
+        }
+
+        @Override
+        public Object getValue() {
+            return this.value;
+        }
+
+        @Override
+        public boolean isIgnoreCase() {
+            return this.source.isIgnoreCase();
+        }
+
+        @Override
+        public CriteriaDefinition getPrevious() {
+            return this.previous;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return this.previous != null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.source.isEmpty();
+        }
+
+        @Override
+        public Combinator getCombinator() {
+            return this.source.getCombinator();
+        }
     }
 
     protected List<Expression> getSelectList(SelectSpec selectSpec, @Nullable RelationalPersistentEntity<?> entity) {
@@ -161,6 +1186,311 @@ public class R2dbcStatementMapper implements StatementMapper {
         return new R2dbcStatementMapper.DefaultPreparedOperation<>(withBuild.build(), this.renderContext, bindings);
     }
 
+    /**
+     * 多行插入：INSERT INTO table (c1, c2) VALUES (?, ?), (?, ?) ...
+     *
+     * @param tableName 表名
+     * @param columns   插入的列，每一行都必须包含这些列
+     * @param rows      要插入的行
+     * @param entity    实体信息，用于类型转换，可以为空
+     */
+    public PreparedOperation<String> getMappedBatchInsertObject(SqlIdentifier tableName, List<SqlIdentifier> columns,
+                                                                List<? extends Map<SqlIdentifier, ?>> rows,
+                                                                @Nullable RelationalPersistentEntity<?> entity) {
+        StringBuilder sql = new StringBuilder();
+        Bindings bindings = renderBatchInsert(sql, tableName, columns, rows, entity);
+        return new R2dbcStatementMapper.DefaultPreparedOperation<>(sql.toString(), this.renderContext, bindings, sql.toString());
+    }
+
+    /**
+     * 多行upsert（插入，唯一键冲突的时候更新）
+     * PostgreSQL：INSERT ... ON CONFLICT (conflictColumns) DO UPDATE SET c = EXCLUDED.c
+     * MySQL：INSERT ... AS new ON DUPLICATE KEY UPDATE c = new.c（不支持行别名的版本使用 c = VALUES(c)），MySQL不能指定冲突的列，任何唯一索引冲突都会触发更新
+     * 没有需要更新的列的时候，冲突的行保持不变
+     *
+     * @param conflictColumns 冲突的列（唯一约束）
+     * @param updateColumns   冲突时需要更新的列
+     */
+    public PreparedOperation<String> getMappedBatchUpsertObject(SqlIdentifier tableName, List<SqlIdentifier> columns,
+                                                                List<? extends Map<SqlIdentifier, ?>> rows,
+                                                                @Nullable RelationalPersistentEntity<?> entity,
+                                                                List<SqlIdentifier> conflictColumns,
+                                                                List<SqlIdentifier> updateColumns) {
+
+        Assert.notEmpty(conflictColumns, "UPSERT requires conflict columns");
+
+        StringBuilder sql = new StringBuilder();
+        Bindings bindings = renderBatchInsert(sql, tableName, columns, rows, entity);
+
+        if (this.dialect instanceof PostgresDialect) {
+            StringJoiner conflict = new StringJoiner(", ", " ON CONFLICT (", ")");
+            conflictColumns.forEach(column -> conflict.add(toSql(column)));
+            sql.append(conflict);
+            if (updateColumns.isEmpty()) {
+                sql.append(" DO NOTHING");
+            } else {
+                StringJoiner assignments = new StringJoiner(", ", " DO UPDATE SET ", "");
+                updateColumns.forEach(column -> assignments.add(toSql(column) + " = EXCLUDED." + toSql(column)));
+                sql.append(assignments);
+            }
+        } else if (this.dialect instanceof MySqlDialect) {
+            // 没有需要更新的列的时候，把冲突的列赋值为自身，效果等同于忽略
+            List<SqlIdentifier> assignedColumns = updateColumns.isEmpty() ? conflictColumns.subList(0, 1) : updateColumns;
+            boolean rowAlias = Boolean.TRUE.equals(this.upsertRowAlias);
+            if (rowAlias) {
+                sql.append(" AS ").append(UPSERT_ROW_ALIAS);
+            }
+            StringJoiner assignments = new StringJoiner(", ", " ON DUPLICATE KEY UPDATE ", "");
+            assignedColumns.forEach(column -> assignments.add(toSql(column) + " = "
+                                                              + (rowAlias ? UPSERT_ROW_ALIAS + "." + toSql(column) : "VALUES(" + toSql(column) + ")")));
+            sql.append(assignments);
+        } else {
+            throw new UnsupportedOperationException("Dialect " + this.dialect.getClass().getName() + " does not support upsert");
+        }
+
+        return new R2dbcStatementMapper.DefaultPreparedOperation<>(sql.toString(), this.renderContext, bindings, sql.toString());
+    }
+
+    /**
+     * 数据库是否支持upsert
+     */
+    public boolean isUpsertSupported() {
+        return this.dialect instanceof PostgresDialect || this.dialect instanceof MySqlDialect;
+    }
+
+    /**
+     * 单条语句的批量更新，每一行的值都不一样，按id匹配
+     * PostgreSQL：UPDATE t SET c = v.c FROM (VALUES (...), (...)) AS v (id, c) WHERE t.id = v.id RETURNING t.id
+     * MySQL：UPDATE t JOIN (SELECT ? AS id, ? AS c UNION ALL SELECT ?, ?) AS v ON t.id = v.id SET t.c = v.c
+     * 有版本号的时候，每一行还需要带上更新前的版本号（key是 ${@link #BULK_EXPECTED_VERSION}），并加入到匹配条件中
+     * PostgreSQL会返回更新成功的行的id，MySQL只能返回总的影响行数
+     *
+     * @param idColumn      id列
+     * @param updateColumns 需要更新的列
+     * @param versionColumn 版本号列，没有版本号传null
+     * @param rows          每一行的数据，需要包含id列、需要更新的列，以及更新前的版本号
+     */
+    public PreparedOperation<String> getMappedBulkUpdateObject(SqlIdentifier tableName, SqlIdentifier idColumn,
+                                                               List<SqlIdentifier> updateColumns,
+                                                               @Nullable SqlIdentifier versionColumn,
+                                                               List<? extends Map<SqlIdentifier, ?>> rows,
+                                                               @Nullable RelationalPersistentEntity<?> entity) {
+
+        Assert.notEmpty(updateColumns, "UPDATE contains no assignments");
+        Assert.notEmpty(rows, "UPDATE contains no rows");
+
+        List<SqlIdentifier> valueColumns = new ArrayList<>();
+        valueColumns.add(idColumn);
+        valueColumns.addAll(updateColumns);
+        if (versionColumn != null) {
+            valueColumns.add(BULK_EXPECTED_VERSION);
+        }
+        BoundRows boundRows = bindRows(tableName, valueColumns, rows, entity);
+
+        String table = toSql(tableName);
+        String id = toSql(idColumn);
+        StringBuilder sql = new StringBuilder();
+        if (this.dialect instanceof PostgresDialect) {
+            StringJoiner assignments = new StringJoiner(", ", "UPDATE " + table + " AS " + BULK_TARGET_ALIAS + " SET ", "");
+            updateColumns.forEach(column -> assignments.add(toSql(column) + " = " + BULK_VALUES_ALIAS + "." + toSql(column)));
+            StringJoiner values = new StringJoiner(", ", " FROM (VALUES ", ")");
+            boundRows.placeholders().forEach(row -> values.add("(" + String.join(", ", row) + ")"));
+            StringJoiner aliases = new StringJoiner(", ", " AS " + BULK_VALUES_ALIAS + " (", ")");
+            valueColumns.forEach(column -> aliases.add(toSql(column)));
+            sql.append(assignments).append(values).append(aliases)
+                    .append(" WHERE ").append(BULK_TARGET_ALIAS).append(".").append(id).append(" = ").append(BULK_VALUES_ALIAS).append(".").append(id);
+            if (versionColumn != null) {
+                sql.append(" AND ").append(BULK_TARGET_ALIAS).append(".").append(toSql(versionColumn))
+                        .append(" IS NOT DISTINCT FROM ").append(BULK_VALUES_ALIAS).append(".").append(toSql(BULK_EXPECTED_VERSION));
+            }
+            sql.append(" RETURNING ").append(BULK_TARGET_ALIAS).append(".").append(id);
+        } else if (this.dialect instanceof MySqlDialect) {
+            StringJoiner derived = new StringJoiner(" UNION ALL ", " JOIN (", ")");
+            for (int i = 0; i < boundRows.placeholders().size(); i++) {
+                List<String> row = boundRows.placeholders().get(i);
+                StringJoiner select = new StringJoiner(", ", "SELECT ", "");
+                for (int j = 0; j < row.size(); j++) {
+                    // 派生表的列名取自第一行的别名
+                    select.add(i == 0 ? row.get(j) + " AS " + toSql(valueColumns.get(j)) : row.get(j));
+                }
+                derived.add(select.toString());
+            }
+            sql.append("UPDATE ").append(table).append(" AS ").append(BULK_TARGET_ALIAS).append(derived)
+                    .append(" AS ").append(BULK_VALUES_ALIAS)
+                    .append(" ON ").append(BULK_TARGET_ALIAS).append(".").append(id).append(" = ").append(BULK_VALUES_ALIAS).append(".").append(id);
+            if (versionColumn != null) {
+                sql.append(" AND ").append(BULK_TARGET_ALIAS).append(".").append(toSql(versionColumn))
+                        .append(" <=> ").append(BULK_VALUES_ALIAS).append(".").append(toSql(BULK_EXPECTED_VERSION));
+            }
+            StringJoiner assignments = new StringJoiner(", ", " SET ", "");
+            updateColumns.forEach(column -> assignments.add(BULK_TARGET_ALIAS + "." + toSql(column) + " = " + BULK_VALUES_ALIAS + "." + toSql(column)));
+            sql.append(assignments);
+        } else {
+            throw new UnsupportedOperationException("Dialect " + this.dialect.getClass().getName() + " does not support bulk update");
+        }
+
+        return new R2dbcStatementMapper.DefaultPreparedOperation<>(sql.toString(), this.renderContext, boundRows.bindings(), sql.toString());
+    }
+
+    /**
+     * 数据库是否支持单条语句的批量更新
+     */
+    public boolean isBulkUpdateSupported() {
+        return this.dialect instanceof PostgresDialect || this.dialect instanceof MySqlDialect;
+    }
+
+    /**
+     * 渲染多行插入：INSERT INTO table (c1, c2) VALUES (?, ?), (?, ?) ...
+     * Spring的Insert语法树只支持一行VALUES，所以这里直接拼接SQL
+     */
+    private Bindings renderBatchInsert(StringBuilder sql, SqlIdentifier tableName, List<SqlIdentifier> columns,
+                                       List<? extends Map<SqlIdentifier, ?>> rows,
+                                       @Nullable RelationalPersistentEntity<?> entity) {
+
+        Assert.notEmpty(columns, "INSERT contains no columns");
+        Assert.notEmpty(rows, "INSERT contains no rows");
+
+        BoundRows boundRows = bindRows(tableName, columns, rows, entity);
+
+        StringJoiner columnList = new StringJoiner(", ", "INSERT INTO " + toSql(tableName) + " (", ") VALUES ");
+        columns.forEach(column -> columnList.add(toSql(column)));
+        StringJoiner values = new StringJoiner(", ");
+        boundRows.placeholders().forEach(row -> values.add("(" + String.join(", ", row) + ")"));
+        sql.append(columnList).append(values);
+        return boundRows.bindings();
+    }
+
+    /**
+     * 绑定多行数据
+     * 每一行的值仍然交给UpdateMapper做类型转换和绑定，所有行共用一个BindMarkers，保证占位符是连续的
+     */
+    private BoundRows bindRows(SqlIdentifier tableName, List<SqlIdentifier> columns,
+                               List<? extends Map<SqlIdentifier, ?>> rows,
+                               @Nullable RelationalPersistentEntity<?> entity) {
+        BindMarkers bindMarkers = this.dialect.getBindMarkersFactory().create();
+        Table table = Table.create(toSql(tableName));
+        List<List<String>> placeholders = new ArrayList<>(rows.size());
+        Bindings bindings = Bindings.empty();
+        for (Map<SqlIdentifier, ?> row : rows) {
+            Map<SqlIdentifier, Object> assignments = new LinkedHashMap<>();
+            for (SqlIdentifier column : columns) {
+                assignments.put(column, row.get(column));
+            }
+            Bindings rowBindings = this.updateMapper.getMappedObject(bindMarkers, assignments, table, entity).getBindings();
+            // 每一列都对应一个绑定参数，按列的顺序排列
+            List<String> rowPlaceholders = new ArrayList<>(columns.size());
+            for (Bindings.Binding binding : rowBindings) {
+                rowPlaceholders.add(binding.getBindMarker().getPlaceholder());
+            }
+            placeholders.add(rowPlaceholders);
+            bindings = bindings.and(rowBindings);
+        }
+        return new BoundRows(placeholders, bindings);
+    }
+
+    /**
+     * 绑定好的多行数据
+     *
+     * @param placeholders 每一行每一列的占位符
+     * @param bindings     所有的绑定参数
+     */
+    private record BoundRows(List<List<String>> placeholders, Bindings bindings) {
+    }
+
+    /**
+     * 原子的增量更新：UPDATE t SET c = c + ? WHERE ...（减少的时候是 c - ?）
+     * 在数据库中完成计算，不需要先查询再更新，也就不会因为并发产生乐观锁冲突
+     * 有版本号的时候版本号同时加1，让持有旧版本号的"读-改-写"更新能感知到这次修改
+     * 可以限制更新后的值不能小于下限（例如库存不能为负数），不满足的行不会被更新
+     * 下限条件渲染为 AND c >= ?，绑定 floor + delta（增加的时候是 floor - delta），不在列上做减法，避免MySQL的UNSIGNED列溢出报错，也能利用列上的索引
+     * 需要返回新值的时候追加 RETURNING c，只有PostgreSQL支持
+     *
+     * @param column        增量更新的列
+     * @param delta         增量（正数），减少的时候通过subtract指定
+     * @param subtract      是否是减少
+     * @param floor         更新后的值的下限，不限制传null
+     * @param versionColumn 版本号列，没有版本号传null
+     * @param returning     是否返回更新后的值
+     */
+    public PreparedOperation<Update> getMappedIncrementObject(SqlIdentifier tableName, SqlIdentifier column, Number delta, boolean subtract,
+                                                              @Nullable Number floor, @Nullable SqlIdentifier versionColumn,
+                                                              @Nullable CriteriaDefinition criteria, boolean returning,
+                                                              @Nullable RelationalPersistentEntity<?> entity) {
+
+        Assert.notNull(delta, "Delta must not be null");
+        if (returning && !isReturningSupported()) {
+            throw new UnsupportedOperationException("Dialect " + this.dialect.getClass().getName() + " does not support RETURNING");
+        }
+
+        BindMarkers bindMarkers = this.dialect.getBindMarkersFactory().create();
+        Table table = Table.create(toSql(tableName));
+        String columnSql = toSql(column);
+        String operator = subtract ? " - " : " + ";
+
+        // 占位符按照在SQL中出现的顺序创建：SET、WHERE、下限
+        MutableBindings assignmentBindings = new MutableBindings(bindMarkers);
+        BindMarker deltaMarker = assignmentBindings.nextMarker();
+        assignmentBindings.bind(deltaMarker, delta);
+        List<Assignment> assignments = new ArrayList<>(2);
+        assignments.add(Assignments.value(table.column(column), Expressions.just(columnSql + operator + deltaMarker.getPlaceholder())));
+        if (versionColumn != null && !versionColumn.equals(column)) {
+            String versionSql = toSql(versionColumn);
+            assignments.add(Assignments.value(table.column(versionColumn), Expressions.just(versionSql + " + 1")));
+        }
+        Bindings bindings = assignmentBindings;
+
+        Condition condition = null;
+        if (criteria != null && !criteria.isEmpty()) {
+            BoundCondition boundCondition = mapCriteria(bindMarkers, criteria, table, entity);
+            bindings = bindings.and(boundCondition.getBindings());
+            condition = boundCondition.getCondition();
+        }
+        if (floor != null) {
+            MutableBindings floorBindings = new MutableBindings(bindMarkers);
+            BindMarker floorMarker = floorBindings.nextMarker();
+            floorBindings.bind(floorMarker, floorBound(floor, delta, subtract));
+            Condition guard = Conditions.just(columnSql + " >= " + floorMarker.getPlaceholder());
+            condition = condition == null ? guard : condition.and(guard);
+            bindings = bindings.and(floorBindings);
+        }
+
+        UpdateBuilder.UpdateWhere updateBuilder = StatementBuilder.update(table).set(assignments);
+        Update update = condition == null ? updateBuilder.build() : updateBuilder.where(condition).build();
+
+        String sql = SqlRenderer.create(this.renderContext).render(update);
+        if (returning) {
+            sql = sql + " RETURNING " + columnSql;
+        }
+        return new R2dbcStatementMapper.DefaultPreparedOperation<>(update, this.renderContext, bindings, sql);
+    }
+
+    /**
+     * 下限条件中列的值需要满足的下界：c - delta >= floor 等价于 c >= floor + delta
+     * 整数类型的时候保持为整数（能放进long的时候使用Long），否则使用BigDecimal
+     */
+    private static Number floorBound(Number floor, Number delta, boolean subtract) {
+        if (isIntegral(floor) && isIntegral(delta)) {
+            BigInteger floorValue = floor instanceof BigInteger bigInteger ? bigInteger : BigInteger.valueOf(floor.longValue());
+            BigInteger deltaValue = delta instanceof BigInteger bigInteger ? bigInteger : BigInteger.valueOf(delta.longValue());
+            BigInteger bound = subtract ? floorValue.add(deltaValue) : floorValue.subtract(deltaValue);
+            return bound.bitLength() < Long.SIZE ? bound.longValue() : bound;
+        }
+        BigDecimal floorValue = new BigDecimal(floor.toString());
+        BigDecimal deltaValue = new BigDecimal(delta.toString());
+        return subtract ? floorValue.add(deltaValue) : floorValue.subtract(deltaValue);
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte || number instanceof BigInteger;
+    }
+
+    /**
+     * 数据库是否支持 UPDATE ... RETURNING
+     */
+    public boolean isReturningSupported() {
+        return this.dialect instanceof PostgresDialect;
+    }
+
     @Override
     public PreparedOperation<Update> getMappedObject(UpdateSpec updateSpec) {
         return getMappedObject(updateSpec, null);
@@ -191,7 +1521,7 @@ public class R2dbcStatementMapper implements StatementMapper {
         CriteriaDefinition criteria = updateSpec.getCriteria();
         if (criteria != null && !criteria.isEmpty()) {
 
-            BoundCondition boundCondition = this.updateMapper.getMappedObject(bindMarkers, criteria, table, entity);
+            BoundCondition boundCondition = mapCriteria(bindMarkers, criteria, table, entity);
 
             bindings = bindings.and(boundCondition.getBindings());
             update = updateBuilder.where(boundCondition.getCondition()).build();
@@ -227,8 +1557,7 @@ public class R2dbcStatementMapper implements StatementMapper {
 
         if (criteria != null && !criteria.isEmpty()) {
 
-            BoundCondition boundCondition = this.updateMapper.getMappedObject(bindMarkers, deleteSpec.getCriteria(), table,
-                    entity);
+            BoundCondition boundCondition = mapCriteria(bindMarkers, criteria, table, entity);
 
             bindings = boundCondition.getBindings();
             delete = deleteBuilder.where(boundCondition.getCondition()).build();
@@ -257,11 +1586,22 @@ public class R2dbcStatementMapper implements StatementMapper {
         private final RenderContext renderContext;
         private final Bindings bindings;
 
+        /**
+         * 已经渲染好的SQL，为空的时候在toQuery()中渲染
+         */
+        @Nullable
+        private final String sql;
+
         DefaultPreparedOperation(T source, RenderContext renderContext, Bindings bindings) {
+            this(source, renderContext, bindings, null);
+        }
+
+        DefaultPreparedOperation(T source, RenderContext renderContext, Bindings bindings, @Nullable String sql) {
 
             this.source = source;
             this.renderContext = renderContext;
             this.bindings = bindings;
+            this.sql = sql;
         }
 
         @Override
@@ -272,6 +1612,10 @@ public class R2dbcStatementMapper implements StatementMapper {
         @Override
         public String toQuery() {
 
+            if (this.sql != null) {
+                return this.sql;
+            }
+
             SqlRenderer sqlRenderer = SqlRenderer.create(this.renderContext);
 
             if (this.source instanceof Select select) {
@@ -300,6 +1644,69 @@ public class R2dbcStatementMapper implements StatementMapper {
 
     }
 
+    /**
+     * 缓存的查询语句
+     *
+     * @param select 查询语法树（不带分页），作为PreparedOperation的source
+     * @param sql    渲染好的SQL（不带分页）
+     * @param head   去掉了ORDER BY之后的部分（锁）的SQL，分页的时候拼接按方言渲染的分页和锁
+     * @param plan   条件的绑定计划，条件中有无法按计划转换的值的时候为null
+     */
+    private record RenderedSelect(Select select, String sql, String head, @Nullable BindingPlan plan) {
+    }
+
+    /**
+     * 条件的绑定计划，同样结构的条件占位符和值的转换类型都是一样的
+     *
+     * @param markers   按绑定顺序排列的占位符
+     * @param typeHints 按映射顺序排列的每个条件的值转换时使用的类型
+     */
+    private record BindingPlan(List<BindMarker> markers, List<TypeInformation<?>> typeHints) {
+    }
+
+    /**
+     * 带分页的查询语句，其他部分都委托给缓存的查询语句
+     * 用于按方言渲染ORDER BY之后的部分，以及作为PreparedOperation的source
+     */
+    private record PagedSelect(Select source, long limit, long offset) implements Select {
+
+        @Override
+        public From getFrom() {
+            return this.source.getFrom();
+        }
+
+        @Override
+        public List<OrderByField> getOrderBy() {
+            return this.source.getOrderBy();
+        }
+
+        @Override
+        public OptionalLong getLimit() {
+            return this.limit > 0 ? OptionalLong.of(this.limit) : OptionalLong.empty();
+        }
+
+        @Override
+        public OptionalLong getOffset() {
+            return this.offset > 0 ? OptionalLong.of(this.offset) : OptionalLong.empty();
+        }
+
+        @Override
+        public boolean isDistinct() {
+            return this.source.isDistinct();
+        }
+
+        @Override
+        public LockMode getLockMode() {
+            return this.source.getLockMode();
+        }
+
+        @Override
+        public void visit(Visitor visitor) {
+            this.source.visit(visitor);
+        }
+
+    }
+
     class DefaultTypedStatementMapper<T> implements TypedStatementMapper<T> {
 
         final RelationalPersistentEntity<T> entity;
@@ -15,17 +15,28 @@
  */
 package com.jxpanda.r2dbc.spring.data.core;
 
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcBatchLoader;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcEntityCache;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcEntitySnapshots;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcResidentTables;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcRoutingKeyResolver;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSession;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSingleFlight;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcTotalCountCache;
 import com.jxpanda.r2dbc.spring.data.core.enhance.key.IdGenerator;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginExecutor;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
 import com.jxpanda.r2dbc.spring.data.core.operation.*;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
 import com.jxpanda.r2dbc.spring.data.core.operation.support.*;
 import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
 import jakarta.annotation.Resource;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
+import org.reactivestreams.Publisher;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.mapping.callback.ReactiveEntityCallbacks;
@@ -36,7 +47,6 @@ import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.DefaultReactiveDataAccessStrategy;
 import org.springframework.data.r2dbc.core.R2dbcEntityOperations;
 import org.springframework.data.r2dbc.core.ReactiveDataAccessStrategy;
-import org.springframework.data.r2dbc.core.StatementMapper;
 import org.springframework.data.r2dbc.dialect.R2dbcDialect;
 import org.springframework.data.r2dbc.mapping.OutboundRow;
 import org.springframework.data.r2dbc.mapping.event.AfterConvertCallback;
@@ -59,13 +69,16 @@ import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 @SuppressWarnings({"unused", "UnusedReturnValue", "deprecation", "unchecked"})
-public class ReactiveEntityTemplate implements R2dbcEntityOperations {
+public class ReactiveEntityTemplate implements R2dbcEntityOperations, AutoCloseable {
 
 
     @Getter
@@ -84,7 +97,55 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
     private final SpelAwareProxyProjectionFactory projectionFactory;
 
     @Getter(value = AccessLevel.PUBLIC)
-    private final StatementMapper statementMapper;
+    private final R2dbcStatementMapper statementMapper;
+
+    /**
+     * 分页总数的缓存
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcTotalCountCache totalCountCache;
+
+    /**
+     * 实体缓存（@TableEntity(cache = true)）
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcEntityCache entityCache;
+
+    /**
+     * 相同查询的合并（@TableEntity(singleFlight = true)）
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcSingleFlight singleFlight = new R2dbcSingleFlight();
+
+    /**
+     * 基于id的单条查询的批量加载（@TableEntity(batchLoad = true)）
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcBatchLoader batchLoader;
+
+    /**
+     * 从Context中解析路由的key，批量加载、相同查询的合并只合并路由的key相同的调用方
+     */
+    @Setter
+    @Getter(value = AccessLevel.PUBLIC)
+    private R2dbcRoutingKeyResolver routingKeyResolver = R2dbcRoutingKeyResolver.NONE;
+
+    /**
+     * 常驻内存的表（@TableEntity(resident = true)）
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcResidentTables residentTables;
+
+    /**
+     * 脏检查的实体快照
+     */
+    @Getter(value = AccessLevel.PUBLIC)
+    private final R2dbcEntitySnapshots entitySnapshots;
+
+    /**
+     * 写操作的监听器
+     */
+    private final List<R2dbcWriteListener> writeListeners = new CopyOnWriteArrayList<>();
 
     @Nullable
     @Getter(value = AccessLevel.PACKAGE)
@@ -114,8 +175,83 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
         this.dialect = dialect;
         this.converter = converter;
         this.statementMapper = new R2dbcStatementMapper(dialect, this.converter);
+        this.totalCountCache = new R2dbcTotalCountCache();
+        this.entitySnapshots = new R2dbcEntitySnapshots(converter);
+        this.entityCache = new R2dbcEntityCache(converter, this.entitySnapshots);
+        this.batchLoader = new R2dbcBatchLoader(converter, this::getRoutingKeyResolver, (domainType, option, ids) -> select(domainType).withOption(option).byIds(ids));
+        this.residentTables = new R2dbcResidentTables(converter, this::getRoutingKeyResolver, domainType -> select(domainType).withOption(new R2dbcOperationOption().setResident(false)).all());
+        this.addWriteListener(this.totalCountCache);
+        this.addWriteListener(this.entityCache);
+        this.addWriteListener(this.residentTables);
     }
 
+    /**
+     * 停止模板持有的后台任务（常驻内存的表的定时刷新），Spring容器销毁bean的时候会调用
+     */
+    @Override
+    public void close() {
+        this.residentTables.close();
+    }
+
+    // -------------------------------------------------------------------------
+    // write listeners
+    // -------------------------------------------------------------------------
+
+    public void addWriteListener(R2dbcWriteListener writeListener) {
+        this.writeListeners.add(writeListener);
+    }
+
+    public void removeWriteListener(R2dbcWriteListener writeListener) {
+        this.writeListeners.remove(writeListener);
+    }
+
+    /**
+     * 通知所有的监听器，实体有数据写入
+     */
+    public void notifyWrite(Class<?> domainType) {
+        for (R2dbcWriteListener writeListener : this.writeListeners) {
+            writeListener.onWrite(domainType);
+        }
+    }
+
+    /**
+     * 通知所有的监听器，实体有数据写入，并且知道被写入的行的id
+     */
+    public void notifyWrite(Class<?> domainType, Collection<?> ids) {
+        notifyWrite(domainType, ids, null);
+    }
+
+    /**
+     * 通知所有的监听器，实体有数据写入，并且知道被写入的行的id和写入方的路由的key
+     */
+    public void notifyWrite(Class<?> domainType, Collection<?> ids, @Nullable Object routingKey) {
+        for (R2dbcWriteListener writeListener : this.writeListeners) {
+            writeListener.onWrite(domainType, ids, routingKey);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    // session
+    // -------------------------------------------------------------------------
+
+    /**
+     * 在会话（一级缓存）中执行，通常包裹一次请求的处理流程
+     * 会话中基于id的查询对于已经加载过的id直接返回同一个实例，写操作会淘汰对应的实例，订阅结束之后会话随之丢弃
+     * 已经处于会话中的时候沿用外层的会话
+     */
+    public <T> Mono<T> withSession(Mono<T> mono) {
+        return mono.contextWrite(context -> R2dbcSession.open(context, this.converter.getConversionService()));
+    }
+
+    /**
+     * 在会话（一级缓存）中执行
+     *
+     * @see #withSession(Mono)
+     */
+    public <T> Flux<T> withSession(Flux<T> flux) {
+        return flux.contextWrite(context -> R2dbcSession.open(context, this.converter.getConversionService()));
+    }
 
     // -------------------------------------------------------------------------
     // callbacks
@@ -241,6 +377,10 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
         return insert(domainType).batch(entityList);
     }
 
+    public <T> Mono<Long> bulkLoad(Class<T> domainType, Publisher<T> entities) {
+        return insert(domainType).bulkLoad(entities);
+    }
+
     public <T> Mono<T> update(T entity) throws DataAccessException {
         return new R2dbcUpdateOperationSupport(this)
                 .update(R2dbcMappingKit.getRequiredEntity(entity).getType())
@@ -259,6 +399,15 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
                 .apply(update);
     }
 
+    /**
+     * 按主键顺序分片更新，每一片在独立的事务中执行，返回每一片影响的行数
+     */
+    public Flux<Long> updateChunked(Query query, Update update, Class<?> entityClass, int chunkSize, Duration pause) {
+        return update(entityClass)
+                .matching(query)
+                .applyChunked(update, chunkSize, pause);
+    }
+
 
     public <T> Mono<T> save(T entity) throws DataAccessException {
         return save(R2dbcMappingKit.getRequiredEntity(entity).getType()).using(entity);
@@ -282,6 +431,15 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
                 .all();
     }
 
+    /**
+     * 按主键顺序分片删除，每一片在独立的事务中执行，返回每一片影响的行数
+     */
+    public Flux<Long> deleteChunked(Query query, Class<?> entityClass, int chunkSize, Duration pause) {
+        return delete(entityClass)
+                .matching(query)
+                .chunked(chunkSize, pause);
+    }
+
     public <ID> Mono<Boolean> deleteById(ID id, Class<?> entityClass) {
         return delete(entityClass)
                 .byId(id);
@@ -304,6 +462,15 @@ public class ReactiveEntityTemplate implements R2dbcEntityOperations {
                 .all();
     }
 
+    /**
+     * 按主键顺序分片物理删除，每一片在独立的事务中执行，返回每一片影响的行数
+     */
+    public Flux<Long> destroyChunked(Query query, Class<?> entityClass, int chunkSize, Duration pause) {
+        return destroy(entityClass)
+                .matching(query)
+                .chunked(chunkSize, pause);
+    }
+
     public <ID> Mono<Boolean> destroyById(ID id, Class<?> entityClass) {
         return destroy(entityClass)
                 .byId(id);
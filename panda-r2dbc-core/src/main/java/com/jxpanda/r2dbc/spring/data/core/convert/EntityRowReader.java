@@ -0,0 +1,162 @@
+package com.jxpanda.r2dbc.spring.data.core.convert;
+
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.data.mapping.InstanceCreatorMetadata;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的行读取器
+ * 在读取结果集第一行的时候，根据RowMetadata把实体的每个字段解析为列的下标，并确定好读取方式（类型处理器/类型转换/直接读取）
+ * 之后的每一行都直接按下标读取并写入实体，不再经过RowDocument，也不再按字段名（别名）查找
+ * 读取计划按（实体类型，列签名）缓存在 ${@link MappingReactiveConverter} 中
+ *
+ * @author Panda
+ */
+public final class EntityRowReader<T> {
+
+    private final RelationalPersistentEntity<T> entity;
+
+    private final MappingReactiveConverter converter;
+
+    private final ColumnReader[] columnReaders;
+
+    private EntityRowReader(RelationalPersistentEntity<T> entity, MappingReactiveConverter converter, ColumnReader[] columnReaders) {
+        this.entity = entity;
+        this.converter = converter;
+        this.columnReaders = columnReaders;
+    }
+
+    /**
+     * 实体是否支持预编译读取
+     * 只支持无参构造（或者构造器没有参数）的实体，且所有字段都是可以直接写入的简单字段
+     * 其他情况（record、全参构造、嵌入对象等）仍然走Spring原生的读取流程
+     */
+    static boolean isSupported(RelationalPersistentEntity<?> entity) {
+        InstanceCreatorMetadata<RelationalPersistentProperty> creatorMetadata = entity.getInstanceCreatorMetadata();
+        if (creatorMetadata != null && creatorMetadata.hasParameters()) {
+            return false;
+        }
+        for (EntityDescriptor.PropertyDescriptor propertyDescriptor : EntityDescriptor.of(entity).getExistsProperties()) {
+            RelationalPersistentProperty property = propertyDescriptor.property();
+            if (property.isEmbedded() || (property.isEntity() && !propertyDescriptor.typeHandler())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static <T> EntityRowReader<T> compile(RelationalPersistentEntity<T> entity, RowMetadata rowMetadata, MappingReactiveConverter converter) {
+        // 列名到下标的映射，与RowDocument一样不区分大小写
+        Map<String, Integer> columnIndexMap = new LinkedCaseInsensitiveMap<>();
+        List<? extends ColumnMetadata> columnMetadataList = rowMetadata.getColumnMetadatas();
+        for (int i = 0; i < columnMetadataList.size(); i++) {
+            columnIndexMap.putIfAbsent(columnMetadataList.get(i).getName(), i);
+        }
+
+        List<ColumnReader> columnReaders = new ArrayList<>();
+        for (EntityDescriptor.PropertyDescriptor propertyDescriptor : EntityDescriptor.of(entity).getExistsProperties()) {
+            RelationalPersistentProperty property = propertyDescriptor.property();
+            if (!property.isWritable()) {
+                continue;
+            }
+            Integer index = columnIndexMap.get(propertyDescriptor.getColumnLabel());
+            if (index == null) {
+                // 结果集中没有这个字段，保持实体的默认值
+                continue;
+            }
+            columnReaders.add(ColumnReader.build(property, propertyDescriptor.typeHandler(), index, columnMetadataList.get(index), converter));
+        }
+        return new EntityRowReader<>(entity, converter, columnReaders.toArray(ColumnReader[]::new));
+    }
+
+    /**
+     * 读取一行数据
+     */
+    public T read(Row row) {
+        T instance = converter.createInstance(entity, parameter -> null);
+        PersistentPropertyAccessor<T> accessor = entity.getPropertyAccessor(instance);
+        for (ColumnReader columnReader : columnReaders) {
+            Object value = columnReader.read(row, converter);
+            if (value != null) {
+                accessor.setProperty(columnReader.property(), value);
+            }
+        }
+        return accessor.getBean();
+    }
+
+    /**
+     * 列读取器
+     *
+     * @param property    字段
+     * @param index       列下标
+     * @param readType    从驱动读取时使用的类型
+     * @param mode        读取方式
+     * @param typeInformation 字段的类型信息，类型转换时使用
+     */
+    private record ColumnReader(
+            RelationalPersistentProperty property,
+            int index,
+            Class<?> readType,
+            ReadMode mode,
+            TypeInformation<?> typeInformation
+    ) {
+
+        private static ColumnReader build(RelationalPersistentProperty property, boolean typeHandler, int index, ColumnMetadata columnMetadata, MappingReactiveConverter converter) {
+            if (typeHandler) {
+                // 类型处理器需要的是驱动返回的原始值
+                return new ColumnReader(property, index, Object.class, ReadMode.TYPE_HANDLER, property.getTypeInformation());
+            }
+            Class<?> propertyType = ClassUtils.resolvePrimitiveIfNecessary(property.getType());
+            Class<?> columnType = columnMetadata.getJavaType();
+            // 驱动返回的类型与字段类型一致，且没有自定义的读取转换，可以直接读取，不需要做类型转换
+            if (columnType != null && propertyType.equals(ClassUtils.resolvePrimitiveIfNecessary(columnType))
+                && !converter.getConversions().hasCustomReadTarget(columnType, propertyType)) {
+                return new ColumnReader(property, index, propertyType, ReadMode.DIRECT, property.getTypeInformation());
+            }
+            return new ColumnReader(property, index, Object.class, ReadMode.CONVERT, property.getTypeInformation());
+        }
+
+        @Nullable
+        private Object read(Row row, MappingReactiveConverter converter) {
+            Object value = row.get(index, readType);
+            if (value == null) {
+                return null;
+            }
+            return switch (mode) {
+                case DIRECT -> value;
+                case TYPE_HANDLER -> converter.getTypeHandlers().read(value, property);
+                case CONVERT -> converter.readValue(value, typeInformation);
+            };
+        }
+
+    }
+
+    private enum ReadMode {
+        /**
+         * 直接读取
+         */
+        DIRECT,
+        /**
+         * 使用类型处理器
+         */
+        TYPE_HANDLER,
+        /**
+         * 使用转换器做类型转换
+         */
+        CONVERT
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.jxpanda.r2dbc.spring.data.core.convert;
+
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的写入计划
+ * 第一次写入某个实体类型的时候，把每个字段的写入方式（是否是id、是否使用类型处理器、校验策略、null值的类型、自定义写入转换）解析好
+ * 之后每次写入只需要按顺序遍历列写入器填充OutboundRow，不再查找注解，也不再逐个字段解析转换规则
+ * 写入计划按实体类型缓存在 ${@link MappingReactiveConverter} 中
+ *
+ * @author Panda
+ */
+public final class EntityWritePlan<T> {
+
+    private final RelationalPersistentEntity<T> entity;
+
+    /**
+     * 是否注册了整个实体到OutboundRow的自定义转换，注册了的时候不使用列写入器
+     */
+    private final boolean customRowWrite;
+
+    private final ColumnWriter[] columnWriters;
+
+    /**
+     * 集合类型的字段，写入之后还需要按数据库方言转换为数组
+     */
+    private final List<RelationalPersistentProperty> collectionProperties;
+
+    private EntityWritePlan(RelationalPersistentEntity<T> entity, boolean customRowWrite, ColumnWriter[] columnWriters, List<RelationalPersistentProperty> collectionProperties) {
+        this.entity = entity;
+        this.customRowWrite = customRowWrite;
+        this.columnWriters = columnWriters;
+        this.collectionProperties = collectionProperties;
+    }
+
+    static <T> EntityWritePlan<T> compile(RelationalPersistentEntity<T> entity, MappingReactiveConverter converter) {
+        boolean customRowWrite = converter.getConversions().getCustomWriteTarget(entity.getType(), OutboundRow.class).isPresent();
+
+        List<ColumnWriter> columnWriters = new ArrayList<>();
+        List<RelationalPersistentProperty> collectionProperties = new ArrayList<>();
+        for (EntityDescriptor.PropertyDescriptor propertyDescriptor : EntityDescriptor.of(entity).getExistsProperties()) {
+            RelationalPersistentProperty property = propertyDescriptor.property();
+            if (!property.isWritable()) {
+                continue;
+            }
+            Class<?> propertyType = property.getType();
+            boolean simple = converter.getConversions().isSimpleType(propertyType);
+            columnWriters.add(new ColumnWriter(
+                    property,
+                    property.getColumnName(),
+                    property.isIdProperty(),
+                    propertyDescriptor.typeHandler(),
+                    propertyDescriptor.validationStrategy(),
+                    propertyType,
+                    simple,
+                    simple ? converter.getConversions().getCustomWriteTarget(propertyType).orElse(null) : null,
+                    converter.getPotentiallyConvertedSimpleNullType(propertyType)
+            ));
+            if (property.isCollectionLike()) {
+                collectionProperties.add(property);
+            }
+        }
+        return new EntityWritePlan<>(entity, customRowWrite, columnWriters.toArray(ColumnWriter[]::new), List.copyOf(collectionProperties));
+    }
+
+    public RelationalPersistentEntity<T> getEntity() {
+        return entity;
+    }
+
+    public boolean isCustomRowWrite() {
+        return customRowWrite;
+    }
+
+    ColumnWriter[] getColumnWriters() {
+        return columnWriters;
+    }
+
+    /**
+     * 集合类型的字段（通常为空），用于写入之后的数组转换，不需要再遍历全部字段
+     */
+    public List<RelationalPersistentProperty> getCollectionProperties() {
+        return collectionProperties;
+    }
+
+    /**
+     * 列写入器
+     *
+     * @param property           字段
+     * @param column             列名
+     * @param id                 是否是id
+     * @param typeHandler        是否使用类型处理器
+     * @param validationStrategy 校验策略，决定值是否写入
+     * @param propertyType       字段声明的类型
+     * @param simple             字段声明的类型是否是简单类型
+     * @param customWriteTarget  字段声明的类型的自定义写入转换目标，没有的时候为null
+     * @param nullType           值为null的时候绑定的类型
+     */
+    record ColumnWriter(
+            RelationalPersistentProperty property,
+            SqlIdentifier column,
+            boolean id,
+            boolean typeHandler,
+            ValidationStrategy validationStrategy,
+            Class<?> propertyType,
+            boolean simple,
+            @Nullable Class<?> customWriteTarget,
+            Class<?> nullType
+    ) {
+
+        @Nullable
+        Object getValue(PersistentPropertyAccessor<?> accessor, RelationalPersistentEntity<?> entity, MappingReactiveConverter converter) {
+            if (id) {
+                return entity.getIdentifierAccessor(accessor.getBean()).getIdentifier();
+            }
+            Object value = accessor.getProperty(property);
+            return typeHandler ? converter.getTypeHandlers().write(value, property) : value;
+        }
+
+        boolean isEffective(@Nullable Object value) {
+            return validationStrategy.isEffective(value);
+        }
+
+        /**
+         * 值的类型就是字段声明的简单类型，可以直接使用预先解析好的转换规则
+         */
+        boolean isDeclaredSimpleValue(Object value) {
+            return simple && value.getClass() == propertyType;
+        }
+
+    }
+
+}
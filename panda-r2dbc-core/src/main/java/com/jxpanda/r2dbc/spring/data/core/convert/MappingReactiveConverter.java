@@ -1,11 +1,14 @@
 package com.jxpanda.r2dbc.spring.data.core.convert;
 
 import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcCustomTypeHandlers;
-import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.LruCache;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.RowMetadata;
 import lombok.Getter;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.convert.CustomConversions;
-import org.springframework.data.mapping.IdentifierAccessor;
+import org.springframework.data.mapping.InstanceCreatorMetadata;
 import org.springframework.data.mapping.PersistentPropertyAccessor;
 import org.springframework.data.mapping.context.MappingContext;
 import org.springframework.data.mapping.model.ValueExpressionEvaluator;
@@ -25,6 +28,7 @@ import org.springframework.util.CollectionUtils;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 该类继承 {@link MappingR2dbcConverter}
@@ -38,10 +42,32 @@ import java.util.*;
 @Getter
 public class MappingReactiveConverter extends MappingR2dbcConverter {
 
+    private static final int ROW_READER_CACHE_SIZE = 1024;
+
     private final R2dbcCustomTypeHandlers typeHandlers;
 
     private final NamingStrategy namingStrategy;
 
+    /**
+     * 预编译行读取器的缓存，key是（实体类型，列签名）
+     */
+    private final LruCache<RowReaderKey, EntityRowReader<?>> rowReaderCache = new LruCache<>(ROW_READER_CACHE_SIZE);
+
+    /**
+     * 实体是否支持预编译行读取器
+     */
+    private final Map<Class<?>, Boolean> rowReaderSupported = new ConcurrentHashMap<>();
+
+    /**
+     * 预编译写入计划的缓存，key是实体类型
+     */
+    private final Map<Class<?>, EntityWritePlan<?>> writePlanCache = new ConcurrentHashMap<>();
+
+    /**
+     * 实体是否支持浅拷贝
+     */
+    private final Map<Class<?>, Boolean> copySupported = new ConcurrentHashMap<>();
+
     /**
      * Creates a new {@link MappingReactiveConverter} given {@link MappingContext} and {@link CustomConversions} and {@link R2dbcCustomTypeHandlers}.
      *
@@ -79,6 +105,78 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
         return new RelationalPropertyValueProviderDecorator((DocumentValueProvider) super.newValueProvider(documentAccessor, evaluator, context), documentAccessor, getTypeHandlers(), getNamingStrategy());
     }
 
+    /**
+     * 获取预编译的行读取器
+     * 读取计划按（实体类型，RowMetadata的列签名）缓存，同样结构的结果集只会编译一次
+     *
+     * @param type        实体类型
+     * @param rowMetadata 结果集的元数据
+     * @return 行读取器，实体不支持预编译读取的时候返回null
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> EntityRowReader<T> getRowReader(Class<T> type, RowMetadata rowMetadata) {
+        RelationalPersistentEntity<T> entity = (RelationalPersistentEntity<T>) getMappingContext().getPersistentEntity(type);
+        if (entity == null || !rowReaderSupported.computeIfAbsent(type, key -> EntityRowReader.isSupported(entity))) {
+            return null;
+        }
+        StringJoiner signature = new StringJoiner(",");
+        for (ColumnMetadata columnMetadata : rowMetadata.getColumnMetadatas()) {
+            signature.add(columnMetadata.getName());
+        }
+        return (EntityRowReader<T>) rowReaderCache.computeIfAbsent(new RowReaderKey(type, signature.toString()),
+                key -> EntityRowReader.compile(entity, rowMetadata, this));
+    }
+
+    /**
+     * 获取预编译的写入计划，每个实体类型只会编译一次
+     *
+     * @param type 实体类型
+     * @return 写入计划
+     */
+    @SuppressWarnings("unchecked")
+    public <T> EntityWritePlan<T> getWritePlan(Class<T> type) {
+        return (EntityWritePlan<T>) writePlanCache.computeIfAbsent(type,
+                key -> EntityWritePlan.compile((RelationalPersistentEntity<T>) getMappingContext().getRequiredPersistentEntity(type), this));
+    }
+
+    /**
+     * 浅拷贝实体，用于缓存、合并查询等需要把同一份数据交给多个调用方的场景
+     * 只复制无参构造（或者构造器没有参数）的实体，构造器带参数的实体（record等）视为不可变，直接返回原对象
+     *
+     * @param source 实体
+     * @return 实体的拷贝
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T shallowCopy(T source) {
+        RelationalPersistentEntity<T> entity = (RelationalPersistentEntity<T>) getMappingContext().getPersistentEntity(source.getClass());
+        if (entity == null || !copySupported.computeIfAbsent(entity.getType(), key -> isCopySupported(entity))) {
+            return source;
+        }
+        T target = createInstance(entity, parameter -> null);
+        PersistentPropertyAccessor<T> sourceAccessor = entity.getPropertyAccessor(source);
+        PersistentPropertyAccessor<T> targetAccessor = entity.getPropertyAccessor(target);
+        for (RelationalPersistentProperty property : entity) {
+            if (property.isWritable()) {
+                targetAccessor.setProperty(property, sourceAccessor.getProperty(property));
+            }
+        }
+        return targetAccessor.getBean();
+    }
+
+    /**
+     * 实体能否被复制 ${@link #shallowCopy(Object)}，不能复制的时候shallowCopy返回原对象
+     */
+    public boolean isCopySupported(Class<?> type) {
+        RelationalPersistentEntity<?> entity = getMappingContext().getPersistentEntity(type);
+        return entity != null && copySupported.computeIfAbsent(entity.getType(), key -> isCopySupported(entity));
+    }
+
+    private static boolean isCopySupported(RelationalPersistentEntity<?> entity) {
+        InstanceCreatorMetadata<RelationalPersistentProperty> creatorMetadata = entity.getInstanceCreatorMetadata();
+        return creatorMetadata == null || !creatorMetadata.hasParameters();
+    }
+
     @Override
     protected Object getPotentiallyConvertedSimpleRead(Object value, TypeInformation<?> type) {
         /*
@@ -196,10 +294,9 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
     @Override
     public void write(Object source, OutboundRow outboundRow) {
 
-        Class<?> userClass = ClassUtils.getUserClass(source);
+        EntityWritePlan<?> writePlan = getWritePlan(ClassUtils.getUserClass(source));
 
-        Optional<Class<?>> customTarget = getConversions().getCustomWriteTarget(userClass, OutboundRow.class);
-        if (customTarget.isPresent()) {
+        if (writePlan.isCustomRowWrite()) {
 
             OutboundRow result = getConversionService().convert(source, OutboundRow.class);
             if (result != null) {
@@ -208,60 +305,57 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
             return;
         }
 
-        writeInternal(source, outboundRow, userClass);
+        writeProperties(outboundRow, writePlan, source);
     }
 
-    private void writeInternal(Object source, OutboundRow outboundRow, Class<?> userClass) {
-
-        RelationalPersistentEntity<?> entity = R2dbcMappingKit.getRequiredEntity(userClass);
-        PersistentPropertyAccessor<?> propertyAccessor = entity.getPropertyAccessor(source);
-
-        writeProperties(outboundRow, entity, propertyAccessor, entity.isNew(source));
-    }
+    private void writeProperties(OutboundRow outboundRow, EntityWritePlan<?> writePlan, Object source) {
 
-    private void writeProperties(OutboundRow outboundRow, RelationalPersistentEntity<?> entity,
-                                 PersistentPropertyAccessor<?> accessor, boolean isNew) {
+        RelationalPersistentEntity<?> entity = writePlan.getEntity();
+        PersistentPropertyAccessor<?> accessor = entity.getPropertyAccessor(source);
 
-        for (RelationalPersistentProperty property : entity) {
+        // 字段是否存在、是否使用类型处理器、校验策略、null值的类型都在写入计划中解析好了，不再逐个字段查找注解
+        for (EntityWritePlan.ColumnWriter columnWriter : writePlan.getColumnWriters()) {
 
-            if (!property.isWritable() || !R2dbcMappingKit.isPropertyExists(property)) {
-                continue;
-            }
-
-            Object value;
-
-            if (property.isIdProperty()) {
-                IdentifierAccessor identifierAccessor = entity.getIdentifierAccessor(accessor.getBean());
-                value = identifierAccessor.getIdentifier();
-            } else if (typeHandlers.hasTypeHandler(property)) {
-                /*
-                 *  FIXME: 这一个分支是新增逻辑，由于增加了类型处理器，这里需要介入，优先用类型处理器的处理方式
-                 * */
-                value = typeHandlers.write(accessor.getProperty(property), property);
-            } else {
-                value = accessor.getProperty(property);
-            }
+            // 使用类型处理器的字段，取值的时候已经经过了类型处理器的处理
+            Object value = columnWriter.getValue(accessor, entity, this);
 
-            if (!R2dbcMappingKit.isPropertyEffective(entity, property, value)) {
+            if (!columnWriter.isEffective(value)) {
                 // 基于配置进行一次过滤
                 continue;
             } else if (value == null) {
                 // 这个是原始逻辑，如果值为null，写入一个null，然后交由数据库驱动层来处理
-                writeNullInternal(outboundRow, property);
+                outboundRow.put(columnWriter.column(), Parameter.empty(columnWriter.nullType()));
                 continue;
             }
 
-            if (isSimpleType(value.getClass())) {
-                writeSimpleInternal(outboundRow, value, isNew, property);
+            RelationalPersistentProperty property = columnWriter.property();
+            if (columnWriter.isDeclaredSimpleValue(value)) {
+                writeDeclaredSimpleInternal(outboundRow, value, columnWriter);
+            } else if (isSimpleType(value.getClass())) {
+                writeSimpleInternal(outboundRow, value, property);
             } else {
-                writePropertyInternal(outboundRow, value, isNew, property);
+                writePropertyInternal(outboundRow, value, property);
             }
         }
     }
 
-    @SuppressWarnings("unused")
-    private void writeSimpleInternal(OutboundRow outboundRow, Object value, boolean isNew,
-                                     RelationalPersistentProperty property) {
+    /**
+     * 值的类型就是字段声明的类型，直接使用写入计划中解析好的转换目标
+     * 与 ${@link #getPotentiallyConvertedSimpleWrite(Object)} 的结果一致
+     */
+    private void writeDeclaredSimpleInternal(OutboundRow outboundRow, Object value, EntityWritePlan.ColumnWriter columnWriter) {
+
+        Object result;
+        if (columnWriter.customWriteTarget() != null) {
+            result = getConversionService().convert(value, columnWriter.customWriteTarget());
+        } else {
+            result = value instanceof Enum<?> enumValue ? enumValue.name() : value;
+        }
+
+        outboundRow.put(columnWriter.column(), Parameter.fromOrEmpty(result, columnWriter.nullType()));
+    }
+
+    private void writeSimpleInternal(OutboundRow outboundRow, Object value, RelationalPersistentProperty property) {
 
         Object result = getPotentiallyConvertedSimpleWrite(value);
 
@@ -269,8 +363,7 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
                 Parameter.fromOrEmpty(result, getPotentiallyConvertedSimpleNullType(property.getType())));
     }
 
-    private void writePropertyInternal(OutboundRow outboundRow, Object value, boolean isNew,
-                                       RelationalPersistentProperty property) {
+    private void writePropertyInternal(OutboundRow outboundRow, Object value, RelationalPersistentProperty property) {
 
         TypeInformation<?> valueType = TypeInformation.of(value.getClass());
 
@@ -279,7 +372,7 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
             if (valueType.getActualType() != null && valueType.getRequiredActualType().isCollectionLike()) {
 
                 // pass-thru nested collections
-                writeSimpleInternal(outboundRow, value, isNew, property);
+                writeSimpleInternal(outboundRow, value, property);
                 return;
             }
 
@@ -292,11 +385,7 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
     }
 
 
-    private void writeNullInternal(OutboundRow sink, RelationalPersistentProperty property) {
-        sink.put(property.getColumnName(), Parameter.empty(getPotentiallyConvertedSimpleNullType(property.getType())));
-    }
-
-    private Class<?> getPotentiallyConvertedSimpleNullType(Class<?> type) {
+    Class<?> getPotentiallyConvertedSimpleNullType(Class<?> type) {
 
         Optional<Class<?>> customTarget = getConversions().getCustomWriteTarget(type);
 
@@ -373,16 +462,52 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
     }
 
     /**
-     * 为关系型数据库属性值提供装饰器，能够处理特定类型的值转换。
+     * 行读取器缓存的key
      *
-     * @param originalValueProvider 原始属性值提供者，负责基础的属性值获取。
-     * @param typeHandlers          自定义类型处理器，用于处理特定类型的值的读取。
+     * @param type      实体类型
+     * @param signature 结果集的列签名
      */
-    private record RelationalPropertyValueProviderDecorator(DocumentValueProvider originalValueProvider,
-                                                            RowDocumentAccessor documentAccessor,
-                                                            R2dbcCustomTypeHandlers typeHandlers,
-                                                            NamingStrategy namingStrategy
-    ) implements RelationalPropertyValueProvider {
+    private record RowReaderKey(Class<?> type, String signature) {
+    }
+
+    /**
+     * 为关系型数据库属性值提供装饰器，能够处理特定类型的值转换。
+     * 每读取一行数据创建一次，字段所属实体的描述在这一次读取中只解析一次
+     */
+    private static final class RelationalPropertyValueProviderDecorator implements RelationalPropertyValueProvider {
+
+        /**
+         * 原始属性值提供者，负责基础的属性值获取。
+         */
+        private final DocumentValueProvider originalValueProvider;
+
+        private final RowDocumentAccessor documentAccessor;
+
+        /**
+         * 自定义类型处理器，用于处理特定类型的值的读取。
+         */
+        private final R2dbcCustomTypeHandlers typeHandlers;
+
+        private final NamingStrategy namingStrategy;
+
+        /**
+         * 当前读取的实体，以及它的描述（第一次读取字段的时候从字段所属的实体解析）
+         */
+        @Nullable
+        private RelationalPersistentEntity<?> owner;
+
+        @Nullable
+        private EntityDescriptor<?> entityDescriptor;
+
+        private RelationalPropertyValueProviderDecorator(DocumentValueProvider originalValueProvider,
+                                                         RowDocumentAccessor documentAccessor,
+                                                         R2dbcCustomTypeHandlers typeHandlers,
+                                                         NamingStrategy namingStrategy) {
+            this.originalValueProvider = originalValueProvider;
+            this.documentAccessor = documentAccessor;
+            this.typeHandlers = typeHandlers;
+            this.namingStrategy = namingStrategy;
+        }
 
         /**
          * 检查给定的属性是否有值。
@@ -429,7 +554,7 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
         public <T> T getPropertyValue(RelationalPersistentProperty property) {
 
             // 检查是否有针对当前属性的类型处理器
-            if (typeHandlers.hasTypeHandler(property)) {
+            if (getPropertyDescriptor(property).typeHandler()) {
                 Object value;
                 // FIXME:如果有类型处理器，直接读取原值，交给类型处理器处理
                 //  如果使用：originalValueProvider.getPropertyValue(property); 函数取值的话，这个函数内部会做一次值类型转换
@@ -455,18 +580,23 @@ public class MappingReactiveConverter extends MappingR2dbcConverter {
          * 所以如果字段名和别名不一样，则说明有别名的存在（如果别名的设置和字段名一样，也等于没设置）
          */
         private boolean hasAlias(RelationalPersistentProperty property) {
-            String name = getColumnName(property);
-            return !name.equals(property.getColumnName().getReference());
+            // 别名在实体描述中已经解析好了，不需要每一行都通过命名策略拼接缓存key去查找
+            return getPropertyDescriptor(property).hasAlias();
         }
 
         @Nullable
         private Object getValueWithAlias(RelationalPersistentProperty property) {
             RowDocument document = documentAccessor.getDocument();
-            return document.get(getColumnName(property));
+            return document.get(getPropertyDescriptor(property).alias());
         }
 
-        private String getColumnName(RelationalPersistentProperty property) {
-            return namingStrategy.getColumnName(property);
+        private EntityDescriptor.PropertyDescriptor getPropertyDescriptor(RelationalPersistentProperty property) {
+            RelationalPersistentEntity<?> propertyOwner = (RelationalPersistentEntity<?>) property.getOwner();
+            if (this.entityDescriptor == null || this.owner != propertyOwner) {
+                this.owner = propertyOwner;
+                this.entityDescriptor = EntityDescriptor.of(propertyOwner);
+            }
+            return this.entityDescriptor.getRequiredProperty(property);
         }
 
     }
@@ -1,5 +1,7 @@
 package com.jxpanda.r2dbc.spring.data.core.enhance.annotation;
 
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
 import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
 import org.springframework.core.annotation.AliasFor;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
@@ -72,5 +74,78 @@ public @interface TableEntity {
      */
     ValidationStrategy validationPolicy() default ValidationStrategy.DEFAULT;
 
+    /**
+     * 分页查询策略
+     * 优先级列表：调用时的选项（R2dbcOperationOption） > 类注解（@TableEntity） > 默认（LAZY）
+     */
+    PageStrategy pageStrategy() default PageStrategy.DEFAULT;
+
+    /**
+     * 分页查询时总数的统计策略
+     * 优先级列表：调用时的选项（R2dbcOperationOption） > 类注解（@TableEntity） > 默认（EXACT）
+     */
+    TotalPolicy totalPolicy() default TotalPolicy.DEFAULT;
+
+    /**
+     * 是否开启脏检查
+     * 开启之后，查询出来的实体会记录列值的快照，基于id更新的时候只写入与快照相比变化了的列，没有变化的时候不执行更新
+     * 没有快照的实体（例如自行创建的对象）按原来的方式更新
+     */
+    boolean dirtyTracking() default false;
+
+    /**
+     * 是否开启实体缓存（二级缓存）
+     * 开启之后，基于id的查询（selectById、selectByIds）优先从缓存中获取，只查询缓存中没有的id
+     * 通过框架执行的写操作会自动使缓存失效，适合读多写少的实体（字典、配置、商品信息等）
+     * 绕过框架写入的数据只能等缓存过期，带有关联字段（@TableReference）的实体不会被缓存
+     */
+    boolean cache() default false;
+
+    /**
+     * 实体缓存的最大数量，超出之后淘汰最久未被访问的数据
+     */
+    int cacheMaximumSize() default 1024;
+
+    /**
+     * 实体缓存的存活时间（秒）
+     */
+    long cacheTimeToLive() default 300;
+
+    /**
+     * 是否合并相同的并发查询（single-flight）
+     * 开启之后，SQL和参数完全相同的并发查询只会执行一次，结果分发给所有的调用方（每个调用方拿到各自的拷贝）
+     * 适合热点数据在瞬间被大量重复查询的场景，事务中的查询不会被合并
+     */
+    boolean singleFlight() default false;
+
+    /**
+     * 是否批量加载基于id的单条查询（类似DataLoader）
+     * 开启之后，并发的selectById会在一个很短的时间窗口内被收集起来，合并为一条 WHERE id IN (...) 查询，结果再分发给各自的调用方
+     * 适合大量互不相关的请求同时按id查询同一个实体的场景（例如GraphQL的字段解析），事务中的查询不会被合并
+     */
+    boolean batchLoad() default false;
+
+    /**
+     * 批量加载收集查询的时间窗口（毫秒）
+     */
+    long batchLoadWindow() default 2;
+
+    /**
+     * 批量加载一批最多合并多少个id，收集满了立即执行，不再等待时间窗口
+     */
+    int batchLoadSize() default 256;
+
+    /**
+     * 是否常驻内存
+     * 适合数据量很小、读取很频繁的字典表（地区、币种、字典编码等），开启之后整张表会被加载到内存中的不可变快照里
+     * 基于id的查询、只有等值（EQ/IN）条件的查询以及关联查询（@TableReference）都直接从快照中获取
+     * 通过框架写入的时候快照失效，下一次读取时重新加载，也可以定时刷新，带有关联字段的实体不能常驻内存
+     */
+    boolean resident() default false;
+
+    /**
+     * 常驻内存的快照定时刷新的间隔（秒），0表示不定时刷新
+     */
+    long residentRefreshInterval() default 0;
 
 }
@@ -39,6 +39,13 @@ public @interface TableJoin {
      */
     JoinType joinType() default JoinType.JOIN;
 
+    /**
+     * 右表与左表是否是"对一"的关系（左表的每一行最多只能关联到右表的一行）
+     * 此时LEFT JOIN不会改变左表的行数，count查询的条件中没有引用右表的时候，会省略掉这个JOIN
+     * "对多"的关系省略JOIN会导致count的结果与数据查询的行数不一致，所以默认是false
+     */
+    boolean toOne() default false;
+
     /**
      * 支持的join类型枚举
      * 现在暂时只支持Join和Left outer join两种
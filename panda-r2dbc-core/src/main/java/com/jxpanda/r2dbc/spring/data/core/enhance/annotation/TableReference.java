@@ -17,6 +17,13 @@ import java.util.function.BiFunction;
 import static java.lang.annotation.ElementType.FIELD;
 
 /**
+ * 关联字段，查询主表数据之后按主表字段（keyColumn）的值查询关联表（referenceColumn）并写入这个字段
+ * 写入的值：
+ * 主表字段的值为空（null、空字符串、空集合）的时候不查询，字段保持null
+ * 集合/数组类型的字段：有关联值但是关联表中没有匹配的数据的时候写入空集合（空数组），否则写入全部匹配的数据
+ * 其他类型的字段：没有匹配的数据的时候保持null，否则写入第一条匹配的数据
+ * 批量加载与逐条查询的结果一致
+ *
  * @author Panda
  */
 @Documented
@@ -0,0 +1,405 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.buffer;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * 写入缓冲（write-behind）
+ * 高频的小写入先按实体类型缓存起来，达到批次大小或者定时器触发的时候，合并为批量插入/批量更新写入数据库
+ * 1、同一个id的多次更新会合并为一次，按字段合并，后写入的有效值覆盖先写入的
+ * 2、每个实体类型缓存的写入数量有上限，缓冲区满的时候，新的写入会等待（调用方的Mono不会完成），直到有空间
+ *    等待的写入数量也有上限（${@link Config#getMaxWaiting()}），超过之后新的写入直接返回 TransientDataAccessResourceException，内存占用是有界的
+ * 3、调用方拿到的Mono在数据所在的批次提交之后才会完成，批次失败的时候，批次中所有的写入都会收到这个异常（批次在同一个事务中，已经整体回滚）
+ * 4、关闭的时候（close()，Spring容器销毁bean的时候会调用）会把缓存的数据全部写入
+ * 这是一个可选的组件，需要手动创建，只缓存通过它写入的数据；不支持有版本号（@Version）的实体的更新，合并更新无法保留乐观锁的语义
+ *
+ * @author Panda
+ */
+@Slf4j
+public class R2dbcWriteBehindBuffer implements AutoCloseable {
+
+    private final ReactiveEntityTemplate template;
+
+    @Getter
+    private final Config config;
+
+    private final Map<Class<?>, TypeBuffer<?>> buffers = new ConcurrentHashMap<>();
+
+    private final Disposable timer;
+
+    private volatile boolean closed;
+
+    public R2dbcWriteBehindBuffer(ReactiveEntityTemplate template) {
+        this(template, new Config());
+    }
+
+    public R2dbcWriteBehindBuffer(ReactiveEntityTemplate template, Config config) {
+        Assert.notNull(template, "Template must not be null");
+        Assert.isTrue(config.getBatchSize() > 0, "Batch size must be greater than zero");
+        Assert.isTrue(config.getMaxPending() >= config.getBatchSize(), "Max pending must not be less than batch size");
+        Assert.isTrue(config.getMaxWaiting() >= 0, "Max waiting must not be negative");
+        Assert.isTrue(!config.getFlushInterval().isNegative() && !config.getFlushInterval().isZero(), "Flush interval must be positive");
+        this.template = template;
+        this.config = config;
+        this.timer = Flux.interval(config.getFlushInterval(), config.getFlushInterval())
+                .subscribe(tick -> this.buffers.values().forEach(TypeBuffer::requestFlush));
+    }
+
+    /**
+     * 缓存一次插入
+     *
+     * @return 数据写入数据库之后，返回插入后的实体
+     */
+    public <T> Mono<T> insert(T entity) {
+        return enqueue(entity, false);
+    }
+
+    /**
+     * 缓存一次基于id的更新
+     *
+     * @return 数据写入数据库之后，返回传入的实体
+     */
+    public <T> Mono<T> updateById(T entity) {
+        return enqueue(entity, true);
+    }
+
+    /**
+     * 立即写入所有缓存的数据
+     *
+     * @return 调用时已经缓存（包括正在等待空间）的数据全部写入之后完成
+     */
+    public Mono<Void> flush() {
+        return Flux.fromIterable(this.buffers.values())
+                .flatMap(TypeBuffer::flushAll)
+                .then();
+    }
+
+    /**
+     * 实体类型当前缓存的写入数量（包括等待空间的写入）
+     */
+    public int pendingCount(Class<?> domainType) {
+        TypeBuffer<?> buffer = this.buffers.get(domainType);
+        return buffer == null ? 0 : buffer.pendingCount();
+    }
+
+    /**
+     * 停止定时器，写入所有缓存的数据，最多等待 ${@link Config#getShutdownTimeout()}
+     * 关闭之后的写入会直接返回异常
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.timer.dispose();
+        try {
+            flush().block(this.config.getShutdownTimeout());
+        } catch (RuntimeException e) {
+            log.error("[WRITE BEHIND] Failed to flush pending writes on close", e);
+        }
+    }
+
+    /**
+     * 浅拷贝实体，合并更新的时候使用，避免修改调用方的实体
+     */
+    private <T> T copy(T entity) {
+        return template.getConverter() instanceof MappingReactiveConverter mappingReactiveConverter ? mappingReactiveConverter.shallowCopy(entity) : entity;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> enqueue(T entity, boolean update) {
+        Assert.notNull(entity, "Entity must not be null");
+        return Mono.defer(() -> {
+            if (this.closed) {
+                return Mono.error(new IllegalStateException("Write-behind buffer is closed"));
+            }
+            TypeBuffer<T> buffer = (TypeBuffer<T>) this.buffers.computeIfAbsent(entity.getClass(), TypeBuffer::new);
+            if (update && buffer.persistentEntity.hasVersionProperty()) {
+                return Mono.error(new UnsupportedOperationException("Write-behind update does not support versioned entity " + entity.getClass().getName()));
+            }
+            return Mono.create(sink -> buffer.offer(new PendingWrite<>(entity, update, sink)));
+        });
+    }
+
+    /**
+     * 一个实体类型的缓冲区
+     * 同一时间只有一个批次在写入，保证同一个id的写入顺序
+     */
+    private final class TypeBuffer<T> {
+
+        private final Class<T> domainType;
+
+        private final RelationalPersistentEntity<T> persistentEntity;
+
+        private final List<PendingWrite<T>> inserts = new ArrayList<>();
+
+        /**
+         * 待更新的数据，key是id，同一个id的更新合并为一条
+         */
+        private final Map<Object, PendingUpdate<T>> updates = new LinkedHashMap<>();
+
+        /**
+         * 缓冲区满的时候，等待空间的写入
+         */
+        private final Deque<PendingWrite<T>> waiting = new ArrayDeque<>();
+
+        /**
+         * 等待缓冲区清空的flush()调用
+         */
+        private final List<MonoSink<Void>> flushWaiters = new ArrayList<>();
+
+        /**
+         * 缓冲区中的写入数量（合并之前）
+         */
+        private int pending;
+
+        private boolean flushing;
+
+        private boolean flushRequested;
+
+        @SuppressWarnings("unchecked")
+        private TypeBuffer(Class<?> domainType) {
+            this.domainType = (Class<T>) domainType;
+            this.persistentEntity = R2dbcMappingKit.getRequiredEntity(this.domainType);
+        }
+
+        private void offer(PendingWrite<T> write) {
+            boolean flush;
+            synchronized (this) {
+                if (this.pending >= config.getMaxPending()) {
+                    if (this.waiting.size() >= config.getMaxWaiting()) {
+                        // 等待的写入也满了，直接拒绝，调用方可以稍后重试
+                        write.sink().error(new TransientDataAccessResourceException("Write-behind buffer of " + this.domainType.getName() + " is full"));
+                        return;
+                    }
+                    this.waiting.addLast(write);
+                    flush = true;
+                } else {
+                    add(write);
+                    flush = this.pending >= config.getBatchSize();
+                }
+            }
+            if (flush) {
+                requestFlush();
+            }
+        }
+
+        private void add(PendingWrite<T> write) {
+            if (write.update()) {
+                Object id = this.persistentEntity.getIdentifierAccessor(write.entity()).getRequiredIdentifier();
+                PendingUpdate<T> pendingUpdate = this.updates.get(id);
+                if (pendingUpdate == null) {
+                    this.updates.put(id, new PendingUpdate<>(write));
+                } else {
+                    pendingUpdate.merge(write, this.persistentEntity, R2dbcWriteBehindBuffer.this::copy);
+                }
+            } else {
+                this.inserts.add(write);
+            }
+            this.pending++;
+        }
+
+        private synchronized int pendingCount() {
+            return this.pending + this.waiting.size();
+        }
+
+        private Mono<Void> flushAll() {
+            return Mono.<Void>create(sink -> {
+                synchronized (this) {
+                    if (!this.flushing && this.pending == 0 && this.waiting.isEmpty()) {
+                        sink.success();
+                        return;
+                    }
+                    this.flushWaiters.add(sink);
+                }
+                requestFlush();
+            });
+        }
+
+        private void requestFlush() {
+            List<PendingWrite<T>> insertBatch;
+            List<PendingUpdate<T>> updateBatch;
+            synchronized (this) {
+                if (this.flushing) {
+                    this.flushRequested = true;
+                    return;
+                }
+                if (this.pending == 0) {
+                    return;
+                }
+                this.flushing = true;
+                insertBatch = new ArrayList<>(this.inserts);
+                updateBatch = new ArrayList<>(this.updates.values());
+                this.inserts.clear();
+                this.updates.clear();
+                this.pending = 0;
+            }
+            // 先插入再更新，缓冲期间插入又更新的数据也能正确写入
+            write(insertBatch, updateBatch)
+                    .doFinally(signalType -> afterFlush())
+                    .subscribe(null, error -> log.warn("[WRITE BEHIND] Failed to flush {} writes of {}", insertBatch.size() + updateBatch.size(), this.domainType.getName(), error));
+        }
+
+        private Mono<Void> write(List<PendingWrite<T>> insertBatch, List<PendingUpdate<T>> updateBatch) {
+            Mono<Void> insert = insertBatch.isEmpty() ? Mono.empty()
+                    : template.insertBatch(insertBatch.stream().map(PendingWrite::entity).toList(), this.domainType)
+                    .collectList()
+                    .doOnNext(results -> {
+                        for (int i = 0; i < insertBatch.size(); i++) {
+                            insertBatch.get(i).sink().success(i < results.size() ? results.get(i) : insertBatch.get(i).entity());
+                        }
+                    })
+                    .doOnError(error -> insertBatch.forEach(write -> write.sink().error(error)))
+                    .then();
+            Mono<Void> update = updateBatch.isEmpty() ? Mono.empty()
+                    : template.updateBatch(updateBatch.stream().map(PendingUpdate::merged).toList(), this.domainType)
+                    .then()
+                    .doOnSuccess(ignored -> updateBatch.forEach(PendingUpdate::success))
+                    .doOnError(error -> updateBatch.forEach(pendingUpdate -> pendingUpdate.error(error)));
+            // 插入失败的时候，更新仍然需要执行（或者失败），不能让调用方一直等待
+            return insert.onErrorResume(error -> Mono.empty()).then(update);
+        }
+
+        private void afterFlush() {
+            List<MonoSink<Void>> completed = List.of();
+            boolean again;
+            synchronized (this) {
+                this.flushing = false;
+                while (!this.waiting.isEmpty() && this.pending < config.getMaxPending()) {
+                    add(this.waiting.pollFirst());
+                }
+                again = this.flushRequested || this.pending >= config.getBatchSize()
+                        || (!this.flushWaiters.isEmpty() && this.pending > 0);
+                this.flushRequested = false;
+                if (this.pending == 0 && this.waiting.isEmpty() && !this.flushWaiters.isEmpty()) {
+                    completed = new ArrayList<>(this.flushWaiters);
+                    this.flushWaiters.clear();
+                }
+            }
+            completed.forEach(MonoSink::success);
+            if (again) {
+                requestFlush();
+            }
+        }
+
+    }
+
+    /**
+     * 一次缓存的写入
+     *
+     * @param entity 实体
+     * @param update 是否是更新
+     * @param sink   调用方的Mono
+     */
+    private record PendingWrite<T>(T entity, boolean update, MonoSink<T> sink) {
+    }
+
+    /**
+     * 同一个id合并之后的更新
+     */
+    private static final class PendingUpdate<T> {
+
+        private final List<PendingWrite<T>> writes = new ArrayList<>();
+
+        private T merged;
+
+        private PendingUpdate(PendingWrite<T> write) {
+            this.writes.add(write);
+            this.merged = write.entity();
+        }
+
+        /**
+         * 按字段合并，新的实体中无效（会被更新过滤掉）的字段，沿用之前的有效值
+         * 合并的结果写在最新的实体的拷贝上，不会修改调用方传入的实体
+         */
+        private void merge(PendingWrite<T> write, RelationalPersistentEntity<T> persistentEntity, UnaryOperator<T> copier) {
+            T previous = this.merged;
+            PersistentPropertyAccessor<T> previousAccessor = persistentEntity.getPropertyAccessor(previous);
+            PersistentPropertyAccessor<T> accessor = persistentEntity.getPropertyAccessor(copier.apply(write.entity()));
+            for (RelationalPersistentProperty property : persistentEntity) {
+                if (property.isIdProperty()
+                    || R2dbcMappingKit.isPropertyEffective(accessor.getBean(), persistentEntity, property)
+                    || !R2dbcMappingKit.isPropertyEffective(previous, persistentEntity, property)) {
+                    continue;
+                }
+                accessor.setProperty(property, previousAccessor.getProperty(property));
+            }
+            this.merged = accessor.getBean();
+            this.writes.add(write);
+        }
+
+        private T merged() {
+            return this.merged;
+        }
+
+        private void success() {
+            this.writes.forEach(write -> write.sink().success(write.entity()));
+        }
+
+        private void error(Throwable error) {
+            this.writes.forEach(write -> write.sink().error(error));
+        }
+
+    }
+
+    /**
+     * 写入缓冲的配置
+     */
+    @Getter
+    @Setter
+    @Accessors(chain = true)
+    public static class Config {
+
+        /**
+         * 每个实体类型缓存的写入达到这个数量的时候立即写入
+         */
+        private int batchSize = 500;
+
+        /**
+         * 每个实体类型最多缓存多少个写入，超过之后新的写入需要等待
+         */
+        private int maxPending = 10_000;
+
+        /**
+         * 每个实体类型最多有多少个写入在等待空间，超过之后新的写入直接失败
+         */
+        private int maxWaiting = 1_000;
+
+        /**
+         * 定时写入的间隔
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * 关闭时等待数据写入的最长时间
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+    }
+
+}
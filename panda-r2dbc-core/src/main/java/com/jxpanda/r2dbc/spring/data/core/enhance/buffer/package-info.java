@@ -0,0 +1,4 @@
+/**
+ * 写入缓冲
+ */
+package com.jxpanda.r2dbc.spring.data.core.enhance.buffer;
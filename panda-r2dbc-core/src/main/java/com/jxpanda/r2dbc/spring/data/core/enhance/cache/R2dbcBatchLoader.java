@@ -0,0 +1,367 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 基于id的单条查询的批量加载（类似DataLoader）
+ * 并发的按id查询先放入实体类型的批次中，时间窗口结束或者批次收集满了之后，合并为一次按id列表的查询
+ * 查询结果按id分发给各自的调用方，查询不到的id返回空，查询出错的时候整批的调用方都收到这个错误
+ * 同一个id被多个调用方查询的时候，每个调用方拿到各自的拷贝
+ * 只合并实体开启了 @TableEntity(batchLoad = true) 的查询，由 R2dbcSelectOperation.byId 在事务之外、会话之外调用
+ * 只有选项（影响查询结果的部分）、路由的key（${@link R2dbcRoutingKeyResolver}）和Context都相同的调用方才会放在同一个批次中
+ * 所以批次的查询在批次中任意一个调用方的Context中执行都是等价的，Context中不影响查询的key（链路追踪等）可以通过 ${@link #ignoreContextKey(Object)} 忽略
+ * 批次使用第一个调用方的选项的拷贝，调用方之后修改选项不会影响批次；取消了的调用方会从批次中移除
+ * 每个批次收集器只收集一个批次，批次取出之后收集器就从map中移除，下一个调用方创建新的收集器
+ *
+ * @author Panda
+ */
+public class R2dbcBatchLoader {
+
+    private final R2dbcConverter converter;
+
+    /**
+     * 解析调用方的路由的key
+     */
+    private final Supplier<R2dbcRoutingKeyResolver> routingKeyResolver;
+
+    /**
+     * 按id列表查询（R2dbcSelectOperation.byIds）
+     */
+    private final IdsLoader idsLoader;
+
+    private final Map<BatchKey, Batcher> batchers = new ConcurrentHashMap<>();
+
+    /**
+     * 比较调用方的Context时忽略的key
+     */
+    private final Set<Object> ignoredContextKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 按实体类型累计的统计数据，收集器用完就移除，统计数据不能放在收集器上
+     */
+    private final Map<Class<?>, Counter> counters = new ConcurrentHashMap<>();
+
+    public R2dbcBatchLoader(R2dbcConverter converter, Supplier<R2dbcRoutingKeyResolver> routingKeyResolver, IdsLoader idsLoader) {
+        this.converter = converter;
+        this.routingKeyResolver = routingKeyResolver;
+        this.idsLoader = idsLoader;
+    }
+
+    /**
+     * 按id加载实体，放入当前的批次中等待合并查询
+     *
+     * @param option 调用方的选项，批次的查询使用这个选项
+     */
+    public <T> Mono<T> load(Class<T> domainType, Object id, R2dbcOperationOption option) {
+        Assert.notNull(id, "Id must not be null");
+        return Mono.<Object>create(sink -> {
+                    ContextView context = sink.contextView();
+                    BatchKey batchKey = new BatchKey(domainType, option.selectSignature(), routingKeyResolver.get().resolve(context), contextSignature(context));
+                    Batcher batcher;
+                    do {
+                        // 取到的收集器可能刚好取出了批次（已经退役），重新获取
+                        batcher = batchers.computeIfAbsent(batchKey, key -> new Batcher(key, EntityDescriptor.of(domainType), option.copy()));
+                    } while (!batcher.add(id, sink));
+                    Batcher joined = batcher;
+                    // 取消的调用方从批次中移除，批次中没有其他调用方的时候这个id不再查询
+                    sink.onCancel(() -> joined.remove(id, sink));
+                })
+                .map(domainType::cast);
+    }
+
+    /**
+     * 比较调用方的Context时忽略这个key，这个key的值不同的调用方也可以放在同一个批次中
+     * 用于Context中与查询无关、每个请求都不一样的数据（链路追踪、请求对象等），否则这些调用方无法合并
+     */
+    public void ignoreContextKey(Object key) {
+        ignoredContextKeys.add(key);
+    }
+
+    /**
+     * 调用方Context的签名（忽略的key除外的全部数据）
+     */
+    private Map<Object, Object> contextSignature(ContextView context) {
+        Map<Object, Object> signature = new HashMap<>();
+        context.forEach((key, value) -> {
+            if (!ignoredContextKeys.contains(key)) {
+                signature.put(key, value);
+            }
+        });
+        return signature.isEmpty() ? Map.of() : Map.copyOf(signature);
+    }
+
+    /**
+     * 返回实体类型的批量加载统计数据，实体类型没有开启批量加载的时候返回null
+     */
+    @Nullable
+    public Statistics getStatistics(Class<?> domainType) {
+        if (EntityDescriptor.of(domainType).getBatchLoad() == null) {
+            return null;
+        }
+        Counter counter = counters.get(domainType);
+        return counter == null ? new Statistics(0, 0) : new Statistics(counter.batchCount.sum(), counter.idCount.sum());
+    }
+
+    /**
+     * 按id列表查询
+     */
+    @FunctionalInterface
+    public interface IdsLoader {
+
+        Flux<?> load(Class<?> domainType, R2dbcOperationOption option, Collection<?> ids);
+
+    }
+
+    /**
+     * 批次的key，实体类型、选项的签名、路由的key、Context的签名都相同的调用方才能放在同一个批次中
+     */
+    private record BatchKey(Class<?> domainType, Object optionSignature, @Nullable Object routingKey, Map<Object, Object> contextSignature) {
+    }
+
+    /**
+     * 一个实体类型的统计数据
+     */
+    private static final class Counter {
+
+        private final LongAdder batchCount = new LongAdder();
+
+        private final LongAdder idCount = new LongAdder();
+
+    }
+
+    /**
+     * 等待加载的id
+     */
+    private static final class Pending {
+
+        /**
+         * 调用方传入的id（第一个调用方的）
+         */
+        private final Object id;
+
+        private final List<MonoSink<Object>> sinks = new ArrayList<>(1);
+
+        private Pending(Object id) {
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * 取出的一个批次
+     *
+     * @param pendingMap 等待加载的id
+     * @param context    批次中第一个调用方的Context（与其他调用方的等价），批次的查询在这个Context中执行
+     */
+    private record Batch(Map<Object, Pending> pendingMap, ContextView context) {
+    }
+
+    /**
+     * 一个批次key的批次收集器
+     */
+    private final class Batcher {
+
+        private final BatchKey batchKey;
+
+        private final RelationalPersistentEntity<?> entity;
+
+        private final Class<?> idType;
+
+        private final EntityDescriptor.BatchLoadConfig config;
+
+        /**
+         * 第一个调用方的选项的拷贝
+         */
+        private final R2dbcOperationOption option;
+
+        private final Counter counter;
+
+        /**
+         * 批次已经取出，收集器不再接收调用方
+         */
+        private boolean retired;
+
+        /**
+         * 当前批次，key是转换为id字段类型之后的id
+         */
+        private Map<Object, Pending> pendingMap = new LinkedHashMap<>();
+
+        /**
+         * 当前批次第一个调用方的Context
+         */
+        private ContextView batchContext = Context.empty();
+
+        /**
+         * 当前批次的定时执行任务
+         */
+        @Nullable
+        private Disposable scheduledDispatch;
+
+        private Batcher(BatchKey batchKey, EntityDescriptor<?> entityDescriptor, R2dbcOperationOption option) {
+            EntityDescriptor.BatchLoadConfig batchLoadConfig = entityDescriptor.getBatchLoad();
+            Assert.notNull(batchLoadConfig, "Entity " + entityDescriptor.getType().getName() + " is not batch loadable");
+            this.entity = entityDescriptor.getEntity();
+            this.idType = ClassUtils.resolvePrimitiveIfNecessary(this.entity.getRequiredIdProperty().getType());
+            this.config = batchLoadConfig;
+            this.option = option;
+            this.batchKey = batchKey;
+            this.counter = counters.computeIfAbsent(entityDescriptor.getType(), type -> new Counter());
+        }
+
+        /**
+         * 放入批次，收集器已经退役的时候返回false
+         */
+        private boolean add(Object id, MonoSink<Object> sink) {
+            Batch fullBatch = null;
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                boolean firstOfBatch = pendingMap.isEmpty();
+                if (firstOfBatch) {
+                    batchContext = sink.contextView();
+                }
+                pendingMap.computeIfAbsent(key(id), key -> new Pending(id)).sinks.add(sink);
+                if (pendingMap.size() >= config.maximumSize()) {
+                    // 收集满了立即执行
+                    fullBatch = takeBatch();
+                } else if (firstOfBatch) {
+                    scheduledDispatch = Schedulers.parallel().schedule(this::dispatchScheduled, config.window().toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+            if (fullBatch != null) {
+                dispatch(fullBatch);
+            }
+            return true;
+        }
+
+        /**
+         * 移除取消了的调用方，已经取出的批次不受影响（向取消了的调用方发送结果不会有任何效果）
+         */
+        private void remove(Object id, MonoSink<Object> sink) {
+            synchronized (this) {
+                Object key = key(id);
+                Pending pending = pendingMap.get(key);
+                if (pending == null || !pending.sinks.remove(sink) || !pending.sinks.isEmpty()) {
+                    return;
+                }
+                pendingMap.remove(key);
+                if (pendingMap.isEmpty()) {
+                    // 批次空了，取消定时执行
+                    takeBatch();
+                }
+            }
+        }
+
+        private void dispatchScheduled() {
+            Batch batch;
+            synchronized (this) {
+                batch = takeBatch();
+            }
+            dispatch(batch);
+        }
+
+        /**
+         * 取出当前批次，需要在锁中调用
+         * 取出之后收集器退役并从map中移除，之后的调用方使用新的收集器
+         */
+        private Batch takeBatch() {
+            Batch batch = new Batch(pendingMap, batchContext);
+            pendingMap = new LinkedHashMap<>();
+            batchContext = Context.empty();
+            if (scheduledDispatch != null) {
+                scheduledDispatch.dispose();
+                scheduledDispatch = null;
+            }
+            retired = true;
+            batchers.remove(batchKey, this);
+            return batch;
+        }
+
+        private void dispatch(Batch batch) {
+            Map<Object, Pending> pendingMap = batch.pendingMap();
+            if (pendingMap.isEmpty()) {
+                return;
+            }
+            counter.batchCount.increment();
+            counter.idCount.add(pendingMap.size());
+            List<Object> ids = pendingMap.values().stream().map(pending -> pending.id).toList();
+            idsLoader.load(entity.getType(), option, ids)
+                    .collectList()
+                    .contextWrite(Context.of(batch.context()))
+                    .subscribe(results -> complete(pendingMap, results), error -> pendingMap.values().forEach(pending -> pending.sinks.forEach(sink -> sink.error(error))));
+        }
+
+        /**
+         * 把查询结果按id分发给调用方
+         */
+        private void complete(Map<Object, Pending> batch, List<?> results) {
+            Map<Object, Object> resultMap = new HashMap<>(results.size() * 2);
+            for (Object result : results) {
+                Object id = entity.getIdentifierAccessor(result).getIdentifier();
+                if (id != null) {
+                    resultMap.put(key(id), result);
+                }
+            }
+            batch.forEach((key, pending) -> {
+                Object result = resultMap.get(key);
+                for (int i = 0; i < pending.sinks.size(); i++) {
+                    MonoSink<Object> sink = pending.sinks.get(i);
+                    if (result == null) {
+                        sink.success();
+                    } else {
+                        // 同一个id的多个调用方，第一个拿到查询结果本身，其余的拿到拷贝
+                        sink.success(i == 0 ? result : copy(result));
+                    }
+                }
+            });
+        }
+
+        private Object key(Object id) {
+            return R2dbcEntityCache.idKey(idType, id, converter.getConversionService());
+        }
+
+        private Object copy(Object result) {
+            return converter instanceof MappingReactiveConverter mappingReactiveConverter ? mappingReactiveConverter.shallowCopy(result) : result;
+        }
+
+    }
+
+    /**
+     * 批量加载的统计数据
+     *
+     * @param batchCount 执行的批次数（实际查询的次数）
+     * @param idCount    加载的id数量（去重之后）
+     */
+    public record Statistics(long batchCount, long idCount) {
+
+        /**
+         * 平均每批加载的id数量
+         */
+        public double averageBatchSize() {
+            return batchCount == 0 ? 0 : (double) idCount / batchCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcWriteListener;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.LruCache;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 实体缓存（二级缓存），只缓存开启了 @TableEntity(cache = true) 的实体
+ * 按实体类型分别缓存，key是路由的key（${@link R2dbcRoutingKeyResolver}）与id，每个实体类型的容量和存活时间以注解的配置为准
+ * 使用多租户或者按Context路由的连接工厂的时候，不同路由下id相同的数据是不同的行，不会互相命中
+ * 按实体写入的时候只淘汰被写入的id，按条件写入的时候不知道影响了哪些行，整个实体类型的缓存失效
+ * 缓存中保存的是实体的浅拷贝，放入和取出的时候都会复制一份，调用方修改实体不会污染缓存（构造器带参数的实体视为不可变，直接共享）
+ * 语句执行成功之后就会淘汰缓存，处于事务中的时候事务提交之后还会再淘汰一次，避免提交之前被其他请求读入缓存的旧数据一直留在缓存中
+ * 每个实体类型有一个代数（generation），每次淘汰都会递增，在淘汰之前开始的加载（可能读到了旧数据）不会被放入缓存
+ *
+ * @author Panda
+ */
+public class R2dbcEntityCache implements R2dbcWriteListener {
+
+    private final R2dbcConverter converter;
+
+    private final R2dbcEntitySnapshots entitySnapshots;
+
+    private final Map<Class<?>, TypeCache<?>> cacheMap = new ConcurrentHashMap<>();
+
+    public R2dbcEntityCache(R2dbcConverter converter, R2dbcEntitySnapshots entitySnapshots) {
+        this.converter = converter;
+        this.entitySnapshots = entitySnapshots;
+    }
+
+    /**
+     * 获取缓存的实体，返回的是一份拷贝
+     * 开启了脏检查的实体，拷贝会带上加载时的快照
+     */
+    @Nullable
+    public <T> T get(Class<T> domainType, @Nullable Object routingKey, @Nullable Object id) {
+        if (id == null) {
+            return null;
+        }
+        TypeCache<T> typeCache = typeCache(domainType);
+        Entry entry = typeCache.cache.get(typeCache.key(routingKey, id, converter.getConversionService()));
+        if (entry == null) {
+            return null;
+        }
+        T entity = typeCache.copy(domainType.cast(entry.entity()));
+        if (entry.snapshot() != null) {
+            entitySnapshots.put(entity, entry.snapshot());
+        }
+        return entity;
+    }
+
+    /**
+     * 实体类型当前的代数，从数据库加载之前获取，放入缓存的时候带上
+     */
+    public long generation(Class<?> domainType) {
+        return typeCache(domainType).generation.get();
+    }
+
+    /**
+     * 放入缓存，id从实体中获取，没有id的实体不缓存
+     * 加载开始之后发生过淘汰（代数变了）的时候不放入缓存，加载到的可能是淘汰之前的旧数据
+     *
+     * @param routingKey 加载方的路由的key，没有路由的时候为null
+     * @param generation 开始加载时的代数 ${@link #generation(Class)}
+     */
+    public <T> void put(Class<T> domainType, @Nullable Object routingKey, T entity, long generation) {
+        TypeCache<T> typeCache = typeCache(domainType);
+        Object id = typeCache.entity.getIdentifierAccessor(entity).getIdentifier();
+        if (id == null || typeCache.generation.get() != generation) {
+            return;
+        }
+        Object key = typeCache.key(routingKey, id, converter.getConversionService());
+        typeCache.cache.put(key, new Entry(typeCache.copy(entity), entitySnapshots.get(entity)), typeCache.timeToLive);
+        if (typeCache.generation.get() != generation) {
+            // 放入的同时发生了淘汰，撤销这次放入
+            typeCache.cache.remove(key);
+        }
+    }
+
+    /**
+     * 记录一次从数据库加载的耗时
+     */
+    public void recordLoad(Class<?> domainType, long loadTimeNanos) {
+        TypeCache<?> typeCache = typeCache(domainType);
+        typeCache.loadCount.increment();
+        typeCache.loadTimeNanos.add(loadTimeNanos);
+    }
+
+    /**
+     * 淘汰实体类型中指定路由下指定id的缓存
+     */
+    public void evict(Class<?> domainType, @Nullable Object routingKey, Collection<?> ids) {
+        TypeCache<?> typeCache = cacheMap.get(domainType);
+        if (typeCache != null) {
+            typeCache.generation.incrementAndGet();
+            for (Object id : ids) {
+                if (id != null) {
+                    typeCache.cache.remove(typeCache.key(routingKey, id, converter.getConversionService()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 使实体类型的缓存失效
+     */
+    public void invalidate(Class<?> domainType) {
+        TypeCache<?> typeCache = cacheMap.get(domainType);
+        if (typeCache != null) {
+            typeCache.generation.incrementAndGet();
+            typeCache.cache.clear();
+        }
+    }
+
+    public void invalidateAll() {
+        cacheMap.values().forEach(typeCache -> {
+            typeCache.generation.incrementAndGet();
+            typeCache.cache.clear();
+        });
+    }
+
+    /**
+     * 返回实体类型的缓存统计数据，实体类型没有开启缓存的时候返回null
+     */
+    @Nullable
+    public Statistics getStatistics(Class<?> domainType) {
+        if (!EntityDescriptor.of(domainType).isCacheable()) {
+            return null;
+        }
+        TypeCache<?> typeCache = typeCache(domainType);
+        return new Statistics(typeCache.cache.statistics(), typeCache.loadCount.sum(), typeCache.loadTimeNanos.sum());
+    }
+
+    @Override
+    public void onWrite(Class<?> domainType) {
+        invalidate(domainType);
+    }
+
+    @Override
+    public void onWrite(Class<?> domainType, Collection<?> ids) {
+        onWrite(domainType, ids, null);
+    }
+
+    @Override
+    public void onWrite(Class<?> domainType, Collection<?> ids, @Nullable Object routingKey) {
+        evict(domainType, routingKey, ids);
+    }
+
+    /**
+     * 把id转换为id字段的类型作为key，传入的id类型与字段类型不一样（例如Integer和Long、字符串）的时候也能命中
+     */
+    static Object idKey(Class<?> idType, Object id, ConversionService conversionService) {
+        if (idType.isInstance(id) || !conversionService.canConvert(id.getClass(), idType)) {
+            return id;
+        }
+        Object key = conversionService.convert(id, idType);
+        return key == null ? id : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TypeCache<T> typeCache(Class<T> domainType) {
+        return (TypeCache<T>) cacheMap.computeIfAbsent(domainType, type -> new TypeCache<>(EntityDescriptor.of(type), converter));
+    }
+
+    /**
+     * 缓存的数据
+     *
+     * @param entity   实体的拷贝
+     * @param snapshot 脏检查的快照，没有开启脏检查的时候为null
+     */
+    private record Entry(Object entity, @Nullable R2dbcEntitySnapshots.Snapshot snapshot) {
+    }
+
+    /**
+     * 缓存的key
+     *
+     * @param routingKey 路由的key，没有路由的时候为null
+     * @param id         转换为id字段类型之后的id
+     */
+    private record CacheKey(@Nullable Object routingKey, Object id) {
+    }
+
+    /**
+     * 一个实体类型的缓存
+     */
+    private static final class TypeCache<T> {
+
+        private final RelationalPersistentEntity<T> entity;
+
+        /**
+         * id的类型（包装类型），传入的id类型不一样的时候（例如Integer和Long）先转换再作为key
+         */
+        private final Class<?> idType;
+
+        private final Duration timeToLive;
+
+        private final LruCache<Object, Entry> cache;
+
+        /**
+         * 用于复制实体，不是MappingReactiveConverter的时候不复制
+         */
+        @Nullable
+        private final MappingReactiveConverter copyConverter;
+
+        /**
+         * 代数，每次淘汰递增
+         */
+        private final AtomicLong generation = new AtomicLong();
+
+        private final LongAdder loadCount = new LongAdder();
+
+        private final LongAdder loadTimeNanos = new LongAdder();
+
+        private TypeCache(EntityDescriptor<T> entityDescriptor, R2dbcConverter converter) {
+            EntityDescriptor.CacheConfig cacheConfig = entityDescriptor.getCache();
+            Assert.notNull(cacheConfig, "Entity " + entityDescriptor.getType().getName() + " is not cacheable");
+            this.entity = entityDescriptor.getEntity();
+            this.idType = ClassUtils.resolvePrimitiveIfNecessary(this.entity.getRequiredIdProperty().getType());
+            this.timeToLive = cacheConfig.timeToLive();
+            this.cache = new LruCache<>(cacheConfig.maximumSize());
+            this.copyConverter = converter instanceof MappingReactiveConverter mappingReactiveConverter ? mappingReactiveConverter : null;
+        }
+
+        private Object key(@Nullable Object routingKey, Object id, ConversionService conversionService) {
+            return new CacheKey(routingKey, idKey(idType, id, conversionService));
+        }
+
+        /**
+         * 浅拷贝实体
+         */
+        private T copy(T source) {
+            return copyConverter == null ? source : copyConverter.shallowCopy(source);
+        }
+
+    }
+
+    /**
+     * 实体缓存的统计数据
+     *
+     * @param cache         缓存的命中、淘汰统计
+     * @param loadCount     从数据库加载的次数
+     * @param loadTimeNanos 从数据库加载的总耗时（纳秒）
+     */
+    public record Statistics(LruCache.CacheStatistics cache, long loadCount, long loadTimeNanos) {
+
+        public double hitRate() {
+            return cache.hitRate();
+        }
+
+        public long evictionCount() {
+            return cache.evictionCount();
+        }
+
+        /**
+         * 平均每次加载的耗时
+         */
+        public Duration averageLoadTime() {
+            return loadCount == 0 ? Duration.ZERO : Duration.ofNanos(loadTimeNanos / loadCount);
+        }
+
+    }
+
+}
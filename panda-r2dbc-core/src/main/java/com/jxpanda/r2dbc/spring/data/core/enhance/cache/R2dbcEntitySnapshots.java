@@ -0,0 +1,266 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 实体快照（脏检查，@TableEntity(dirtyTracking = true)）
+ * 查询出来的实体记录一份快照，更新的时候与快照比较，只写入变化了的列
+ * 快照按实体对象的引用（而不是equals）关联，使用弱引用，实体不再被使用的时候快照随之回收
+ * 每个快照只保存一个值数组，列到下标的映射按实体类型共享，由实体的持久化字段生成
+ * <p>
+ * 字段都是不可变的值（字符串、数字、枚举、时间等）并且实体可以复制的时候，加载时只记录字段的值，不转换为行数据
+ * 第一次更新的时候才按记录的值还原出加载时的行数据（${@link #resolve(Snapshot, Object, Function)}），没有更新的实体不需要付出转换的开销
+ * 其他的实体（字段的值可能被原地修改）加载时就转换为行数据记录下来
+ *
+ * @author Panda
+ */
+public class R2dbcEntitySnapshots {
+
+    private final Map<IdentityKey, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * 按实体类型共享的快照结构
+     */
+    private final Map<Class<?>, Layout> layouts = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * 用于复制实体，不是MappingReactiveConverter的时候总是在加载时转换为行数据
+     */
+    @Nullable
+    private final MappingReactiveConverter copyConverter;
+
+    public R2dbcEntitySnapshots(R2dbcConverter converter) {
+        this.copyConverter = converter instanceof MappingReactiveConverter mappingReactiveConverter ? mappingReactiveConverter : null;
+    }
+
+    /**
+     * 记录实体的快照
+     *
+     * @param entity           实体
+     * @param persistentEntity 实体的元数据
+     * @param rowWriter        把实体转换为行数据，只有不能延迟转换的实体才会在这里调用
+     */
+    public void record(Object entity, RelationalPersistentEntity<?> persistentEntity, Function<Object, OutboundRow> rowWriter) {
+        expunge();
+        Layout layout = this.layouts.computeIfAbsent(entity.getClass(), type -> Layout.of(persistentEntity, this.copyConverter));
+        Snapshot snapshot;
+        if (layout.deferred()) {
+            PersistentPropertyAccessor<?> accessor = persistentEntity.getPropertyAccessor(entity);
+            Object[] values = new Object[layout.properties().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = accessor.getProperty(layout.properties().get(i));
+            }
+            snapshot = new Snapshot(layout, values, false);
+        } else {
+            snapshot = layout.capture(rowWriter.apply(entity));
+        }
+        this.snapshots.put(new IdentityKey(entity, this.referenceQueue), snapshot);
+    }
+
+    /**
+     * 把只记录了字段值的快照还原为行数据的快照
+     * 复制一份实体，把字段设置为加载时的值，再转换为行数据，得到的列值与加载时立即转换的结果一致
+     *
+     * @param entity    当前的实体，用于复制
+     * @param rowWriter 把实体转换为行数据
+     */
+    public Snapshot resolve(Snapshot snapshot, Object entity, Function<Object, OutboundRow> rowWriter) {
+        if (snapshot.resolved()) {
+            return snapshot;
+        }
+        Assert.state(this.copyConverter != null, "Deferred snapshot requires a MappingReactiveConverter");
+        Object copy = this.copyConverter.shallowCopy(entity);
+        Assert.state(copy != entity, () -> "Entity " + entity.getClass().getName() + " cannot be copied");
+        RelationalPersistentEntity<?> persistentEntity = snapshot.layout().entity();
+        PersistentPropertyAccessor<?> accessor = persistentEntity.getPropertyAccessor(copy);
+        List<RelationalPersistentProperty> properties = snapshot.layout().properties();
+        for (int i = 0; i < properties.size(); i++) {
+            accessor.setProperty(properties.get(i), snapshot.values()[i]);
+        }
+        return snapshot.layout().capture(rowWriter.apply(accessor.getBean()));
+    }
+
+    /**
+     * 记录实体的快照（更新之后，用合并后的快照替换）
+     */
+    public void put(Object entity, Snapshot snapshot) {
+        expunge();
+        this.snapshots.put(new IdentityKey(entity, this.referenceQueue), snapshot);
+    }
+
+    @Nullable
+    public Snapshot get(Object entity) {
+        return this.snapshots.get(new IdentityKey(entity, null));
+    }
+
+    public void remove(Object entity) {
+        this.snapshots.remove(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 当前记录的快照数量
+     */
+    public int size() {
+        expunge();
+        return this.snapshots.size();
+    }
+
+    private void expunge() {
+        Reference<?> reference;
+        while ((reference = this.referenceQueue.poll()) != null) {
+            this.snapshots.remove((IdentityKey) reference);
+        }
+    }
+
+    /**
+     * 字段的类型是否是不可变的值，这样的值可以直接引用，不会被原地修改
+     */
+    private static boolean isImmutableValue(Class<?> type) {
+        return ClassUtils.isPrimitiveOrWrapper(type)
+               || type == String.class
+               || type.isEnum()
+               || type == BigDecimal.class
+               || type == BigInteger.class
+               || type == UUID.class
+               || (type.getName().startsWith("java.time.") && (TemporalAccessor.class.isAssignableFrom(type) || TemporalAmount.class.isAssignableFrom(type)));
+    }
+
+    /**
+     * 实体类型的快照结构
+     *
+     * @param entity     实体的元数据
+     * @param properties 持久化的字段，下标与列的下标一致
+     * @param indexes    列到下标的映射
+     * @param deferred   是否延迟转换为行数据
+     */
+    private record Layout(RelationalPersistentEntity<?> entity, List<RelationalPersistentProperty> properties,
+                          Map<SqlIdentifier, Integer> indexes, boolean deferred) {
+
+        private static Layout of(RelationalPersistentEntity<?> entity, @Nullable MappingReactiveConverter copyConverter) {
+            List<RelationalPersistentProperty> properties = new ArrayList<>();
+            Map<SqlIdentifier, Integer> indexes = new HashMap<>();
+            boolean deferred = copyConverter != null && copyConverter.isCopySupported(entity.getType());
+            for (RelationalPersistentProperty property : entity) {
+                if (property.isEntity() || indexes.containsKey(property.getColumnName())) {
+                    deferred = false;
+                    continue;
+                }
+                indexes.put(property.getColumnName(), properties.size());
+                properties.add(property);
+                deferred &= property.isWritable() && isImmutableValue(property.getType());
+            }
+            return new Layout(entity, List.copyOf(properties), Map.copyOf(indexes), deferred);
+        }
+
+        /**
+         * 按列的下标记录行数据中的值，行数据中不属于实体字段的列不记录
+         */
+        private Snapshot capture(OutboundRow row) {
+            Object[] values = new Object[this.properties.size()];
+            row.forEach((column, parameter) -> {
+                Integer index = this.indexes.get(column);
+                if (index != null) {
+                    values[index] = parameter.getValue();
+                }
+            });
+            return new Snapshot(this, values, true);
+        }
+
+    }
+
+    /**
+     * 实体的快照
+     *
+     * @param layout   快照的结构（同一实体类型共享）
+     * @param values   列的值（已经转换为行数据），或者加载时字段的值（还没有转换）
+     * @param resolved values是否已经转换为行数据
+     */
+    public record Snapshot(Layout layout, Object[] values, boolean resolved) {
+
+        /**
+         * 列的值是否与快照一致，快照中没有这一列的时候视为有变化
+         * 只能在转换为行数据的快照上调用 ${@link R2dbcEntitySnapshots#resolve(Snapshot, Object, Function)}
+         */
+        public boolean isUnchanged(SqlIdentifier column, Parameter parameter) {
+            Assert.state(this.resolved, "Snapshot must be resolved before comparing");
+            Integer index = this.layout.indexes().get(column);
+            return index != null && Objects.deepEquals(this.values[index], parameter.getValue());
+        }
+
+        /**
+         * 以快照为基础，合并写入的列，得到写入之后的快照
+         */
+        public Snapshot merge(OutboundRow row) {
+            Assert.state(this.resolved, "Snapshot must be resolved before merging");
+            Object[] merged = this.values.clone();
+            row.forEach((column, parameter) -> {
+                Integer index = this.layout.indexes().get(column);
+                if (index != null) {
+                    merged[index] = parameter.getValue();
+                }
+            });
+            return new Snapshot(this.layout, merged, true);
+        }
+
+    }
+
+    /**
+     * 按引用比较的弱引用key
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        private IdentityKey(Object referent, @Nullable ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey other)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == other.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,435 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcWriteListener;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 常驻内存的表（@TableEntity(resident = true)）
+ * 整张表被加载为不可变的快照，之后的查询直接从快照中获取；应用启动的时候会预先加载（${@link #preload(Class[])}），没有预先加载的表在第一次使用的时候加载
+ * 快照安装的时候就按id和被其他实体关联（@TableReference的referenceColumn）的字段建立好索引，其他字段的索引在第一次按这个字段查询的时候构建
+ * 索引的key是转换为字段类型之后的值（BigDecimal忽略末尾的0），与数据库按字段类型比较的规则一致
+ * 通过框架写入的时候快照失效，下一次读取时重新加载（处于事务中的时候，事务提交之后会再失效一次）；配置了刷新间隔的时候定时重新加载，加载完成之后原子地替换快照
+ * 每张表有一个代数（generation），每次失效都会递增，失效之前开始的加载不会被安装为快照，避免把写入之前的旧数据装回去
+ * 快照按路由的key（${@link R2dbcRoutingKeyResolver}）区分，每个路由各自加载自己的快照，不同路由的数据不会互相返回
+ * 有路由的快照在调用方的Context中加载，不定时刷新，刷新间隔作为快照的最长存活时间，过期之后由下一次读取重新加载
+ * 返回给调用方的都是快照中数据的浅拷贝，调用方修改实体不会影响快照
+ * 定时刷新在 ${@link #close()} 的时候停止，模板关闭的时候会调用
+ *
+ * @author Panda
+ */
+public class R2dbcResidentTables implements R2dbcWriteListener, AutoCloseable {
+
+    private final R2dbcConverter converter;
+
+    private final Supplier<R2dbcRoutingKeyResolver> routingKeyResolver;
+
+    /**
+     * 加载整张表（不使用快照的查询）
+     */
+    private final Function<Class<?>, Flux<?>> tableLoader;
+
+    private final Map<ResidentKey, Resident> residents = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public R2dbcResidentTables(R2dbcConverter converter, Supplier<R2dbcRoutingKeyResolver> routingKeyResolver, Function<Class<?>, Flux<?>> tableLoader) {
+        this.converter = converter;
+        this.routingKeyResolver = routingKeyResolver;
+        this.tableLoader = tableLoader;
+    }
+
+    /**
+     * 预先加载常驻内存的表，应用启动的时候调用，加载的是订阅方路由下的快照
+     */
+    public Mono<Void> preload(Class<?>... domainTypes) {
+        return Flux.fromArray(domainTypes)
+                .flatMap(domainType -> Mono.deferContextual(context -> resident(domainType, routingKeyResolver.get().resolve(context)).snapshot()))
+                .then();
+    }
+
+    /**
+     * 立即重新加载订阅方路由下的快照，加载完成之后替换快照
+     */
+    public Mono<Void> refresh(Class<?> domainType) {
+        return Mono.deferContextual(context -> resident(domainType, routingKeyResolver.get().resolve(context)).refresh());
+    }
+
+    /**
+     * 使实体类型所有路由下的快照失效，下一次读取时重新加载
+     */
+    public void invalidate(Class<?> domainType) {
+        residents.forEach((key, resident) -> {
+            if (key.domainType() == domainType) {
+                resident.invalidate();
+            }
+        });
+    }
+
+    /**
+     * 按id查询
+     */
+    public <T> Flux<T> findByIds(Class<T> domainType, Collection<?> ids) {
+        RelationalPersistentProperty idProperty = EntityDescriptor.of(domainType).getIdProperty();
+        Assert.notNull(idProperty, "Resident entity must have an id property");
+        return find(domainType, Collections.singletonList(new Condition(idProperty, ids)), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 按条件查询，条件之间是AND的关系
+     *
+     * @param conditions 条件，为空的时候返回整张表
+     * @param limit      最多返回多少条数据
+     */
+    public <T> Flux<T> find(Class<T> domainType, List<Condition> conditions, int limit) {
+        return Flux.deferContextual(context -> resident(domainType, routingKeyResolver.get().resolve(context)).snapshot()
+                .flatMapIterable(snapshot -> snapshot.find(conditions, limit))
+                .map(row -> domainType.cast(copy(row))));
+    }
+
+    @Override
+    public void onWrite(Class<?> domainType) {
+        invalidate(domainType);
+    }
+
+    /**
+     * 停止所有的定时刷新，关闭之后不再启动新的定时刷新（快照仍然可以按需加载）
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        residents.values().forEach(Resident::dispose);
+    }
+
+    /**
+     * 把查询条件解析为快照可以回答的等值条件
+     * 只支持AND连接的EQ/IN条件（区分大小写），其他情况（OR、分组、范围、模糊匹配等）返回null，由数据库回答
+     *
+     * @return 条件列表，条件为空的时候返回空列表
+     */
+    @Nullable
+    public static List<Condition> parse(RelationalPersistentEntity<?> entity, @Nullable CriteriaDefinition criteria) {
+        List<Condition> conditions = new ArrayList<>();
+        CriteriaDefinition current = criteria;
+        while (current != null && !current.isEmpty()) {
+            if (current.isGroup() || current.isIgnoreCase() || current.getColumn() == null
+                || current.getCombinator() == CriteriaDefinition.Combinator.OR) {
+                return null;
+            }
+            RelationalPersistentProperty property = R2dbcMappingKit.findProperty(entity, current.getColumn().getReference());
+            if (property == null) {
+                return null;
+            }
+            Object value = current.getValue();
+            if (current.getComparator() == CriteriaDefinition.Comparator.EQ && value != null) {
+                conditions.add(new Condition(property, Collections.singletonList(value)));
+            } else if (current.getComparator() == CriteriaDefinition.Comparator.IN && value instanceof Collection<?> values) {
+                conditions.add(new Condition(property, values));
+            } else {
+                return null;
+            }
+            current = current.getPrevious();
+        }
+        Collections.reverse(conditions);
+        return conditions;
+    }
+
+    private Resident resident(Class<?> domainType, @Nullable Object routingKey) {
+        return residents.computeIfAbsent(new ResidentKey(domainType, routingKey), key -> new Resident(EntityDescriptor.of(domainType), routingKey));
+    }
+
+    private Object copy(Object row) {
+        return converter instanceof MappingReactiveConverter mappingReactiveConverter ? mappingReactiveConverter.shallowCopy(row) : row;
+    }
+
+    /**
+     * 被其他实体通过@TableReference关联的字段（referenceColumn），以映射上下文中已经注册的实体为准
+     */
+    private Set<RelationalPersistentProperty> referencedProperties(RelationalPersistentEntity<?> residentEntity) {
+        Set<RelationalPersistentProperty> properties = new LinkedHashSet<>();
+        for (RelationalPersistentEntity<?> persistentEntity : converter.getMappingContext().getPersistentEntities()) {
+            for (RelationalPersistentProperty property : persistentEntity) {
+                TableReference tableReference = property.findAnnotation(TableReference.class);
+                if (tableReference != null && property.getActualType() == residentEntity.getType()) {
+                    RelationalPersistentProperty referenced = R2dbcMappingKit.findProperty(residentEntity, tableReference.referenceColumn());
+                    if (referenced != null) {
+                        properties.add(referenced);
+                    }
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * 快照的查询条件
+     *
+     * @param property 字段
+     * @param values   字段的值等于其中任意一个
+     */
+    public record Condition(RelationalPersistentProperty property, Collection<?> values) {
+    }
+
+    /**
+     * 常驻内存的表的key
+     *
+     * @param domainType 实体类型
+     * @param routingKey 路由的key，没有路由的时候为null
+     */
+    private record ResidentKey(Class<?> domainType, @Nullable Object routingKey) {
+    }
+
+    /**
+     * 一张常驻内存的表（一个路由下的）
+     */
+    private final class Resident {
+
+        private final Class<?> domainType;
+
+        private final RelationalPersistentEntity<?> entity;
+
+        /**
+         * 快照安装的时候就建立索引的字段：id和被关联的字段
+         */
+        private final Set<RelationalPersistentProperty> indexedProperties;
+
+        /**
+         * 有路由的快照的最长存活时间，没有路由或者不刷新的时候为null
+         */
+        @Nullable
+        private final Duration maxAge;
+
+        /**
+         * 当前的快照，为null表示需要重新加载
+         */
+        private final AtomicReference<Mono<Snapshot>> current = new AtomicReference<>();
+
+        /**
+         * 代数，每次失效递增
+         */
+        private final AtomicLong generation = new AtomicLong();
+
+        @Nullable
+        private final Disposable scheduledRefresh;
+
+        private Resident(EntityDescriptor<?> entityDescriptor, @Nullable Object routingKey) {
+            EntityDescriptor.ResidentConfig residentConfig = entityDescriptor.getResident();
+            Assert.notNull(residentConfig, "Entity " + entityDescriptor.getType().getName() + " is not resident");
+            this.domainType = entityDescriptor.getType();
+            this.entity = entityDescriptor.getEntity();
+            Set<RelationalPersistentProperty> properties = new LinkedHashSet<>();
+            properties.add(this.entity.getRequiredIdProperty());
+            properties.addAll(referencedProperties(this.entity));
+            this.indexedProperties = Collections.unmodifiableSet(properties);
+            Duration refreshInterval = residentConfig.refreshInterval();
+            this.maxAge = refreshInterval.isZero() || routingKey == null ? null : refreshInterval;
+            // 定时刷新不在任何调用方的Context中执行，只有没有路由的快照可以定时刷新
+            this.scheduledRefresh = refreshInterval.isZero() || routingKey != null || closed ? null : Flux.interval(refreshInterval, refreshInterval)
+                    // 刷新失败的时候保留原来的快照，等待下一次刷新
+                    .concatMap(tick -> refresh().onErrorResume(error -> Mono.empty()))
+                    .subscribe();
+        }
+
+        /**
+         * 获取当前的快照，快照失效（或者过期）的时候重新加载，并发的读取共享同一次加载
+         */
+        private Mono<Snapshot> snapshot() {
+            return Mono.defer(() -> {
+                Mono<Snapshot> currentSnapshot = currentOrLoad();
+                if (maxAge == null) {
+                    return currentSnapshot;
+                }
+                return currentSnapshot.flatMap(snapshot -> {
+                    if (!snapshot.isOlderThan(maxAge)) {
+                        return Mono.just(snapshot);
+                    }
+                    current.compareAndSet(currentSnapshot, null);
+                    return currentOrLoad();
+                });
+            });
+        }
+
+        private Mono<Snapshot> currentOrLoad() {
+            Mono<Snapshot> currentSnapshot = current.get();
+            if (currentSnapshot != null) {
+                return currentSnapshot;
+            }
+            long loadGeneration = generation.get();
+            AtomicReference<Mono<Snapshot>> loading = new AtomicReference<>();
+            loading.set(load()
+                    // 加载期间发生过失效，加载到的可能是写入之前的数据，只返回给已经在等待的调用方，不作为快照保留
+                    .doOnNext(snapshot -> {
+                        if (generation.get() != loadGeneration) {
+                            current.compareAndSet(loading.get(), null);
+                        }
+                    })
+                    // 加载失败的时候不缓存错误，下一次读取重新加载
+                    .doOnError(error -> current.compareAndSet(loading.get(), null))
+                    .cache());
+            return current.compareAndSet(null, loading.get()) ? loading.get() : currentOrLoad();
+        }
+
+        private Mono<Void> refresh() {
+            return Mono.defer(() -> {
+                long loadGeneration = generation.get();
+                return load()
+                        .doOnNext(snapshot -> install(loadGeneration, snapshot))
+                        .then();
+            });
+        }
+
+        /**
+         * 安装刷新得到的快照，刷新期间发生过失效（代数变了）的时候放弃，与失效互斥
+         */
+        private synchronized void install(long loadGeneration, Snapshot snapshot) {
+            if (generation.get() == loadGeneration) {
+                current.set(Mono.just(snapshot));
+            }
+        }
+
+        private synchronized void invalidate() {
+            generation.incrementAndGet();
+            current.set(null);
+        }
+
+        private void dispose() {
+            if (scheduledRefresh != null) {
+                scheduledRefresh.dispose();
+            }
+        }
+
+        /**
+         * 加载整张表，在订阅方的Context中执行（有路由的时候就是这个路由下的表）
+         * 快照在这里构建好id和被关联字段的索引，安装之后的查询不需要再构建
+         */
+        private Mono<Snapshot> load() {
+            return tableLoader.apply(domainType)
+                    .collectList()
+                    .map(rows -> new Snapshot(entity, rows, indexedProperties, converter.getConversionService()));
+        }
+
+    }
+
+    /**
+     * 表的不可变快照
+     */
+    private static final class Snapshot {
+
+        private final RelationalPersistentEntity<?> entity;
+
+        private final List<Object> rows;
+
+        private final ConversionService conversionService;
+
+        /**
+         * 加载完成的时间，用于判断有路由的快照是否过期
+         */
+        private final long loadedAt = System.nanoTime();
+
+        /**
+         * 字段的索引，key是转换为字段类型之后的值 ${@link #indexKey(RelationalPersistentProperty, Object)}
+         */
+        private final Map<RelationalPersistentProperty, Map<Object, List<Object>>> indexes = new ConcurrentHashMap<>();
+
+        private Snapshot(RelationalPersistentEntity<?> entity, List<?> rows, Set<RelationalPersistentProperty> indexedProperties, ConversionService conversionService) {
+            this.entity = entity;
+            this.rows = List.copyOf(rows);
+            this.conversionService = conversionService;
+            for (RelationalPersistentProperty property : indexedProperties) {
+                index(property);
+            }
+        }
+
+        private boolean isOlderThan(Duration maxAge) {
+            return System.nanoTime() - loadedAt > maxAge.toNanos();
+        }
+
+        private List<Object> find(List<Condition> conditions, int limit) {
+            if (conditions.isEmpty()) {
+                return rows.size() <= limit ? rows : rows.subList(0, limit);
+            }
+            // 第一个条件使用索引，其余的条件逐条过滤
+            Condition first = conditions.get(0);
+            Map<Object, List<Object>> index = index(first.property());
+            List<Object> results = new ArrayList<>();
+            for (Object key : toKeys(first)) {
+                for (Object row : index.getOrDefault(key, Collections.emptyList())) {
+                    if (matches(row, conditions) && results.size() < limit) {
+                        results.add(row);
+                    }
+                }
+            }
+            return results;
+        }
+
+        private boolean matches(Object row, List<Condition> conditions) {
+            for (int i = 1; i < conditions.size(); i++) {
+                Condition condition = conditions.get(i);
+                Object value = entity.getPropertyAccessor(row).getProperty(condition.property());
+                if (value == null || !toKeys(condition).contains(indexKey(condition.property(), value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Map<Object, List<Object>> index(RelationalPersistentProperty property) {
+            return indexes.computeIfAbsent(property, key -> {
+                Map<Object, List<Object>> index = new HashMap<>();
+                for (Object row : rows) {
+                    Object value = entity.getPropertyAccessor(row).getProperty(property);
+                    // null与任何值都不相等，不进入索引
+                    if (value != null) {
+                        index.computeIfAbsent(indexKey(property, value), it -> new ArrayList<>(1)).add(row);
+                    }
+                }
+                return index;
+            });
+        }
+
+        /**
+         * 条件中的值转换为索引的key，null不会匹配任何数据
+         */
+        private Set<Object> toKeys(Condition condition) {
+            Set<Object> keys = new LinkedHashSet<>();
+            for (Object value : condition.values()) {
+                if (value != null) {
+                    keys.add(indexKey(condition.property(), value));
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * 索引的key：值转换为字段的类型（与实体缓存的id转换规则一致），BigDecimal去掉末尾的0，让数值相等的值能匹配上
+         */
+        private Object indexKey(RelationalPersistentProperty property, Object value) {
+            Object key = R2dbcEntityCache.idKey(ClassUtils.resolvePrimitiveIfNecessary(property.getType()), value, conversionService);
+            return key instanceof BigDecimal decimal ? decimal.stripTrailingZeros() : key;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import org.springframework.lang.Nullable;
+import reactor.util.context.ContextView;
+
+/**
+ * 从Reactor的Context中解析路由的key（租户、数据源路由等）
+ * 批量加载、相同查询的合并会把多个调用方的查询合并为一次，只有路由的key相同的调用方才能合并
+ * 使用基于Context路由的连接工厂（AbstractRoutingConnectionFactory）或者多租户的时候，需要设置到 ReactiveEntityTemplate 上
+ *
+ * @author Panda
+ */
+@FunctionalInterface
+public interface R2dbcRoutingKeyResolver {
+
+    /**
+     * 不使用路由，所有的调用方都可以合并
+     */
+    R2dbcRoutingKeyResolver NONE = context -> null;
+
+    /**
+     * 解析路由的key
+     *
+     * @param context 调用方订阅的Context
+     * @return 路由的key，需要正确地实现equals和hashCode，没有路由的时候返回null
+     */
+    @Nullable
+    Object resolve(ContextView context);
+
+}
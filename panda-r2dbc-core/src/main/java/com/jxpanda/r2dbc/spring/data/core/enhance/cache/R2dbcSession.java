@@ -0,0 +1,110 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话级别的实体缓存（一级缓存、Identity Map），保存在Reactor的Context中
+ * 通过 ReactiveEntityTemplate.withSession(...) 开启，一个会话通常对应一次请求
+ * 会话中基于id的查询（selectById、selectByIds、按id关联的@TableReference）对于已经加载过的id直接返回同一个实例，不再查询数据库
+ * 会话中按实体写入的时候淘汰对应id的实例，按条件写入的时候整个实体类型的实例失效
+ * 会话只被Context引用，订阅结束之后随之丢弃，不会有跨请求的过期数据
+ *
+ * @author Panda
+ */
+public final class R2dbcSession {
+
+    /**
+     * Context中保存会话的key
+     */
+    private static final Class<R2dbcSession> CONTEXT_KEY = R2dbcSession.class;
+
+    private final ConversionService conversionService;
+
+    private final Map<Class<?>, Map<Object, Object>> identityMap = new ConcurrentHashMap<>();
+
+    private R2dbcSession(ConversionService conversionService) {
+        this.conversionService = conversionService;
+    }
+
+    /**
+     * 在Context中开启一个新的会话，已经存在会话的时候沿用外层的会话
+     */
+    public static Context open(Context context, ConversionService conversionService) {
+        return context.hasKey(CONTEXT_KEY) ? context : context.put(CONTEXT_KEY, new R2dbcSession(conversionService));
+    }
+
+    /**
+     * 获取Context中的会话
+     */
+    public static Optional<R2dbcSession> current(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    /**
+     * 获取会话中已经加载过的实例
+     */
+    @Nullable
+    public <T> T get(Class<T> domainType, @Nullable Object id) {
+        if (id == null) {
+            return null;
+        }
+        Map<Object, Object> entities = identityMap.get(domainType);
+        return entities == null ? null : domainType.cast(entities.get(key(domainType, id)));
+    }
+
+    /**
+     * 把加载的实例放入会话，会话中已经有这个id的实例的时候返回会话中的实例，保证同一个id在会话中只有一个实例
+     * 没有id的实体直接返回
+     */
+    public <T> T putIfAbsent(Class<T> domainType, T entity) {
+        Object id = EntityDescriptor.of(domainType).getEntity().getIdentifierAccessor(entity).getIdentifier();
+        if (id == null) {
+            return entity;
+        }
+        Object existing = identityMap.computeIfAbsent(domainType, type -> new ConcurrentHashMap<>())
+                .putIfAbsent(key(domainType, id), entity);
+        return existing == null ? entity : domainType.cast(existing);
+    }
+
+    /**
+     * 淘汰实体类型中指定id的实例
+     */
+    public void evict(Class<?> domainType, Collection<?> ids) {
+        Map<Object, Object> entities = identityMap.get(domainType);
+        if (entities != null) {
+            for (Object id : ids) {
+                if (id != null) {
+                    entities.remove(key(domainType, id));
+                }
+            }
+        }
+    }
+
+    /**
+     * 使实体类型的所有实例失效
+     */
+    public void invalidate(Class<?> domainType) {
+        identityMap.remove(domainType);
+    }
+
+    public int size() {
+        return identityMap.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private Object key(Class<?> domainType, Object id) {
+        RelationalPersistentProperty idProperty = EntityDescriptor.of(domainType).getIdProperty();
+        return idProperty == null ? id : R2dbcEntityCache.idKey(ClassUtils.resolvePrimitiveIfNecessary(idProperty.getType()), id, conversionService);
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.r2dbc.core.binding.BindTarget;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 相同查询的合并（single-flight）
+ * 同一时刻SQL和参数完全相同的查询只执行一次，后到的调用方直接订阅正在执行的查询，查询结束之后从表中移除
+ * 不缓存查询结果，查询结束之后的调用会重新查询数据库，所以不会读到过期的数据
+ * 查询在第一个调用方的Context中执行，所以key中包含路由的key（${@link R2dbcRoutingKeyResolver}），不同路由的调用方不会合并
+ *
+ * @author Panda
+ */
+public class R2dbcSingleFlight {
+
+    /**
+     * 正在执行的查询
+     */
+    private final Map<FlightKey, Mono<? extends List<?>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 每个实体类型被合并（没有实际执行）的查询次数
+     */
+    private final Map<Class<?>, LongAdder> coalescedCount = new ConcurrentHashMap<>();
+
+    /**
+     * 执行查询，相同的查询正在执行的时候共享它的结果
+     *
+     * @param domainType 实体类型，用于统计
+     * @param key        查询的key ${@link #key(Class, PreparedOperation)}
+     * @param loader     实际执行查询
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Mono<List<V>> execute(Class<?> domainType, FlightKey key, Supplier<Mono<List<V>>> loader) {
+        return Mono.defer(() -> {
+            boolean[] leader = {false};
+            Mono<? extends List<?>> flight = inFlight.computeIfAbsent(key, flightKey -> {
+                leader[0] = true;
+                return loader.get()
+                        .doFinally(signalType -> inFlight.remove(flightKey))
+                        .cache();
+            });
+            if (!leader[0]) {
+                coalescedCount.computeIfAbsent(domainType, type -> new LongAdder()).increment();
+            }
+            return (Mono<List<V>>) flight;
+        });
+    }
+
+    /**
+     * 实体类型被合并的查询次数
+     */
+    public long getCoalescedCount(Class<?> domainType) {
+        LongAdder count = coalescedCount.get(domainType);
+        return count == null ? 0L : count.sum();
+    }
+
+    /**
+     * 所有实体类型被合并的查询次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * 正在执行的查询的数量
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 使用渲染好的SQL和绑定的参数作为查询的key
+     *
+     * @param returnType 返回值类型，相同的SQL映射为不同的类型的时候不能合并
+     * @param operation  渲染好的查询
+     */
+    public static FlightKey key(Class<?> returnType, PreparedOperation<?> operation) {
+        BindingCollector bindingCollector = new BindingCollector();
+        operation.bindTo(bindingCollector);
+        return new FlightKey(returnType, operation.toQuery(), bindingCollector.bindings, null);
+    }
+
+    /**
+     * 查询的key
+     *
+     * @param returnType 返回值类型
+     * @param sql        渲染好的SQL
+     * @param bindings   按绑定顺序记录的（标识，值）
+     * @param routingKey 调用方的路由的key，没有路由的时候为null
+     */
+    public record FlightKey(Class<?> returnType, String sql, List<Object> bindings, @Nullable Object routingKey) {
+
+        /**
+         * 带上调用方的路由的key
+         */
+        public FlightKey withRoutingKey(@Nullable Object routingKey) {
+            return new FlightKey(returnType, sql, bindings, routingKey);
+        }
+
+    }
+
+    /**
+     * 记录绑定的参数
+     */
+    private static final class BindingCollector implements BindTarget {
+
+        private final List<Object> bindings = new ArrayList<>();
+
+        @Override
+        public void bind(@NonNull String identifier, @NonNull Object value) {
+            bindings.add(identifier);
+            bindings.add(value);
+        }
+
+        @Override
+        public void bind(int index, @NonNull Object value) {
+            bindings.add(index);
+            bindings.add(value);
+        }
+
+        @Override
+        public void bindNull(@NonNull String identifier, @NonNull Class<?> type) {
+            bindings.add(identifier);
+            bindings.add(type);
+        }
+
+        @Override
+        public void bindNull(int index, @NonNull Class<?> type) {
+            bindings.add(index);
+            bindings.add(type);
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcWriteListener;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.LruCache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分页总数的缓存（TotalPolicy.CACHED）
+ * 按实体类型分别缓存，key是渲染好的count语句与绑定的参数（${@link R2dbcSingleFlight.FlightKey}）
+ * 实体有写入的时候，整个实体类型的缓存失效
+ *
+ * @author Panda
+ */
+public class R2dbcTotalCountCache implements R2dbcWriteListener {
+
+    /**
+     * 每个实体类型最多缓存多少个查询条件的总数
+     */
+    private static final int MAXIMUM_SIZE_PER_TYPE = 256;
+
+    private final Map<Class<?>, LruCache<Object, Long>> cacheMap = new ConcurrentHashMap<>();
+
+    public Long get(Class<?> domainType, Object key) {
+        LruCache<Object, Long> cache = cacheMap.get(domainType);
+        return cache == null ? null : cache.get(key);
+    }
+
+    public void put(Class<?> domainType, Object key, long total, Duration timeToLive) {
+        cacheMap.computeIfAbsent(domainType, type -> new LruCache<>(MAXIMUM_SIZE_PER_TYPE))
+                .put(key, total, timeToLive);
+    }
+
+    /**
+     * 使实体类型的缓存失效
+     */
+    public void invalidate(Class<?> domainType) {
+        LruCache<Object, Long> cache = cacheMap.get(domainType);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public void invalidateAll() {
+        cacheMap.values().forEach(LruCache::clear);
+    }
+
+    /**
+     * 返回实体类型的缓存统计数据
+     */
+    public LruCache.CacheStatistics getStatistics(Class<?> domainType) {
+        LruCache<Object, Long> cache = cacheMap.get(domainType);
+        return cache == null ? new LruCache.CacheStatistics(0, 0, 0, 0, MAXIMUM_SIZE_PER_TYPE) : cache.statistics();
+    }
+
+    @Override
+    public void onWrite(Class<?> domainType) {
+        invalidate(domainType);
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * 框架内部的数据缓存
+ */
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
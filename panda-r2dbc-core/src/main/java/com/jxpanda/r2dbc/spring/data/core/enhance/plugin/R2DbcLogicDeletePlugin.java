@@ -1,21 +1,16 @@
 package com.jxpanda.r2dbc.spring.data.core.enhance.plugin;
 
-import com.jxpanda.r2dbc.spring.data.config.R2dbcEnvironment;
-import com.jxpanda.r2dbc.spring.data.config.properties.LogicDeletePluginProperties;
 import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableLogic;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.value.LogicDeleteValue;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.value.LogicDeleteValueType;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.value.PluginValueHandler;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.criteria.EnhancedCriteria;
-import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
-import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.query.Criteria;
 import org.springframework.data.relational.core.query.CriteriaDefinition;
 import org.springframework.data.relational.core.query.Update;
 import org.springframework.data.util.Pair;
-import org.springframework.util.ObjectUtils;
 
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -72,18 +67,7 @@ public class R2DbcLogicDeletePlugin extends R2dbcOperationPlugin {
      * @param domainType domainType
      */
     public static <T> boolean isLogicDeleteEnable(Class<T> domainType) {
-        RelationalPersistentEntity<T> requiredEntity = R2dbcMappingKit.getRequiredEntity(domainType);
-        RelationalPersistentProperty logicDeleteProperty = requiredEntity.getPersistentProperty(TableLogic.class);
-        if (logicDeleteProperty == null) {
-            // 如果没有配置逻辑删除的字段，以全局配置为准
-            LogicDeletePluginProperties logicDeleteProperties = R2dbcEnvironment.getLogicDeleteProperties();
-            // 开启了逻辑删除配置，并且配置了逻辑删除字段才生效
-            return logicDeleteProperties.enable() && !ObjectUtils.isEmpty(logicDeleteProperties.field());
-        } else {
-            // 如果配置了逻辑删除字段，以注解的配置为准
-            TableLogic tableLogicAnnotation = logicDeleteProperty.getRequiredAnnotation(TableLogic.class);
-            return tableLogicAnnotation.enable();
-        }
+        return EntityDescriptor.of(domainType).getLogicDelete().enable();
     }
 
     public static <T> Pair<String, Object> getDelete(Class<T> entityClass) {
@@ -101,20 +85,10 @@ public class R2DbcLogicDeletePlugin extends R2dbcOperationPlugin {
      * @return 第一个值是字段名，第二个值是逻辑删除的删除值
      */
     private static <T> Pair<String, Object> getLogicDeleteColumn(Class<T> entityClass, WhichValue whichValue) {
-        RelationalPersistentEntity<T> requiredEntity = R2dbcMappingKit.getRequiredEntity(entityClass);
-        RelationalPersistentProperty logicDeleteProperty = requiredEntity.getPersistentProperty(TableLogic.class);
-        // 默认取值是全局配置的逻辑删除字段
-        LogicDeletePluginProperties logicDeleteProperties = R2dbcEnvironment.getLogicDeleteProperties();
-        String logicDeleteField = logicDeleteProperties.field();
-        Object value = whichValue.getValueFromProperties(logicDeleteProperties.value());
-        // 如果配置了注解，则以注解为准
-        if (logicDeleteProperty != null) {
-            logicDeleteField = logicDeleteProperty.getName();
-            TableLogic tableLogicAnnotation = logicDeleteProperty.getRequiredAnnotation(TableLogic.class);
-            value = whichValue.getValueFromAnnotation(tableLogicAnnotation);
-        }
-
-        return Pair.of(logicDeleteField, value);
+        // 逻辑删除的字段和取值函数在实体描述中已经解析好了（注解优先，其次是全局配置）
+        EntityDescriptor.LogicDelete logicDelete = EntityDescriptor.of(entityClass).getLogicDelete();
+        Supplier<Object> valueSupplier = whichValue == WhichValue.DELETE_VALUE ? logicDelete.deleteValue() : logicDelete.undeleteValue();
+        return Pair.of(logicDelete.column(), valueSupplier.get());
     }
 
     @RequiredArgsConstructor
@@ -137,6 +111,20 @@ public class R2DbcLogicDeletePlugin extends R2dbcOperationPlugin {
         private final Function<TableLogic, String> valueFromAnnotation;
         private final Function<TableLogic, Class<? extends PluginValueHandler>> valueHandlerFromAnnotation;
 
+        /**
+         * 全局配置的取值函数
+         */
+        public Supplier<Object> getValueSupplier(LogicDeleteValue logicDeleteValue) {
+            return () -> getValueFromProperties(logicDeleteValue);
+        }
+
+        /**
+         * 注解配置的取值函数
+         */
+        public Supplier<Object> getValueSupplier(TableLogic tableLogic) {
+            return () -> getValueFromAnnotation(tableLogic);
+        }
+
         private Object getValueFromProperties(LogicDeleteValue logicDeleteValue) {
             return valueFromProperties.apply(logicDeleteValue);
         }
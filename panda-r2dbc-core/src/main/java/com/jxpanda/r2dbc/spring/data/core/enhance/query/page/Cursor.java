@@ -0,0 +1,97 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.query.page;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ObjectUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 游标分页（keyset分页）的游标
+ * 游标中记录的是边界行（上一页的最后一行/下一页的第一行）的排序字段的值，id作为排序的兜底字段，一定会包含在内
+ * 对外以Base64（URL安全）编码的JSON字符串传递，前端不需要关心其内容，原样传回即可
+ *
+ * @param keys     排序字段（属性名），用于校验游标与当前查询的排序规则是否匹配
+ * @param values   边界行排序字段的值，与keys一一对应
+ * @param backward 是否是向前翻页（查询上一页）
+ * @author Panda
+ */
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public record Cursor(
+        @JsonProperty("k") List<String> keys,
+        @JsonProperty("v") List<Object> values,
+        @JsonProperty("b") boolean backward
+) {
+
+    /**
+     * 游标编解码使用的objectMapper，只做简单配置，保证常用的类型（数字、字符串、时间、枚举）能正确序列化/反序列化
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .registerModule(new JavaTimeModule());
+
+    /**
+     * 查询下一页的游标
+     */
+    public static Cursor next(List<String> keys, List<Object> values) {
+        return new Cursor(keys, values, false);
+    }
+
+    /**
+     * 查询上一页的游标
+     */
+    public static Cursor previous(List<String> keys, List<Object> values) {
+        return new Cursor(keys, values, true);
+    }
+
+    /**
+     * 解析游标
+     *
+     * @param token 游标字符串，为空表示查询第一页
+     * @return 游标对象，token为空的时候返回null
+     */
+    @Nullable
+    public static Cursor decode(@Nullable String token) {
+        if (ObjectUtils.isEmpty(token)) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(token), Cursor.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid pagination cursor: " + token, e);
+        }
+    }
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        try {
+            byte[] json = OBJECT_MAPPER.writeValueAsString(this).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode pagination cursor", e);
+        }
+    }
+
+    /**
+     * 获取边界行第index个排序字段的值，并转换为字段的类型
+     * JSON反序列化之后数字、时间等类型会丢失，需要按字段类型还原
+     */
+    @Nullable
+    public <V> V getValue(int index, Class<V> type) {
+        Object value = values.get(index);
+        return value == null ? null : OBJECT_MAPPER.convertValue(value, type);
+    }
+
+}
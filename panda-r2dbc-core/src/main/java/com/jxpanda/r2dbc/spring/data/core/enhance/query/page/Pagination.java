@@ -2,11 +2,13 @@ package com.jxpanda.r2dbc.spring.data.core.enhance.query.page;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,8 +16,53 @@ import java.util.function.Function;
 
 public class Pagination<T> extends PageImpl<T> {
 
+    /**
+     * 是否是游标分页（keyset分页）
+     */
+    private final boolean keyset;
+
+    /**
+     * 总数是否是精确的
+     * 总数来自缓存或者数据库统计信息的估算值时为false，游标分页不统计总数，也为false
+     */
+    private final boolean totalExact;
+
+    /**
+     * 是否没有统计总数（HAS_NEXT分页）
+     * 此时总数只是已知的下限，只用来表达是否有下一页
+     */
+    private final boolean countless;
+
+    /**
+     * 下一页的游标，没有下一页的时候为null
+     */
+    @Nullable
+    private final String nextCursor;
+
+    /**
+     * 上一页的游标，没有上一页的时候为null
+     */
+    @Nullable
+    private final String previousCursor;
+
     public Pagination(List<T> content, Pageable pageable, long total) {
+        this(content, pageable, total, true);
+    }
+
+    /**
+     * @param totalExact 总数是否是精确的
+     */
+    public Pagination(List<T> content, Pageable pageable, long total, boolean totalExact) {
+        this(content, pageable, total, false, totalExact, false, null, null);
+    }
+
+    private Pagination(List<T> content, Pageable pageable, long total, boolean keyset, boolean totalExact, boolean countless, @Nullable String nextCursor, @Nullable String previousCursor) {
         super(content, pageable, total);
+        this.keyset = keyset;
+        this.totalExact = totalExact;
+        this.countless = countless;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
     }
 
     public Pagination(List<T> content) {
@@ -26,12 +73,39 @@ public class Pagination<T> extends PageImpl<T> {
         return Request.of(pageNumber, pageSize).buildPageable();
     }
 
+    /**
+     * 创建游标分页（keyset分页）的分页对象
+     * 游标分页不做count查询，是否有上一页/下一页由游标是否存在决定
+     *
+     * @param content        当前页的数据
+     * @param pageable       分页信息（页长、排序）
+     * @param nextCursor     下一页的游标，没有下一页传null
+     * @param previousCursor 上一页的游标，没有上一页传null
+     */
+    public static <E> Pagination<E> keyset(List<E> content, Pageable pageable, @Nullable String nextCursor, @Nullable String previousCursor) {
+        return new Pagination<>(content, pageable, content.size(), true, false, false, nextCursor, previousCursor);
+    }
+
+    /**
+     * 创建不统计总数的分页对象（HAS_NEXT分页）
+     * 有下一页的时候总数记为 offset + 当前页长度 + 1，保证页码相关的计算（hasNext、totalPages）仍然成立
+     *
+     * @param content  当前页的数据（已经去掉了多查询的那一条）
+     * @param pageable 分页信息
+     * @param hasNext  是否有下一页
+     */
+    public static <E> Pagination<E> countless(List<E> content, Pageable pageable, boolean hasNext) {
+        long total = pageable.getOffset() + content.size() + (hasNext ? 1 : 0);
+        return new Pagination<>(content, pageable, total, false, false, true, null, null);
+    }
+
 
     @NonNull
     @Override
-    @SuppressWarnings({"rawtypes", "unchecked"})
     public <U> Pagination<U> map(@NonNull Function<? super T, ? extends U> converter) {
-        return ((Pagination) super.map(converter));
+        // PageImpl.map返回的是PageImpl，这里自己构造，保证游标等信息不丢失
+        List<U> content = getContent().stream().<U>map(converter).toList();
+        return new Pagination<>(content, getPageable(), getTotalElements(), keyset, totalExact, countless, nextCursor, previousCursor);
     }
 
 
@@ -65,8 +139,21 @@ public class Pagination<T> extends PageImpl<T> {
         return totalElements / pageSize + (totalElements % pageSize > 0 ? 1 : 0);
     }
 
+    /**
+     * getNumber()返回的是从1开始的页码，父类按它计算会差一页，这里使用父类从0开始的页码
+     */
+    @Override
+    public boolean hasPrevious() {
+        return keyset ? previousCursor != null : super.getNumber() > 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return keyset ? nextCursor != null : super.getNumber() + 1 < getTotalPages();
+    }
+
     public boolean getHasPrevious() {
-        return super.hasPrevious();
+        return hasPrevious();
     }
 
     public int getPrevious() {
@@ -74,13 +161,35 @@ public class Pagination<T> extends PageImpl<T> {
     }
 
     public boolean getHasNext() {
-        return super.hasNext();
+        return hasNext();
     }
 
     public int getNext() {
         return Math.min(super.getNumber() + 1, super.getTotalPages());
     }
 
+    public boolean isKeyset() {
+        return keyset;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    public boolean isCountless() {
+        return countless;
+    }
+
+    @Nullable
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Nullable
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
     @Override
     public int getTotalPages() {
         return super.getTotalPages();
@@ -137,17 +246,40 @@ public class Pagination<T> extends PageImpl<T> {
     }
 
 
-    public record Request(int pageNumber, int pageSize) {
+    /**
+     * 分页请求
+     *
+     * @param pageNumber  页码，从1开始
+     * @param pageSize    页长
+     * @param hasNextOnly 是否只需要知道有没有下一页（不统计总数），见 ${@link PageStrategy#HAS_NEXT}
+     */
+    public record Request(int pageNumber, int pageSize, boolean hasNextOnly) {
+
+        public Request(int pageNumber, int pageSize) {
+            this(pageNumber, pageSize, false);
+        }
 
         public static Request of(int pageNumber, int pageSize) {
             return new Request(pageNumber, pageSize);
         }
 
+        public static Request hasNextOnly(int pageNumber, int pageSize) {
+            return new Request(pageNumber, pageSize, true);
+        }
+
         @JsonIgnore
         public Pageable buildPageable() {
             return PageRequest.of(pageNumber - 1, pageSize);
         }
 
+        /**
+         * 分页请求指定的分页策略，没有指定的时候返回DEFAULT，以其他配置为准
+         * 这个函数名不能用get开头，swagger会报错
+         */
+        public PageStrategy takePageStrategy() {
+            return hasNextOnly ? PageStrategy.HAS_NEXT : PageStrategy.DEFAULT;
+        }
+
         public static Request defaultPage() {
             return new Request(1, 10);
         }
@@ -35,6 +35,13 @@ public class Seeker<T> {
      */
     private final Pagination.Request pagination;
 
+    /**
+     * 分页游标
+     * 不为null的时候使用游标分页（keyset分页）代替LIMIT/OFFSET分页，页长仍然取pagination中的pageSize
+     * 空字符串表示以游标分页的方式查询第一页，之后把返回的nextCursor/previousCursor原样传回即可
+     */
+    private String cursor;
+
     public Seeker() {
         this.probes = new ArrayList<>();
         this.sorters = new ArrayList<>();
@@ -48,6 +55,14 @@ public class Seeker<T> {
         return pagination.buildPageable();
     }
 
+    /**
+     * 是否使用游标分页
+     * 这个函数名不能用get开头，原因同上
+     */
+    public boolean takeKeyset() {
+        return cursor != null;
+    }
+
     /**
      * 用字段名来获取探机对象，方便外部修改
      * 如果没有，则创建一个，但是不添加到探机列表里
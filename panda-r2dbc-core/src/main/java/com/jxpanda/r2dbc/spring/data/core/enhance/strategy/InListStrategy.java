@@ -0,0 +1,30 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.strategy;
+
+/**
+ * IN查询（包括NOT IN）的渲染策略
+ * 默认每个元素一个占位符，元素数量不同SQL就不同，预编译语句无法复用，元素多的时候还会超出驱动的参数数量限制
+ * 对select、update、delete（包括逻辑删除和物理删除）的查询条件统一生效
+ * 默认值按数据库决定：PostgreSQL使用ARRAY，MySQL使用BUCKET，其他数据库使用EXPAND
+ */
+public enum InListStrategy {
+
+    /**
+     * 每个元素一个占位符：c IN (?, ?, ?)，与Spring Data R2DBC的行为一致
+     */
+    EXPAND,
+
+    /**
+     * 绑定一个数组：c = ANY(?)，NOT IN渲染为 c <> ALL(?)
+     * 不论元素有多少，SQL都是一样的，并且只占用一个参数，只有PostgreSQL支持
+     * 元素中有null或者类型不一致的时候，退化为EXPAND
+     */
+    ARRAY,
+
+    /**
+     * 元素数量补齐到2的幂（重复最后一个元素，不影响IN/NOT IN的结果），同一个字段的IN查询只会产生有限几种SQL
+     * 超过最大分桶的列表按最大分桶拆分为多个IN（c IN (...) OR c IN (...)，NOT IN用AND连接），最后一组补齐到2的幂
+     * 按id批量操作（byIds）的时候会按最大分桶拆分为多次执行，再合并结果
+     */
+    BUCKET
+
+}
@@ -0,0 +1,41 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.strategy;
+
+/**
+ * 分页查询策略
+ * 决定分页查询时数据查询与count查询的执行方式
+ * 优先级列表：调用时的选项（R2dbcOperationOption） > 类注解（@TableEntity） > 默认（LAZY）
+ */
+public enum PageStrategy {
+
+    /**
+     * 默认值，以优先级更低的配置为准
+     */
+    DEFAULT,
+
+    /**
+     * 先执行数据查询，只有当前页是满的（可能还有下一页）的时候，才再执行一次count查询
+     * 数据不满一页的时候只需要一次查询，满页的时候需要两次串行的查询
+     */
+    LAZY,
+
+    /**
+     * 在数据查询的查询列表中附加 COUNT(*) OVER()，从第一行数据中读取总数，一次查询完成分页
+     * 需要数据库支持窗口函数（PostgreSQL、MySQL 8.0+）
+     * 页码超出范围（查询不到数据）的时候，会再执行一次count查询
+     */
+    WINDOW,
+
+    /**
+     * 数据查询与count查询同时执行（各自使用独立的连接），耗时取两者中较长的一个
+     * 代价是每次分页都会执行count查询
+     */
+    PARALLEL,
+
+    /**
+     * 只判断是否有下一页，不统计总数，适用于无限滚动之类不需要总数的场景
+     * 多查询一条数据（pageSize + 1），查到了就说明有下一页，多出来的这条数据不会返回
+     * 任何情况下都不会执行count查询，分页对象中的总数只是已知的下限
+     */
+    HAS_NEXT
+
+}
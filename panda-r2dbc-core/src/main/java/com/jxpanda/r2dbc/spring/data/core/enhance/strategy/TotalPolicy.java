@@ -0,0 +1,34 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.strategy;
+
+/**
+ * 分页查询时总数的统计策略
+ * 优先级列表：调用时的选项（R2dbcOperationOption） > 类注解（@TableEntity） > 默认（EXACT）
+ */
+public enum TotalPolicy {
+
+    /**
+     * 默认值，以优先级更低的配置为准
+     */
+    DEFAULT,
+
+    /**
+     * 每次都执行count查询，总数是精确的
+     */
+    EXACT,
+
+    /**
+     * 按查询条件缓存count的结果，在存活时间内直接使用缓存
+     * 通过ReactiveEntityTemplate写入（新增、修改、删除）数据之后，对应实体的缓存会失效
+     * 绕过框架直接写库的数据变化只能等缓存过期
+     */
+    CACHED,
+
+    /**
+     * 使用数据库的统计信息估算总数，不扫描数据
+     * PostgreSQL：没有查询条件的时候使用pg_class.reltuples，否则使用EXPLAIN的估算行数
+     * MySQL：没有查询条件的时候使用information_schema.TABLES.TABLE_ROWS，有查询条件的时候退化为EXACT
+     * 其他数据库退化为EXACT
+     */
+    ESTIMATED
+
+}
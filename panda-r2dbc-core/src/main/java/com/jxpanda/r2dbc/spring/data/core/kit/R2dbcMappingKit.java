@@ -1,9 +1,8 @@
 package com.jxpanda.r2dbc.spring.data.core.kit;
 
-import com.jxpanda.r2dbc.spring.data.config.R2dbcEnvironment;
 import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.*;
 import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcCustomTypeHandlers;
-import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import org.springframework.data.mapping.IdentifierAccessor;
@@ -14,7 +13,6 @@ import org.springframework.data.relational.core.mapping.RelationalPersistentProp
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.data.relational.repository.support.MappingRelationalEntityInformation;
 import org.springframework.data.util.ProxyUtils;
-import org.springframework.data.util.StreamUtils;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
@@ -81,8 +79,7 @@ public class R2dbcMappingKit {
     }
 
     public static <E> boolean isAggregateEntity(RelationalPersistentEntity<E> relationalPersistentEntity) {
-        TableEntity tableEntity = relationalPersistentEntity.findAnnotation(TableEntity.class);
-        return tableEntity != null && tableEntity.aggregate();
+        return EntityDescriptor.of(relationalPersistentEntity).isAggregate();
     }
 
     public static <E> boolean isJoin(Class<E> entityClass) {
@@ -91,7 +88,7 @@ public class R2dbcMappingKit {
     }
 
     public static <E> boolean isJoin(RelationalPersistentEntity<E> relationalPersistentEntity) {
-        return relationalPersistentEntity.isAnnotationPresent(TableJoin.class);
+        return EntityDescriptor.of(relationalPersistentEntity).isJoin();
     }
 
     public static <E> List<RelationalPersistentProperty> getReferenceProperties(Class<E> entityClass) {
@@ -100,9 +97,7 @@ public class R2dbcMappingKit {
     }
 
     public static <E> List<RelationalPersistentProperty> getReferenceProperties(RelationalPersistentEntity<E> relationalPersistentEntity) {
-        return StreamUtils.createStreamFromIterator(relationalPersistentEntity.iterator())
-                .filter(property -> property.isAnnotationPresent(TableReference.class))
-                .toList();
+        return EntityDescriptor.of(relationalPersistentEntity).getReferenceProperties();
     }
 
 
@@ -121,11 +116,35 @@ public class R2dbcMappingKit {
         return tableColumn != null && tableColumn.exists();
     }
 
+    /**
+     * 按属性名或者列名（不区分大小写）查找字段
+     */
+    @Nullable
+    public static RelationalPersistentProperty findProperty(RelationalPersistentEntity<?> persistentEntity, String name) {
+        RelationalPersistentProperty property = persistentEntity.getPersistentProperty(name);
+        if (property != null) {
+            return property;
+        }
+        for (RelationalPersistentProperty persistentProperty : persistentEntity) {
+            if (persistentProperty.getColumnName().getReference().equalsIgnoreCase(name)) {
+                return persistentProperty;
+            }
+        }
+        return null;
+    }
+
     public static boolean isFunctionProperty(RelationalPersistentProperty property) {
         TableColumn tableColumn = property.findAnnotation(TableColumn.class);
         return tableColumn != null && !ObjectUtils.isEmpty(tableColumn.function());
     }
 
+    /**
+     * 字段是否需要使用类型处理器
+     */
+    public static boolean hasTypeHandler(RelationalPersistentProperty property) {
+        return staticTypeHandlers.hasTypeHandler(property);
+    }
+
     public static <T> Object getPropertyValue(T entity, RelationalPersistentEntity<T> relationalPersistentEntity, @Nullable RelationalPersistentProperty property) {
 
         if (property == null) {
@@ -138,7 +157,7 @@ public class R2dbcMappingKit {
         if (property.isIdProperty()) {
             IdentifierAccessor identifierAccessor = relationalPersistentEntity.getIdentifierAccessor(accessor.getBean());
             value = identifierAccessor.getIdentifier();
-        } else if (staticTypeHandlers.hasTypeHandler(property)) {
+        } else if (hasTypeHandler(relationalPersistentEntity, property)) {
             value = staticTypeHandlers.write(accessor.getProperty(property), property);
         } else {
             value = accessor.getProperty(property);
@@ -162,36 +181,12 @@ public class R2dbcMappingKit {
         }
         // 判别优先级
         // 字段上的配置 > 类上的配置 > 全局配置文件的配置
-
-        // 默认是全局校验策略
-        ValidationStrategy validationStrategy = R2dbcEnvironment.getMappingProperties().validationStrategy();
-
-        // 类上面的校验策略
-        TableEntity tableEntity = entity.findAnnotation(TableEntity.class);
-        if (tableEntity != null && tableEntity.validationPolicy() != ValidationStrategy.DEFAULT) {
-            validationStrategy = tableEntity.validationPolicy();
-        }
-
-        // id的校验策略
-        TableId tableId = property.findAnnotation(TableId.class);
-        if (tableId != null && tableId.validationPolicy() != ValidationStrategy.DEFAULT) {
-            validationStrategy = tableId.validationPolicy();
-        }
-
-        // 字段上的校验策略
-        TableColumn tableColumn = property.findAnnotation(TableColumn.class);
-        if (tableColumn != null && tableColumn.validationPolicy() != ValidationStrategy.DEFAULT) {
-            validationStrategy = tableColumn.validationPolicy();
-        }
-
-        // 使用策略判定字段是否有效
-        return validationStrategy.isEffective(value);
+        // 最终生效的策略在实体描述中已经计算好了
+        return EntityDescriptor.of(entity).getRequiredProperty(property).isEffective(value);
     }
 
-
-
-
-
-
+    private static <T> boolean hasTypeHandler(RelationalPersistentEntity<T> entity, RelationalPersistentProperty property) {
+        return EntityDescriptor.of(entity).getRequiredProperty(property).typeHandler();
+    }
 
 }
@@ -0,0 +1,79 @@
+package com.jxpanda.r2dbc.spring.data.core.kit;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Panda
+ */
+@UtilityClass
+public class TransactionKit {
+
+    /**
+     * 当前订阅是否处于实际的事务中
+     * 事务中读到的可能是未提交的数据，缓存、合并查询等共享数据的优化都不能在事务中使用
+     */
+    public static Mono<Boolean> isInTransaction() {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .map(TransactionSynchronizationManager::isActualTransactionActive)
+                .onErrorReturn(NoTransactionException.class, false);
+    }
+
+    /**
+     * 如果Context中有正在进行的事务，在事务提交之后执行action
+     * 用于在doOnEach之类的同步回调中注册，没有事务（或者事务没有开启同步）的时候什么也不做
+     *
+     * @param context 写操作所在订阅的Context
+     * @param action  事务提交之后执行的动作
+     */
+    public static void afterCommit(ContextView context, Runnable action) {
+        TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(synchronizationManager -> synchronizationManager.isActualTransactionActive() && synchronizationManager.isSynchronizationActive())
+                .contextWrite(Context.of(context))
+                // 从Context中获取事务是同步完成的，这里的订阅不会有异步的回调
+                .subscribe(synchronizationManager -> synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public Mono<Void> afterCommit() {
+                        return Mono.fromRunnable(action);
+                    }
+                }), error -> {
+                });
+    }
+
+    /**
+     * 如果Context中有正在进行的事务，在事务提交之后执行action，否则（自动提交）立即执行
+     * 事务回滚的时候action不会执行
+     *
+     * @param context 写操作所在订阅的Context
+     * @param action  写入生效之后执行的动作
+     * @return 是否推迟到了事务提交之后
+     */
+    public static boolean afterCommitOrNow(ContextView context, Runnable action) {
+        AtomicBoolean deferred = new AtomicBoolean();
+        TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(synchronizationManager -> synchronizationManager.isActualTransactionActive() && synchronizationManager.isSynchronizationActive())
+                .contextWrite(Context.of(context))
+                .subscribe(synchronizationManager -> {
+                    synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCommit() {
+                            return Mono.fromRunnable(action);
+                        }
+                    });
+                    deferred.set(true);
+                }, error -> {
+                });
+        if (!deferred.get()) {
+            action.run();
+        }
+        return deferred.get();
+    }
+
+}
@@ -0,0 +1,468 @@
+package com.jxpanda.r2dbc.spring.data.core.mapping;
+
+import com.jxpanda.r2dbc.spring.data.config.R2dbcEnvironment;
+import com.jxpanda.r2dbc.spring.data.config.properties.LogicDeletePluginProperties;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.*;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2DbcLogicDeletePlugin;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import lombok.Getter;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.sql.*;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 实体的元数据描述
+ * 所有执行器、转换器、插件需要的注解信息都在这里一次性解析好
+ * 每个实体（RelationalPersistentEntity）只会构建一次，构建完成之后不可变
+ * 缓存以实体对象为key，实体属于创建它的映射上下文，所以缓存的范围就是映射上下文：
+ * 新的映射上下文（例如重新创建了Spring容器）会按当时的全局配置（校验策略、逻辑删除等）重新构建，旧的映射上下文不再使用之后缓存随之释放
+ * 这样就不需要在每一次执行SQL（甚至是每一行数据）的时候重复遍历字段和查找注解了
+ *
+ * @author Panda
+ */
+@Getter
+public final class EntityDescriptor<T> {
+
+    private static final String SQL_AS = " AS ";
+
+    /**
+     * 实体没有重写equals，按对象比较；强引用，读取每一行数据都会用到，不能因为内存紧张被回收之后重新解析
+     */
+    private static final Map<RelationalPersistentEntity<?>, EntityDescriptor<?>> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类型
+     */
+    private final Class<T> type;
+
+    private final RelationalPersistentEntity<T> entity;
+
+    /**
+     * 带schema的表名
+     */
+    private final SqlIdentifier tableName;
+
+    /**
+     * 是否是聚合查询对象 ${@link TableEntity#aggregate()}
+     */
+    private final boolean aggregate;
+
+    /**
+     * 是否是连表查询对象 ${@link TableJoin}
+     */
+    private final boolean join;
+
+    @Nullable
+    private final RelationalPersistentProperty idProperty;
+
+    /**
+     * id字段的列名，没有id的对象为null
+     */
+    @Nullable
+    private final SqlIdentifier idColumn;
+
+    /**
+     * 所有字段的描述，顺序与实体字段的顺序一致
+     */
+    private final List<PropertyDescriptor> properties;
+
+    /**
+     * 真实存在于表中的字段
+     */
+    private final List<PropertyDescriptor> existsProperties;
+
+    /**
+     * 标记了${@link TableReference}的关联字段
+     */
+    private final List<RelationalPersistentProperty> referenceProperties;
+
+    /**
+     * 逻辑删除的配置
+     */
+    private final LogicDelete logicDelete;
+
+    /**
+     * 默认表的查询字段列表
+     */
+    private final List<Expression> projection;
+
+    private final Table table;
+
+    private final Map<String, PropertyDescriptor> propertyMap;
+
+    /**
+     * 类级别的校验策略（类注解 > 全局配置）
+     */
+    private final ValidationStrategy validationStrategy;
+
+    /**
+     * 类级别的分页策略（类注解 > 默认的LAZY）
+     */
+    private final PageStrategy pageStrategy;
+
+    /**
+     * 类级别的总数统计策略（类注解 > 默认的EXACT）
+     */
+    private final TotalPolicy totalPolicy;
+
+    /**
+     * 是否开启脏检查（@TableEntity(dirtyTracking = true)）
+     */
+    private final boolean dirtyTracking;
+
+    /**
+     * 实体缓存的配置（@TableEntity(cache = true)），没有开启的时候为null
+     */
+    @Nullable
+    private final CacheConfig cache;
+
+    /**
+     * 是否合并相同的并发查询（@TableEntity(singleFlight = true)）
+     */
+    private final boolean singleFlight;
+
+    /**
+     * 批量加载的配置（@TableEntity(batchLoad = true)），没有开启的时候为null
+     */
+    @Nullable
+    private final BatchLoadConfig batchLoad;
+
+    /**
+     * 常驻内存的配置（@TableEntity(resident = true)），没有开启的时候为null
+     */
+    @Nullable
+    private final ResidentConfig resident;
+
+    private EntityDescriptor(RelationalPersistentEntity<T> entity) {
+        this.type = entity.getType();
+        this.entity = entity;
+        this.tableName = entity.getQualifiedTableName();
+
+        TableEntity tableEntity = entity.findAnnotation(TableEntity.class);
+        this.aggregate = tableEntity != null && tableEntity.aggregate();
+        this.join = entity.isAnnotationPresent(TableJoin.class);
+
+        this.idProperty = entity.getIdProperty();
+        this.idColumn = this.idProperty == null ? null : this.idProperty.getColumnName();
+
+        // 全局的校验策略 < 类上的校验策略
+        ValidationStrategy entityValidationStrategy = R2dbcEnvironment.getMappingProperties().validationStrategy();
+        if (tableEntity != null && tableEntity.validationPolicy() != ValidationStrategy.DEFAULT) {
+            entityValidationStrategy = tableEntity.validationPolicy();
+        }
+        this.validationStrategy = entityValidationStrategy;
+        this.pageStrategy = tableEntity == null || tableEntity.pageStrategy() == PageStrategy.DEFAULT ? PageStrategy.LAZY : tableEntity.pageStrategy();
+        this.totalPolicy = tableEntity == null || tableEntity.totalPolicy() == TotalPolicy.DEFAULT ? TotalPolicy.EXACT : tableEntity.totalPolicy();
+        this.dirtyTracking = tableEntity != null && tableEntity.dirtyTracking();
+        this.singleFlight = tableEntity != null && tableEntity.singleFlight();
+
+        List<PropertyDescriptor> propertyList = new ArrayList<>();
+        List<RelationalPersistentProperty> referencePropertyList = new ArrayList<>();
+        Map<String, PropertyDescriptor> map = new HashMap<>();
+        for (RelationalPersistentProperty property : entity) {
+            PropertyDescriptor propertyDescriptor = PropertyDescriptor.build(property, entityValidationStrategy);
+            propertyList.add(propertyDescriptor);
+            map.put(property.getName(), propertyDescriptor);
+            if (property.isAnnotationPresent(TableReference.class)) {
+                referencePropertyList.add(property);
+            }
+        }
+        this.properties = Collections.unmodifiableList(propertyList);
+        this.existsProperties = propertyList.stream().filter(PropertyDescriptor::exists).toList();
+        this.referenceProperties = Collections.unmodifiableList(referencePropertyList);
+        this.propertyMap = Collections.unmodifiableMap(map);
+        this.logicDelete = LogicDelete.build(entity);
+        this.cache = CacheConfig.build(tableEntity, this.idProperty, this.referenceProperties);
+        this.batchLoad = BatchLoadConfig.build(tableEntity, this.idProperty);
+        this.resident = ResidentConfig.build(tableEntity, this.idProperty, this.referenceProperties);
+
+        this.table = Table.create(this.tableName);
+        this.projection = buildProjection(this.table);
+    }
+
+    /**
+     * 获取当前映射上下文中实体的描述
+     */
+    public static <T> EntityDescriptor<T> of(Class<T> type) {
+        return of(R2dbcMappingKit.getRequiredEntity(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityDescriptor<T> of(RelationalPersistentEntity<T> entity) {
+        return (EntityDescriptor<T>) CACHE.computeIfAbsent(entity, key -> new EntityDescriptor<>(entity));
+    }
+
+    /**
+     * 是否开启了实体缓存
+     */
+    public boolean isCacheable() {
+        return this.cache != null;
+    }
+
+    /**
+     * 获取字段的描述
+     */
+    @Nullable
+    public PropertyDescriptor getProperty(RelationalPersistentProperty property) {
+        PropertyDescriptor propertyDescriptor = propertyMap.get(property.getName());
+        return propertyDescriptor != null && propertyDescriptor.property() == property ? propertyDescriptor : null;
+    }
+
+    /**
+     * 获取字段的描述，字段不属于当前实体的时候（例如来自其他映射上下文），按当前实体的配置临时构建一个
+     */
+    public PropertyDescriptor getRequiredProperty(RelationalPersistentProperty property) {
+        PropertyDescriptor propertyDescriptor = getProperty(property);
+        return propertyDescriptor != null ? propertyDescriptor : PropertyDescriptor.build(property, this.validationStrategy);
+    }
+
+    /**
+     * 获取查询字段列表
+     * 使用默认表的时候直接返回预编译好的列表，否则基于传入的表重新构建
+     */
+    public List<Expression> getProjection(Table table) {
+        if (this.aggregate || this.table.equals(table)) {
+            return this.projection;
+        }
+        return buildProjection(table);
+    }
+
+    private List<Expression> buildProjection(Table table) {
+        return this.existsProperties.stream()
+                .map(PropertyDescriptor::property)
+                .map(property -> this.aggregate ? createFunction(property) : createColumn(property, table))
+                .toList();
+    }
+
+    private static Expression createColumn(RelationalPersistentProperty property, Table table) {
+        Expression expression;
+        if (property.isIdProperty()) {
+            expression = table.column(property.getColumnName());
+        } else {
+            TableColumn tableColumn = property.getRequiredAnnotation(TableColumn.class);
+            Table columnTable = tableColumn.fromTable().isEmpty() ? table : Table.create(tableColumn.fromTable());
+
+            String columnName = property.getColumnName().getReference();
+            boolean isColumnWithTable = columnName.contains(".");
+            String alias = tableColumn.alias();
+            if (alias.isEmpty()) {
+                if (isColumnWithTable) {
+                    expression = Expressions.just(columnName);
+                } else {
+                    expression = columnTable.column(property.getColumnName());
+                }
+            } else {
+                if (isColumnWithTable) {
+                    expression = Expressions.just(columnName + SQL_AS + alias);
+                } else {
+                    expression = Column.aliased(columnName, columnTable, alias);
+                }
+            }
+        }
+        return expression;
+    }
+
+    private static Expression createFunction(RelationalPersistentProperty property) {
+        // 聚合函数必须要使用Expressions.just()直接创建表达式
+        // 实测使用Column创建的话，会被添加表名作为前缀，导致SQL的语法是错的
+        TableColumn tableColumn = property.getRequiredAnnotation(TableColumn.class);
+        // 别名
+        String alias = tableColumn.alias();
+        if (!ObjectUtils.isEmpty(tableColumn.function())) {
+            Assert.isTrue(!ObjectUtils.isEmpty(alias), "Alias must not be null with function property");
+            // 如果是函数，则采用函数的方式创建函数
+            return SimpleFunction.create(tableColumn.function(), Collections.singletonList(Expressions.just(tableColumn.name())))
+                    .as(alias);
+        } else {
+            String sql = tableColumn.name();
+            // 如果设置了别名，添加别名的语法
+            if (!ObjectUtils.isEmpty(alias)) {
+                sql += SQL_AS + alias;
+            }
+            // 如果不是函数，直接创建标准表达式
+            return Expressions.just(sql);
+        }
+    }
+
+    /**
+     * 字段的描述
+     *
+     * @param property           字段
+     * @param exists             字段是否真实存在于表中
+     * @param function           是否是函数字段
+     * @param typeHandler        是否需要使用类型处理器
+     * @param validationStrategy 最终生效的校验策略（字段注解 > 类注解 > 全局配置）
+     * @param alias              字段的别名，没有设置别名的时候为空字符串
+     */
+    public record PropertyDescriptor(
+            RelationalPersistentProperty property,
+            boolean exists,
+            boolean function,
+            boolean typeHandler,
+            ValidationStrategy validationStrategy,
+            String alias
+    ) {
+
+        private static PropertyDescriptor build(RelationalPersistentProperty property, ValidationStrategy entityValidationStrategy) {
+            ValidationStrategy validationStrategy = entityValidationStrategy;
+
+            // id的校验策略
+            TableId tableId = property.findAnnotation(TableId.class);
+            if (tableId != null && tableId.validationPolicy() != ValidationStrategy.DEFAULT) {
+                validationStrategy = tableId.validationPolicy();
+            }
+
+            // 字段上的校验策略
+            TableColumn tableColumn = property.findAnnotation(TableColumn.class);
+            if (tableColumn != null && tableColumn.validationPolicy() != ValidationStrategy.DEFAULT) {
+                validationStrategy = tableColumn.validationPolicy();
+            }
+
+            return new PropertyDescriptor(property,
+                    R2dbcMappingKit.isPropertyExists(property),
+                    R2dbcMappingKit.isFunctionProperty(property),
+                    R2dbcMappingKit.hasTypeHandler(property),
+                    validationStrategy,
+                    tableColumn == null ? "" : tableColumn.alias());
+        }
+
+        /**
+         * 是否设置了别名
+         */
+        public boolean hasAlias() {
+            return !alias.isEmpty();
+        }
+
+        /**
+         * 字段在查询结果中的列名，设置了别名的时候是别名
+         */
+        public String getColumnLabel() {
+            return hasAlias() ? alias : property.getColumnName().getReference();
+        }
+
+        /**
+         * 使用最终生效的策略判定字段的值是否有效
+         */
+        public boolean isEffective(@Nullable Object value) {
+            return validationStrategy.isEffective(value);
+        }
+
+    }
+
+    /**
+     * 逻辑删除的描述
+     * 删除值和未删除值可能是动态的（例如当前时间），所以保存的是取值函数
+     *
+     * @param enable        是否开启了逻辑删除
+     * @param column        逻辑删除字段
+     * @param deleteValue   删除值
+     * @param undeleteValue 未删除值
+     */
+    public record LogicDelete(
+            boolean enable,
+            String column,
+            Supplier<Object> deleteValue,
+            Supplier<Object> undeleteValue
+    ) {
+
+        private static LogicDelete build(RelationalPersistentEntity<?> entity) {
+            RelationalPersistentProperty logicDeleteProperty = entity.getPersistentProperty(TableLogic.class);
+            LogicDeletePluginProperties logicDeleteProperties = R2dbcEnvironment.getLogicDeleteProperties();
+            if (logicDeleteProperty == null) {
+                // 如果没有配置逻辑删除的字段，以全局配置为准
+                // 开启了逻辑删除配置，并且配置了逻辑删除字段才生效
+                return new LogicDelete(
+                        logicDeleteProperties.enable() && !ObjectUtils.isEmpty(logicDeleteProperties.field()),
+                        logicDeleteProperties.field(),
+                        R2DbcLogicDeletePlugin.WhichValue.DELETE_VALUE.getValueSupplier(logicDeleteProperties.value()),
+                        R2DbcLogicDeletePlugin.WhichValue.UNDELETE_VALUE.getValueSupplier(logicDeleteProperties.value())
+                );
+            }
+            // 如果配置了逻辑删除字段，以注解的配置为准
+            TableLogic tableLogic = logicDeleteProperty.getRequiredAnnotation(TableLogic.class);
+            return new LogicDelete(
+                    tableLogic.enable(),
+                    logicDeleteProperty.getName(),
+                    R2DbcLogicDeletePlugin.WhichValue.DELETE_VALUE.getValueSupplier(tableLogic),
+                    R2DbcLogicDeletePlugin.WhichValue.UNDELETE_VALUE.getValueSupplier(tableLogic)
+            );
+        }
+
+    }
+
+    /**
+     * 实体缓存的配置
+     *
+     * @param maximumSize 最大数量
+     * @param timeToLive  存活时间
+     */
+    public record CacheConfig(int maximumSize, Duration timeToLive) {
+
+        /**
+         * 没有id或者带有关联字段的实体不缓存（关联数据的变化无法感知）
+         */
+        @Nullable
+        private static CacheConfig build(@Nullable TableEntity tableEntity, @Nullable RelationalPersistentProperty idProperty,
+                                         List<RelationalPersistentProperty> referenceProperties) {
+            if (tableEntity == null || !tableEntity.cache() || idProperty == null || !referenceProperties.isEmpty()) {
+                return null;
+            }
+            Assert.isTrue(tableEntity.cacheMaximumSize() > 0, "Cache maximum size must be greater than 0");
+            Assert.isTrue(tableEntity.cacheTimeToLive() > 0, "Cache time to live must be greater than 0");
+            return new CacheConfig(tableEntity.cacheMaximumSize(), Duration.ofSeconds(tableEntity.cacheTimeToLive()));
+        }
+
+    }
+
+    /**
+     * 批量加载的配置
+     *
+     * @param window      收集查询的时间窗口
+     * @param maximumSize 一批最多合并的id数量
+     */
+    public record BatchLoadConfig(Duration window, int maximumSize) {
+
+        @Nullable
+        private static BatchLoadConfig build(@Nullable TableEntity tableEntity, @Nullable RelationalPersistentProperty idProperty) {
+            if (tableEntity == null || !tableEntity.batchLoad() || idProperty == null) {
+                return null;
+            }
+            Assert.isTrue(tableEntity.batchLoadWindow() >= 0, "Batch load window must not be negative");
+            Assert.isTrue(tableEntity.batchLoadSize() > 0, "Batch load size must be greater than 0");
+            return new BatchLoadConfig(Duration.ofMillis(tableEntity.batchLoadWindow()), tableEntity.batchLoadSize());
+        }
+
+    }
+
+    /**
+     * 常驻内存的配置
+     *
+     * @param refreshInterval 定时刷新的间隔，为0的时候不定时刷新
+     */
+    public record ResidentConfig(Duration refreshInterval) {
+
+        @Nullable
+        private static ResidentConfig build(@Nullable TableEntity tableEntity, @Nullable RelationalPersistentProperty idProperty,
+                                            List<RelationalPersistentProperty> referenceProperties) {
+            if (tableEntity == null || !tableEntity.resident() || idProperty == null) {
+                return null;
+            }
+            Assert.isTrue(referenceProperties.isEmpty(), "Resident entity must not have reference properties");
+            Assert.isTrue(tableEntity.residentRefreshInterval() >= 0, "Resident refresh interval must not be negative");
+            return new ResidentConfig(Duration.ofSeconds(tableEntity.residentRefreshInterval()));
+        }
+
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * 实体元数据的预编译描述
+ */
+@org.springframework.lang.NonNullApi
+@org.springframework.lang.NonNullFields
+package com.jxpanda.r2dbc.spring.data.core.mapping;
@@ -1,9 +1,12 @@
 package com.jxpanda.r2dbc.spring.data.core.operation;
 
 import org.springframework.data.r2dbc.core.ReactiveDeleteOperation;
+import org.springframework.data.relational.core.query.Query;
 import org.springframework.lang.NonNull;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
 
 /**
@@ -13,6 +16,9 @@ public interface R2dbcDeleteOperation {
 
     <T> R2dbcDelete<T> delete(@NonNull Class<T> domainType);
 
+    /**
+     * 分片删除只能在matching（或者matchingAll）之后调用，避免漏掉条件的时候删除整张表
+     */
     interface R2dbcDelete<T> extends ReactiveDeleteOperation.ReactiveDelete {
 
         Mono<Boolean> using(T entity);
@@ -21,6 +27,33 @@ public interface R2dbcDeleteOperation {
 
         <ID> Mono<Long> byIds(Collection<ID> ids);
 
+        @NonNull
+        @Override
+        R2dbcDeleteOperation.TerminatingDelete matching(@NonNull Query query);
+
+        /**
+         * 显式地作用于整张表，分片删除在没有条件的时候只能通过这里调用
+         */
+        R2dbcDeleteOperation.TerminatingDelete matchingAll();
+
+    }
+
+    interface TerminatingDelete extends ReactiveDeleteOperation.TerminatingDelete {
+
+        /**
+         * 按主键顺序分片删除，每一片在独立的事务中执行，适用于一次删除大量数据的场景
+         * 条件不能为空（删除整张表使用matchingAll()），条件为空的时候返回InvalidDataAccessApiUsageException
+         *
+         * @param chunkSize 每一片的行数
+         * @param pause     片与片之间的停顿
+         * @return 每一片影响的行数
+         */
+        Flux<Long> chunked(int chunkSize, Duration pause);
+
+        default Flux<Long> chunked(int chunkSize) {
+            return chunked(chunkSize, Duration.ZERO);
+        }
+
     }
 
 }
@@ -1,7 +1,9 @@
 package com.jxpanda.r2dbc.spring.data.core.operation;
 
 import org.springframework.data.r2dbc.core.ReactiveInsertOperation;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.Collection;
 
@@ -12,10 +14,20 @@ import java.util.Collection;
 public interface R2dbcInsertOperation extends ReactiveInsertOperation {
 
 
-    interface R2dbcInsert<T> extends ReactiveInsertOperation.ReactiveInsert<T> {
+    interface R2dbcInsert<T> extends ReactiveInsertOperation.ReactiveInsert<T>, R2dbcOperation<T, R2dbcInsert<T>> {
 
         Flux<T> batch(Collection<T> objectList);
 
+        /**
+         * 批量导入大量数据
+         * PostgreSQL使用COPY，其他数据库使用分块的多行INSERT
+         * COPY不会回填数据库生成的主键，适用于id由客户端生成（例如雪花算法）的场景
+         *
+         * @param objects 要导入的数据，按背压逐步消费
+         * @return 导入的行数
+         */
+        Mono<Long> bulkLoad(Publisher<T> objects);
+
     }
 
 }
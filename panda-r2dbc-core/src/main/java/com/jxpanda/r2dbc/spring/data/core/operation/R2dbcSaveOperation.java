@@ -8,13 +8,14 @@ import java.util.Collection;
 /**
  * 保存操作
  * 逻辑上有主键则更新，没有主键则插入
+ * 显式调用 ${@link R2dbcSave#upsert()} 或 ${@link R2dbcSave#onConflict(String...)} 的时候使用数据库的upsert（插入，冲突时更新）实现
  * @author Panda
  */
 public interface R2dbcSaveOperation {
 
     <T> R2dbcSave<T> save(Class<T> domainType);
 
-    interface R2dbcSave<T> {
+    interface R2dbcSave<T> extends R2dbcOperation<T, R2dbcSave<T>> {
         /**
          * 保存一条数据，有id则更新，没有id则创建
          */
@@ -22,6 +23,20 @@ public interface R2dbcSaveOperation {
 
         Flux<T> batch(Collection<T> objectList);
 
+        /**
+         * 使用upsert保存（按id冲突），只有PostgreSQL、MySQL支持，其他数据库执行的时候抛出UnsupportedOperationException
+         * upsert按整行插入，实体需要带上所有非空且没有默认值的列，只带部分字段的更新请使用默认的保存方式
+         */
+        R2dbcSave<T> upsert();
+
+        /**
+         * 使用upsert保存，并指定冲突的列（唯一约束），默认是id
+         * PostgreSQL生成 ON CONFLICT (columns)，MySQL不能指定冲突的列，任何唯一索引冲突都会触发更新
+         *
+         * @param columns 属性名或者列名
+         */
+        R2dbcSave<T> onConflict(String... columns);
+
     }
 
 }
@@ -2,10 +2,12 @@ package com.jxpanda.r2dbc.spring.data.core.operation;
 
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.seeker.Seeker;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.r2dbc.core.ReactiveSelectOperation;
 import org.springframework.data.relational.core.query.Query;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -33,10 +35,29 @@ public interface R2dbcSelectOperation {
 
         Mono<Pagination<T>> page(Pageable pageable);
 
+        /**
+         * 使用指定的分页策略分页，DEFAULT表示以选项、类注解上的配置为准
+         */
+        Mono<Pagination<T>> page(Pageable pageable, PageStrategy pageStrategy);
+
         default Mono<Pagination<T>> page(int page, int size) {
             return page(Pagination.of(page, size));
         }
 
+        default Mono<Pagination<T>> page(Pagination.Request request) {
+            return page(request.buildPageable(), request.takePageStrategy());
+        }
+
+        /**
+         * 游标分页（keyset分页）
+         * 使用查询条件中的排序（没有排序则按id正序），用游标代替OFFSET翻页，适用于深度翻页的场景
+         *
+         * @param cursor   上一次查询返回的nextCursor/previousCursor，为空表示查询第一页
+         * @param pageSize 页长
+         * @return 分页对象，携带上一页/下一页的游标，不做count查询
+         */
+        Mono<Pagination<T>> keyset(@Nullable String cursor, int pageSize);
+
 
     }
 
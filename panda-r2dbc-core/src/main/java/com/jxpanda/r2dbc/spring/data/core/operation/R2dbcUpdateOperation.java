@@ -1,22 +1,121 @@
 package com.jxpanda.r2dbc.spring.data.core.operation;
 
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.criteria.AccessorFunction;
+import com.jxpanda.r2dbc.spring.data.infrastructure.kit.ReflectionKit;
 import org.springframework.data.r2dbc.core.ReactiveUpdateOperation;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
 
 public interface R2dbcUpdateOperation {
 
     <T> R2dbcUpdate<T> update(@NonNull Class<T> domainType);
 
-    interface R2dbcUpdate<T> extends ReactiveUpdateOperation.ReactiveUpdate {
+    /**
+     * 分片更新、增量更新只能在matching（或者matchingAll）之后调用，避免漏掉条件的时候更新整张表
+     */
+    interface R2dbcUpdate<T> extends ReactiveUpdateOperation.ReactiveUpdate, R2dbcOperation<T, R2dbcUpdate<T>> {
 
         Mono<T> using(T entity);
 
         Flux<T> batch(Collection<T> objectList);
 
+        @NonNull
+        @Override
+        R2dbcUpdateOperation.TerminatingUpdate matching(@NonNull Query query);
+
+        /**
+         * 显式地作用于整张表，分片更新、增量更新在没有条件的时候只能通过这里调用
+         */
+        R2dbcUpdateOperation.TerminatingUpdate matchingAll();
+
+    }
+
+    interface TerminatingUpdate extends ReactiveUpdateOperation.TerminatingUpdate {
+
+        /**
+         * 按主键顺序分片更新，每一片在独立的事务中执行，适用于一次更新大量数据的场景
+         * 条件不能为空（更新整张表使用matchingAll()），条件为空的时候返回InvalidDataAccessApiUsageException
+         *
+         * @param update    更新的内容
+         * @param chunkSize 每一片的行数
+         * @param pause     片与片之间的停顿
+         * @return 每一片影响的行数
+         */
+        Flux<Long> applyChunked(Update update, int chunkSize, Duration pause);
+
+        default Flux<Long> applyChunked(Update update, int chunkSize) {
+            return applyChunked(update, chunkSize, Duration.ZERO);
+        }
+
+        /**
+         * 原子增量更新：SET c = c + delta，在数据库中完成计算，不需要先查询再更新
+         * 条件不能为空（更新整张表使用matchingAll()），条件为空的时候返回InvalidDataAccessApiUsageException
+         *
+         * @param column 字段（属性名或者列名）
+         * @param delta  增量
+         * @return 影响的行数
+         */
+        Mono<Long> increment(String column, Number delta);
+
+        default <E> Mono<Long> increment(AccessorFunction<E, ? extends Number> column, Number delta) {
+            return increment(column.getColumnName(), delta);
+        }
+
+        /**
+         * 原子扣减：SET c = c - delta，floor不为null的时候附加条件 c >= floor + delta（即扣减之后不小于floor），不满足的行不会被更新
+         * 例如扣减库存：decrement("stock", 1, 0)，影响行数为0说明库存不足（或者数据不存在）
+         * 条件不能为空（更新整张表使用matchingAll()），条件为空的时候返回InvalidDataAccessApiUsageException
+         *
+         * @param column 字段（属性名或者列名）
+         * @param delta  扣减的数量
+         * @param floor  扣减之后的下限，不限制传null
+         * @return 影响的行数
+         */
+        Mono<Long> decrement(String column, Number delta, @Nullable Number floor);
+
+        default Mono<Long> decrement(String column, Number delta) {
+            return decrement(column, delta, null);
+        }
+
+        default <E> Mono<Long> decrement(AccessorFunction<E, ? extends Number> column, Number delta, @Nullable Number floor) {
+            return decrement(column.getColumnName(), delta, floor);
+        }
+
+        default <E> Mono<Long> decrement(AccessorFunction<E, ? extends Number> column, Number delta) {
+            return decrement(column.getColumnName(), delta, null);
+        }
+
+        /**
+         * 原子增量更新，并返回每一个被更新的行更新后的值（UPDATE ... RETURNING，只有PostgreSQL支持）
+         */
+        <V> Flux<V> incrementAndGet(String column, Number delta, Class<V> valueType);
+
+        default <E, V extends Number> Flux<V> incrementAndGet(AccessorFunction<E, V> column, Number delta) {
+            return incrementAndGet(column.getColumnName(), delta, valueType(column));
+        }
+
+        /**
+         * 原子扣减，并返回每一个被更新的行更新后的值（UPDATE ... RETURNING，只有PostgreSQL支持）
+         */
+        <V> Flux<V> decrementAndGet(String column, Number delta, @Nullable Number floor, Class<V> valueType);
+
+        default <E, V extends Number> Flux<V> decrementAndGet(AccessorFunction<E, V> column, Number delta, @Nullable Number floor) {
+            return decrementAndGet(column.getColumnName(), delta, floor, valueType(column));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Class<V> valueType(AccessorFunction<?, V> column) {
+            return (Class<V>) ClassUtils.resolvePrimitiveIfNecessary(ReflectionKit.getFieldFromAccessorFunction(column).getType());
+        }
+
     }
 
 }
@@ -0,0 +1,50 @@
+package com.jxpanda.r2dbc.spring.data.core.operation;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+
+/**
+ * 数据写入的监听器
+ * 通过ReactiveEntityTemplate执行的写操作（新增、修改、删除、销毁）成功之后回调
+ * 主要用于让框架内部的各种缓存（总数缓存等）及时失效
+ *
+ * @author Panda
+ */
+@FunctionalInterface
+public interface R2dbcWriteListener {
+
+    /**
+     * 写操作执行成功之后回调
+     * 回调发生在语句执行成功之后，如果处于事务中，此时事务还没有提交，事务提交之后会再回调一次
+     *
+     * @param domainType 写入的实体类型
+     */
+    void onWrite(Class<?> domainType);
+
+    /**
+     * 按实体写入（新增、修改、保存、按实体删除）执行成功之后回调，此时知道被写入的行的id
+     * 按条件的写操作不知道影响了哪些行，只会回调 ${@link #onWrite(Class)}
+     * 默认等同于 ${@link #onWrite(Class)}
+     *
+     * @param domainType 写入的实体类型
+     * @param ids        被写入的行的id（新增的实体还没有id的时候不包含在内）
+     */
+    default void onWrite(Class<?> domainType, Collection<?> ids) {
+        onWrite(domainType);
+    }
+
+    /**
+     * 按实体写入执行成功之后回调，带上写入方的路由的key（${@link com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcRoutingKeyResolver}）
+     * 写入只会影响这个路由下的数据，按路由区分的缓存只需要淘汰这个路由下的id
+     * 默认等同于 ${@link #onWrite(Class, Collection)}
+     *
+     * @param domainType 写入的实体类型
+     * @param ids        被写入的行的id
+     * @param routingKey 写入方的路由的key，没有路由的时候为null
+     */
+    default void onWrite(Class<?> domainType, Collection<?> ids, @Nullable Object routingKey) {
+        onWrite(domainType, ids);
+    }
+
+}
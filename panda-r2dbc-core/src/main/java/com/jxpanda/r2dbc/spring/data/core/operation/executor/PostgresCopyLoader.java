@@ -0,0 +1,172 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.codec.Json;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Wrapped;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.sql.IdentifierProcessing;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.Parameter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * PostgreSQL的COPY批量导入
+ * 把实体转换后的行数据编码为COPY的文本格式（制表符分隔，\N表示null），以流的方式写入 COPY ... FROM STDIN
+ * 编码和发送都受驱动的背压控制，不会把全部数据加载到内存中
+ * PostgreSQL驱动是compileOnly依赖，这个类只在驱动存在的时候才会被加载
+ *
+ * @author Panda
+ */
+final class PostgresCopyLoader {
+
+    /**
+     * 多少行数据合并为一个ByteBuf发送
+     */
+    private static final int ROWS_PER_BUFFER = 256;
+
+    private static final String NULL_VALUE = "\\N";
+
+    private PostgresCopyLoader() {
+    }
+
+    /**
+     * 连接是否是PostgreSQL驱动的连接（连接池、Spring的代理会包装一层，需要解开）
+     */
+    static boolean isSupported(Connection connection) {
+        return unwrap(connection) != null;
+    }
+
+    static String copySql(SqlIdentifier tableName, List<SqlIdentifier> columns, IdentifierProcessing identifierProcessing) {
+        StringJoiner columnList = new StringJoiner(", ", " (", ")");
+        columns.forEach(column -> columnList.add(column.toSql(identifierProcessing)));
+        return "COPY " + tableName.toSql(identifierProcessing) + columnList + " FROM STDIN";
+    }
+
+    /**
+     * 执行COPY
+     *
+     * @param connection 连接，必须是 ${@link #isSupported(Connection)} 的连接
+     * @param sql        COPY语句
+     * @param lines      编码好的行数据（每一行以换行符结尾）
+     * @return 导入的行数
+     */
+    static Mono<Long> copyIn(Connection connection, String sql, Flux<String> lines) {
+        PostgresqlConnection postgresqlConnection = unwrap(connection);
+        if (postgresqlConnection == null) {
+            return Mono.error(new IllegalStateException("COPY requires a PostgreSQL connection"));
+        }
+        Flux<ByteBuf> buffers = lines.buffer(ROWS_PER_BUFFER)
+                .map(chunk -> Unpooled.wrappedBuffer(String.join("", chunk).getBytes(StandardCharsets.UTF_8)));
+        return postgresqlConnection.copyIn(sql, buffers);
+    }
+
+    /**
+     * 把一行数据编码为COPY文本格式的一行
+     */
+    static String encodeRow(List<SqlIdentifier> columns, OutboundRow outboundRow) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            Parameter parameter = outboundRow.get(columns.get(i));
+            Object value = parameter == null ? null : parameter.getValue();
+            if (value == null) {
+                line.append(NULL_VALUE);
+            } else {
+                escape(line, toText(value));
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    /**
+     * 转换为PostgreSQL能识别的文本输入格式
+     */
+    private static String toText(Object value) {
+        if (value instanceof Boolean booleanValue) {
+            return booleanValue ? "t" : "f";
+        }
+        if (value instanceof byte[] bytes) {
+            return "\\x" + HexFormat.of().formatHex(bytes);
+        }
+        if (value instanceof Json json) {
+            return json.asString();
+        }
+        if (value instanceof Enum<?> enumValue) {
+            return enumValue.name();
+        }
+        if (value instanceof Collection<?> collection) {
+            return toArrayText(collection.toArray());
+        }
+        if (value.getClass().isArray()) {
+            Object[] elements = new Object[Array.getLength(value)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = Array.get(value, i);
+            }
+            return toArrayText(elements);
+        }
+        // 数字、字符串、UUID、java.time下的类型的toString()都是PostgreSQL能识别的格式
+        return value.toString();
+    }
+
+    /**
+     * 数组的文本格式：{"a","b",NULL}
+     */
+    private static String toArrayText(Object[] elements) {
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        for (Object element : elements) {
+            if (element == null) {
+                joiner.add("NULL");
+            } else {
+                String text = toText(element);
+                joiner.add("\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+            }
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * COPY文本格式中，反斜杠、制表符、换行符、回车符需要转义
+     */
+    private static void escape(StringBuilder line, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> line.append("\\\\");
+                case '\t' -> line.append("\\t");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                default -> line.append(c);
+            }
+        }
+    }
+
+    @Nullable
+    private static PostgresqlConnection unwrap(Object connection) {
+        Object current = connection;
+        while (current != null) {
+            if (current instanceof PostgresqlConnection postgresqlConnection) {
+                return postgresqlConnection;
+            }
+            if (!(current instanceof Wrapped<?> wrapped) || wrapped.unwrap() == current) {
+                return null;
+            }
+            current = wrapped.unwrap();
+        }
+        return null;
+    }
+
+}
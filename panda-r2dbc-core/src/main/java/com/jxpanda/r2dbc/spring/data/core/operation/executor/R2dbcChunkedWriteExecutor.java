@@ -0,0 +1,226 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginContext;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginName;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 分片执行的批量更新/删除
+ * 按条件更新或删除大量数据的时候，一条语句会长时间持有锁，还会拖慢从库的复制
+ * 这里按主键顺序分片：每次查询出一片（chunkSize条）满足条件的id，再对这些id执行更新或删除，每一片在独立的短事务中执行
+ * 片与片之间可以停顿一段时间，返回的Flux按片发出每一片影响的行数，可以用来展示进度
+ * 删除遵循逻辑删除的配置：开启了逻辑删除的实体执行逻辑删除，并且不会再选中已经逻辑删除的数据
+ *
+ * @author Panda
+ */
+public class R2dbcChunkedWriteExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T, Long> {
+
+    /**
+     * 更新的内容，为null表示删除
+     */
+    @Nullable
+    private final Supplier<Update> updateSupplier;
+
+    /**
+     * 是否物理删除
+     */
+    private final boolean destroy;
+
+    private final int chunkSize;
+
+    private final Duration pause;
+
+    private R2dbcChunkedWriteExecutor(R2dbcOperationParameter<T, Long> operationParameter,
+                                      Function<R2dbcOperationParameter<T, Long>, Query> queryHandler,
+                                      @Nullable Supplier<Update> updateSupplier, boolean destroy,
+                                      int chunkSize, Duration pause) {
+        super(operationParameter, queryHandler);
+        Assert.isTrue(chunkSize > 0, "Chunk size must be greater than 0");
+        this.updateSupplier = updateSupplier;
+        this.destroy = destroy;
+        this.chunkSize = chunkSize;
+        this.pause = pause == null || pause.isNegative() ? Duration.ZERO : pause;
+    }
+
+    public static <T> R2dbcChunkedWriteExecutorBuilder<T> builder() {
+        return new R2dbcChunkedWriteExecutorBuilder<>();
+    }
+
+    @Override
+    protected Mono<Long> fetch(R2dbcOperationParameter<T, Long> parameter) {
+        return chunked(parameter).reduce(0L, Long::sum);
+    }
+
+    @Override
+    protected Mono<Long> fetch(T domainEntity, R2dbcOperationParameter<T, Long> parameter) {
+        throw new UnsupportedOperationException("Unsupported operation");
+    }
+
+    /**
+     * 分片执行，每执行完一片发出这一片影响的行数
+     * 每一片提交之后都会通知写监听器
+     */
+    public Flux<Long> executeChunked() {
+        return Flux.defer(() -> chunked(handleQuery()));
+    }
+
+    private Flux<Long> chunked(R2dbcOperationParameter<T, Long> parameter) {
+        if (this.destroy) {
+            // 物理删除就是强制禁用逻辑删除
+            parameter.getOption().disablePlugin(R2dbcPluginName.LOGIC_DELETE);
+        }
+        RelationalPersistentProperty idProperty = parameter.getRelationalPersistentEntity().getRequiredIdProperty();
+        CriteriaDefinition criteria = parameter.getQuery().getCriteria().orElse(Criteria.empty());
+        CriteriaDefinition selectCriteria = this.updateSupplier == null ? undeletedCriteria(parameter, criteria) : criteria;
+        // 每一片都在独立的事务中提交，外层有事务的时候也不会合并成一个大事务
+        TransactionalOperator sliceTransaction = transactionalOperator(TransactionDefinition.PROPAGATION_REQUIRES_NEW,
+                TransactionDefinition.ISOLATION_DEFAULT, TransactionDefinition.TIMEOUT_DEFAULT, false);
+
+        return slice(parameter, idProperty, criteria, selectCriteria, null, sliceTransaction)
+                .expand(slice -> {
+                    if (!hasNext(slice)) {
+                        return Mono.empty();
+                    }
+                    Mono<Slice> next = slice(parameter, idProperty, criteria, selectCriteria, slice.lastId(), sliceTransaction);
+                    return this.pause.isZero() ? next : Mono.delay(this.pause).then(next);
+                })
+                .filter(slice -> slice.size() > 0)
+                .map(Slice::rowsAffected);
+    }
+
+    /**
+     * 执行一片：查询出主键大于lastId的chunkSize个id，再按这些id（加上原本的条件）更新或删除
+     */
+    private Mono<Slice> slice(R2dbcOperationParameter<T, Long> parameter, RelationalPersistentProperty idProperty,
+                              CriteriaDefinition criteria, CriteriaDefinition selectCriteria,
+                              @Nullable Object lastId, TransactionalOperator sliceTransaction) {
+        return selectIds(parameter, idProperty, selectCriteria, lastId)
+                .flatMap(ids -> {
+                    if (ids.isEmpty()) {
+                        return Mono.just(new Slice(0, 0L, lastId));
+                    }
+                    Query sliceQuery = Query.query(and(Criteria.where(idProperty.getName()).in(ids), criteria));
+                    Mono<Long> write = this.updateSupplier == null
+                            ? swap(R2dbcDeleteExecutor::<T, Long>builder).queryHandler(it -> sliceQuery).build().execute()
+                            : swap(R2dbcUpdateExecutor::<T, Long>builder).queryHandler(it -> sliceQuery).updateSupplier(this.updateSupplier).build().execute();
+                    return write.defaultIfEmpty(0L)
+                            .map(rowsAffected -> new Slice(ids.size(), rowsAffected, ids.get(ids.size() - 1)));
+                })
+                .as(sliceTransaction::transactional);
+    }
+
+    private Mono<List<Object>> selectIds(R2dbcOperationParameter<T, Long> parameter, RelationalPersistentProperty idProperty,
+                                         CriteriaDefinition criteria, @Nullable Object lastId) {
+        CriteriaDefinition sliceCriteria = lastId == null ? criteria : and(Criteria.where(idProperty.getName()).greaterThan(lastId), criteria);
+        StatementMapper statementMapper = parameter.getStatementMapper();
+        StatementMapper.SelectSpec selectSpec = statementMapper.createSelect(parameter.getTableName())
+                .withProjection(idProperty.getColumnName())
+                .withSort(Sort.by(Sort.Direction.ASC, idProperty.getName()))
+                .limit(this.chunkSize);
+        if (!sliceCriteria.isEmpty()) {
+            selectSpec = selectSpec.withCriteria(sliceCriteria);
+        }
+        return databaseClient().sql(statementMapper.getMappedObject(selectSpec))
+                .map((row, rowMetadata) -> row.get(0))
+                .all()
+                .collectList();
+    }
+
+    /**
+     * 逻辑删除的时候，不再选中已经逻辑删除的数据（与查询执行器一样执行逻辑删除插件）
+     */
+    private CriteriaDefinition undeletedCriteria(R2dbcOperationParameter<T, Long> parameter, CriteriaDefinition criteria) {
+        R2dbcPluginContext<T, Long, CriteriaDefinition> pluginContext = parameter.createPluginContext(R2dbcPluginName.LOGIC_DELETE, CriteriaDefinition.class, criteria);
+        return pluginExecutor().run(pluginContext).takeResult().orElse(criteria);
+    }
+
+    private static CriteriaDefinition and(Criteria key, CriteriaDefinition criteria) {
+        return criteria.isEmpty() ? key : key.and(criteria);
+    }
+
+    /**
+     * 一片的执行结果
+     *
+     * @param size         这一片选中的id数量
+     * @param rowsAffected 这一片影响的行数
+     * @param lastId       这一片最后一个id，下一片从这个id之后开始
+     */
+    private record Slice(int size, long rowsAffected, @Nullable Object lastId) {
+    }
+
+    /**
+     * 选满了一片说明后面可能还有数据
+     */
+    private boolean hasNext(Slice slice) {
+        return slice.size() == this.chunkSize;
+    }
+
+    public static final class R2dbcChunkedWriteExecutorBuilder<T> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, Long, R2dbcChunkedWriteExecutor<T>, R2dbcChunkedWriteExecutorBuilder<T>> {
+
+        private Supplier<Update> updateSupplier;
+
+        private boolean destroy;
+
+        private int chunkSize;
+
+        private Duration pause;
+
+        /**
+         * 更新的内容，不设置表示删除
+         */
+        public R2dbcChunkedWriteExecutorBuilder<T> updateSupplier(Supplier<Update> updateSupplier) {
+            this.updateSupplier = updateSupplier;
+            return this;
+        }
+
+        /**
+         * 物理删除（忽略逻辑删除的配置）
+         */
+        public R2dbcChunkedWriteExecutorBuilder<T> destroy(boolean destroy) {
+            this.destroy = destroy;
+            return this;
+        }
+
+        public R2dbcChunkedWriteExecutorBuilder<T> chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * 片与片之间的停顿
+         */
+        public R2dbcChunkedWriteExecutorBuilder<T> pause(Duration pause) {
+            this.pause = pause;
+            return this;
+        }
+
+        @Override
+        public R2dbcChunkedWriteExecutor<T> buildExecutor() {
+            return new R2dbcChunkedWriteExecutor<>(operationParameter, queryHandler, updateSupplier, destroy, chunkSize, pause);
+        }
+
+        @Override
+        protected R2dbcChunkedWriteExecutorBuilder<T> self() {
+            return this;
+        }
+
+    }
+
+}
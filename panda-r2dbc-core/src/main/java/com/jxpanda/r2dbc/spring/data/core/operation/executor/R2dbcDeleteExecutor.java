@@ -54,13 +54,16 @@ public class R2dbcDeleteExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
         StatementMapper.DeleteSpec deleteSpec = statementMapper.createDelete(tableName);
 
         Optional<CriteriaDefinition> criteria = query.getCriteria();
-        if (criteria.isPresent()) {
-            deleteSpec = criteria.map(deleteSpec::withCriteria).orElse(deleteSpec);
+        if (criteria.isEmpty() || criteria.get().isEmpty()) {
+            return delete(statementMapper, deleteSpec).cast(parameter.getReturnType());
         }
+        return executePartitioned(criteria.get(), 0, partition -> delete(statementMapper, deleteSpec.withCriteria(partition)))
+                .cast(parameter.getReturnType());
+    }
 
+    private Mono<Long> delete(StatementMapper statementMapper, StatementMapper.DeleteSpec deleteSpec) {
         PreparedOperation<?> operation = statementMapper.getMappedObject(deleteSpec);
-        return this.databaseClient().sql(operation).fetch().rowsUpdated().defaultIfEmpty(0L)
-                .cast(parameter.getReturnType());
+        return this.databaseClient().sql(operation).fetch().rowsUpdated().defaultIfEmpty(0L);
     }
 
     @Override
@@ -0,0 +1,144 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.R2dbcStatementMapper;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * 原子增量更新执行器：UPDATE t SET c = c + ? WHERE ...
+ * 用于库存、余额、浏览数之类的计数器，在数据库中完成计算，不需要"查询-修改-按id更新"，也不会在并发下反复触发乐观锁冲突
+ * 可以限制更新后的值的下限（例如库存不能为负数），不满足的行不会被更新，通过影响行数判断是否扣减成功
+ *
+ * @author Panda
+ */
+public class R2dbcIncrementExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T, Long> {
+
+    /**
+     * 增量更新的字段（属性名或者列名）
+     */
+    private final String column;
+
+    private final Number delta;
+
+    /**
+     * 是否是减少
+     */
+    private final boolean subtract;
+
+    /**
+     * 更新后的值的下限，为null表示不限制
+     */
+    @Nullable
+    private final Number floor;
+
+    private R2dbcIncrementExecutor(R2dbcOperationParameter<T, Long> operationParameter,
+                                   Function<R2dbcOperationParameter<T, Long>, Query> queryHandler,
+                                   String column, Number delta, boolean subtract, @Nullable Number floor) {
+        super(operationParameter, queryHandler);
+        Assert.hasText(column, "Column must not be empty");
+        Assert.notNull(delta, "Delta must not be null");
+        this.column = column;
+        this.delta = delta;
+        this.subtract = subtract;
+        this.floor = floor;
+    }
+
+    public static <T> R2dbcIncrementExecutorBuilder<T> builder() {
+        return new R2dbcIncrementExecutorBuilder<>();
+    }
+
+    @Override
+    protected Mono<Long> fetch(R2dbcOperationParameter<T, Long> parameter) {
+        // 字段不存在的时候通过Mono返回错误，而不是在组装的时候抛出异常
+        return Mono.defer(() -> databaseClient().sql(getMappedObject(parameter, false))
+                .fetch()
+                .rowsUpdated()
+                .defaultIfEmpty(0L));
+    }
+
+    @Override
+    protected Mono<Long> fetch(T domainEntity, R2dbcOperationParameter<T, Long> parameter) {
+        throw new UnsupportedOperationException("Unsupported operation");
+    }
+
+    /**
+     * 执行增量更新，并返回每一个被更新的行更新后的值（UPDATE ... RETURNING，只有PostgreSQL支持）
+     *
+     * @param valueType 值的类型
+     */
+    public <V> Flux<V> executeReturning(Class<V> valueType) {
+        return Flux.defer(() -> databaseClient().sql(getMappedObject(handleQuery(), true))
+                        .map((row, rowMetadata) -> row.get(0, valueType))
+                        .all())
+                .doOnEach(onWriteComplete());
+    }
+
+    private PreparedOperation<?> getMappedObject(R2dbcOperationParameter<T, Long> parameter, boolean returning) {
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        RelationalPersistentProperty property = R2dbcMappingKit.findProperty(persistentEntity, this.column);
+        if (property == null) {
+            throw new IllegalArgumentException("Column '" + this.column + "' is not a property of " + persistentEntity.getType().getName());
+        }
+        RelationalPersistentProperty versionProperty = persistentEntity.getVersionProperty();
+        R2dbcStatementMapper statementMapper = template().getStatementMapper();
+        return statementMapper.getMappedIncrementObject(parameter.getTableName(), property.getColumnName(),
+                this.delta, this.subtract, this.floor,
+                versionProperty == null ? null : versionProperty.getColumnName(),
+                parameter.getQuery().getCriteria().orElse(null), returning, persistentEntity);
+    }
+
+    public static final class R2dbcIncrementExecutorBuilder<T> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, Long, R2dbcIncrementExecutor<T>, R2dbcIncrementExecutorBuilder<T>> {
+
+        private String column;
+
+        private Number delta;
+
+        private boolean subtract;
+
+        private Number floor;
+
+        public R2dbcIncrementExecutorBuilder<T> column(String column) {
+            this.column = column;
+            return this;
+        }
+
+        public R2dbcIncrementExecutorBuilder<T> delta(Number delta) {
+            this.delta = delta;
+            return this;
+        }
+
+        public R2dbcIncrementExecutorBuilder<T> subtract(boolean subtract) {
+            this.subtract = subtract;
+            return this;
+        }
+
+        /**
+         * 更新后的值的下限
+         */
+        public R2dbcIncrementExecutorBuilder<T> floor(Number floor) {
+            this.floor = floor;
+            return this;
+        }
+
+        @Override
+        public R2dbcIncrementExecutor<T> buildExecutor() {
+            return new R2dbcIncrementExecutor<>(operationParameter, queryHandler, column, delta, subtract, floor);
+        }
+
+        @Override
+        protected R2dbcIncrementExecutorBuilder<T> self() {
+            return this;
+        }
+
+    }
+
+}
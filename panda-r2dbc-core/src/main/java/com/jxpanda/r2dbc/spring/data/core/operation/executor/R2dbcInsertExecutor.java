@@ -3,9 +3,13 @@ package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 import com.jxpanda.r2dbc.spring.data.config.R2dbcEnvironment;
 import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
 import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.IdStrategy;
+import io.r2dbc.spi.Connection;
+import org.reactivestreams.Publisher;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.data.mapping.PersistentPropertyAccessor;
 import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.r2dbc.dialect.MySqlDialect;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
 import org.springframework.data.r2dbc.mapping.OutboundRow;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
@@ -13,10 +17,16 @@ import org.springframework.data.relational.core.query.Query;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.Nullable;
 import org.springframework.r2dbc.core.*;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -24,6 +34,11 @@ import java.util.function.Function;
 @SuppressWarnings("deprecation")
 public class R2dbcInsertExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T, T> {
 
+    /**
+     * PostgreSQL驱动是否存在，COPY需要使用驱动的API
+     */
+    private static final boolean COPY_SUPPORTED = ClassUtils.isPresent("io.r2dbc.postgresql.api.PostgresqlConnection", R2dbcInsertExecutor.class.getClassLoader());
+
     private final BiFunction<R2dbcOperationParameter<T, T>, OutboundRow, StatementMapper.InsertSpec> specBuilder;
 
     private final BiFunction<R2dbcOperationParameter<T, T>, StatementMapper.InsertSpec, PreparedOperation<?>> preparedOperationBuilder;
@@ -47,6 +62,100 @@ public class R2dbcInsertExecutor<T> extends R2dbcOperationExecutor.WriteExecutor
 
     @Override
     protected Mono<T> fetch(T domainEntity, R2dbcOperationParameter<T, T> parameter) {
+        return prepare(domainEntity, parameter)
+                .flatMap(preparedRow -> insertOne(preparedRow, parameter));
+    }
+
+    /**
+     * 批量插入
+     * 相邻且插入的列相同的实体分为一组，每组再按行数和绑定参数的数量分块，每一块只执行一条多行的INSERT语句
+     */
+    @Override
+    public Flux<T> executeBatch(Collection<T> domainEntityList) {
+        if (ObjectUtils.isEmpty(domainEntityList)) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> {
+                    R2dbcOperationParameter<T, T> parameter = handleQuery();
+                    return insertPrepared(Flux.fromIterable(domainEntityList).concatMap(domainEntity -> prepare(domainEntity, parameter)), parameter);
+                })
+                .doOnEach(onWriteComplete(domainEntityList))
+                .as(transactionalOperator()::transactional);
+    }
+
+    /**
+     * 批量导入大量数据
+     * PostgreSQL使用 COPY ... FROM STDIN 以流的方式导入，其他数据库退化为分块的多行INSERT
+     * 实体的id生成、类型处理器与普通插入完全一致
+     * 使用COPY的时候有以下区别：
+     * 1、不会返回数据库生成的主键，也不会执行AfterSave回调
+     * 2、列以第一个实体为准，值为null的字段写入NULL而不是列的默认值
+     *
+     * @param domainEntities 要导入的实体
+     * @return 导入的行数
+     */
+    public Mono<Long> executeBulkLoad(Publisher<T> domainEntities) {
+        return Mono.defer(() -> {
+                    R2dbcOperationParameter<T, T> parameter = handleQuery();
+                    Flux<PreparedRow<T>> preparedRows = Flux.from(domainEntities).concatMap(domainEntity -> prepare(domainEntity, parameter));
+                    if (!COPY_SUPPORTED || !(dialect() instanceof PostgresDialect)) {
+                        return insertPrepared(preparedRows, parameter).count();
+                    }
+                    return databaseClient().inConnection(connection -> PostgresCopyLoader.isSupported(connection)
+                            ? copyPrepared(connection, preparedRows, parameter)
+                            : insertPrepared(preparedRows, parameter).count());
+                })
+                .doOnEach(onWriteComplete())
+                .as(transactionalOperator()::transactional);
+    }
+
+    /**
+     * 分块执行多行插入
+     * 以流的方式分组和分块，内存中最多只有一块数据，大批量导入的时候不会把所有数据都缓存下来
+     */
+    private Flux<T> insertPrepared(Flux<PreparedRow<T>> preparedRows, R2dbcOperationParameter<T, T> parameter) {
+        R2dbcOperationOption option = parameter.getOption();
+        return preparedRows
+                // 值为null的列不会被插入，所以不同实体插入的列可能不一样，列不同的行不能放在同一条语句中
+                .windowUntilChanged(PreparedRow::columns)
+                .concatMap(group -> group.switchOnFirst((signal, rows) -> {
+                    PreparedRow<T> first = signal.get();
+                    if (first == null) {
+                        return rows.buffer();
+                    }
+                    int columnCount = Math.max(1, first.columns().size());
+                    int chunkSize = Math.max(1, Math.min(option.getInsertBatchSize(), option.getMaxBindParameters() / columnCount));
+                    return rows.buffer(chunkSize);
+                }))
+                .concatMap(chunk -> insertChunk(chunk, parameter));
+    }
+
+    /**
+     * 使用COPY导入，列以第一行数据为准
+     */
+    private Mono<Long> copyPrepared(Connection connection, Flux<PreparedRow<T>> preparedRows, R2dbcOperationParameter<T, T> parameter) {
+        return preparedRows.switchOnFirst((signal, rows) -> {
+                    PreparedRow<T> first = signal.get();
+                    if (first == null) {
+                        return rows.then(Mono.just(0L));
+                    }
+                    List<SqlIdentifier> columns = List.copyOf(first.outboundRow().keySet());
+                    String sql = PostgresCopyLoader.copySql(parameter.getTableName(), columns, dialect().getIdentifierProcessing());
+                    Flux<String> lines = rows.map(preparedRow -> {
+                        if (!columns.containsAll(preparedRow.columns())) {
+                            throw new IllegalArgumentException("COPY requires every entity to write the same columns, expected " + columns + " but was " + preparedRow.columns());
+                        }
+                        return PostgresCopyLoader.encodeRow(columns, preparedRow.outboundRow());
+                    });
+                    return PostgresCopyLoader.copyIn(connection, sql, lines);
+                })
+                .last(0L);
+    }
+
+    /**
+     * 执行插入前的准备：回调、版本号、id生成、转换为OutboundRow
+     */
+    Mono<PreparedRow<T>> prepare(T domainEntity, R2dbcOperationParameter<T, T> parameter) {
         SqlIdentifier tableName = parameter.getTableName();
         RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
         return template().maybeCallBeforeConvert(domainEntity, tableName)
@@ -57,24 +166,131 @@ public class R2dbcInsertExecutor<T> extends R2dbcOperationExecutor.WriteExecutor
                     OutboundRow outboundRow = getOutboundRow(initializedEntity);
                     potentiallyRemoveId(persistentEntity, outboundRow);
                     return template().maybeCallBeforeSave(initializedEntity, outboundRow, tableName)
-                            .flatMap(entityToSave -> {
-                                StatementMapper.InsertSpec insertSpec = specBuilder.apply(parameter, outboundRow);
-                                PreparedOperation<?> operation = preparedOperationBuilder.apply(parameter, insertSpec);
-                                List<SqlIdentifier> identifierColumns = getIdentifierColumns(domainEntity.getClass());
-                                return this.databaseClient().sql(operation)
-                                        .filter(statement -> {
-                                            if (identifierColumns.isEmpty()) {
-                                                return statement.returnGeneratedValues();
-                                            }
-                                            return statement.returnGeneratedValues(dataAccessStrategy().renderForGeneratedValues(identifierColumns.get(0)));
-                                        })
-                                        .map(converter().populateIdIfNecessary(domainEntity))
-                                        .all().last(domainEntity)
-                                        .flatMap(saved -> template().maybeCallAfterSave(saved, outboundRow, tableName));
-                            });
+                            .map(entityToSave -> PreparedRow.of(domainEntity, outboundRow));
+                });
+    }
+
+    private Mono<T> insertOne(PreparedRow<T> preparedRow, R2dbcOperationParameter<T, T> parameter) {
+        T domainEntity = preparedRow.entity();
+        OutboundRow outboundRow = preparedRow.outboundRow();
+        StatementMapper.InsertSpec insertSpec = specBuilder.apply(parameter, outboundRow);
+        PreparedOperation<?> operation = preparedOperationBuilder.apply(parameter, insertSpec);
+        List<SqlIdentifier> identifierColumns = getIdentifierColumns(domainEntity.getClass());
+        return this.databaseClient().sql(operation)
+                .filter(statement -> {
+                    if (identifierColumns.isEmpty()) {
+                        return statement.returnGeneratedValues();
+                    }
+                    return statement.returnGeneratedValues(dataAccessStrategy().renderForGeneratedValues(identifierColumns.get(0)));
+                })
+                .map(converter().populateIdIfNecessary(domainEntity))
+                .all().last(domainEntity)
+                .flatMap(saved -> template().maybeCallAfterSave(saved, outboundRow, parameter.getTableName()));
+    }
+
+    /**
+     * 使用一条多行的INSERT语句插入一块数据
+     */
+    Flux<T> insertChunk(List<PreparedRow<T>> chunk, R2dbcOperationParameter<T, T> parameter) {
+        List<SqlIdentifier> columns = chunk.get(0).columns();
+        if (chunk.size() == 1 || columns.isEmpty()) {
+            return Flux.fromIterable(chunk).concatMap(preparedRow -> insertOne(preparedRow, parameter));
+        }
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        RelationalPersistentProperty idProperty = persistentEntity.getIdProperty();
+        boolean generatedKeys = idProperty != null && !columns.contains(idProperty.getColumnName());
+        if (generatedKeys && !(dialect() instanceof PostgresDialect) && !(dialect() instanceof MySqlDialect)) {
+            // 其他数据库多行插入返回主键的顺序没有保证，改为共用一个预编译语句，每一组绑定各自返回主键
+            return insertBound(chunk, parameter);
+        }
+        PreparedOperation<String> operation = template().getStatementMapper()
+                .getMappedBatchInsertObject(parameter.getTableName(), columns, chunk.stream().map(PreparedRow::outboundRow).toList(), persistentEntity);
+        List<T> entities = new ArrayList<>(chunk.stream().map(PreparedRow::entity).toList());
+
+        Mono<List<T>> inserted;
+        if (!generatedKeys) {
+            // id已经在客户端生成（雪花算法等）或者主动传入了，不需要数据库返回生成的主键
+            inserted = databaseClient().sql(operation).fetch().rowsUpdated().thenReturn(entities);
+        } else {
+            inserted = insertReturningIds(operation, entities, persistentEntity, idProperty);
+        }
+        return inserted.flatMapMany(savedList -> Flux.range(0, savedList.size())
+                .concatMap(index -> template().maybeCallAfterSave(savedList.get(index), chunk.get(index).outboundRow(), parameter.getTableName())));
+    }
+
+    /**
+     * 使用同一个预编译语句插入一块数据，每个实体的参数通过Statement.add()追加
+     */
+    private Flux<T> insertBound(List<PreparedRow<T>> chunk, R2dbcOperationParameter<T, T> parameter) {
+        List<PreparedOperation<?>> operations = chunk.stream()
+                .<PreparedOperation<?>>map(preparedRow -> preparedOperationBuilder.apply(parameter, specBuilder.apply(parameter, preparedRow.outboundRow())))
+                .toList();
+        List<SqlIdentifier> identifierColumns = getIdentifierColumns(parameter.getDomainType());
+        return executeBatchStatement(operations,
+                statement -> {
+                    if (identifierColumns.isEmpty()) {
+                        return statement.returnGeneratedValues();
+                    }
+                    return statement.returnGeneratedValues(dataAccessStrategy().renderForGeneratedValues(identifierColumns.get(0)));
+                },
+                (index, result) -> {
+                    PreparedRow<T> preparedRow = chunk.get(index);
+                    return Flux.from(result.map(converter().populateIdIfNecessary(preparedRow.entity())))
+                            .last(preparedRow.entity())
+                            .flatMap(saved -> template().maybeCallAfterSave(saved, preparedRow.outboundRow(), parameter.getTableName()));
                 });
     }
 
+    /**
+     * 执行插入，并按顺序把数据库生成的主键回填到实体中
+     * PostgreSQL（RETURNING）会按VALUES的顺序返回每一行的主键
+     * MySQL只返回第一行的主键（LAST_INSERT_ID），同一条语句插入的行的主键是连续的，后续的行按顺序递增
+     * 这依赖auto_increment_increment为1（默认值）
+     */
+    private Mono<List<T>> insertReturningIds(PreparedOperation<?> operation, List<T> entities,
+                                             RelationalPersistentEntity<T> persistentEntity, RelationalPersistentProperty idProperty) {
+        List<SqlIdentifier> identifierColumns = getIdentifierColumns(persistentEntity.getType());
+        AtomicInteger returned = new AtomicInteger();
+        return this.databaseClient().sql(operation)
+                .filter(statement -> {
+                    if (identifierColumns.isEmpty()) {
+                        return statement.returnGeneratedValues();
+                    }
+                    return statement.returnGeneratedValues(dataAccessStrategy().renderForGeneratedValues(identifierColumns.get(0)));
+                })
+                .map((row, rowMetadata) -> {
+                    int index = returned.getAndIncrement();
+                    if (index < entities.size()) {
+                        entities.set(index, converter().populateIdIfNecessary(entities.get(index)).apply(row, rowMetadata));
+                    }
+                    return index;
+                })
+                .all()
+                .then(Mono.fromSupplier(() -> {
+                    int returnedCount = Math.min(returned.get(), entities.size());
+                    if (returnedCount > 0 && returnedCount < entities.size() && dialect() instanceof MySqlDialect) {
+                        populateIdRange(entities, returnedCount, persistentEntity, idProperty);
+                    }
+                    return entities;
+                }));
+    }
+
+    /**
+     * 从第一行的主键开始，按顺序递增，回填后续行的主键
+     */
+    private void populateIdRange(List<T> entities, int from, RelationalPersistentEntity<T> persistentEntity, RelationalPersistentProperty idProperty) {
+        Object firstId = persistentEntity.getPropertyAccessor(entities.get(0)).getProperty(idProperty);
+        if (!(firstId instanceof Number firstNumber)) {
+            return;
+        }
+        ConversionService conversionService = converter().getConversionService();
+        for (int i = from; i < entities.size(); i++) {
+            PersistentPropertyAccessor<T> propertyAccessor = persistentEntity.getPropertyAccessor(entities.get(i));
+            propertyAccessor.setProperty(idProperty, conversionService.convert(firstNumber.longValue() + i, idProperty.getType()));
+            entities.set(i, propertyAccessor.getBean());
+        }
+    }
+
 
     private BiFunction<R2dbcOperationParameter<T, T>, OutboundRow, StatementMapper.InsertSpec> defaultSpecBuilder() {
         return (parameter, outboundRow) -> {
@@ -160,6 +376,25 @@ public class R2dbcInsertExecutor<T> extends R2dbcOperationExecutor.WriteExecutor
         return (E) propertyAccessor.getBean();
     }
 
+    /**
+     * 准备好插入的一行数据
+     *
+     * @param entity      实体
+     * @param outboundRow 转换后的行数据
+     * @param columns     有值（会被插入）的列
+     */
+    record PreparedRow<T>(T entity, OutboundRow outboundRow, List<SqlIdentifier> columns) {
+
+        static <T> PreparedRow<T> of(T entity, OutboundRow outboundRow) {
+            List<SqlIdentifier> columns = outboundRow.entrySet().stream()
+                    .filter(entry -> entry.getValue().hasValue())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            return new PreparedRow<>(entity, outboundRow, columns);
+        }
+
+    }
+
     public static final class R2dbcInsertExecutorBuilder<T> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, T, R2dbcInsertExecutor<T>, R2dbcInsertExecutorBuilder<T>> {
         public R2dbcInsertExecutor<T> buildExecutor() {
             return new R2dbcInsertExecutor<>(operationParameter, queryHandler);
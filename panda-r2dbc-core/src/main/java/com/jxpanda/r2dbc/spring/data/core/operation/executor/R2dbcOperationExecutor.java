@@ -1,9 +1,16 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 
+import com.jxpanda.r2dbc.spring.data.core.R2dbcStatementMapper;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSession;
 import com.jxpanda.r2dbc.spring.data.core.enhance.key.IdGenerator;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginExecutor;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.kit.TransactionKit;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
 import org.reactivestreams.Publisher;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
@@ -16,10 +23,15 @@ import org.springframework.data.relational.core.dialect.ArrayColumns;
 import org.springframework.data.relational.core.dialect.Dialect;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
 import org.springframework.data.relational.core.query.Query;
 import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.lang.NonNull;
 import org.springframework.r2dbc.core.Parameter;
+import org.springframework.r2dbc.core.PreparedOperation;
 import org.springframework.r2dbc.core.RowsFetchSpec;
+import org.springframework.r2dbc.core.SqlProvider;
+import org.springframework.r2dbc.core.binding.BindTarget;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.util.Assert;
@@ -28,10 +40,19 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.util.context.ContextView;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * @author Panda
@@ -65,6 +86,10 @@ public class R2dbcOperationExecutor<T, R> {
     }
 
 
+    protected R2dbcOperationParameter<T, R> operationParameter() {
+        return this.operationParameter;
+    }
+
     protected ReactiveEntityTemplate template() {
         return this.operationParameter.getTemplate();
     }
@@ -142,9 +167,12 @@ public class R2dbcOperationExecutor<T, R> {
 
         converter().write(object, row);
 
-        RelationalPersistentEntity<?> entity = R2dbcMappingKit.getRequiredEntity(ClassUtils.getUserClass(object));
+        // 只有集合类型的字段需要转换为数组，写入计划中已经挑出来了，不需要再遍历全部字段
+        Iterable<RelationalPersistentProperty> properties = converter() instanceof MappingReactiveConverter mappingReactiveConverter
+                ? mappingReactiveConverter.getWritePlan(ClassUtils.getUserClass(object)).getCollectionProperties()
+                : R2dbcMappingKit.getRequiredEntity(ClassUtils.getUserClass(object));
 
-        for (RelationalPersistentProperty property : entity) {
+        for (RelationalPersistentProperty property : properties) {
 
             Parameter value = row.get(property.getColumnName());
             if (value != null && shouldConvertArrayValue(property, value)) {
@@ -237,17 +265,135 @@ public class R2dbcOperationExecutor<T, R> {
 
 
         public Mono<R> execute() {
-            return fetch(handleQuery());
+            return fetch(handleQuery())
+                    .doOnEach(onWriteComplete());
         }
 
         public Mono<R> execute(T domainEntity) {
-            return fetch(domainEntity, handleQuery());
+            return fetch(domainEntity, handleQuery())
+                    .doOnEach(onWriteComplete(Collections.singletonList(domainEntity)));
+        }
+
+        /**
+         * 按条件执行写语句，条件中IN列表绑定的参数超过上限的时候（${@link R2dbcStatementMapper#partitionCriteria}），每一组条件执行一条语句
+         * 影响行数相加，多条语句在同一个事务中执行
+         *
+         * @param reservedParameters 语句中条件以外的绑定参数的数量
+         */
+        protected Mono<Long> executePartitioned(CriteriaDefinition criteria, int reservedParameters, Function<CriteriaDefinition, Mono<Long>> statement) {
+            List<CriteriaDefinition> partitions = template().getStatementMapper()
+                    .partitionCriteria(criteria, reservedParameters, operationParameter().getOption().getMaxBindParameters());
+            if (partitions.size() == 1) {
+                return statement.apply(partitions.get(0));
+            }
+            return Flux.fromIterable(partitions)
+                    .concatMap(statement)
+                    .reduce(0L, Long::sum)
+                    .as(transactionalOperator()::transactional);
+        }
+
+        /**
+         * 按条件的写操作执行成功之后回调，用于doOnEach
+         */
+        protected <V> Consumer<Signal<V>> onWriteComplete() {
+            return signal -> {
+                if (signal.isOnComplete()) {
+                    notifyWrite(signal.getContextView());
+                }
+            };
+        }
+
+        /**
+         * 按实体的写操作执行成功之后回调，用于doOnEach
+         */
+        protected <V> Consumer<Signal<V>> onWriteComplete(Collection<T> domainEntities) {
+            return signal -> {
+                if (signal.isOnComplete()) {
+                    notifyWrite(signal.getContextView(), domainEntities);
+                }
+            };
+        }
+
+        /**
+         * 写操作执行成功之后，通知模板上的监听器（用于缓存失效等）
+         * 处于会话（${@link R2dbcSession}）中的时候，会话中这个实体类型的实例全部失效
+         * 处于事务中的时候，事务提交之后再通知一次，避免提交之前被其他请求读入缓存的旧数据一直留在缓存中
+         */
+        protected void notifyWrite(ContextView context) {
+            Class<T> domainType = operationParameter().getDomainType();
+            R2dbcSession.current(context).ifPresent(session -> session.invalidate(domainType));
+            template().notifyWrite(domainType);
+            TransactionKit.afterCommit(context, () -> template().notifyWrite(domainType));
+        }
+
+        /**
+         * 按实体写入成功之后，带上实体的id通知模板上的监听器，实体缓存和会话只需要淘汰这些id
+         * 没有id字段的实体按条件写入处理
+         */
+        protected void notifyWrite(ContextView context, Collection<T> domainEntities) {
+            RelationalPersistentEntity<T> persistentEntity = operationParameter().getRelationalPersistentEntity();
+            if (!persistentEntity.hasIdProperty()) {
+                notifyWrite(context);
+                return;
+            }
+            List<Object> ids = new ArrayList<>(domainEntities.size());
+            for (T domainEntity : domainEntities) {
+                Object id = persistentEntity.getIdentifierAccessor(domainEntity).getIdentifier();
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+            Class<T> domainType = operationParameter().getDomainType();
+            Object routingKey = template().getRoutingKeyResolver().resolve(context);
+            R2dbcSession.current(context).ifPresent(session -> session.evict(domainType, ids));
+            template().notifyWrite(domainType, ids, routingKey);
+            TransactionKit.afterCommit(context, () -> template().notifyWrite(domainType, ids, routingKey));
+        }
+
+        /**
+         * 使用同一个预编译语句批量执行
+         * 只创建一个Statement，每个操作的参数通过Statement.add()追加为一组绑定，整批只执行一次
+         * 驱动可以把这些绑定流水线式地发送给数据库，不需要每一行都重新prepare
+         * 每一组绑定对应一个Result，resultHandler的第一个参数是绑定的下标（与operations的顺序一致）
+         * DatabaseClient.sql(...)只能执行一组绑定，所以这里直接在连接上创建Statement：参数已经由StatementMapper渲染好，不需要再展开命名参数
+         * 但是会绕过DatabaseClient上配置的ExecuteFunction；异常仍然由inConnectionMany按照DatabaseClient的规则翻译为DataAccessException，并且带上SQL
+         *
+         * @param operations      要执行的操作，调用方需要保证它们渲染出来的SQL是一样的
+         * @param statementFilter 执行前对Statement的处理（例如要求返回生成的主键）
+         * @param resultHandler   结果处理
+         */
+        protected <V> Flux<V> executeBatchStatement(List<? extends PreparedOperation<?>> operations,
+                                                    UnaryOperator<Statement> statementFilter,
+                                                    BiFunction<Integer, Result, Publisher<V>> resultHandler) {
+            if (operations.isEmpty()) {
+                return Flux.empty();
+            }
+            String sql = operations.get(0).toQuery();
+            return databaseClient().inConnectionMany(new BatchStatementCallback<>(sql, connection -> {
+                Statement statement = connection.createStatement(sql);
+                BindTarget bindTarget = new StatementBindTarget(statement);
+                for (int i = 0; i < operations.size(); i++) {
+                    if (i > 0) {
+                        statement.add();
+                    }
+                    operations.get(i).bindTo(bindTarget);
+                }
+                AtomicInteger index = new AtomicInteger();
+                return Flux.from(statementFilter.apply(statement).execute())
+                        .concatMap(result -> resultHandler.apply(index.getAndIncrement(), result));
+            }));
+        }
+
+        /**
+         * 使用同一个预编译语句批量执行，返回每一组绑定影响的行数
+         */
+        protected Flux<Long> executeBatchStatement(List<? extends PreparedOperation<?>> operations) {
+            return executeBatchStatement(operations, UnaryOperator.identity(), (index, result) -> result.getRowsUpdated());
         }
 
         /**
          * 批量执行
-         * 暂时使用循环来做
-         * 后期考虑通过批量相关的语句来做
+         * 默认逐条执行，支持批量语句的执行器（例如插入、更新）会覆盖这个函数
          */
         public Flux<R> executeBatch(Collection<T> domainEntityList) {
             if (ObjectUtils.isEmpty(domainEntityList)) {
@@ -263,6 +409,67 @@ public class R2dbcOperationExecutor<T, R> {
     }
 
 
+    /**
+     * 批量执行的回调，实现SqlProvider之后，DatabaseClient翻译异常的时候会带上执行的SQL
+     */
+    private record BatchStatementCallback<V>(String sql,
+                                             Function<Connection, Flux<V>> action) implements Function<Connection, Flux<V>>, SqlProvider {
+
+        @Override
+        public Flux<V> apply(Connection connection) {
+            return action.apply(connection);
+        }
+
+        @Override
+        public String getSql() {
+            return sql;
+        }
+    }
+
+    /**
+     * 把绑定参数直接绑定到Statement上
+     * Spring的Parameter需要拆开，空值使用bindNull
+     */
+    private record StatementBindTarget(Statement statement) implements BindTarget {
+
+        @Override
+        public void bind(@NonNull String identifier, @NonNull Object value) {
+            if (value instanceof Parameter parameter) {
+                if (parameter.hasValue()) {
+                    statement.bind(identifier, parameter.getValue());
+                } else {
+                    statement.bindNull(identifier, parameter.getType());
+                }
+                return;
+            }
+            statement.bind(identifier, value);
+        }
+
+        @Override
+        public void bind(int index, @NonNull Object value) {
+            if (value instanceof Parameter parameter) {
+                if (parameter.hasValue()) {
+                    statement.bind(index, parameter.getValue());
+                } else {
+                    statement.bindNull(index, parameter.getType());
+                }
+                return;
+            }
+            statement.bind(index, value);
+        }
+
+        @Override
+        public void bindNull(@NonNull String identifier, @NonNull Class<?> type) {
+            statement.bindNull(identifier, type);
+        }
+
+        @Override
+        public void bindNull(int index, @NonNull Class<?> type) {
+            statement.bindNull(index, type);
+        }
+
+    }
+
     @SuppressWarnings("AlibabaAbstractClassShouldStartWithAbstractNaming")
     public static abstract class R2dbcExecutorBuilder<T, R, E extends R2dbcOperationExecutor<T, R>, B extends R2dbcExecutorBuilder<T, R, E, B>> {
         protected R2dbcOperationParameter<T, R> operationParameter;
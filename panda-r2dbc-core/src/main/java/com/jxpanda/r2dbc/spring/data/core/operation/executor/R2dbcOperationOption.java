@@ -1,9 +1,15 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginName;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
 import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -14,10 +20,113 @@ import java.util.stream.Collectors;
 @Getter
 public class R2dbcOperationOption {
 
+    /**
+     * 关联查询（@TableReference）时，一个批次最多聚合多少条主表数据
+     */
+    public static final int DEFAULT_REFERENCE_BATCH_SIZE = 256;
+
+    /**
+     * 关联查询时，最多同时执行的批次数
+     */
+    public static final int DEFAULT_REFERENCE_CONCURRENCY = 4;
+
+    /**
+     * 总数缓存（TotalPolicy.CACHED）默认的存活时间
+     */
+    public static final Duration DEFAULT_TOTAL_CACHE_TTL = Duration.ofSeconds(60);
+
+    /**
+     * 批量插入时，一条INSERT语句默认最多插入多少行
+     */
+    public static final int DEFAULT_INSERT_BATCH_SIZE = 500;
+
+    /**
+     * 一条语句默认最多绑定多少个参数
+     * PostgreSQL和MySQL的上限都是65535，这里保守一些
+     */
+    public static final int DEFAULT_MAX_BIND_PARAMETERS = 32767;
+
+    /**
+     * 批量执行预编译语句（Statement.add()）时，一次默认最多追加多少组绑定
+     */
+    public static final int DEFAULT_STATEMENT_BATCH_SIZE = 500;
+
     private final boolean selectReference;
 
     private final Map<R2dbcPluginName, Boolean> pluginSwitch;
 
+    /**
+     * 关联查询的批次大小，主表数据按这个数量分窗口，每个窗口每个关联字段只发起一次IN查询
+     */
+    @Setter
+    @Accessors(chain = true)
+    private int referenceBatchSize = DEFAULT_REFERENCE_BATCH_SIZE;
+
+    /**
+     * 关联查询的并发度（同时在执行的窗口数量）
+     */
+    @Setter
+    @Accessors(chain = true)
+    private int referenceConcurrency = DEFAULT_REFERENCE_CONCURRENCY;
+
+    /**
+     * 分页查询策略，DEFAULT表示以实体上的配置为准
+     */
+    @Setter
+    @Accessors(chain = true)
+    private PageStrategy pageStrategy = PageStrategy.DEFAULT;
+
+    /**
+     * 总数统计策略，DEFAULT表示以实体上的配置为准
+     */
+    @Setter
+    @Accessors(chain = true)
+    private TotalPolicy totalPolicy = TotalPolicy.DEFAULT;
+
+    /**
+     * 总数缓存的存活时间
+     */
+    @Setter
+    @Accessors(chain = true)
+    private Duration totalCacheTtl = DEFAULT_TOTAL_CACHE_TTL;
+
+    /**
+     * 批量插入时一条INSERT语句最多插入的行数
+     */
+    @Setter
+    @Accessors(chain = true)
+    private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+
+    /**
+     * 一条语句最多绑定的参数数量，批量插入时行数 * 列数不会超过这个值
+     */
+    @Setter
+    @Accessors(chain = true)
+    private int maxBindParameters = DEFAULT_MAX_BIND_PARAMETERS;
+
+    /**
+     * 批量执行预编译语句时，一次最多追加的绑定组数
+     */
+    @Setter
+    @Accessors(chain = true)
+    private int statementBatchSize = DEFAULT_STATEMENT_BATCH_SIZE;
+
+    /**
+     * 批量更新时是否合并为单条语句（PostgreSQL：UPDATE ... FROM (VALUES ...)，MySQL：UPDATE ... JOIN (...)）
+     * 关闭或者数据库不支持的时候，使用预编译语句批量执行
+     */
+    @Setter
+    @Accessors(chain = true)
+    private boolean bulkUpdate = true;
+
+    /**
+     * 是否使用常驻内存的快照（@TableEntity(resident = true)）回答查询
+     * 关闭的时候总是查询数据库，加载快照本身就是这样查询的
+     */
+    @Setter
+    @Accessors(chain = true)
+    private boolean resident = true;
+
 
     public R2dbcOperationOption() {
         this(true);
@@ -29,6 +138,31 @@ public class R2dbcOperationOption {
                 .collect(Collectors.toMap(Function.identity(), pluginName -> true));
     }
 
+    /**
+     * 影响查询结果的选项的快照，两次查询的签名相同才能合并为一次查询（批量加载等）
+     */
+    public Object selectSignature() {
+        return List.of(selectReference, Map.copyOf(pluginSwitch), referenceBatchSize, referenceConcurrency, resident);
+    }
+
+    /**
+     * 复制一份选项，用于需要在调用方之外继续使用选项的场景（批量加载等），调用方之后修改选项不会影响拷贝
+     */
+    public R2dbcOperationOption copy() {
+        R2dbcOperationOption copy = new R2dbcOperationOption(selectReference);
+        copy.pluginSwitch.putAll(pluginSwitch);
+        return copy.setReferenceBatchSize(referenceBatchSize)
+                .setReferenceConcurrency(referenceConcurrency)
+                .setPageStrategy(pageStrategy)
+                .setTotalPolicy(totalPolicy)
+                .setTotalCacheTtl(totalCacheTtl)
+                .setInsertBatchSize(insertBatchSize)
+                .setMaxBindParameters(maxBindParameters)
+                .setStatementBatchSize(statementBatchSize)
+                .setBulkUpdate(bulkUpdate)
+                .setResident(resident);
+    }
+
     public boolean isPluginEnable(R2dbcPluginName pluginName) {
         return pluginSwitch.get(pluginName);
     }
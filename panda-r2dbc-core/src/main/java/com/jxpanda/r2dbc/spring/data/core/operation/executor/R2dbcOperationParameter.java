@@ -1,10 +1,10 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
-import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginContext;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginName;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import lombok.Builder;
 import lombok.Getter;
 import org.springframework.data.r2dbc.core.StatementMapper;
@@ -55,7 +55,7 @@ public final class R2dbcOperationParameter<T, R> {
         this.query = query == null ? Query.empty() : query;
         this.domainType = domainType;
         this.returnType = returnType;
-        this.tableName = tableName == null ? R2dbcMappingKit.getTableName(domainType) : tableName;
+        this.tableName = tableName == null ? EntityDescriptor.of(domainType).getTableName() : tableName;
         this.outboundRow = outboundRow;
         this.option = option == null ? new R2dbcOperationOption() : option;
 
@@ -110,10 +110,7 @@ public final class R2dbcOperationParameter<T, R> {
 
     private StatementMapper buildStatementMapper() {
         // 是否是聚合对象
-        boolean isAggregate = false;
-        if (domainType.isAnnotationPresent(TableEntity.class)) {
-            isAggregate = domainType.getAnnotation(TableEntity.class).aggregate();
-        }
+        boolean isAggregate = this.relationalPersistentEntity != null && EntityDescriptor.of(this.relationalPersistentEntity).isAggregate();
         return isAggregate ? template.getStatementMapper() : template.getStatementMapper().forType(domainType);
     }
 
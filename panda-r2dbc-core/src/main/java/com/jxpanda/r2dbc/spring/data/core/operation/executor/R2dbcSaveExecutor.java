@@ -4,14 +4,41 @@ import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ObjectUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * 保存执行器
+ * 默认有id则更新，没有id则插入
+ * 显式要求upsert（R2dbcSave.upsert()、R2dbcSave.onConflict(...)）的时候使用数据库的upsert保存，只有PostgreSQL、MySQL支持
+ * upsert是按整行插入的，只带了部分字段的实体在有非空且没有默认值的列的时候会失败，所以不作为默认行为
+ */
 public class R2dbcSaveExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T, T> {
 
-    private R2dbcSaveExecutor(R2dbcOperationParameter<T, T> operationParameter, Function<R2dbcOperationParameter<T, T>, Query> queryHandler) {
+    /**
+     * 是否使用upsert保存
+     */
+    private final boolean upsert;
+
+    /**
+     * upsert冲突的列（属性名或者列名），为空表示使用id
+     */
+    @Nullable
+    private final List<String> conflictTarget;
+
+    private R2dbcSaveExecutor(R2dbcOperationParameter<T, T> operationParameter, Function<R2dbcOperationParameter<T, T>, Query> queryHandler,
+                              boolean upsert, @Nullable List<String> conflictTarget) {
         super(operationParameter, queryHandler);
+        this.upsert = upsert || !ObjectUtils.isEmpty(conflictTarget);
+        this.conflictTarget = conflictTarget;
     }
 
     public static <T> R2dbcSaveExecutorBuilder<T> builder() {
@@ -20,11 +47,40 @@ public class R2dbcSaveExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T
 
     @Override
     protected Mono<T> fetch(T domainEntity, R2dbcOperationParameter<T, T> parameter) {
+        if (upsert) {
+            return isUpsertSupported() ? createUpsertExecutor().execute(domainEntity) : Mono.error(upsertNotSupported());
+        }
         return isUpdate(domainEntity)
                 .map(isUpdate -> isUpdate ? createUpdateExecutor() : createInertExecutor())
                 .flatMap(executor -> executor.execute(domainEntity));
     }
 
+    /**
+     * 批量保存
+     * 要求upsert的时候使用多行upsert
+     * 否则按是否有id分为插入和更新两部分，分别走插入（多行INSERT）和更新（预编译语句批量执行）的批量路径
+     */
+    @Override
+    public Flux<T> executeBatch(Collection<T> domainEntityList) {
+        if (ObjectUtils.isEmpty(domainEntityList)) {
+            return Flux.empty();
+        }
+        if (upsert) {
+            return isUpsertSupported() ? createUpsertExecutor().executeBatch(domainEntityList) : Flux.error(upsertNotSupported());
+        }
+        return Flux.defer(() -> {
+                    Map<Boolean, List<T>> partitioned = domainEntityList.stream()
+                            .collect(Collectors.partitioningBy(this::hasId));
+                    List<T> insertList = partitioned.get(false);
+                    List<T> updateList = partitioned.get(true);
+                    return Flux.concat(
+                            insertList.isEmpty() ? Flux.empty() : createInertExecutor().executeBatch(insertList),
+                            updateList.isEmpty() ? Flux.empty() : createUpdateExecutor().executeBatch(updateList)
+                    );
+                })
+                .as(transactionalOperator()::transactional);
+    }
+
     @Override
     protected Mono<T> fetch(R2dbcOperationParameter<T, T> parameter) {
         throw new UnsupportedOperationException("Unsupported operation");
@@ -39,20 +95,55 @@ public class R2dbcSaveExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T
         return swap(R2dbcUpdateExecutor::builder).build();
     }
 
+    private R2dbcUpsertExecutor<T> createUpsertExecutor() {
+        return swap(R2dbcUpsertExecutor::builder)
+                .conflictTarget(conflictTarget)
+                .build();
+    }
+
+    /**
+     * 数据库是否支持upsert，不支持的时候直接失败（通过返回的Mono/Flux发出错误），不降级为插入或更新
+     */
+    private boolean isUpsertSupported() {
+        return template().getStatementMapper().isUpsertSupported();
+    }
+
+    private UnsupportedOperationException upsertNotSupported() {
+        return new UnsupportedOperationException("Upsert is not supported by dialect " + template().getDialect().getClass().getSimpleName());
+    }
+
     /**
      * 返回是否执行更新操作
      */
     private Mono<Boolean> isUpdate(T object) {
-        return Mono.create(sink -> {
-            // 判断一下是否有有效的id字段，有id则执行更新操作，没有id则执行插入操作
-            RelationalPersistentEntity<T> requiredEntity = R2dbcMappingKit.getRequiredEntity(object);
-            RelationalPersistentProperty idProperty = requiredEntity.getIdProperty();
-            sink.success(R2dbcMappingKit.isPropertyEffective(object, requiredEntity, idProperty));
-        });
+        return Mono.create(sink -> sink.success(hasId(object)));
+    }
+
+    /**
+     * 判断一下是否有有效的id字段，有id则执行更新操作，没有id则执行插入操作
+     */
+    private boolean hasId(T object) {
+        RelationalPersistentEntity<T> requiredEntity = R2dbcMappingKit.getRequiredEntity(object);
+        RelationalPersistentProperty idProperty = requiredEntity.getIdProperty();
+        return R2dbcMappingKit.isPropertyEffective(object, requiredEntity, idProperty);
     }
 
     public static class R2dbcSaveExecutorBuilder<T> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, T, R2dbcSaveExecutor<T>, R2dbcSaveExecutorBuilder<T>> {
 
+        private boolean upsert;
+
+        private List<String> conflictTarget;
+
+        public R2dbcSaveExecutorBuilder<T> upsert(boolean upsert) {
+            this.upsert = upsert;
+            return this;
+        }
+
+        public R2dbcSaveExecutorBuilder<T> conflictTarget(List<String> conflictTarget) {
+            this.conflictTarget = conflictTarget;
+            return this;
+        }
+
         @Override
         protected R2dbcSaveExecutorBuilder<T> self() {
             return this;
@@ -60,7 +151,7 @@ public class R2dbcSaveExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T
 
         @Override
         public R2dbcSaveExecutor<T> buildExecutor() {
-            return new R2dbcSaveExecutor<>(operationParameter, queryHandler);
+            return new R2dbcSaveExecutor<>(operationParameter, queryHandler, upsert, conflictTarget);
         }
     }
 
@@ -1,21 +1,30 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
-import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.convert.EntityRowReader;
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
 import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcRoutingKeyResolver;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSession;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSingleFlight;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginContext;
 import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginName;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.kit.TransactionKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcSelectOperation;
 import com.jxpanda.r2dbc.spring.data.infrastructure.kit.CollectionKit;
 import com.jxpanda.r2dbc.spring.data.infrastructure.kit.ReflectionKit;
 import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
 import org.reactivestreams.Publisher;
+import org.springframework.core.CollectionFactory;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.data.projection.EntityProjection;
 import org.springframework.data.projection.ProjectionInformation;
 import org.springframework.data.r2dbc.convert.EntityRowMapper;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.StatementMapper;
 import org.springframework.data.relational.core.conversion.AbstractRelationalConverter;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
@@ -27,6 +36,7 @@ import org.springframework.data.relational.core.sql.*;
 import org.springframework.data.relational.domain.RowDocument;
 import org.springframework.data.util.StreamUtils;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.r2dbc.core.PreparedOperation;
 import org.springframework.r2dbc.core.RowsFetchSpec;
@@ -36,19 +46,27 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.beans.FeatureDescriptor;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
 
 /**
  * @author Panda
  */
 public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecutor<T, R> {
 
-    private static final String SQL_AS = " AS ";
+    /**
+     * 窗口函数统计总数时使用的列别名
+     */
+    private static final String WINDOW_TOTAL_ALIAS = "__window_total";
+
+    /**
+     * 窗口函数统计总数的表达式，查询结果的每一行都会带上满足条件的数据总数
+     */
+    private static final Expression WINDOW_TOTAL = Expressions.just("COUNT(*) OVER() AS " + WINDOW_TOTAL_ALIAS);
 
     private final Function<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec> specBuilder;
 
@@ -58,17 +76,37 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
 
     private final Function<R2dbcOperationParameter<T, R>, BiFunction<Row, RowMetadata, R>> rowMapperBuilder;
 
+    /**
+     * 不为null的时候，在查询列表中附加COUNT(*) OVER()，读取到的总数交给这个函数
+     */
+    @Nullable
+    private final LongConsumer windowTotalConsumer;
+
+    /**
+     * 是否使用了自定义的行映射
+     */
+    private final boolean customRowMapper;
+
+    /**
+     * 是否使用了自定义的语句构建
+     */
+    private final boolean customPreparedOperation;
+
     private R2dbcSelectExecutor(R2dbcOperationParameter<T, R> operationParameter,
                                 Function<R2dbcOperationParameter<T, R>, Query> queryHandler,
                                 Function<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec> specBuilder,
                                 BiFunction<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec, Optional<CriteriaDefinition>> criteriaHandler,
                                 BiFunction<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec, PreparedOperation<?>> preparedOperationBuilder,
-                                Function<R2dbcOperationParameter<T, R>, BiFunction<Row, RowMetadata, R>> rowMapperBuilder) {
+                                Function<R2dbcOperationParameter<T, R>, BiFunction<Row, RowMetadata, R>> rowMapperBuilder,
+                                @Nullable LongConsumer windowTotalConsumer) {
         super(operationParameter, queryHandler);
         this.specBuilder = specBuilder != null ? specBuilder : defaultSpecBuilder();
         this.criteriaHandler = criteriaHandler != null ? criteriaHandler : defaultCriteriaHandler();
         this.preparedOperationBuilder = preparedOperationBuilder != null ? preparedOperationBuilder : defaultPreparedOperationBuilder();
         this.rowMapperBuilder = rowMapperBuilder != null ? rowMapperBuilder : defaultRowMapperBuilder();
+        this.windowTotalConsumer = windowTotalConsumer;
+        this.customRowMapper = rowMapperBuilder != null;
+        this.customPreparedOperation = preparedOperationBuilder != null;
     }
 
     private BiFunction<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec, PreparedOperation<?>> defaultPreparedOperationBuilder() {
@@ -89,36 +127,126 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
         selectSpec = pluginExecutor().run(pluginContext).takeResult()
                 .map(selectSpec::withCriteria)
                 .orElse(selectSpec);
-
-        PreparedOperation<?> preparedOperation = preparedOperationBuilder.apply(parameter, selectSpec);
-
-        DatabaseClient.GenericExecuteSpec executeSpec = databaseClient().sql(preparedOperation);
+        // DISTINCT查询的窗口函数会参与去重（每一行都带上了总数，并且统计的是去重之前的行数），不附加窗口函数，由调用方单独count
+        boolean windowTotal = windowTotalConsumer != null && !selectSpec.isDistinct();
+        if (windowTotal) {
+            selectSpec = selectSpec.withProjection(WINDOW_TOTAL);
+        }
 
         RowsFetchSpec<R> rowsFetchSpec;
 
-        // avoid top-level null values if the read type is a simple one (e.g. SELECT MAX(age) via Integer.class)
-        if (parameter.isSimpleReturnType()) {
-            rowsFetchSpec = new UnwrapOptionalFetchSpecAdapter<>(executeSpec
-                    .map((row, metadata) -> Optional.ofNullable(rowMapperBuilder.apply(parameter).apply(row, metadata))));
+        List<CriteriaDefinition> partitions = isPartitionable(parameter, selectSpec, windowTotal)
+                ? template().getStatementMapper().partitionCriteria(selectSpec.getCriteria(), 0, parameter.getOption().getMaxBindParameters())
+                : Collections.emptyList();
+        if (partitions.size() > 1) {
+            // IN列表绑定的参数超过上限，每一组条件执行一条语句，结果按顺序拼接
+            List<RowsFetchSpec<R>> partitionSpecs = new ArrayList<>(partitions.size());
+            for (CriteriaDefinition partition : partitions) {
+                partitionSpecs.add(databaseClient().sql(preparedOperationBuilder.apply(parameter, selectSpec.withCriteria(partition)))
+                        .map(rowMapperBuilder.apply(parameter)));
+            }
+            rowsFetchSpec = new PartitionedFetchSpec<>(partitionSpecs);
         } else {
-            rowsFetchSpec = executeSpec.map(rowMapperBuilder.apply(parameter));
+            PreparedOperation<?> preparedOperation = preparedOperationBuilder.apply(parameter, selectSpec);
+
+            DatabaseClient.GenericExecuteSpec executeSpec = databaseClient().sql(preparedOperation);
+
+            // avoid top-level null values if the read type is a simple one (e.g. SELECT MAX(age) via Integer.class)
+            if (parameter.isSimpleReturnType()) {
+                rowsFetchSpec = new UnwrapOptionalFetchSpecAdapter<>(executeSpec
+                        .map((row, metadata) -> Optional.ofNullable(rowMapperBuilder.apply(parameter).apply(row, metadata))));
+            } else {
+                rowsFetchSpec = executeSpec.map(windowTotal ? windowTotalRowMapper(rowMapperBuilder.apply(parameter)) : rowMapperBuilder.apply(parameter));
+                if (isSingleFlight(parameter)) {
+                    rowsFetchSpec = new SingleFlightFetchSpec<>(rowsFetchSpec, parameter.getDomainType(),
+                            R2dbcSingleFlight.key(parameter.getReturnType(), preparedOperation), template().getSingleFlight(),
+                            template().getRoutingKeyResolver(), converter());
+                }
+            }
         }
 
         // 执行
         P publisher = resultHandler.apply(rowsFetchSpec);
+        List<Reference> references = getReferences(parameter);
+        Consumer<R> snapshotRecorder = snapshotRecorder(parameter);
         if (publisher instanceof Mono<?> mono) {
-            Mono<R> monoResult = mono.flatMap(result -> selectReference(parameter, ReflectionKit.cast(result)))
+            Mono<R> monoResult = mono.map(ReflectionKit::<R>cast)
+                    .flatMap(result -> selectReference(references, Collections.singletonList(result)).next())
                     .flatMap(it -> template().maybeCallAfterConvert(it, parameter.getTableName()));
+            if (snapshotRecorder != null) {
+                monoResult = monoResult.doOnNext(snapshotRecorder);
+            }
             return ReflectionKit.cast(monoResult);
 
         } else if (publisher instanceof Flux<?> flux) {
-            Flux<R> fluxResult = flux.flatMap(result -> selectReference(parameter, ReflectionKit.cast(result)))
-                    .flatMap(it -> template().maybeCallAfterConvert(it, parameter.getTableName()));
+            Flux<R> fluxResult = flux.map(ReflectionKit::<R>cast);
+            if (!references.isEmpty()) {
+                // 按窗口聚合主表数据，每个窗口的每个关联字段只执行一次IN查询，避免N+1问题
+                // 使用flatMapSequential保证输出的顺序与数据库返回的顺序一致
+                R2dbcOperationOption option = parameter.getOption();
+                fluxResult = fluxResult.buffer(Math.max(1, option.getReferenceBatchSize()))
+                        .flatMapSequential(batch -> selectReference(references, batch), Math.max(1, option.getReferenceConcurrency()));
+            }
+            fluxResult = fluxResult.concatMap(it -> template().maybeCallAfterConvert(it, parameter.getTableName()));
+            if (snapshotRecorder != null) {
+                fluxResult = fluxResult.doOnNext(snapshotRecorder);
+            }
             return ReflectionKit.cast(fluxResult);
         }
         return publisher;
     }
 
+    /**
+     * 条件中的IN列表过长时能否拆分为多条语句执行
+     * 只有使用默认语句构建的实体查询，并且没有排序、分页、去重和窗口总数的时候，拼接多条语句的结果才与一条语句的结果一致
+     */
+    private boolean isPartitionable(R2dbcOperationParameter<T, R> parameter, StatementMapper.SelectSpec selectSpec, boolean windowTotal) {
+        return !customPreparedOperation
+               && !windowTotal
+               && !parameter.isSimpleReturnType()
+               && selectSpec.getCriteria() != null
+               && !selectSpec.isDistinct()
+               && selectSpec.getLimit() < 0
+               && selectSpec.getOffset() < 0
+               && selectSpec.getSort().isUnsorted();
+    }
+
+    /**
+     * 是否合并相同的并发查询
+     * 只合并实体开启了合并、返回类型就是实体类型、使用默认的行映射并且不需要统计窗口总数的查询
+     */
+    private boolean isSingleFlight(R2dbcOperationParameter<T, R> parameter) {
+        return !customRowMapper
+               && windowTotalConsumer == null
+               && parameter.getReturnType() == parameter.getDomainType()
+               && EntityDescriptor.of(parameter.getRelationalPersistentEntity()).isSingleFlight();
+    }
+
+    /**
+     * 开启了脏检查的实体，查询出来之后记录快照，只有返回类型就是实体类型的时候才记录
+     * 能延迟转换的实体只记录字段的值，第一次更新的时候才转换为行数据
+     */
+    @Nullable
+    private Consumer<R> snapshotRecorder(R2dbcOperationParameter<T, R> parameter) {
+        if (parameter.getReturnType() != parameter.getDomainType()
+            || !EntityDescriptor.of(parameter.getRelationalPersistentEntity()).isDirtyTracking()) {
+            return null;
+        }
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        return result -> template().getEntitySnapshots().record(result, persistentEntity, this::getOutboundRow);
+    }
+
+    /**
+     * 需要读取窗口函数统计的总数时，在读取每一行数据的同时读取总数
+     */
+    private BiFunction<Row, RowMetadata, R> windowTotalRowMapper(BiFunction<Row, RowMetadata, R> rowMapper) {
+        return (row, rowMetadata) -> {
+            Number total = row.get(WINDOW_TOTAL_ALIAS, Number.class);
+            windowTotalConsumer.accept(total == null ? 0L : total.longValue());
+            return rowMapper.apply(row, rowMetadata);
+        };
+    }
+
     private Function<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec> defaultSpecBuilder() {
         return parameter -> {
             Query query = parameter.getQuery();
@@ -158,10 +286,16 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
                 Class<R> typeToRead = projection.isProjection() ? returnType
                         : returnType.isInterface() ? (Class<R>) domainType : returnType;
 
-                rowMapper = (row, rowMetadata) -> {
+                BiFunction<Row, RowMetadata, R> documentRowMapper = (row, rowMetadata) -> {
                     RowDocument document = dataAccessStrategy().toRowDocument(typeToRead, row, rowMetadata.getColumnMetadatas());
                     return converter().project(projection, document);
                 };
+                // 返回值就是实体本身的时候，使用预编译的行读取器，跳过RowDocument
+                if (!projection.isProjection() && domainType.equals(typeToRead) && converter() instanceof MappingReactiveConverter mappingReactiveConverter) {
+                    rowMapper = new CompiledRowMapper<>(mappingReactiveConverter, (Class<R>) domainType, documentRowMapper);
+                } else {
+                    rowMapper = documentRowMapper;
+                }
             }
             return rowMapper;
         };
@@ -176,19 +310,33 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
     }
 
 
-    private Mono<R> selectReference(R2dbcOperationParameter<T, R> parameter, R result) {
+    /**
+     * 获取需要加载的关联字段
+     * 返回值类型与实体类型不一致（例如count、投影接口等）或者关闭了关联查询的情况下，返回空列表
+     */
+    private List<Reference> getReferences(R2dbcOperationParameter<T, R> parameter) {
         RelationalPersistentEntity<T> entity = parameter.getRelationalPersistentEntity();
-        List<RelationalPersistentProperty> referenceProperties = R2dbcMappingKit.getReferenceProperties(entity);
-        if (referenceProperties.isEmpty()) {
-            return Mono.just(result);
-        }
-        return Flux.fromIterable(referenceProperties)
-                .map(property -> Reference.build(entity, property, result))
-                .filter(Reference::canReference)
-                .flatMap(reference -> reference.doSelect(template(), result))
-                .last();
+        if (entity == null || !parameter.getOption().isSelectReference() || !parameter.getDomainType().isAssignableFrom(parameter.getReturnType())) {
+            return Collections.emptyList();
+        }
+        return R2dbcMappingKit.getReferenceProperties(entity)
+                .stream()
+                .map(property -> Reference.build(entity, property))
+                .toList();
     }
 
+    /**
+     * 批量加载一批数据的关联字段
+     * 每个关联字段只执行一次查询，再按关联字段的值把结果分配回每一条数据
+     */
+    private Flux<R> selectReference(List<Reference> references, List<R> results) {
+        if (references.isEmpty()) {
+            return Flux.fromIterable(results);
+        }
+        return Flux.fromIterable(references)
+                .flatMap(reference -> reference.doSelect(template(), results))
+                .thenMany(Flux.fromIterable(results));
+    }
 
     private <E, RT> List<Expression> getSelectProjection(Table table, Query query, Class<E> entityClass, Class<RT> returnType) {
         if (!query.getColumns().isEmpty()) {
@@ -207,100 +355,133 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
                         .toList();
             }
         }
-        RelationalPersistentEntity<E> entity = R2dbcMappingKit.getRequiredEntity(entityClass);
-        boolean isAggregateEntity = R2dbcMappingKit.isAggregateEntity(entityClass);
-        return StreamUtils.createStreamFromIterator(entity.iterator())
-                .filter(R2dbcMappingKit::isPropertyExists)
-                .map(property -> isAggregateEntity ? createFunction(property) : createColumn(property, table))
-                .toList();
-    }
-
-    private Expression createColumn(RelationalPersistentProperty property, Table table) {
-        Expression expression;
-        if (property.isIdProperty()) {
-            expression = table.column(property.getColumnName());
-        } else {
-            TableColumn tableColumn = property.getRequiredAnnotation(TableColumn.class);
-            Table columnTable = tableColumn.fromTable().isEmpty() ? table : Table.create(tableColumn.fromTable());
-
-            String columnName = property.getColumnName().getReference();
-            boolean isColumnWithTable = columnName.contains(".");
-            String alias = tableColumn.alias();
-            if (alias.isEmpty()) {
-                if (isColumnWithTable) {
-                    expression = Expressions.just(columnName);
-                } else {
-                    expression = columnTable.column(property.getColumnName());
-                }
-            } else {
-                if (isColumnWithTable) {
-                    expression = Expressions.just(columnName + SQL_AS + alias);
-                } else {
-                    expression = Column.aliased(columnName, columnTable, alias);
-                }
-            }
-        }
-        return expression;
-    }
-
-    private Expression createFunction(RelationalPersistentProperty property) {
-        // 聚合函数必须要使用Expressions.just()直接创建表达式
-        // 实测使用Column创建的话，会被添加表名作为前缀，导致SQL的语法是错的
-        TableColumn tableColumn = property.getRequiredAnnotation(TableColumn.class);
-        // 别名
-        String alias = tableColumn.alias();
-        if (R2dbcMappingKit.isFunctionProperty(property)) {
-            Assert.isTrue(!ObjectUtils.isEmpty(alias), "Alias must not be null with function property");
-            // 如果是函数，则采用函数的方式创建函数
-            return SimpleFunction.create(tableColumn.function(), Collections.singletonList(Expressions.just(tableColumn.name())))
-                    .as(alias);
-        } else {
-            String sql = tableColumn.name();
-            // 如果设置了别名，添加别名的语法
-            if (!ObjectUtils.isEmpty(alias)) {
-                sql += SQL_AS + alias;
-            }
-            // 如果不是函数，直接创建标准表达式
-            return Expressions.just(sql);
-        }
+        return EntityDescriptor.of(entityClass).getProjection(table);
     }
 
 
     private record Reference(
             TableReference annotation,
             RelationalPersistentProperty property,
-            Object referenceValue
+            RelationalPersistentProperty keyProperty,
+            @Nullable RelationalPersistentEntity<?> referenceEntity,
+            @Nullable RelationalPersistentProperty referenceProperty
     ) {
 
-        private static <T, R> Reference build(RelationalPersistentEntity<T> entity, RelationalPersistentProperty property, R result) {
+        private static <T> Reference build(RelationalPersistentEntity<T> entity, RelationalPersistentProperty property) {
             TableReference tableReference = property.getRequiredAnnotation(TableReference.class);
-            RelationalPersistentProperty referenceProperty;
+            RelationalPersistentProperty keyProperty;
             String keyColumn = tableReference.keyColumn();
             if (keyColumn.isEmpty()) {
-                referenceProperty = entity.getIdProperty();
+                keyProperty = entity.getIdProperty();
             } else {
-                referenceProperty = entity.getPersistentProperty(keyColumn);
+                keyProperty = entity.getPersistentProperty(keyColumn);
             }
-            Assert.notNull(referenceProperty, "Property must not be null.");
-            Assert.notNull(referenceProperty.getField(), "Field must not be null.");
-            Object referenceValue = ReflectionKit.invokeGetter(referenceProperty.getRequiredGetter(), result);
-            if (referenceValue instanceof String stringValue && !ObjectUtils.isEmpty(tableReference.delimiter())) {
-                referenceValue = stringValue.split(tableReference.delimiter());
+            Assert.notNull(keyProperty, "Property must not be null.");
+            Assert.notNull(keyProperty.getField(), "Field must not be null.");
+
+            // 找到关联表中referenceColumn对应的字段，用于把查询结果分配回主表数据
+            RelationalPersistentEntity<?> referenceEntity = R2dbcMappingKit.getPersistentEntity(property.getActualType());
+            RelationalPersistentProperty referenceProperty = null;
+            if (referenceEntity != null) {
+                String referenceColumn = tableReference.referenceColumn();
+                referenceProperty = StreamUtils.createStreamFromIterator(referenceEntity.iterator())
+                        .filter(it -> it.getName().equals(referenceColumn) || it.getColumnName().getReference().equalsIgnoreCase(referenceColumn))
+                        .findFirst()
+                        .orElse(null);
             }
-            return new Reference(tableReference, property, referenceValue);
+            return new Reference(tableReference, property, keyProperty, referenceEntity, referenceProperty);
         }
 
-        private boolean canReference() {
-            return !ObjectUtils.isEmpty(referenceValue());
+        /**
+         * 读取主表数据上用于关联的值，字符串类型的值如果配置了分隔符会被拆分
+         */
+        private List<Object> getReferenceValues(Object result) {
+            Object referenceValue = ReflectionKit.invokeGetter(keyProperty().getRequiredGetter(), result);
+            if (referenceValue instanceof String stringValue && !ObjectUtils.isEmpty(annotation().delimiter())) {
+                referenceValue = stringValue.split(annotation().delimiter());
+            }
+            if (ObjectUtils.isEmpty(referenceValue)) {
+                return Collections.emptyList();
+            }
+            if (referenceValue instanceof Collection<?> collection) {
+                return new ArrayList<>(collection);
+            }
+            if (referenceValue instanceof Object[] array) {
+                return Arrays.asList(array);
+            }
+            return Collections.singletonList(referenceValue);
         }
 
-        private Mono<?> buildMono(ReactiveEntityTemplate reactiveEntityTemplate) {
-            Criteria.CriteriaStep where = Criteria.where(annotation().referenceColumn());
-            TableReference.ReferenceCondition referenceCondition = annotation().referenceCondition();
-            if (referenceValue() instanceof Collection<?> || referenceValue() instanceof Object[]) {
-                referenceCondition = TableReference.ReferenceCondition.IN;
+        /**
+         * 关联值统一转为字符串作为分组的key
+         * 避免主表的值（例如用分隔符拆分出来的字符串）与关联表字段类型不一致导致匹配不上
+         */
+        private static String toKey(Object value) {
+            return String.valueOf(value);
+        }
+
+        private <R> Mono<Void> doSelect(ReactiveEntityTemplate reactiveEntityTemplate, List<R> results) {
+            if (referenceProperty() == null) {
+                // 关联表上找不到referenceColumn对应的字段，无法分配结果，只能逐条查询
+                return Flux.fromIterable(results)
+                        .concatMap(result -> doSelect(reactiveEntityTemplate, result))
+                        .then();
+            }
+
+            Map<R, List<Object>> referenceValuesMap = new IdentityHashMap<>();
+            Set<Object> values = new LinkedHashSet<>();
+            for (R result : results) {
+                List<Object> referenceValues = getReferenceValues(result);
+                if (!referenceValues.isEmpty()) {
+                    referenceValuesMap.put(result, referenceValues);
+                    values.addAll(referenceValues);
+                }
+            }
+            if (values.isEmpty()) {
+                return Mono.empty();
             }
-            Criteria criteria = referenceCondition.getCondition().apply(where, referenceValue());
+
+            // 关联的是关联表的id的时候按id查询，可以利用会话和实体缓存中已经加载过的数据
+            R2dbcSelectOperation.R2dbcSelect<?> select = reactiveEntityTemplate.select(property().getActualType());
+            Flux<?> referenceFlux = referenceProperty().isIdProperty()
+                    ? select.byIds(values)
+                    : select.matching(Query.query(Criteria.where(annotation().referenceColumn()).in(values))).all();
+            return referenceFlux
+                    .cast(Object.class)
+                    .collect(Collectors.groupingBy(this::getReferenceKey, LinkedHashMap::new, Collectors.toList()))
+                    .doOnNext(referenceMap -> referenceValuesMap.forEach((result, referenceValues) -> {
+                        List<Object> matched = referenceValues.stream()
+                                .map(Reference::toKey)
+                                .distinct()
+                                .flatMap(key -> referenceMap.getOrDefault(key, Collections.emptyList()).stream())
+                                .toList();
+                        // 与逐条查询（collectList）一致：没有关联值的数据不在map中，字段保持null；有关联值但没有匹配的数据写入空集合
+                        if (property().isCollectionLike()) {
+                            setValue(result, matched);
+                        } else if (!matched.isEmpty()) {
+                            setValue(result, matched.get(0));
+                        }
+                    }))
+                    .then();
+        }
+
+        private String getReferenceKey(Object referenceResult) {
+            Assert.notNull(referenceEntity(), "Reference entity must not be null.");
+            Assert.notNull(referenceProperty(), "Reference property must not be null.");
+            return toKey(referenceEntity().getPropertyAccessor(referenceResult).getProperty(referenceProperty()));
+        }
+
+        /**
+         * 单条数据的关联查询
+         */
+        private <R> Mono<R> doSelect(ReactiveEntityTemplate reactiveEntityTemplate, R result) {
+            List<Object> referenceValues = getReferenceValues(result);
+            if (referenceValues.isEmpty()) {
+                return Mono.just(result);
+            }
+            Criteria.CriteriaStep where = Criteria.where(annotation().referenceColumn());
+            Criteria criteria = referenceValues.size() > 1 || annotation().referenceCondition() == TableReference.ReferenceCondition.IN
+                    ? where.in(referenceValues) : where.is(referenceValues.get(0));
             R2dbcSelectOperation.TerminatingSelect<?> matching = reactiveEntityTemplate
                     .select(property().getActualType())
                     .matching(Query.query(criteria));
@@ -310,24 +491,154 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
             } else {
                 mono = matching.one();
             }
-            return mono;
+            return mono.map(object -> {
+                setValue(result, object);
+                return result;
+            }).defaultIfEmpty(result);
         }
 
-        private <R> Mono<R> doSelect(ReactiveEntityTemplate reactiveEntityTemplate, R result) {
-            return buildMono(reactiveEntityTemplate)
-                    .map(object -> {
-                        Assert.notNull(property().getField(), "Field must not bet null");
-                        Object value = object;
-                        if (property().isArray() && object instanceof Collection<?> collection) {
-                            value = CollectionKit.castCollectionToArray(collection, property().getActualType());
-                        }
-                        ReflectionKit.invokeSetter(property().getRequiredSetter(), result, value);
-                        return result;
-                    });
+        private void setValue(Object result, Object object) {
+            Assert.notNull(property().getField(), "Field must not bet null");
+            Object value = object;
+            if (object instanceof Collection<?> collection) {
+                if (property().isArray()) {
+                    value = CollectionKit.castCollectionToArray(collection, property().getActualType());
+                } else if (!property().getType().isInstance(collection)) {
+                    Collection<Object> typedCollection = CollectionFactory.createCollection(property().getType(), property().getActualType(), collection.size());
+                    typedCollection.addAll(collection);
+                    value = typedCollection;
+                }
+            }
+            ReflectionKit.invokeSetter(property().getRequiredSetter(), result, value);
+        }
+
+    }
+
+    /**
+     * 使用预编译行读取器的RowMapper
+     * 同一个结果集的RowMetadata是一样的，所以只在RowMetadata变化的时候获取一次读取器
+     * 实体不支持预编译读取的时候，使用RowDocument的方式读取
+     */
+    private static final class CompiledRowMapper<R> implements BiFunction<Row, RowMetadata, R> {
+
+        private final MappingReactiveConverter converter;
+        private final Class<R> type;
+        private final BiFunction<Row, RowMetadata, R> fallback;
+
+        @Nullable
+        private RowMetadata rowMetadata;
+        @Nullable
+        private EntityRowReader<R> rowReader;
+
+        private CompiledRowMapper(MappingReactiveConverter converter, Class<R> type, BiFunction<Row, RowMetadata, R> fallback) {
+            this.converter = converter;
+            this.type = type;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public R apply(Row row, RowMetadata rowMetadata) {
+            if (this.rowMetadata != rowMetadata) {
+                this.rowReader = converter.getRowReader(type, rowMetadata);
+                this.rowMetadata = rowMetadata;
+            }
+            return rowReader == null ? fallback.apply(row, rowMetadata) : rowReader.read(row);
+        }
+
+    }
+
+    /**
+     * 合并相同的并发查询
+     * 不在事务中的时候，相同的查询共享一次数据库查询的结果，每个订阅者拿到的都是结果的浅拷贝，互相修改不会影响
+     * one()和first()也共享完整的结果（查询本身已经带有limit）
+     */
+    private static final class SingleFlightFetchSpec<R> implements RowsFetchSpec<R> {
+
+        private final RowsFetchSpec<R> delegate;
+        private final Class<?> domainType;
+        private final R2dbcSingleFlight.FlightKey key;
+        private final R2dbcSingleFlight singleFlight;
+        private final R2dbcRoutingKeyResolver routingKeyResolver;
+        private final R2dbcConverter converter;
+
+        private SingleFlightFetchSpec(RowsFetchSpec<R> delegate, Class<?> domainType, R2dbcSingleFlight.FlightKey key,
+                                      R2dbcSingleFlight singleFlight, R2dbcRoutingKeyResolver routingKeyResolver, R2dbcConverter converter) {
+            this.delegate = delegate;
+            this.domainType = domainType;
+            this.key = key;
+            this.singleFlight = singleFlight;
+            this.routingKeyResolver = routingKeyResolver;
+            this.converter = converter;
+        }
+
+        @NonNull
+        @Override
+        public Mono<R> one() {
+            return TransactionKit.isInTransaction().flatMap(inTransaction -> inTransaction ? delegate.one() : shared()
+                    .flatMap(results -> results.size() > 1
+                            ? Mono.error(new IncorrectResultSizeDataAccessException(1, results.size()))
+                            : Mono.justOrEmpty(results.isEmpty() ? null : results.get(0))));
+        }
+
+        @NonNull
+        @Override
+        public Mono<R> first() {
+            return TransactionKit.isInTransaction().flatMap(inTransaction -> inTransaction ? delegate.first() : shared()
+                    .flatMap(results -> Mono.justOrEmpty(results.isEmpty() ? null : results.get(0))));
+        }
+
+        @NonNull
+        @Override
+        public Flux<R> all() {
+            return TransactionKit.isInTransaction().flatMapMany(inTransaction -> inTransaction ? delegate.all() : shared()
+                    .flatMapIterable(Function.identity()));
+        }
+
+        /**
+         * 合并查询，查询在第一个调用方的Context中执行
+         * 处于会话中的调用方不参与合并，路由的key不同的调用方不会合并
+         */
+        private Mono<List<R>> shared() {
+            return Mono.deferContextual(context -> R2dbcSession.current(context).isPresent()
+                    ? delegate.all().collectList()
+                    : singleFlight.execute(domainType, key.withRoutingKey(routingKeyResolver.resolve(context)), () -> delegate.all().collectList())
+                    .map(results -> converter instanceof MappingReactiveConverter mappingReactiveConverter
+                            ? results.stream().map(mappingReactiveConverter::shallowCopy).toList()
+                            : results));
         }
 
     }
 
+    /**
+     * 条件拆分为多条语句的查询，按顺序逐条执行，结果拼接在一起
+     */
+    private record PartitionedFetchSpec<R>(List<RowsFetchSpec<R>> partitions) implements RowsFetchSpec<R> {
+
+        @NonNull
+        @Override
+        public Mono<R> one() {
+            return all().take(2).collectList().handle((results, sink) -> {
+                if (results.size() > 1) {
+                    sink.error(new IncorrectResultSizeDataAccessException(1, results.size()));
+                } else if (!results.isEmpty()) {
+                    sink.next(results.get(0));
+                }
+            });
+        }
+
+        @NonNull
+        @Override
+        public Mono<R> first() {
+            return all().next();
+        }
+
+        @NonNull
+        @Override
+        public Flux<R> all() {
+            return Flux.fromIterable(partitions).concatMap(RowsFetchSpec::all);
+        }
+    }
+
     private record UnwrapOptionalFetchSpecAdapter<T>(
             RowsFetchSpec<Optional<T>> delegate) implements RowsFetchSpec<T> {
 
@@ -359,6 +670,8 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
 
         private Function<R2dbcOperationParameter<T, R>, BiFunction<Row, RowMetadata, R>> rowMapperBuilder;
 
+        private LongConsumer windowTotalConsumer;
+
         public R2dbcSelectExecutorBuilder<T, R> specBuilder(Function<R2dbcOperationParameter<T, R>, StatementMapper.SelectSpec> specBuilder) {
             this.specBuilder = specBuilder;
             return this;
@@ -379,8 +692,19 @@ public class R2dbcSelectExecutor<T, R> extends R2dbcOperationExecutor.ReadExecut
             return this;
         }
 
+        /**
+         * 使用窗口函数（COUNT(*) OVER()）在数据查询的同时统计总数
+         * DISTINCT查询不会附加窗口函数，回调不会被调用
+         *
+         * @param windowTotalConsumer 读取到总数之后的回调
+         */
+        public R2dbcSelectExecutorBuilder<T, R> windowTotal(LongConsumer windowTotalConsumer) {
+            this.windowTotalConsumer = windowTotalConsumer;
+            return this;
+        }
+
         public R2dbcSelectExecutor<T, R> buildExecutor() {
-            return new R2dbcSelectExecutor<>(operationParameter, queryHandler, specBuilder, criteriaHandler, preparedOperationBuilder, rowMapperBuilder);
+            return new R2dbcSelectExecutor<>(operationParameter, queryHandler, specBuilder, criteriaHandler, preparedOperationBuilder, rowMapperBuilder, windowTotalConsumer);
         }
 
         @Override
@@ -1,11 +1,16 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.executor;
 
+import com.jxpanda.r2dbc.spring.data.core.R2dbcStatementMapper;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcEntitySnapshots;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.kit.TransactionKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.data.mapping.PersistentPropertyAccessor;
 import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
 import org.springframework.data.r2dbc.mapping.OutboundRow;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
@@ -14,16 +19,27 @@ import org.springframework.data.relational.core.query.CriteriaDefinition;
 import org.springframework.data.relational.core.query.Query;
 import org.springframework.data.relational.core.query.Update;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
 import org.springframework.r2dbc.core.Parameter;
 import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.util.ObjectUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.SynchronousSink;
-
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @SuppressWarnings({"deprecation", "unchecked", "rawtypes"})
 public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecutor<T, R> {
@@ -51,13 +67,207 @@ public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
 
     @Override
     protected Mono<R> fetch(T domainEntity, R2dbcOperationParameter<T, R> parameter) {
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        return prepare(domainEntity, parameter)
+                .flatMap(preparedUpdate -> preparedUpdate.isUnchanged() ? Mono.just(preparedUpdate.entity())
+                        : this.databaseClient().sql(preparedUpdate.operation()).fetch().rowsUpdated()
+                        .handle(updateHandler(preparedUpdate.entity(), persistentEntity))
+                        .doOnEach(signal -> {
+                            if (signal.isOnComplete()) {
+                                refreshSnapshot(preparedUpdate, signal.getContextView());
+                            }
+                        })
+                        .then(template().maybeCallAfterSave(preparedUpdate.entity(), preparedUpdate.outboundRow(), parameter.getTableName())))
+                .cast(parameter.getReturnType());
+    }
+
+    /**
+     * 批量更新
+     * 相邻且SQL相同（更新的列相同）的实体共用一个预编译语句，每个实体的参数通过Statement.add()追加，整批只执行一次
+     * 乐观锁的检查仍然是逐行的：按每一组绑定返回的影响行数判断
+     */
+    @Override
+    public Flux<R> executeBatch(Collection<T> domainEntityList) {
+        if (ObjectUtils.isEmpty(domainEntityList)) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> {
+                    R2dbcOperationParameter<T, R> parameter = handleQuery();
+                    int batchSize = Math.max(1, parameter.getOption().getStatementBatchSize());
+                    return Flux.fromIterable(domainEntityList)
+                            .concatMap(domainEntity -> prepare(domainEntity, parameter))
+                            // 值为null的字段不会被更新，所以不同实体的SQL可能不一样
+                            .bufferUntilChanged(PreparedUpdate::sql)
+                            .concatMap(group -> Flux.fromIterable(group).buffer(batchSize))
+                            .concatMap(chunk -> updateChunk(chunk, parameter));
+                })
+                .doOnEach(onWriteComplete(domainEntityList))
+                .as(transactionalOperator()::transactional);
+    }
+
+    private Flux<R> updateChunk(List<PreparedUpdate<T>> chunk, R2dbcOperationParameter<T, R> parameter) {
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        if (chunk.get(0).isUnchanged()) {
+            // 与快照相比没有变化，不需要更新（没有变化的实体的sql都是空字符串，一定在同一组）
+            return Flux.fromIterable(chunk).map(PreparedUpdate::entity).cast(parameter.getReturnType());
+        }
+        Mono<List<Boolean>> results = isBulkUpdate(chunk, parameter)
+                ? bulkUpdateDistinct(chunk, parameter)
+                : executeBatchStatement(chunk.stream().map(PreparedUpdate::operation).toList()).map(rowsUpdated -> rowsUpdated > 0).collectList();
+        return results
+                .flatMapMany(successList -> Flux.range(0, chunk.size())
+                        .concatMap(index -> {
+                            PreparedUpdate<T> preparedUpdate = chunk.get(index);
+                            boolean success = index < successList.size() && successList.get(index);
+                            return Mono.just(success ? 1L : 0L)
+                                    .handle(updateHandler(preparedUpdate.entity(), persistentEntity))
+                                    .doOnEach(signal -> {
+                                        if (signal.isOnComplete()) {
+                                            refreshSnapshot(preparedUpdate, signal.getContextView());
+                                        }
+                                    })
+                                    .then(template().maybeCallAfterSave(preparedUpdate.entity(), preparedUpdate.outboundRow(), parameter.getTableName()));
+                        }))
+                .cast(parameter.getReturnType());
+    }
+
+    /**
+     * 是否使用单条语句的批量更新
+     * MySQL只能返回总的影响行数，无法可靠地判断有版本号的实体每一行是否更新成功（并发写入可能让版本号恰好等于更新后的值）
+     * 所以MySQL上有版本号的实体使用预编译语句批量执行，按每一组绑定的影响行数做乐观锁检查
+     */
+    private boolean isBulkUpdate(List<PreparedUpdate<T>> chunk, R2dbcOperationParameter<T, R> parameter) {
+        return chunk.size() > 1
+               && parameter.getOption().isBulkUpdate()
+               && template().getStatementMapper().isBulkUpdateSupported()
+               && (dialect() instanceof PostgresDialect || !parameter.getRelationalPersistentEntity().hasVersionProperty())
+               && !chunk.get(0).outboundRow().isEmpty();
+    }
+
+    /**
+     * 按id去重之后批量更新，返回每一行是否更新成功（与chunk的顺序一致）
+     * 一条语句中同一个id出现多次的时候，数据库只会用其中任意一行更新目标行，却会把每一行都报告为成功
+     * 所以同一个id第n次出现的实体放到第n轮，每一轮中的id都不重复，按顺序逐轮执行，与逐条更新的结果一致（后写入的生效，版本号逐次检查）
+     */
+    private Mono<List<Boolean>> bulkUpdateDistinct(List<PreparedUpdate<T>> chunk, R2dbcOperationParameter<T, R> parameter) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<List<Integer>> rounds = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            int round = occurrences.merge(idKey(chunk.get(i).id().getValue()), 1, Integer::sum) - 1;
+            if (round == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(round).add(i);
+        }
+        if (rounds.size() == 1) {
+            return bulkUpdate(chunk, parameter);
+        }
+        return Mono.defer(() -> {
+            Boolean[] results = new Boolean[chunk.size()];
+            return Flux.fromIterable(rounds)
+                    .concatMap(indexes -> bulkUpdate(indexes.stream().map(chunk::get).toList(), parameter)
+                            .doOnNext(successList -> {
+                                for (int i = 0; i < indexes.size(); i++) {
+                                    results[indexes.get(i)] = successList.get(i);
+                                }
+                            }))
+                    .then(Mono.fromSupplier(() -> Arrays.asList(results)));
+        });
+    }
+
+    /**
+     * 单条语句更新一块数据（id不重复），返回每一行是否更新成功
+     * 有版本号的时候，更新前的版本号会加入到匹配条件中，版本号不匹配的行不会被更新
+     */
+    private Mono<List<Boolean>> bulkUpdate(List<PreparedUpdate<T>> chunk, R2dbcOperationParameter<T, R> parameter) {
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        RelationalPersistentProperty idProperty = persistentEntity.getRequiredIdProperty();
+        RelationalPersistentProperty versionProperty = persistentEntity.getVersionProperty();
+        List<Map<SqlIdentifier, Object>> rows = chunk.stream().map(preparedUpdate -> {
+            Map<SqlIdentifier, Object> row = new LinkedHashMap<>(preparedUpdate.outboundRow());
+            row.put(idProperty.getColumnName(), preparedUpdate.id());
+            if (versionProperty != null) {
+                row.put(R2dbcStatementMapper.BULK_EXPECTED_VERSION, Parameter.fromOrEmpty(preparedUpdate.expectedVersion(), versionProperty.getType()));
+            }
+            return row;
+        }).toList();
+        PreparedOperation<String> operation = template().getStatementMapper().getMappedBulkUpdateObject(parameter.getTableName(),
+                idProperty.getColumnName(), List.copyOf(chunk.get(0).outboundRow().keySet()),
+                versionProperty == null ? null : versionProperty.getColumnName(), rows, persistentEntity);
+
+        if (dialect() instanceof PostgresDialect) {
+            // RETURNING返回的是更新成功的行的id
+            return this.databaseClient().sql(operation)
+                    .map((row, rowMetadata) -> idKey(row.get(0)))
+                    .all()
+                    .collect(Collectors.toSet())
+                    .map(updatedIds -> chunk.stream().map(preparedUpdate -> updatedIds.contains(idKey(preparedUpdate.id().getValue()))).toList());
+        }
+        // MySQL只能返回总的影响行数（这里只有没有版本号的实体），全部成功的时候不需要再确认
+        // 影响行数不包括值没有变化的行，所以影响行数不够的时候，需要查询确认每一行是否存在
+        return this.databaseClient().sql(operation)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(rowsUpdated -> rowsUpdated >= chunk.size()
+                        ? Mono.just(chunk.stream().map(preparedUpdate -> true).toList())
+                        : verifyBulkUpdate(chunk, parameter));
+    }
+
+    /**
+     * 查询确认每一行是否更新成功（只用于没有版本号的实体），行存在即成功
+     */
+    private Mono<List<Boolean>> verifyBulkUpdate(List<PreparedUpdate<T>> chunk, R2dbcOperationParameter<T, R> parameter) {
+        RelationalPersistentProperty idProperty = parameter.getRelationalPersistentEntity().getRequiredIdProperty();
+        List<Object> ids = chunk.stream().map(preparedUpdate -> preparedUpdate.id().getValue()).toList();
+        StatementMapper statementMapper = parameter.getStatementMapper();
+        StatementMapper.SelectSpec selectSpec = statementMapper.createSelect(parameter.getTableName())
+                .withProjection(idProperty.getColumnName())
+                .withCriteria(Criteria.where(dataAccessStrategy().toSql(idProperty.getColumnName())).in(ids));
+
+        return this.databaseClient().sql(statementMapper.getMappedObject(selectSpec))
+                .map((row, rowMetadata) -> idKey(row.get(0)))
+                .all()
+                .collect(Collectors.toSet())
+                .map(existingIds -> chunk.stream().map(preparedUpdate -> existingIds.contains(idKey(preparedUpdate.id().getValue()))).toList());
+    }
+
+    /**
+     * 比较id时使用的key，数据库返回的id类型可能与实体中的不一样（例如Integer和Long）
+     */
+    private static String idKey(@Nullable Object id) {
+        return String.valueOf(id);
+    }
+
+    /**
+     * 更新成功之后，把写入的列合并到快照中，下一次更新以数据库中的最新值为基准
+     * 处于事务中的时候，先移除快照（之后的更新写入所有的列），事务提交之后才记录合并后的快照，事务回滚的时候不会留下没有生效的快照
+     */
+    private void refreshSnapshot(PreparedUpdate<T> preparedUpdate, ContextView context) {
+        R2dbcEntitySnapshots.Snapshot snapshot = preparedUpdate.snapshot();
+        if (snapshot == null) {
+            return;
+        }
+        R2dbcEntitySnapshots entitySnapshots = template().getEntitySnapshots();
+        R2dbcEntitySnapshots.Snapshot merged = snapshot.merge(preparedUpdate.outboundRow());
+        if (TransactionKit.afterCommitOrNow(context, () -> entitySnapshots.put(preparedUpdate.entity(), merged))) {
+            entitySnapshots.remove(preparedUpdate.entity());
+        }
+    }
+
+    /**
+     * 执行更新前的准备：回调、版本号、转换为OutboundRow、构建更新语句
+     * 开启了脏检查并且有快照的实体，只保留与快照相比变化了的列，没有任何变化的时候不构建更新语句
+     */
+    private Mono<PreparedUpdate<T>> prepare(T domainEntity, R2dbcOperationParameter<T, R> parameter) {
         RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
         SqlIdentifier tableName = parameter.getTableName();
-        Mono<T> mono = template().maybeCallBeforeConvert(domainEntity, tableName).flatMap(onBeforeConvert -> {
+        return template().maybeCallBeforeConvert(domainEntity, tableName).flatMap(onBeforeConvert -> {
             T entityToUse;
             Criteria matchingVersionCriteria;
+            Object expectedVersion = null;
 
             if (persistentEntity.hasVersionProperty()) {
+                expectedVersion = persistentEntity.getPropertyAccessor(onBeforeConvert).getProperty(persistentEntity.getRequiredVersionProperty());
                 matchingVersionCriteria = createMatchingVersionCriteria(onBeforeConvert, persistentEntity);
                 entityToUse = incrementVersion(persistentEntity, onBeforeConvert);
             } else {
@@ -66,8 +276,9 @@ public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
             }
 
             OutboundRow outboundRow = getOutboundRow(entityToUse);
+            Object versionToMatch = expectedVersion;
 
-            return template().maybeCallBeforeSave(entityToUse, outboundRow, tableName).flatMap(onBeforeSave -> {
+            return template().maybeCallBeforeSave(entityToUse, outboundRow, tableName).map(onBeforeSave -> {
 
                 SqlIdentifier idColumn = persistentEntity.getRequiredIdProperty().getColumnName();
                 Parameter id = outboundRow.remove(idColumn);
@@ -78,25 +289,46 @@ public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
                     }
                 });
 
+                R2dbcEntitySnapshots entitySnapshots = template().getEntitySnapshots();
+                R2dbcEntitySnapshots.Snapshot recorded = EntityDescriptor.of(persistentEntity).isDirtyTracking()
+                        ? entitySnapshots.get(domainEntity) : null;
+                R2dbcEntitySnapshots.Snapshot snapshot = recorded == null ? null : entitySnapshots.resolve(recorded, entityToUse, this::getOutboundRow);
+                if (snapshot != null) {
+                    RelationalPersistentProperty versionProperty = persistentEntity.getVersionProperty();
+                    SqlIdentifier versionColumn = versionProperty == null ? null : versionProperty.getColumnName();
+                    outboundRow.entrySet().removeIf(entry -> !entry.getKey().equals(versionColumn) && snapshot.isUnchanged(entry.getKey(), entry.getValue()));
+                    if (outboundRow.keySet().stream().allMatch(column -> column.equals(versionColumn))) {
+                        // 没有任何变化，不执行更新，版本号还原为更新前的值
+                        T unchanged = onBeforeSave;
+                        if (versionProperty != null) {
+                            PersistentPropertyAccessor<T> accessor = persistentEntity.getPropertyAccessor(onBeforeSave);
+                            accessor.setProperty(versionProperty, versionToMatch);
+                            unchanged = accessor.getBean();
+                        }
+                        return new PreparedUpdate<>(unchanged, outboundRow, id, versionToMatch, null, "", snapshot);
+                    }
+                }
+
                 Criteria criteria = Criteria.where(dataAccessStrategy().toSql(idColumn)).is(id);
 
                 if (matchingVersionCriteria != null) {
                     criteria = criteria.and(matchingVersionCriteria);
                 }
 
-
-                Supplier<Update> updateSupplier = () -> Update.from((Map) outboundRow);
-
-                return doFetch(parameter, updateSupplier, criteria)
-                        .handle(updateHandler(onBeforeSave, persistentEntity))
-                        .then(template().maybeCallAfterSave(onBeforeSave, outboundRow, tableName));
+                PreparedOperation<?> operation = buildOperation(parameter, () -> Update.from((Map) outboundRow), criteria);
+                return new PreparedUpdate<>(onBeforeSave, outboundRow, id, versionToMatch, operation, operation.toQuery(), snapshot);
             });
         });
-        return mono.cast(parameter.getReturnType());
     }
 
 
     private Mono<Long> doFetch(R2dbcOperationParameter<T, R> parameter, Supplier<Update> updateSupplier, CriteriaDefinition criteria) {
+        Update update = updateSupplier.get();
+        return executePartitioned(criteria, update.getAssignments().size(),
+                partition -> this.databaseClient().sql(buildOperation(parameter, () -> update, partition)).fetch().rowsUpdated());
+    }
+
+    private PreparedOperation<?> buildOperation(R2dbcOperationParameter<T, R> parameter, Supplier<Update> updateSupplier, CriteriaDefinition criteria) {
         StatementMapper statementMapper = parameter.getStatementMapper();
         SqlIdentifier tableName = parameter.getTableName();
 
@@ -106,8 +338,7 @@ public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
             selectSpec = selectSpec.withCriteria(criteria);
         }
 
-        PreparedOperation<?> operation = statementMapper.getMappedObject(selectSpec);
-        return this.databaseClient().sql(operation).fetch().rowsUpdated();
+        return statementMapper.getMappedObject(selectSpec);
     }
 
     private BiConsumer<Long, SynchronousSink<Object>> updateHandler(T domainEntity, RelationalPersistentEntity<T> persistentEntity) {
@@ -187,6 +418,27 @@ public class R2dbcUpdateExecutor<T, R> extends R2dbcOperationExecutor.WriteExecu
     }
 
 
+    /**
+     * 准备好的更新操作
+     *
+     * @param entity          要更新的实体（已经执行过回调、版本号已经递增）
+     * @param outboundRow     转换后的行数据（只包含需要更新的列）
+     * @param id              id的值
+     * @param expectedVersion 更新前的版本号，没有版本号的时候为null
+     * @param operation       更新语句，与快照相比没有变化（不需要更新）的时候为null
+     * @param sql             渲染好的SQL，用于判断能否共用一个预编译语句
+     * @param snapshot        脏检查的快照，没有快照的时候为null
+     */
+    private record PreparedUpdate<T>(T entity, OutboundRow outboundRow, Parameter id, @Nullable Object expectedVersion,
+                                     @Nullable PreparedOperation<?> operation, String sql,
+                                     @Nullable R2dbcEntitySnapshots.Snapshot snapshot) {
+
+        private boolean isUnchanged() {
+            return this.operation == null;
+        }
+
+    }
+
     public static final class R2dbcUpdateExecutorBuilder<T, R> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, R, R2dbcUpdateExecutor<T, R>, R2dbcUpdateExecutorBuilder<T, R>> {
 
         private Supplier<Update> updateSupplier;
@@ -0,0 +1,209 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.R2dbcStatementMapper;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ObjectUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * upsert执行器：插入数据，唯一约束冲突的时候更新数据
+ * PostgreSQL使用 ON CONFLICT ... DO UPDATE，MySQL使用 ON DUPLICATE KEY UPDATE
+ * 插入的列与普通插入一致（值为null的列不插入），冲突时更新的列与普通更新一致（按ValidationStrategy过滤掉无效的字段）
+ * 冲突的列默认是id，没有冲突列的值的行（例如id由数据库生成）不可能冲突，直接走普通插入
+ * 不支持有版本号（@Version）的实体，乐观锁的语义无法用一条upsert语句表达
+ *
+ * @author Panda
+ */
+public class R2dbcUpsertExecutor<T> extends R2dbcOperationExecutor.WriteExecutor<T, T> {
+
+    /**
+     * 冲突的列（属性名或者列名），为空表示使用id
+     */
+    @Nullable
+    private final List<String> conflictTarget;
+
+    private R2dbcUpsertExecutor(R2dbcOperationParameter<T, T> operationParameter,
+                                Function<R2dbcOperationParameter<T, T>, Query> queryHandler,
+                                @Nullable List<String> conflictTarget) {
+        super(operationParameter, queryHandler);
+        this.conflictTarget = conflictTarget;
+    }
+
+    public static <T> R2dbcUpsertExecutorBuilder<T> builder() {
+        return new R2dbcUpsertExecutorBuilder<>();
+    }
+
+    @Override
+    protected Mono<T> fetch(R2dbcOperationParameter<T, T> parameter) {
+        throw new UnsupportedOperationException("Unsupported operation");
+    }
+
+    @Override
+    protected Mono<T> fetch(T domainEntity, R2dbcOperationParameter<T, T> parameter) {
+        return upsert(Flux.just(domainEntity), parameter).last(domainEntity);
+    }
+
+    /**
+     * 批量upsert
+     * 相邻且插入的列、更新的列都相同的实体分为一组，每组再按行数和绑定参数的数量分块，每一块只执行一条语句
+     */
+    @Override
+    public Flux<T> executeBatch(Collection<T> domainEntityList) {
+        if (ObjectUtils.isEmpty(domainEntityList)) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> upsert(Flux.fromIterable(domainEntityList), handleQuery()))
+                .doOnEach(onWriteComplete(domainEntityList))
+                .as(transactionalOperator()::transactional);
+    }
+
+    /**
+     * 只有按id冲突（PostgreSQL）的时候，被写入的行才一定是实体自己的id
+     * 按其他唯一约束冲突（或者MySQL任何唯一索引都可能冲突）的时候，被更新的可能是别的行，整个实体类型失效
+     */
+    @Override
+    protected void notifyWrite(ContextView context, Collection<T> domainEntities) {
+        if (ObjectUtils.isEmpty(conflictTarget) && dialect() instanceof PostgresDialect) {
+            super.notifyWrite(context, domainEntities);
+        } else {
+            notifyWrite(context);
+        }
+    }
+
+    private Flux<T> upsert(Flux<T> domainEntities, R2dbcOperationParameter<T, T> parameter) {
+        RelationalPersistentEntity<T> persistentEntity = parameter.getRelationalPersistentEntity();
+        if (persistentEntity.hasVersionProperty()) {
+            return Flux.error(new UnsupportedOperationException("Upsert does not support versioned entity " + persistentEntity.getType().getName()));
+        }
+        R2dbcInsertExecutor<T> insertExecutor = swap(R2dbcInsertExecutor::builder).build();
+        List<SqlIdentifier> conflictColumns = resolveConflictColumns(persistentEntity);
+        R2dbcOperationOption option = parameter.getOption();
+        return domainEntities
+                .concatMap(domainEntity -> insertExecutor.prepare(domainEntity, parameter))
+                .map(preparedRow -> PreparedUpsert.of(preparedRow, persistentEntity, conflictColumns))
+                .bufferUntilChanged(PreparedUpsert::signature)
+                .concatMap(group -> {
+                    int columnCount = Math.max(1, group.get(0).row().columns().size());
+                    int chunkSize = Math.max(1, Math.min(option.getInsertBatchSize(), option.getMaxBindParameters() / columnCount));
+                    return Flux.fromIterable(group).buffer(chunkSize);
+                })
+                .concatMap(chunk -> {
+                    List<R2dbcInsertExecutor.PreparedRow<T>> rows = chunk.stream().map(PreparedUpsert::row).toList();
+                    if (!chunk.get(0).signature().conflicting()) {
+                        // 没有冲突列的值，不可能冲突，走普通插入（可以回填数据库生成的主键）
+                        return insertExecutor.insertChunk(rows, parameter);
+                    }
+                    return upsertChunk(rows, chunk.get(0).signature().updateColumns(), conflictColumns, parameter);
+                });
+    }
+
+    private Flux<T> upsertChunk(List<R2dbcInsertExecutor.PreparedRow<T>> rows, List<SqlIdentifier> updateColumns,
+                                List<SqlIdentifier> conflictColumns, R2dbcOperationParameter<T, T> parameter) {
+        return resolveUpsertRowAlias()
+                .then(Mono.defer(() -> databaseClient().sql(template().getStatementMapper()
+                                .getMappedBatchUpsertObject(parameter.getTableName(), rows.get(0).columns(),
+                                        rows.stream().map(R2dbcInsertExecutor.PreparedRow::outboundRow).toList(),
+                                        parameter.getRelationalPersistentEntity(), conflictColumns, updateColumns))
+                        .fetch()
+                        .rowsUpdated()))
+                .thenMany(Flux.fromIterable(rows))
+                .concatMap(row -> template().maybeCallAfterSave(row.entity(), row.outboundRow(), parameter.getTableName()));
+    }
+
+    /**
+     * 第一次执行MySQL的upsert之前，按服务端的版本确定是否使用行别名
+     */
+    private Mono<Void> resolveUpsertRowAlias() {
+        R2dbcStatementMapper statementMapper = template().getStatementMapper();
+        if (statementMapper.isUpsertRowAliasResolved()) {
+            return Mono.empty();
+        }
+        return databaseClient().inConnection(connection -> Mono.fromRunnable(() -> statementMapper.resolveUpsertRowAlias(connection.getMetadata())));
+    }
+
+    private List<SqlIdentifier> resolveConflictColumns(RelationalPersistentEntity<T> persistentEntity) {
+        if (ObjectUtils.isEmpty(conflictTarget)) {
+            return List.of(persistentEntity.getRequiredIdProperty().getColumnName());
+        }
+        List<SqlIdentifier> columns = new ArrayList<>(conflictTarget.size());
+        for (String name : conflictTarget) {
+            columns.add(findProperty(persistentEntity, name).getColumnName());
+        }
+        return columns;
+    }
+
+    /**
+     * 冲突的列可以是属性名，也可以是列名
+     */
+    private static RelationalPersistentProperty findProperty(RelationalPersistentEntity<?> persistentEntity, String name) {
+        RelationalPersistentProperty property = R2dbcMappingKit.findProperty(persistentEntity, name);
+        if (property == null) {
+            throw new IllegalArgumentException("Conflict target '" + name + "' is not a property of " + persistentEntity.getType().getName());
+        }
+        return property;
+    }
+
+    /**
+     * 分组的依据，插入的列、更新的列都相同的行才能放在同一条语句中
+     *
+     * @param columns       插入的列
+     * @param updateColumns 冲突时更新的列
+     * @param conflicting   是否有冲突列的值（可能冲突）
+     */
+    private record Signature(List<SqlIdentifier> columns, List<SqlIdentifier> updateColumns, boolean conflicting) {
+    }
+
+    private record PreparedUpsert<T>(R2dbcInsertExecutor.PreparedRow<T> row, Signature signature) {
+
+        private static <T> PreparedUpsert<T> of(R2dbcInsertExecutor.PreparedRow<T> row, RelationalPersistentEntity<T> persistentEntity, List<SqlIdentifier> conflictColumns) {
+            List<SqlIdentifier> updateColumns = new ArrayList<>();
+            for (RelationalPersistentProperty property : persistentEntity) {
+                SqlIdentifier columnName = property.getColumnName();
+                if (!row.columns().contains(columnName) || conflictColumns.contains(columnName)
+                    || property.isIdProperty() || property.isInsertOnly()
+                    || !R2dbcMappingKit.isPropertyEffective(row.entity(), persistentEntity, property)) {
+                    continue;
+                }
+                updateColumns.add(columnName);
+            }
+            boolean conflicting = row.columns().containsAll(conflictColumns);
+            return new PreparedUpsert<>(row, new Signature(row.columns(), updateColumns, conflicting));
+        }
+
+    }
+
+    public static final class R2dbcUpsertExecutorBuilder<T> extends R2dbcOperationExecutor.R2dbcExecutorBuilder<T, T, R2dbcUpsertExecutor<T>, R2dbcUpsertExecutorBuilder<T>> {
+
+        private List<String> conflictTarget;
+
+        public R2dbcUpsertExecutorBuilder<T> conflictTarget(List<String> conflictTarget) {
+            this.conflictTarget = conflictTarget;
+            return this;
+        }
+
+        @Override
+        public R2dbcUpsertExecutor<T> buildExecutor() {
+            return new R2dbcUpsertExecutor<>(operationParameter, queryHandler, conflictTarget);
+        }
+
+        @Override
+        protected R2dbcUpsertExecutorBuilder<T> self() {
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Cursor;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 游标分页（keyset分页）
+ * 用上一页边界行的排序字段的值作为条件（WHERE (sort_cols) > (?, ?)）代替OFFSET，翻页的代价与页码无关
+ * 元组比较在不同数据库上的支持程度和对索引的利用都不一致（例如排序方向不同的时候无法使用元组比较）
+ * 所以统一展开为等价的OR形式：(c1 > ?) OR (c1 = ? AND c2 > ?) ...
+ * 并额外加上第一个排序字段的范围条件（c1 >= ?），保证能走到排序字段上的索引
+ * 排序字段可以为null，统一约定null是最小的值（正序NULLS FIRST，倒序NULLS LAST），条件中按这个约定展开IS NULL/IS NOT NULL的分支
+ * 不支持NULLS FIRST/LAST语法的数据库（MySQL、SQL Server等）原生的顺序就是null最小，与约定一致
+ *
+ * @author Panda
+ */
+final class KeysetPagination<T> {
+
+    private final RelationalPersistentEntity<T> entity;
+
+    /**
+     * 排序字段，最后一个一定是id
+     */
+    private final List<Key> keys;
+
+    private final List<String> keyNames;
+
+    @Nullable
+    private final Cursor cursor;
+
+    private final int pageSize;
+
+    KeysetPagination(RelationalPersistentEntity<T> entity, Sort sort, @Nullable Cursor cursor, int pageSize) {
+        Assert.isTrue(pageSize > 0, "Page size must be greater than zero");
+        Assert.isTrue(entity.hasIdProperty(), () -> "Keyset pagination requires an id property on " + entity.getType().getName());
+        this.entity = entity;
+        this.keys = resolveKeys(entity, sort);
+        this.keyNames = keys.stream().map(key -> key.property().getName()).toList();
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+        if (cursor != null && !keyNames.equals(cursor.keys())) {
+            throw new IllegalArgumentException("Pagination cursor does not match the sort of the query, expected " + keyNames + " but was " + cursor.keys());
+        }
+    }
+
+    /**
+     * 把查询条件改写为游标分页的查询
+     * 多查询一条数据，用来判断是否还有下一页
+     */
+    Query apply(Query query) {
+        boolean backward = isBackward();
+        Query keysetQuery = Query.query(buildCriteria(query.getCriteria().orElse(null), backward))
+                .sort(Sort.by(keys.stream().map(key -> key.order(backward)).toList()))
+                .limit(pageSize + 1)
+                .offset(0);
+        return query.getColumns().isEmpty() ? keysetQuery : keysetQuery.columns(query.getColumns().toArray(new SqlIdentifier[0]));
+    }
+
+    /**
+     * 把查询结果转换为分页对象，并计算上一页/下一页的游标
+     */
+    Pagination<T> toPagination(List<T> records) {
+        boolean backward = isBackward();
+        boolean hasMore = records.size() > pageSize;
+        List<T> content = new ArrayList<>(hasMore ? records.subList(0, pageSize) : records);
+        if (backward) {
+            // 向前翻页的时候是倒序查询的，需要还原为正常的顺序
+            Collections.reverse(content);
+        }
+
+        String nextCursor = null;
+        String previousCursor = null;
+        if (!content.isEmpty()) {
+            // 向后翻页：还有更多数据才有下一页，带了游标说明不是第一页，就有上一页
+            // 向前翻页：还有更多数据才有上一页，下一页一定存在（就是来的那一页）
+            boolean hasNext = backward || hasMore;
+            boolean hasPrevious = backward ? hasMore : cursor != null;
+            if (hasNext) {
+                nextCursor = Cursor.next(keyNames, readValues(content.get(content.size() - 1))).encode();
+            }
+            if (hasPrevious) {
+                previousCursor = Cursor.previous(keyNames, readValues(content.get(0))).encode();
+            }
+        }
+        Sort sort = Sort.by(keys.stream().map(key -> key.order(false)).toList());
+        return Pagination.keyset(content, PageRequest.of(0, pageSize, sort), nextCursor, previousCursor);
+    }
+
+    private boolean isBackward() {
+        return cursor != null && cursor.backward();
+    }
+
+    private CriteriaDefinition buildCriteria(@Nullable CriteriaDefinition criteria, boolean backward) {
+        Criteria result = Criteria.empty();
+        if (criteria != null && !criteria.isEmpty()) {
+            result = result.and(criteria);
+        }
+        if (cursor == null) {
+            return result;
+        }
+
+        Key firstKey = keys.get(0);
+        Object firstValue = cursor.getValue(0, firstKey.property().getType());
+        if (firstValue != null && (firstKey.isGreater(backward) || !firstKey.isNullable())) {
+            // 冗余的范围条件，不影响结果，只为了让数据库能利用第一个排序字段上的索引
+            // 往“小”的方向翻页的时候null也在范围内，可以为null的字段不加这个条件
+            Criteria.CriteriaStep firstStep = Criteria.where(firstKey.property().getName());
+            result = result.and(firstKey.isGreater(backward) ? firstStep.greaterThanOrEquals(firstValue) : firstStep.lessThanOrEquals(firstValue));
+        }
+
+        // 展开为 (c1 > v1) OR (c1 = v1 AND c2 > v2) OR ... 的形式
+        Criteria keyset = Criteria.empty();
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            Object value = cursor.getValue(i, key.property().getType());
+            CriteriaDefinition next = key.next(value, backward);
+            if (next == null) {
+                // 边界行的值已经是这个方向上的最后一个了（往“小”的方向翻页并且值是null），这一项条件不存在
+                continue;
+            }
+            Criteria term = Criteria.empty();
+            for (int j = 0; j < i; j++) {
+                Object previousValue = cursor.getValue(j, keys.get(j).property().getType());
+                Criteria.CriteriaStep step = term.and(keys.get(j).property().getName());
+                term = previousValue == null ? step.isNull() : step.is(previousValue);
+            }
+            keyset = keyset.or(term.and(next));
+        }
+        return keyset.isEmpty() ? result : result.and(keyset);
+    }
+
+    private List<Object> readValues(T record) {
+        PersistentPropertyAccessor<T> accessor = entity.getPropertyAccessor(record);
+        List<Object> values = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            values.add(accessor.getProperty(key.property()));
+        }
+        return values;
+    }
+
+    /**
+     * 解析排序字段
+     * 排序字段可以是属性名，也可以是列名，最后总是追加id作为兜底，保证排序是稳定且唯一的
+     */
+    private static List<Key> resolveKeys(RelationalPersistentEntity<?> entity, Sort sort) {
+        List<Key> keys = new ArrayList<>();
+        RelationalPersistentProperty idProperty = entity.getRequiredIdProperty();
+        Sort.Direction lastDirection = Sort.Direction.ASC;
+        for (Sort.Order order : sort) {
+            RelationalPersistentProperty property = R2dbcMappingKit.findProperty(entity, order.getProperty());
+            if (property == null) {
+                throw new IllegalArgumentException("Keyset pagination requires sort property '" + order.getProperty() + "' to be a property of " + entity.getType().getName());
+            }
+            keys.add(new Key(property, order.getDirection()));
+            lastDirection = order.getDirection();
+            if (property.equals(idProperty)) {
+                // id已经是唯一的了，后面的排序字段没有意义
+                return keys;
+            }
+        }
+        keys.add(new Key(idProperty, lastDirection));
+        return keys;
+    }
+
+    /**
+     * 排序字段
+     *
+     * @param property  字段
+     * @param direction 排序方向
+     */
+    private record Key(RelationalPersistentProperty property, Sort.Direction direction) {
+
+        /**
+         * 下一行是否比边界行“大”
+         * 正序向后翻页、倒序向前翻页的时候是大于，反之是小于
+         */
+        private boolean isGreater(boolean backward) {
+            return direction.isAscending() != backward;
+        }
+
+        private Sort.Order order(boolean backward) {
+            Sort.Direction orderDirection = backward ? (direction.isAscending() ? Sort.Direction.DESC : Sort.Direction.ASC) : direction;
+            // null是最小的值
+            Sort.Order order = new Sort.Order(orderDirection, property.getName());
+            return orderDirection.isAscending() ? order.nullsFirst() : order.nullsLast();
+        }
+
+        /**
+         * 字段是否可能为null，id和基本类型的字段不会是null
+         */
+        private boolean isNullable() {
+            return !property.isIdProperty() && !property.getType().isPrimitive();
+        }
+
+        /**
+         * 这个字段上排在边界行之后的条件（null是最小的值）
+         * 往“大”的方向：值为null的时候是 c IS NOT NULL，否则是 c > v
+         * 往“小”的方向：值为null的时候没有更小的值，返回null，否则是 c < v（可以为null的字段还要加上 OR c IS NULL）
+         */
+        @Nullable
+        private CriteriaDefinition next(@Nullable Object value, boolean backward) {
+            String name = property.getName();
+            if (isGreater(backward)) {
+                return value == null ? Criteria.where(name).isNotNull() : Criteria.where(name).greaterThan(value);
+            }
+            if (value == null) {
+                return null;
+            }
+            Criteria lessThan = Criteria.where(name).lessThan(value);
+            return isNullable() ? lessThan.or(name).isNull() : lessThan;
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.kit.QueryKit;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcDeleteOperation;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcChunkedWriteExecutor;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcDeleteExecutor;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
 import org.springframework.data.r2dbc.core.ReactiveDeleteOperation;
@@ -25,9 +26,12 @@ import org.springframework.data.relational.core.query.Query;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.NonNull;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -60,11 +64,21 @@ public final class R2dbcDeleteOperationSupport extends R2dbcOperationSupport imp
     }
 
 
-    private static final class R2dbcDeleteSupport<T> extends R2dbcSupport<T> implements R2dbcDeleteOperation.R2dbcDelete<T> {
+    private static final class R2dbcDeleteSupport<T> extends R2dbcSupport<T> implements R2dbcDeleteOperation.R2dbcDelete<T>, R2dbcDeleteOperation.TerminatingDelete {
 
 
+        /**
+         * 是否显式地作用于整张表 ${@link #matchingAll()}
+         */
+        private final boolean matchAll;
+
         private R2dbcDeleteSupport(R2dbcOperationParameter<T, T> operationParameter) {
+            this(operationParameter, false);
+        }
+
+        private R2dbcDeleteSupport(R2dbcOperationParameter<T, T> operationParameter, boolean matchAll) {
             super(operationParameter);
+            this.matchAll = matchAll;
         }
 
         /*
@@ -87,7 +101,7 @@ public final class R2dbcDeleteOperationSupport extends R2dbcOperationSupport imp
          */
         @NonNull
         @Override
-        public ReactiveDeleteOperation.TerminatingDelete matching(@NonNull Query query) {
+        public R2dbcDeleteOperation.TerminatingDelete matching(@NonNull Query query) {
 
             Assert.notNull(query, "Query must not be null");
 
@@ -95,6 +109,11 @@ public final class R2dbcDeleteOperationSupport extends R2dbcOperationSupport imp
             return newSupport(rebuild().query(query), R2dbcDeleteSupport::new);
         }
 
+        @Override
+        public R2dbcDeleteOperation.TerminatingDelete matchingAll() {
+            return newSupport(rebuild().query(Query.empty()), parameter -> new R2dbcDeleteSupport<>(parameter, true));
+        }
+
         /*
          * (non-Javadoc)
          * @see org.springframework.data.r2dbc.core.ReactiveDeleteOperation.TerminatingDelete#all()
@@ -132,11 +151,27 @@ public final class R2dbcDeleteOperationSupport extends R2dbcOperationSupport imp
         @Override
         public <ID> Mono<Long> byIds(Collection<ID> ids) {
             Assert.notEmpty(ids, "ID collection must not be empty");
-            return executorBuilder(R2dbcDeleteExecutor::<T, Long>builder)
+            List<List<ID>> chunks = partitionIds(ids);
+            return inTransaction(Flux.fromIterable(chunks)
+                    .concatMap(chunk -> executorBuilder(R2dbcDeleteExecutor::<T, Long>builder)
+                            .returnType(Long.class)
+                            .queryHandler(parameter -> QueryKit.queryByIds(parameter.getDomainType(), chunk))
+                            .build()
+                            .execute())
+                    .reduce(0L, Long::sum), chunks.size() > 1);
+        }
+
+        @Override
+        public Flux<Long> chunked(int chunkSize, Duration pause) {
+            if (!this.matchAll && !hasCriteria()) {
+                return Flux.error(criteriaRequired("Chunked delete"));
+            }
+            return executorBuilder(R2dbcChunkedWriteExecutor::<T>builder)
                     .returnType(Long.class)
-                    .queryHandler(parameter -> QueryKit.queryById(parameter.getDomainType(), ids))
+                    .chunkSize(chunkSize)
+                    .pause(pause)
                     .build()
-                    .execute();
+                    .executeChunked();
         }
 
     }
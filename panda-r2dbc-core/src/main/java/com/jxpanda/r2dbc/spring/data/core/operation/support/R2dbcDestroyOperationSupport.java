@@ -17,7 +17,9 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.kit.QueryKit;
+import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcDeleteOperation;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcDestroyOperation;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcChunkedWriteExecutor;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcDestroyExecutor;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
 import org.springframework.data.r2dbc.core.ReactiveDeleteOperation;
@@ -25,9 +27,12 @@ import org.springframework.data.relational.core.query.Query;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.NonNull;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -53,11 +58,21 @@ public final class R2dbcDestroyOperationSupport extends R2dbcOperationSupport im
     }
 
 
-    private static final class R2dbcDestroySupport<T> extends R2dbcSupport<T> implements R2dbcDestroyOperation.R2dbcDestroy<T> {
+    private static final class R2dbcDestroySupport<T> extends R2dbcSupport<T> implements R2dbcDestroyOperation.R2dbcDestroy<T>, R2dbcDeleteOperation.TerminatingDelete {
 
 
+        /**
+         * 是否显式地作用于整张表 ${@link #matchingAll()}
+         */
+        private final boolean matchAll;
+
         private R2dbcDestroySupport(R2dbcOperationParameter<T, T> operationParameter) {
+            this(operationParameter, false);
+        }
+
+        private R2dbcDestroySupport(R2dbcOperationParameter<T, T> operationParameter, boolean matchAll) {
             super(operationParameter);
+            this.matchAll = matchAll;
         }
 
         /**
@@ -79,13 +94,18 @@ public final class R2dbcDestroyOperationSupport extends R2dbcOperationSupport im
          * @see org.springframework.data.r2dbc.core.ReactiveDeleteOperation.DeleteWithQuery#matching(Query)
          */
         @NonNull
-        public ReactiveDeleteOperation.TerminatingDelete matching(@NonNull Query query) {
+        public R2dbcDeleteOperation.TerminatingDelete matching(@NonNull Query query) {
 
             Assert.notNull(query, "Query must not be null");
 
             return newSupport(rebuild().query(query), R2dbcDestroySupport::new);
         }
 
+        @Override
+        public R2dbcDeleteOperation.TerminatingDelete matchingAll() {
+            return newSupport(rebuild().query(Query.empty()), parameter -> new R2dbcDestroySupport<>(parameter, true));
+        }
+
         /*
          * (non-Javadoc)
          * @see org.springframework.data.r2dbc.core.ReactiveDeleteOperation.TerminatingDelete#all()
@@ -94,6 +114,7 @@ public final class R2dbcDestroyOperationSupport extends R2dbcOperationSupport im
         @Override
         public Mono<Long> all() {
             return executorBuilder(R2dbcDestroyExecutor::<T, Long>builder)
+                    .returnType(Long.class)
                     .build()
                     .execute();
         }
@@ -122,11 +143,28 @@ public final class R2dbcDestroyOperationSupport extends R2dbcOperationSupport im
 
         @Override
         public <ID> Mono<Long> byIds(Collection<ID> ids) {
-            return executorBuilder(R2dbcDestroyExecutor::<T, Long>builder)
+            List<List<ID>> chunks = partitionIds(ids);
+            return inTransaction(Flux.fromIterable(chunks)
+                    .concatMap(chunk -> executorBuilder(R2dbcDestroyExecutor::<T, Long>builder)
+                            .returnType(Long.class)
+                            .queryHandler(parameter -> QueryKit.queryByIds(parameter.getDomainType(), chunk))
+                            .build()
+                            .execute())
+                    .reduce(0L, Long::sum), chunks.size() > 1);
+        }
+
+        @Override
+        public Flux<Long> chunked(int chunkSize, Duration pause) {
+            if (!this.matchAll && !hasCriteria()) {
+                return Flux.error(criteriaRequired("Chunked delete"));
+            }
+            return executorBuilder(R2dbcChunkedWriteExecutor::<T>builder)
                     .returnType(Long.class)
-                    .queryHandler(parameter -> QueryKit.queryById(parameter.getDomainType(), ids))
+                    .destroy(true)
+                    .chunkSize(chunkSize)
+                    .pause(pause)
                     .build()
-                    .execute();
+                    .executeChunked();
         }
 
 
@@ -18,7 +18,9 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcInsertOperation;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcInsertExecutor;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
+import org.reactivestreams.Publisher;
 import org.springframework.data.r2dbc.core.ReactiveInsertOperation;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.NonNull;
@@ -63,6 +65,10 @@ public final class R2dbcInsertOperationSupport extends R2dbcOperationSupport imp
             super(operationParameter);
         }
 
+        @Override
+        public R2dbcInsert<T> withOption(R2dbcOperationOption option) {
+            return newSupport(rebuild().option(option), R2dbcInsertSupport::new);
+        }
 
         /*
          * (non-Javadoc)
@@ -99,5 +105,13 @@ public final class R2dbcInsertOperationSupport extends R2dbcOperationSupport imp
                     .executeBatch(objectList);
         }
 
+        @Override
+        public Mono<Long> bulkLoad(Publisher<T> objects) {
+            Assert.notNull(objects, "Objects to load must not be null");
+            return executorBuilder(R2dbcInsertExecutor::builder)
+                    .build()
+                    .executeBulkLoad(objects);
+        }
+
     }
 }
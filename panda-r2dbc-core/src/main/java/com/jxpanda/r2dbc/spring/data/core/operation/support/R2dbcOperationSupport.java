@@ -3,9 +3,13 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationExecutor;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -42,6 +46,10 @@ public class R2dbcOperationSupport {
                     .build();
         }
 
+        protected R2dbcOperationParameter<T, T> parameter() {
+            return this.operationParameter;
+        }
+
         protected R2dbcOperationParameter.R2dbcOperationParameterBuilder<T, T> rebuild() {
             return this.operationParameter.rebuild(this.operationParameter.getDomainType(), this.operationParameter.getDomainType());
         }
@@ -65,6 +73,34 @@ public class R2dbcOperationSupport {
         }
 
 
+        /**
+         * 按IN查询的渲染策略拆分id列表，每一组执行一次
+         */
+        protected <ID> List<List<ID>> partitionIds(Collection<ID> ids) {
+            return this.operationParameter.getTemplate().getStatementMapper().partitionInList(ids);
+        }
+
+        /**
+         * 是否有查询条件
+         */
+        protected boolean hasCriteria() {
+            return this.operationParameter.getQuery().getCriteria().map(criteria -> !criteria.isEmpty()).orElse(false);
+        }
+
+        /**
+         * 分片写、增量更新不允许在漏掉条件的时候作用于整张表，需要显式地调用matchingAll()
+         */
+        protected static InvalidDataAccessApiUsageException criteriaRequired(String operation) {
+            return new InvalidDataAccessApiUsageException(operation + " requires criteria, call matching(...) with a non-empty query or matchingAll() to apply to the whole table");
+        }
+
+        /**
+         * 拆分为多次执行的时候，在同一个事务中执行
+         */
+        protected <V> Mono<V> inTransaction(Mono<V> mono, boolean transactional) {
+            return transactional ? mono.as(this.operationParameter.getTemplate().getTransactionalOperator()::transactional) : mono;
+        }
+
         protected TransactionalOperator transactionalOperator(int propagationBehavior, int isolationLevel, int timeout, boolean readOnly) {
             return TransactionalOperator.create(this.operationParameter.getTemplate().getR2dbcTransactionManager(), new TransactionDefinition() {
                 @Override
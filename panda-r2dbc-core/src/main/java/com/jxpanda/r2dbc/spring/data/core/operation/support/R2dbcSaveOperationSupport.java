@@ -2,6 +2,7 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcSaveOperation;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcSaveExecutor;
 import org.springframework.util.Assert;
@@ -9,6 +10,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Panda
@@ -34,13 +36,36 @@ public class R2dbcSaveOperationSupport extends R2dbcOperationSupport implements
     private static final class R2dbcSaveSupport<T> extends R2dbcSupport<T> implements R2dbcSaveOperation.R2dbcSave<T> {
 
 
+        /**
+         * 是否使用upsert保存
+         */
+        private final boolean upsert;
+
+        /**
+         * upsert冲突的列，为空表示使用id
+         */
+        private final List<String> conflictTarget;
+
         private R2dbcSaveSupport(R2dbcOperationParameter<T, T> operationParameter) {
+            this(operationParameter, false, null);
+        }
+
+        private R2dbcSaveSupport(R2dbcOperationParameter<T, T> operationParameter, boolean upsert, List<String> conflictTarget) {
             super(operationParameter);
+            this.upsert = upsert;
+            this.conflictTarget = conflictTarget;
+        }
+
+        @Override
+        public R2dbcSaveOperation.R2dbcSave<T> withOption(R2dbcOperationOption option) {
+            return newSupport(rebuild().option(option), parameter -> new R2dbcSaveSupport<>(parameter, this.upsert, this.conflictTarget));
         }
 
         @Override
         public Mono<T> using(T entity) {
             return executorBuilder(R2dbcSaveExecutor::builder)
+                    .upsert(upsert)
+                    .conflictTarget(conflictTarget)
                     .build()
                     .execute(entity);
         }
@@ -48,10 +73,23 @@ public class R2dbcSaveOperationSupport extends R2dbcOperationSupport implements
         @Override
         public Flux<T> batch(Collection<T> entityList) {
             return executorBuilder(R2dbcSaveExecutor::builder)
+                    .upsert(upsert)
+                    .conflictTarget(conflictTarget)
                     .build()
                     .executeBatch(entityList);
         }
 
+        @Override
+        public R2dbcSave<T> upsert() {
+            return new R2dbcSaveSupport<>(parameter(), true, conflictTarget);
+        }
+
+        @Override
+        public R2dbcSave<T> onConflict(String... columns) {
+            Assert.notEmpty(columns, "Conflict columns must not be empty");
+            return new R2dbcSaveSupport<>(parameter(), true, List.of(columns));
+        }
+
 
     }
 
@@ -16,30 +16,60 @@
 package com.jxpanda.r2dbc.spring.data.core.operation.support;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcEntityCache;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcResidentTables;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSession;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSingleFlight;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcTotalCountCache;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginName;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Cursor;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.seeker.Seeker;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
 import com.jxpanda.r2dbc.spring.data.core.kit.QueryKit;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.core.kit.TransactionKit;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcSelectOperation;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcSelectExecutor;
 import org.reactivestreams.Publisher;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.core.StatementMapper;
 import org.springframework.data.r2dbc.core.ReactiveSelectOperation;
+import org.springframework.data.r2dbc.dialect.MySqlDialect;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.query.Query;
-import org.springframework.data.relational.core.sql.Expressions;
-import org.springframework.data.relational.core.sql.Functions;
+import org.springframework.data.relational.core.sql.IdentifierProcessing;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.PreparedOperation;
 import org.springframework.r2dbc.core.RowsFetchSpec;
+import org.springframework.r2dbc.core.binding.BindTarget;
 import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Implementation of {@link ReactiveSelectOperation}.
@@ -49,6 +79,21 @@ import java.util.function.Function;
  */
 public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport implements ReactiveSelectOperation {
 
+    /**
+     * PostgreSQL表的估算行数
+     */
+    private static final String POSTGRES_ESTIMATE_SQL = "SELECT reltuples FROM pg_class WHERE oid = CAST(:table AS regclass)";
+
+    /**
+     * MySQL表的估算行数
+     */
+    private static final String MYSQL_ESTIMATE_SQL = "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = :table";
+
+    /**
+     * 解析EXPLAIN结果使用的objectMapper
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
 
     public R2dbcSelectOperationSupport(ReactiveEntityTemplate template) {
         super(template);
@@ -158,7 +203,7 @@ public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport imp
         @NonNull
         @Override
         public Mono<T> first() {
-            return doSelect(parameter -> parameter.getQuery().limit(1), RowsFetchSpec::first);
+            return residentOr(parameter().getQuery().limit(1), () -> doSelect(parameter -> parameter.getQuery().limit(1), RowsFetchSpec::first).flux()).next();
         }
 
         /*
@@ -168,7 +213,7 @@ public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport imp
         @NonNull
         @Override
         public Mono<T> one() {
-            return doSelect(parameter -> parameter.getQuery().limit(1), RowsFetchSpec::one);
+            return residentOr(parameter().getQuery().limit(1), () -> doSelect(parameter -> parameter.getQuery().limit(1), RowsFetchSpec::one).flux()).next();
         }
 
         /*
@@ -178,27 +223,222 @@ public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport imp
         @NonNull
         @Override
         public Flux<T> all() {
-            return doSelect(RowsFetchSpec::all);
+            return residentOr(parameter().getQuery(), () -> doSelect(RowsFetchSpec::all));
         }
 
         @Override
         public <ID> Mono<T> byId(ID id) {
-            return doSelect(parameter -> QueryKit.queryById(parameter.getDomainType(), id), RowsFetchSpec::one);
+            if (!isIdentitySelect()) {
+                return doSelectById(id);
+            }
+            return Mono.deferContextual(context -> {
+                Optional<R2dbcSession> sessionOptional = R2dbcSession.current(context);
+                if (sessionOptional.isEmpty()) {
+                    return doSelectById(id);
+                }
+                // 会话中已经加载过的id直接返回同一个实例
+                R2dbcSession session = sessionOptional.get();
+                Class<T> domainType = parameter().getDomainType();
+                T existing = session.get(domainType, id);
+                return existing != null ? Mono.just(existing) : doSelectById(id).map(entity -> session.putIfAbsent(domainType, entity));
+            });
         }
 
         @Override
         public <ID> Flux<T> byIds(Collection<ID> ids) {
-            return doSelect(parameter -> QueryKit.queryByIds(parameter.getDomainType(), ids), RowsFetchSpec::all);
+            if (!isIdentitySelect()) {
+                return doCachedSelectByIds(ids);
+            }
+            return Flux.deferContextual(context -> {
+                Optional<R2dbcSession> sessionOptional = R2dbcSession.current(context);
+                if (sessionOptional.isEmpty()) {
+                    return doCachedSelectByIds(ids);
+                }
+                R2dbcSession session = sessionOptional.get();
+                Class<T> domainType = parameter().getDomainType();
+                List<T> existingList = new ArrayList<>();
+                List<ID> missingIds = new ArrayList<>();
+                for (ID id : new LinkedHashSet<>(ids)) {
+                    T existing = session.get(domainType, id);
+                    if (existing != null) {
+                        existingList.add(existing);
+                    } else {
+                        missingIds.add(id);
+                    }
+                }
+                Flux<T> existingFlux = Flux.fromIterable(existingList);
+                return missingIds.isEmpty() ? existingFlux
+                        : existingFlux.concatWith(doCachedSelectByIds(missingIds).map(entity -> session.putIfAbsent(domainType, entity)));
+            });
+        }
+
+        private <ID> Mono<T> doSelectById(ID id) {
+            Mono<T> select = doSelect(parameter -> QueryKit.queryById(parameter.getDomainType(), id), RowsFetchSpec::one);
+            boolean resident = isResident();
+            boolean cacheable = isCacheable();
+            boolean batchLoadable = isBatchLoadable();
+            if (!resident && !cacheable && !batchLoadable) {
+                return select;
+            }
+            return TransactionKit.isInTransaction().flatMap(inTransaction -> {
+                if (inTransaction) {
+                    return select;
+                }
+                Class<T> domainType = parameter().getDomainType();
+                if (resident) {
+                    return parameter().getTemplate().getResidentTables().findByIds(domainType, Collections.singletonList(id)).next();
+                }
+                return Mono.deferContextual(context -> {
+                    Object routingKey = parameter().getTemplate().getRoutingKeyResolver().resolve(context);
+                    if (cacheable) {
+                        T cached = parameter().getTemplate().getEntityCache().get(domainType, routingKey, id);
+                        if (cached != null) {
+                            return Mono.just(cached);
+                        }
+                    }
+                    // 批量加载走byIds，查询出来的数据同样会放入缓存
+                    // 会话中的查询不参与批量加载，批次的查询在其他调用方的Context中执行，无法把实例放入这个会话
+                    if (batchLoadable && R2dbcSession.current(context).isEmpty()) {
+                        return parameter().getTemplate().getBatchLoader().load(domainType, id, parameter().getOption());
+                    }
+                    return cacheable ? loadIntoCache(select.flux(), routingKey).next() : select;
+                });
+            });
+        }
+
+        private <ID> Flux<T> doCachedSelectByIds(Collection<ID> ids) {
+            if (isResident()) {
+                return TransactionKit.isInTransaction()
+                        .flatMapMany(inTransaction -> inTransaction ? doSelectByIds(ids) : parameter().getTemplate().getResidentTables().findByIds(parameter().getDomainType(), ids));
+            }
+            if (!isCacheable()) {
+                return doSelectByIds(ids);
+            }
+            return isCacheUsable().flatMapMany(cacheUsable -> {
+                if (!cacheUsable) {
+                    return doSelectByIds(ids);
+                }
+                return Flux.deferContextual(context -> {
+                    // 先从缓存中获取，只查询缓存中没有的id
+                    Object routingKey = parameter().getTemplate().getRoutingKeyResolver().resolve(context);
+                    R2dbcEntityCache entityCache = parameter().getTemplate().getEntityCache();
+                    Class<T> domainType = parameter().getDomainType();
+                    List<T> cachedList = new ArrayList<>();
+                    List<ID> missingIds = new ArrayList<>();
+                    for (ID id : new LinkedHashSet<>(ids)) {
+                        T cached = entityCache.get(domainType, routingKey, id);
+                        if (cached != null) {
+                            cachedList.add(cached);
+                        } else {
+                            missingIds.add(id);
+                        }
+                    }
+                    Flux<T> cachedFlux = Flux.fromIterable(cachedList);
+                    return missingIds.isEmpty() ? cachedFlux : cachedFlux.concatWith(loadIntoCache(doSelectByIds(missingIds), routingKey));
+                });
+            });
+        }
+
+        private <ID> Flux<T> doSelectByIds(Collection<ID> ids) {
+            return Flux.fromIterable(partitionIds(ids))
+                    .concatMap(chunk -> doSelect(parameter -> QueryKit.queryByIds(parameter.getDomainType(), chunk), RowsFetchSpec::all));
+        }
+
+        /**
+         * 是否是按默认的表、默认的返回类型、不包含已逻辑删除的数据查询实体
+         * 只有这样查询出来的实体才能放入会话和实体缓存
+         */
+        private boolean isIdentitySelect() {
+            R2dbcOperationParameter<T, T> parameter = parameter();
+            EntityDescriptor<T> entityDescriptor = EntityDescriptor.of(parameter.getDomainType());
+            return entityDescriptor.getIdProperty() != null
+                   && parameter.getReturnType() == parameter.getDomainType()
+                   && entityDescriptor.getTableName().equals(parameter.getTableName())
+                   && (!entityDescriptor.getLogicDelete().enable() || parameter.getOption().isPluginEnable(R2dbcPluginName.LOGIC_DELETE));
+        }
+
+        /**
+         * 是否可以从常驻内存的快照中查询（实体开启了常驻内存，并且选项没有关闭）
+         */
+        private boolean isResident() {
+            return EntityDescriptor.of(parameter().getDomainType()).getResident() != null
+                   && parameter().getOption().isResident()
+                   && isIdentitySelect();
+        }
+
+        /**
+         * 快照能回答的查询（没有排序、偏移和投影，条件只有AND连接的EQ/IN）从常驻内存的快照中获取，其他查询和事务中的查询走数据库
+         */
+        private Flux<T> residentOr(Query query, Supplier<Flux<T>> select) {
+            if (!isResident() || query.isSorted() || query.getOffset() > 0 || !query.getColumns().isEmpty()) {
+                return select.get();
+            }
+            List<R2dbcResidentTables.Condition> conditions = R2dbcResidentTables.parse(parameter().getRelationalPersistentEntity(), query.getCriteria().orElse(null));
+            if (conditions == null) {
+                return select.get();
+            }
+            int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+            return TransactionKit.isInTransaction()
+                    .flatMapMany(inTransaction -> inTransaction ? select.get() : parameter().getTemplate().getResidentTables().find(parameter().getDomainType(), conditions, limit));
+        }
+
+        /**
+         * 是否可以批量加载（实体开启了批量加载），选项不同的调用方会放在不同的批次中
+         */
+        private boolean isBatchLoadable() {
+            return EntityDescriptor.of(parameter().getDomainType()).getBatchLoad() != null
+                   && isIdentitySelect();
+        }
+
+        /**
+         * 是否可以使用实体缓存（实体开启了缓存）
+         */
+        private boolean isCacheable() {
+            return EntityDescriptor.of(parameter().getDomainType()).isCacheable() && isIdentitySelect();
+        }
+
+        /**
+         * 事务中不使用实体缓存，事务中读到的可能是未提交的数据，也需要读到事务自己写入的数据
+         */
+        private Mono<Boolean> isCacheUsable() {
+            return TransactionKit.isInTransaction().map(inTransaction -> !inTransaction);
+        }
+
+        /**
+         * 从数据库加载的数据放入缓存（按加载方的路由区分），并且记录加载的耗时
+         */
+        private Flux<T> loadIntoCache(Flux<T> select, @Nullable Object routingKey) {
+            return Flux.defer(() -> {
+                R2dbcEntityCache entityCache = parameter().getTemplate().getEntityCache();
+                Class<T> domainType = parameter().getDomainType();
+                long generation = entityCache.generation(domainType);
+                long start = System.nanoTime();
+                return select.doOnNext(entity -> entityCache.put(domainType, routingKey, entity, generation))
+                        .doOnComplete(() -> entityCache.recordLoad(domainType, System.nanoTime() - start));
+            });
         }
 
         @Override
         public Mono<Pagination<T>> page(Pageable pageable) {
-            return doPage(pageable, R2dbcOperationParameter::getQuery);
+            return page(pageable, PageStrategy.DEFAULT);
+        }
+
+        @Override
+        public Mono<Pagination<T>> page(Pageable pageable, PageStrategy pageStrategy) {
+            return doPage(pageable, pageStrategy, parameter -> parameter.getQuery().with(pageable));
+        }
+
+        @Override
+        public Mono<Pagination<T>> keyset(@Nullable String cursor, int pageSize) {
+            return doKeyset(cursor, pageSize, R2dbcOperationParameter::getQuery);
         }
 
         @Override
         public Mono<Pagination<T>> seek(Seeker<T> seeker) {
-            return doPage(seeker.takePageable(), parameter -> seeker.buildQuery(parameter.getDomainType()));
+            if (seeker.takeKeyset()) {
+                return doKeyset(seeker.getCursor(), seeker.getPagination().pageSize(), parameter -> seeker.buildQuery(parameter.getDomainType()));
+            }
+            return doPage(seeker.takePageable(), seeker.getPagination().takePageStrategy(), parameter -> seeker.buildQuery(parameter.getDomainType()));
         }
 
 
@@ -222,14 +462,23 @@ public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport imp
 
         private Mono<Long> doCount(Function<R2dbcOperationParameter<T, Long>, Query> queryHandler) {
             return executorBuilder(R2dbcSelectExecutor::<T, Long>builder)
+                    .returnType(Long.class)
                     .queryHandler(queryHandler)
-                    .specBuilder(parameter -> parameter.getStatementMapper().createSelect(parameter.getTableName())
-                            .doWithTable((table, spec) -> spec.withProjection(Functions.count(Expressions.asterisk()))))
+                    // 使用与数据查询一样的SelectSpec（包括插件追加的条件），由count查询构建器去掉排序、分页等多余的部分
+                    .preparedOperationBuilder(this::countOperation)
                     .rowMapperBuilder(parameter -> (row, rowMetadata) -> row.get(0, Long.class))
                     .build()
                     .execute(rowsFetchSpec -> rowsFetchSpec.first().defaultIfEmpty(0L));
         }
 
+        /**
+         * 构建count语句
+         */
+        private <R> PreparedOperation<?> countOperation(R2dbcOperationParameter<T, R> parameter, StatementMapper.SelectSpec selectSpec) {
+            return parameter.getTemplate().getStatementMapper()
+                    .getMappedCountObject(selectSpec, EntityDescriptor.of(parameter.getDomainType()).isAggregate() ? null : parameter.getRelationalPersistentEntity());
+        }
+
 
         private <P extends Publisher<T>> P doSelect(Function<RowsFetchSpec<T>, P> resultHandler) {
             return doSelect(null, resultHandler);
@@ -242,35 +491,308 @@ public final class R2dbcSelectOperationSupport extends R2dbcOperationSupport imp
                     .execute(resultHandler);
         }
 
-        private Mono<Pagination<T>> doPage(Pageable pageable, Function<R2dbcOperationParameter<T, T>, Query> queryHandler) {
-            return doSelect(queryHandler, RowsFetchSpec::all)
+        private Mono<Pagination<T>> doPage(Pageable pageable, PageStrategy pageStrategy, Function<R2dbcOperationParameter<T, T>, Query> queryHandler) {
+            return Mono.defer(() -> {
+                // 数据查询与count查询使用同一个查询条件
+                Query query = queryHandler.apply(parameter());
+                // 分页被禁用的时候，不需要count
+                if (pageable.isUnpaged() || pageable.getPageSize() <= 0) {
+                    return doLazyPage(pageable, query);
+                }
+                return switch (resolvePageStrategy(pageStrategy)) {
+                    case WINDOW -> doWindowPage(pageable, query);
+                    case PARALLEL -> doParallelPage(pageable, query);
+                    case HAS_NEXT -> doHasNextPage(pageable, query);
+                    default -> doLazyPage(pageable, query);
+                };
+            });
+        }
+
+        /**
+         * 分页策略的优先级：分页请求 > 调用时的选项 > 类注解 > 默认（LAZY）
+         */
+        private PageStrategy resolvePageStrategy(PageStrategy requestStrategy) {
+            if (requestStrategy != null && requestStrategy != PageStrategy.DEFAULT) {
+                return requestStrategy;
+            }
+            PageStrategy pageStrategy = parameter().getOption().getPageStrategy();
+            if (pageStrategy != null && pageStrategy != PageStrategy.DEFAULT) {
+                return pageStrategy;
+            }
+            return EntityDescriptor.of(parameter().getDomainType()).getPageStrategy();
+        }
+
+        /**
+         * 先查询数据，满页的时候再做count查询
+         */
+        private Mono<Pagination<T>> doLazyPage(Pageable pageable, Query query) {
+            return doSelect(parameter -> query, RowsFetchSpec::all)
+                    .collectList()
+                    .flatMap(records -> doLazyTotal(pageable, query, records));
+        }
+
+        /**
+         * 按查询回来的数据判断是否需要count，需要的时候再做count查询
+         */
+        private Mono<Pagination<T>> doLazyTotal(Pageable pageable, Query query, List<T> records) {
+            // 判断是否需要做count查询
+            // 判定规则如下：
+            boolean isNeedCount =
+                    // 1、分页没有被禁用，这三个条件判断分页有没有被禁用
+                    pageable.isPaged() && pageable.getPageSize() > 0
+                    // 2、查询回来的数据不为空（还有数据）
+                    && !records.isEmpty()
+                    // 3、可能还有下一页（页长等于查询回来的数据长度，则可能还有下一页，页长如果大于数据长度，则肯定没有下一页了）
+                    && pageable.getPageSize() <= records.size();
+
+            Mono<Total> totalSupplier = Mono.defer(() -> {
+                // 分页没有被禁用，且可能还有下一页数据，则需要做count查询
+                if (isNeedCount) {
+                    // 按总数统计策略获取一共有多少条数据
+                    return doTotal(query);
+                }
+                // 如果不需要查询，就返回offset+record.size()
+                return Mono.just(Total.exact(pageable.getOffset() + records.size()));
+            });
+
+            // count以下共有多少条数据之后再返回分页对象
+            return totalSupplier.map(total -> total.toPagination(records, pageable));
+        }
+
+        /**
+         * 在查询列表中附加COUNT(*) OVER()，一次查询同时得到数据和总数
+         * DISTINCT查询不能使用窗口函数，退化为LAZY
+         */
+        private Mono<Pagination<T>> doWindowPage(Pageable pageable, Query query) {
+            AtomicLong windowTotal = new AtomicLong(-1);
+            return executorBuilder(R2dbcSelectExecutor::<T, T>builder)
+                    .queryHandler(parameter -> query)
+                    .windowTotal(windowTotal::set)
+                    .build()
+                    .execute(RowsFetchSpec::all)
                     .collectList()
                     .flatMap(records -> {
-                        // 判断是否需要做count查询
-                        // 判定规则如下：
-                        boolean isNeedCount =
-                                // 1、分页没有被禁用，这三个条件判断分页有没有被禁用
-                                pageable.isPaged() && pageable.getPageSize() > 0
-                                // 2、查询回来的数据不为空（还有数据）
-                                && !records.isEmpty()
-                                // 3、可能还有下一页（页长等于查询回来的数据长度，则可能还有下一页，页长如果大于数据长度，则肯定没有下一页了）
-                                && pageable.getPageSize() <= records.size();
-
-                        Mono<Long> totalSupplier = Mono.defer(() -> {
-                            // 分页没有被禁用，且可能还有下一页数据，则需要做count查询
-                            if (isNeedCount) {
-                                // 调用count函数返回一共有多少条数据
-                                return doCount(parameter -> parameter.getQuery().with(pageable));
-                            }
-                            // 如果不需要查询，就返回offset+record.size()
-                            return Mono.just(pageable.getOffset() + records.size());
-                        });
+                        long total = windowTotal.get();
+                        if (total >= 0) {
+                            return Mono.just(new Pagination<>(records, pageable, total));
+                        }
+                        if (!records.isEmpty()) {
+                            // 有数据但没有读取到总数，说明没有附加窗口函数（DISTINCT查询），按LAZY的规则count
+                            return doLazyTotal(pageable, query, records);
+                        }
+                        // 没有查询到数据，第一页说明确实没有数据，否则是页码超出了范围，需要单独count
+                        Mono<Total> totalSupplier = pageable.getOffset() == 0 ? Mono.just(Total.exact(0L)) : doTotal(query);
+                        return totalSupplier.map(count -> count.toPagination(records, pageable));
+                    });
+        }
 
-                        // count以下共有多少条数据之后再返回分页对象
-                        return totalSupplier.map(total -> new Pagination<>(records, pageable, total));
+        /**
+         * 多查询一条数据来判断是否有下一页，不做count查询
+         */
+        private Mono<Pagination<T>> doHasNextPage(Pageable pageable, Query query) {
+            int pageSize = pageable.getPageSize();
+            return doSelect(parameter -> query.limit(pageSize + 1), RowsFetchSpec::all)
+                    .collectList()
+                    .map(records -> {
+                        boolean hasNext = records.size() > pageSize;
+                        return Pagination.countless(hasNext ? records.subList(0, pageSize) : records, pageable, hasNext);
                     });
         }
 
+        /**
+         * 数据查询与count查询同时执行，两个查询各自获取连接
+         */
+        private Mono<Pagination<T>> doParallelPage(Pageable pageable, Query query) {
+            return Mono.zip(doSelect(parameter -> query, RowsFetchSpec::all).collectList(), doTotal(query))
+                    .map(tuple -> tuple.getT2().toPagination(tuple.getT1(), pageable));
+        }
+
+        /**
+         * 总数统计策略的优先级：调用时的选项 > 类注解 > 默认（EXACT）
+         */
+        private TotalPolicy resolveTotalPolicy() {
+            TotalPolicy totalPolicy = parameter().getOption().getTotalPolicy();
+            if (totalPolicy != null && totalPolicy != TotalPolicy.DEFAULT) {
+                return totalPolicy;
+            }
+            return EntityDescriptor.of(parameter().getDomainType()).getTotalPolicy();
+        }
+
+        /**
+         * 按总数统计策略获取总数
+         */
+        private Mono<Total> doTotal(Query query) {
+            return switch (resolveTotalPolicy()) {
+                case CACHED -> doCachedTotal(query);
+                case ESTIMATED -> doEstimate(query)
+                        .map(Total::approximate)
+                        // 数据库不支持估算，或者估算失败，退化为精确的count
+                        .switchIfEmpty(Mono.defer(() -> doCount(parameter -> query).map(Total::exact)));
+                default -> doCount(parameter -> query).map(Total::exact);
+            };
+        }
+
+        /**
+         * 使用缓存的总数，缓存的key是渲染好的count语句、绑定的参数与调用方的路由的key
+         * 与实际执行的SQL一致（包括插件追加的条件），条件的写法不同但SQL相同的查询共用缓存，SQL不同的查询不会互相命中
+         * 缓存中的总数可能已经过时（例如绕过框架写入的数据），所以标记为不精确
+         */
+        private Mono<Total> doCachedTotal(Query query) {
+            return Mono.deferContextual(context -> {
+                Class<T> domainType = parameter().getDomainType();
+                ReactiveEntityTemplate template = parameter().getTemplate();
+                R2dbcTotalCountCache totalCountCache = template.getTotalCountCache();
+                Object routingKey = template.getRoutingKeyResolver().resolve(context);
+                AtomicReference<PreparedOperation<?>> countOperation = new AtomicReference<>();
+                AtomicBoolean cached = new AtomicBoolean();
+                return executorBuilder(R2dbcSelectExecutor::<T, Long>builder)
+                        .returnType(Long.class)
+                        .queryHandler(parameter -> query)
+                        .preparedOperationBuilder((parameter, selectSpec) -> {
+                            PreparedOperation<?> operation = countOperation(parameter, selectSpec);
+                            countOperation.set(operation);
+                            return operation;
+                        })
+                        .rowMapperBuilder(parameter -> (row, rowMetadata) -> row.get(0, Long.class))
+                        .build()
+                        .execute(rowsFetchSpec -> Mono.defer(() -> {
+                            R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(Long.class, countOperation.get()).withRoutingKey(routingKey);
+                            Long cachedTotal = totalCountCache.get(domainType, key);
+                            if (cachedTotal != null) {
+                                cached.set(true);
+                                return Mono.just(cachedTotal);
+                            }
+                            return rowsFetchSpec.first()
+                                    .defaultIfEmpty(0L)
+                                    .doOnNext(total -> totalCountCache.put(domainType, key, total, parameter().getOption().getTotalCacheTtl()));
+                        }))
+                        .map(total -> cached.get() ? Total.approximate(total) : Total.exact(total));
+            });
+        }
+
+        /**
+         * 使用数据库的统计信息估算总数，不支持的时候返回空
+         */
+        private Mono<Long> doEstimate(Query query) {
+            return Mono.defer(() -> {
+                R2dbcOperationParameter<T, T> parameter = parameter();
+                EntityDescriptor<T> entityDescriptor = EntityDescriptor.of(parameter.getDomainType());
+                // 逻辑删除插件会追加条件，连表查询的行数也与单表不同，这些情况都不能直接使用表的统计信息
+                boolean hasCriteria = query.getCriteria().map(criteria -> !criteria.isEmpty()).orElse(false)
+                                      || (entityDescriptor.getLogicDelete().enable() && parameter.getOption().isPluginEnable(R2dbcPluginName.LOGIC_DELETE))
+                                      || entityDescriptor.isJoin();
+                R2dbcDialect dialect = parameter.getTemplate().getDialect();
+                String tableName = parameter.getTableName().toSql(dialect.getIdentifierProcessing());
+                if (dialect instanceof PostgresDialect) {
+                    return hasCriteria ? doExplainEstimate(query) : doStatisticsEstimate(POSTGRES_ESTIMATE_SQL, tableName);
+                }
+                if (dialect instanceof MySqlDialect && !hasCriteria) {
+                    // information_schema中的表名不带引号和schema
+                    String simpleTableName = parameter.getTableName().toSql(IdentifierProcessing.NONE);
+                    return doStatisticsEstimate(MYSQL_ESTIMATE_SQL, simpleTableName.substring(simpleTableName.lastIndexOf('.') + 1));
+                }
+                return Mono.empty();
+            });
+        }
+
+        private Mono<Long> doStatisticsEstimate(String sql, String tableName) {
+            return parameter().getTemplate().getDatabaseClient()
+                    .sql(sql)
+                    .bind("table", tableName)
+                    .map(row -> Optional.ofNullable(row.get(0, Number.class)))
+                    .first()
+                    .flatMap(Mono::justOrEmpty)
+                    .map(Number::longValue)
+                    // PostgreSQL从未分析过的表reltuples是-1
+                    .filter(total -> total >= 0);
+        }
+
+        /**
+         * 使用EXPLAIN估算count查询的行数，只在PostgreSQL下使用
+         */
+        private Mono<Long> doExplainEstimate(Query query) {
+            return executorBuilder(R2dbcSelectExecutor::<T, String>builder)
+                    .returnType(String.class)
+                    .queryHandler(parameter -> query)
+                    .preparedOperationBuilder((parameter, selectSpec) -> new ExplainOperation(countOperation(parameter, selectSpec)))
+                    .rowMapperBuilder(parameter -> (row, rowMetadata) -> row.get(0, String.class))
+                    .build()
+                    .execute(RowsFetchSpec::first)
+                    .flatMap(plan -> Mono.justOrEmpty(readPlanRows(plan)));
+        }
+
+        private Mono<Pagination<T>> doKeyset(@Nullable String cursor, int pageSize, Function<R2dbcOperationParameter<T, T>, Query> queryHandler) {
+            return Mono.defer(() -> {
+                Query query = queryHandler.apply(parameter());
+                KeysetPagination<T> keysetPagination = new KeysetPagination<>(R2dbcMappingKit.getRequiredEntity(parameter().getDomainType()), query.getSort(), Cursor.decode(cursor), pageSize);
+                return doSelect(ignored -> keysetPagination.apply(query), RowsFetchSpec::all)
+                        .collectList()
+                        .map(keysetPagination::toPagination);
+            });
+        }
+
+    }
+
+    /**
+     * 分页的总数
+     *
+     * @param count 总数
+     * @param exact 是否是精确的
+     */
+    private record Total(long count, boolean exact) {
+
+        private static Total exact(long count) {
+            return new Total(count, true);
+        }
+
+        private static Total approximate(long count) {
+            return new Total(count, false);
+        }
+
+        private <T> Pagination<T> toPagination(List<T> records, Pageable pageable) {
+            return new Pagination<>(records, pageable, count, exact);
+        }
+
+    }
+
+    /**
+     * 读取EXPLAIN (FORMAT JSON)结果中count的数据源的估算行数
+     * count查询的根节点是Aggregate（估算行数总是1），需要读取它的子节点
+     */
+    @Nullable
+    private static Long readPlanRows(String plan) {
+        try {
+            JsonNode planNode = OBJECT_MAPPER.readTree(plan).path(0).path("Plan");
+            JsonNode sourceNode = planNode.path("Plans").path(0);
+            JsonNode rows = (sourceNode.isMissingNode() ? planNode : sourceNode).path("Plan Rows");
+            return rows.isNumber() ? rows.longValue() : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 在查询语句前加上EXPLAIN，绑定的参数不变
+     */
+    private record ExplainOperation(PreparedOperation<?> delegate) implements PreparedOperation<Object> {
+
+        @NonNull
+        @Override
+        public Object getSource() {
+            return delegate.getSource();
+        }
+
+        @NonNull
+        @Override
+        public String toQuery() {
+            return "EXPLAIN (FORMAT JSON) " + delegate.toQuery();
+        }
+
+        @Override
+        public void bindTo(@NonNull BindTarget target) {
+            delegate.bindTo(target);
+        }
+
     }
 
 }
@@ -17,6 +17,9 @@ package com.jxpanda.r2dbc.spring.data.core.operation.support;
 
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.operation.R2dbcUpdateOperation;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcChunkedWriteExecutor;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcIncrementExecutor;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationParameter;
 import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcUpdateExecutor;
 import org.springframework.data.r2dbc.core.ReactiveUpdateOperation;
@@ -24,10 +27,12 @@ import org.springframework.data.relational.core.query.Query;
 import org.springframework.data.relational.core.query.Update;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collection;
 
 /**
@@ -63,13 +68,27 @@ public final class R2dbcUpdateOperationSupport extends R2dbcOperationSupport imp
     }
 
 
-    private static final class R2dbcUpdateSupport<T> extends R2dbcSupport<T> implements R2dbcUpdate<T>, ReactiveUpdateOperation.TerminatingUpdate {
+    private static final class R2dbcUpdateSupport<T> extends R2dbcSupport<T> implements R2dbcUpdate<T>, R2dbcUpdateOperation.TerminatingUpdate {
 
 
+        /**
+         * 是否显式地作用于整张表 ${@link #matchingAll()}
+         */
+        private final boolean matchAll;
+
         private R2dbcUpdateSupport(R2dbcOperationParameter<T, T> operationParameter) {
+            this(operationParameter, false);
+        }
+
+        private R2dbcUpdateSupport(R2dbcOperationParameter<T, T> operationParameter, boolean matchAll) {
             super(operationParameter);
+            this.matchAll = matchAll;
         }
 
+        @Override
+        public R2dbcUpdate<T> withOption(R2dbcOperationOption option) {
+            return newSupport(rebuild().option(option), parameter -> new R2dbcUpdateSupport<>(parameter, this.matchAll));
+        }
 
         /**
          * (non-Javadoc)
@@ -92,13 +111,18 @@ public final class R2dbcUpdateOperationSupport extends R2dbcOperationSupport imp
          */
         @NonNull
         @Override
-        public ReactiveUpdateOperation.TerminatingUpdate matching(@NonNull Query query) {
+        public R2dbcUpdateOperation.TerminatingUpdate matching(@NonNull Query query) {
 
             Assert.notNull(query, "Query must not be null");
 
             return newSupport(rebuild().query(query), R2dbcUpdateSupport::new);
         }
 
+        @Override
+        public R2dbcUpdateOperation.TerminatingUpdate matchingAll() {
+            return newSupport(rebuild().query(Query.empty()), parameter -> new R2dbcUpdateSupport<>(parameter, true));
+        }
+
         @NonNull
         @Override
         public Mono<Long> apply(@NonNull Update update) {
@@ -111,6 +135,58 @@ public final class R2dbcUpdateOperationSupport extends R2dbcOperationSupport imp
 
         }
 
+        @Override
+        public Flux<Long> applyChunked(Update update, int chunkSize, Duration pause) {
+            Assert.notNull(update, "Update must not be null");
+            if (!isMatched()) {
+                return Flux.error(criteriaRequired("Chunked update"));
+            }
+            return executorBuilder(R2dbcChunkedWriteExecutor::<T>builder)
+                    .returnType(Long.class)
+                    .updateSupplier(() -> update)
+                    .chunkSize(chunkSize)
+                    .pause(pause)
+                    .build()
+                    .executeChunked();
+        }
+
+        @Override
+        public Mono<Long> increment(String column, Number delta) {
+            return isMatched() ? incrementExecutor(column, delta, false, null).execute() : Mono.error(criteriaRequired("Increment"));
+        }
+
+        @Override
+        public Mono<Long> decrement(String column, Number delta, @Nullable Number floor) {
+            return isMatched() ? incrementExecutor(column, delta, true, floor).execute() : Mono.error(criteriaRequired("Decrement"));
+        }
+
+        @Override
+        public <V> Flux<V> incrementAndGet(String column, Number delta, Class<V> valueType) {
+            return isMatched() ? incrementExecutor(column, delta, false, null).executeReturning(valueType) : Flux.error(criteriaRequired("Increment"));
+        }
+
+        @Override
+        public <V> Flux<V> decrementAndGet(String column, Number delta, @Nullable Number floor, Class<V> valueType) {
+            return isMatched() ? incrementExecutor(column, delta, true, floor).executeReturning(valueType) : Flux.error(criteriaRequired("Decrement"));
+        }
+
+        /**
+         * 是否可以执行分片更新、增量更新：有查询条件，或者显式地作用于整张表
+         */
+        private boolean isMatched() {
+            return this.matchAll || hasCriteria();
+        }
+
+        private R2dbcIncrementExecutor<T> incrementExecutor(String column, Number delta, boolean subtract, @Nullable Number floor) {
+            return executorBuilder(R2dbcIncrementExecutor::<T>builder)
+                    .returnType(Long.class)
+                    .column(column)
+                    .delta(delta)
+                    .subtract(subtract)
+                    .floor(floor)
+                    .build();
+        }
+
         @Override
         public Mono<T> using(T entity) {
             return executorBuilder(R2dbcUpdateExecutor::<T, T>builder)
@@ -0,0 +1,156 @@
+package com.jxpanda.r2dbc.spring.data.infrastructure.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有界的LRU缓存，超出容量之后淘汰最久未被访问的数据
+ * 用于框架内部的小型缓存（例如SQL渲染结果），并提供命中率的统计
+ * 支持给每一条数据设置过期时间，过期的数据在下一次访问的时候被移除
+ *
+ * @author Panda
+ */
+public class LruCache<K, V> {
+
+    private final int maximumSize;
+
+    private final Map<K, Node<V>> cache;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    public LruCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Node<V>> eldest) {
+                boolean evict = size() > LruCache.this.maximumSize;
+                if (evict) {
+                    evictionCount.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存，同时统计命中/未命中的次数
+     */
+    public V get(K key) {
+        V value = null;
+        synchronized (cache) {
+            Node<V> node = cache.get(key);
+            if (node != null) {
+                if (node.isExpired(System.nanoTime())) {
+                    cache.remove(key);
+                    evictionCount.increment();
+                } else {
+                    value = node.value();
+                }
+            }
+        }
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (cache) {
+            cache.put(key, new Node<>(value, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * 放入缓存，超过存活时间之后失效
+     *
+     * @param timeToLive 存活时间
+     */
+    public void put(K key, V value, Duration timeToLive) {
+        long expireAt = System.nanoTime() + timeToLive.toNanos();
+        synchronized (cache) {
+            cache.put(key, new Node<>(value, expireAt));
+        }
+    }
+
+    /**
+     * 获取缓存，缓存不存在的时候使用loader加载并放入缓存
+     * loader在锁外执行，并发的情况下可能会重复加载，以最后一次写入为准
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void remove(K key) {
+        synchronized (cache) {
+            cache.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public CacheStatistics statistics() {
+        return new CacheStatistics(hitCount.sum(), missCount.sum(), evictionCount.sum(), size(), maximumSize);
+    }
+
+    /**
+     * 缓存的数据
+     *
+     * @param value    数据
+     * @param expireAt 过期的时间点（System.nanoTime），永不过期的时候是Long.MAX_VALUE
+     */
+    private record Node<V>(V value, long expireAt) {
+
+        private boolean isExpired(long now) {
+            return expireAt != Long.MAX_VALUE && now - expireAt >= 0;
+        }
+
+    }
+
+    /**
+     * 缓存的统计数据
+     *
+     * @param hitCount      命中次数
+     * @param missCount     未命中次数
+     * @param evictionCount 淘汰次数
+     * @param size          当前缓存的数量
+     * @param maximumSize   最大容量
+     */
+    public record CacheStatistics(long hitCount, long missCount, long evictionCount, int size, int maximumSize) {
+
+        public double hitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.jxpanda.r2dbc.spring.data.infrastructure.cache;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 分段的LRU缓存，按key的hash把数据分散到多个 ${@link LruCache} 中
+ * 每一段有独立的锁，并发访问的时候只会竞争同一段的锁，适用于访问频繁的热点缓存
+ * 淘汰是按段进行的，整体上是近似的LRU
+ *
+ * @author Panda
+ */
+public class StripedLruCache<K, V> {
+
+    /**
+     * 默认的最大分段数量
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final int maximumSize;
+
+    private final LruCache<K, V>[] stripes;
+
+    public StripedLruCache(int maximumSize) {
+        this(maximumSize, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param maximumSize 最大容量，平均分配到每一段
+     * @param stripes     分段数量，会向下取整为2的幂，并且不超过最大容量
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLruCache(int maximumSize, int stripes) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than 0");
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripes must be greater than 0");
+        }
+        int count = Integer.highestOneBit(Math.min(stripes, maximumSize));
+        int stripeSize = (maximumSize + count - 1) / count;
+        this.maximumSize = maximumSize;
+        this.stripes = new LruCache[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new LruCache<>(stripeSize);
+        }
+    }
+
+    public V get(K key) {
+        return stripe(key).get(key);
+    }
+
+    public void put(K key, V value) {
+        stripe(key).put(key, value);
+    }
+
+    public void put(K key, V value, Duration timeToLive) {
+        stripe(key).put(key, value, timeToLive);
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        return stripe(key).computeIfAbsent(key, loader);
+    }
+
+    public void remove(K key) {
+        stripe(key).remove(key);
+    }
+
+    public void clear() {
+        for (LruCache<K, V> stripe : this.stripes) {
+            stripe.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (LruCache<K, V> stripe : this.stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * 汇总每一段的统计数据
+     */
+    public LruCache.CacheStatistics statistics() {
+        long hitCount = 0;
+        long missCount = 0;
+        long evictionCount = 0;
+        int size = 0;
+        for (LruCache<K, V> stripe : this.stripes) {
+            LruCache.CacheStatistics statistics = stripe.statistics();
+            hitCount += statistics.hitCount();
+            missCount += statistics.missCount();
+            evictionCount += statistics.evictionCount();
+            size += statistics.size();
+        }
+        return new LruCache.CacheStatistics(hitCount, missCount, evictionCount, size, this.maximumSize);
+    }
+
+    private LruCache<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+    }
+
+}
@@ -0,0 +1 @@
+package com.jxpanda.r2dbc.spring.data.infrastructure.cache;
\ No newline at end of file
@@ -0,0 +1,205 @@
+package com.jxpanda.r2dbc.spring.data.core;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.dialect.MySqlDialect;
+import com.jxpanda.r2dbc.spring.data.dialect.PostgresDialect;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.r2dbc.core.PreparedOperation;
+
+import java.util.List;
+
+import static com.jxpanda.r2dbc.spring.data.test.RecordingBindTarget.valuesOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 批量写入的SQL：按方言渲染，所有行的参数按行、列的顺序绑定
+ */
+class R2dbcStatementMapperBatchWriteTest {
+
+    private static final SqlIdentifier TABLE = SqlIdentifier.unquoted("batch_item");
+
+    private static final SqlIdentifier ID = SqlIdentifier.unquoted("id");
+
+    private static final SqlIdentifier NAME = SqlIdentifier.unquoted("name");
+
+    private static final SqlIdentifier VERSION = SqlIdentifier.unquoted("version");
+
+    private static R2dbcTestContext context;
+
+    private static R2dbcStatementMapper postgres;
+
+    private static R2dbcStatementMapper mysql;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        MappingReactiveConverter converter = context.getBean(MappingReactiveConverter.class);
+        postgres = new R2dbcStatementMapper(PostgresDialect.INSTANCE, converter);
+        mysql = new R2dbcStatementMapper(MySqlDialect.INSTANCE, converter);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void batchInsertRendersOneRowPerEntity() {
+        List<OutboundRow> rows = List.of(row(1L, "a"), row(2L, "b"));
+
+        PreparedOperation<String> postgresInsert = postgres.getMappedBatchInsertObject(TABLE, List.of(ID, NAME), rows, null);
+        assertThat(postgresInsert.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES ($1, $2), ($3, $4)");
+        assertThat(valuesOf(postgresInsert)).containsExactly(1L, "a", 2L, "b");
+
+        PreparedOperation<String> mysqlInsert = mysql.getMappedBatchInsertObject(TABLE, List.of(ID, NAME), rows, null);
+        assertThat(mysqlInsert.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES (?, ?), (?, ?)");
+        assertThat(valuesOf(mysqlInsert)).containsExactly(1L, "a", 2L, "b");
+    }
+
+    @Test
+    void batchInsertBindsNullValues() {
+        List<OutboundRow> rows = List.of(row(1L, null), row(2L, "b"));
+
+        PreparedOperation<String> insert = postgres.getMappedBatchInsertObject(TABLE, List.of(ID, NAME), rows, null);
+
+        assertThat(valuesOf(insert)).containsExactly(1L, null, 2L, "b");
+    }
+
+    @Test
+    void postgresUpsertUpdatesTheExcludedRow() {
+        List<OutboundRow> rows = List.of(row(1L, "a"), row(2L, "b"));
+
+        PreparedOperation<String> upsert = postgres.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(ID), List.of(NAME));
+
+        assertThat(upsert.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES ($1, $2), ($3, $4) ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name");
+        assertThat(valuesOf(upsert)).containsExactly(1L, "a", 2L, "b");
+    }
+
+    @Test
+    void postgresUpsertUsesTheConflictTargetAndDoesNothingWithoutUpdateColumns() {
+        List<OutboundRow> rows = List.of(row(1L, "a"));
+
+        PreparedOperation<String> byName = postgres.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(NAME), List.of(ID));
+        assertThat(byName.toQuery()).endsWith(" ON CONFLICT (name) DO UPDATE SET id = EXCLUDED.id");
+
+        PreparedOperation<String> nothing = postgres.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(ID), List.of());
+        assertThat(nothing.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES ($1, $2) ON CONFLICT (id) DO NOTHING");
+    }
+
+    @Test
+    void mysqlUpsertUsesTheRowAliasWhenSupported() {
+        List<OutboundRow> rows = List.of(row(1L, "a"), row(2L, "b"));
+        try {
+            mysql.setUpsertRowAlias(true);
+            PreparedOperation<String> aliased = mysql.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(ID), List.of(NAME));
+            assertThat(aliased.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES (?, ?), (?, ?) AS new ON DUPLICATE KEY UPDATE name = new.name");
+            assertThat(valuesOf(aliased)).containsExactly(1L, "a", 2L, "b");
+
+            mysql.setUpsertRowAlias(false);
+            PreparedOperation<String> values = mysql.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(ID), List.of(NAME));
+            assertThat(values.toQuery()).isEqualTo("INSERT INTO batch_item (id, name) VALUES (?, ?), (?, ?) ON DUPLICATE KEY UPDATE name = VALUES(name)");
+
+            // 没有需要更新的列的时候，把冲突的列赋值为自身
+            PreparedOperation<String> nothing = mysql.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), rows, null, List.of(ID), List.of());
+            assertThat(nothing.toQuery()).endsWith(" ON DUPLICATE KEY UPDATE id = VALUES(id)");
+        } finally {
+            mysql.setUpsertRowAlias(false);
+        }
+    }
+
+    @Test
+    void rowAliasDependsOnTheServerVersion() {
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "8.0.19")).isTrue();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "8.4.0")).isTrue();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "9.0.1")).isTrue();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "8.0.18")).isFalse();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "5.7.44-log")).isFalse();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MariaDB", "10.11.2")).isFalse();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", "5.5.5-10.6.12-MariaDB")).isFalse();
+        assertThat(R2dbcStatementMapper.isRowAliasSupported("MySQL", null)).isFalse();
+    }
+
+    @Test
+    void upsertIsOnlySupportedByPostgresAndMysql() {
+        R2dbcStatementMapper h2 = context.template().getStatementMapper();
+
+        assertThat(postgres.isUpsertSupported()).isTrue();
+        assertThat(mysql.isUpsertSupported()).isTrue();
+        assertThat(h2.isUpsertSupported()).isFalse();
+        assertThatThrownBy(() -> h2.getMappedBatchUpsertObject(TABLE, List.of(ID, NAME), List.of(row(1L, "a")), null, List.of(ID), List.of(NAME)))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void postgresBulkUpdateJoinsAValuesList() {
+        List<OutboundRow> rows = List.of(row(1L, "a"), row(2L, "b"));
+
+        PreparedOperation<String> update = postgres.getMappedBulkUpdateObject(TABLE, ID, List.of(NAME), null, rows, null);
+
+        assertThat(update.toQuery()).isEqualTo("UPDATE batch_item AS bulk_target SET name = bulk_values.name"
+                                               + " FROM (VALUES ($1, $2), ($3, $4)) AS bulk_values (id, name)"
+                                               + " WHERE bulk_target.id = bulk_values.id RETURNING bulk_target.id");
+        assertThat(valuesOf(update)).containsExactly(1L, "a", 2L, "b");
+    }
+
+    @Test
+    void postgresBulkUpdateMatchesTheExpectedVersion() {
+        List<OutboundRow> rows = List.of(versionedRow(1L, "a", 3L), versionedRow(2L, "b", null));
+
+        PreparedOperation<String> update = postgres.getMappedBulkUpdateObject(TABLE, ID, List.of(NAME), VERSION, rows, null);
+
+        assertThat(update.toQuery()).isEqualTo("UPDATE batch_item AS bulk_target SET name = bulk_values.name"
+                                               + " FROM (VALUES ($1, $2, $3), ($4, $5, $6)) AS bulk_values (id, name, expected_version__)"
+                                               + " WHERE bulk_target.id = bulk_values.id"
+                                               + " AND bulk_target.version IS NOT DISTINCT FROM bulk_values.expected_version__"
+                                               + " RETURNING bulk_target.id");
+        assertThat(valuesOf(update)).containsExactly(1L, "a", 3L, 2L, "b", null);
+    }
+
+    @Test
+    void mysqlBulkUpdateJoinsADerivedTable() {
+        List<OutboundRow> rows = List.of(row(1L, "a"), row(2L, "b"));
+
+        PreparedOperation<String> update = mysql.getMappedBulkUpdateObject(TABLE, ID, List.of(NAME), null, rows, null);
+        assertThat(update.toQuery()).isEqualTo("UPDATE batch_item AS bulk_target"
+                                               + " JOIN (SELECT ? AS id, ? AS name UNION ALL SELECT ?, ?) AS bulk_values"
+                                               + " ON bulk_target.id = bulk_values.id SET bulk_target.name = bulk_values.name");
+        assertThat(valuesOf(update)).containsExactly(1L, "a", 2L, "b");
+
+        PreparedOperation<String> versioned = mysql.getMappedBulkUpdateObject(TABLE, ID, List.of(NAME), VERSION,
+                List.of(versionedRow(1L, "a", 3L)), null);
+        assertThat(versioned.toQuery()).contains(" ON bulk_target.id = bulk_values.id AND bulk_target.version <=> bulk_values.expected_version__ SET ");
+    }
+
+    @Test
+    void bulkUpdateIsOnlySupportedByPostgresAndMysql() {
+        R2dbcStatementMapper h2 = context.template().getStatementMapper();
+
+        assertThat(postgres.isBulkUpdateSupported()).isTrue();
+        assertThat(mysql.isBulkUpdateSupported()).isTrue();
+        assertThat(h2.isBulkUpdateSupported()).isFalse();
+        assertThatThrownBy(() -> h2.getMappedBulkUpdateObject(TABLE, ID, List.of(NAME), null, List.of(row(1L, "a")), null))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private static OutboundRow row(long id, String name) {
+        OutboundRow row = new OutboundRow();
+        row.put(ID, Parameter.from(id));
+        row.put(NAME, name == null ? Parameter.empty(String.class) : Parameter.from(name));
+        return row;
+    }
+
+    private static OutboundRow versionedRow(long id, String name, Long expectedVersion) {
+        OutboundRow row = row(id, name);
+        row.put(R2dbcStatementMapper.BULK_EXPECTED_VERSION, Parameter.fromOrEmpty(expectedVersion, Long.class));
+        return row;
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.jxpanda.r2dbc.spring.data.core;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableJoin;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.LockMode;
+import org.springframework.r2dbc.core.PreparedOperation;
+
+import static com.jxpanda.r2dbc.spring.data.test.RecordingBindTarget.valuesOf;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * count查询：去掉排序分页和锁，DISTINCT包装为子查询，"对一"的LEFT JOIN在条件没有引用右表的时候省略
+ */
+class R2dbcStatementMapperCountTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        context.execute(
+                "CREATE TABLE count_order (id BIGINT PRIMARY KEY, status VARCHAR(8))",
+                "CREATE TABLE count_profile (order_id BIGINT PRIMARY KEY, note VARCHAR(8))",
+                "CREATE TABLE count_line (line_id BIGINT PRIMARY KEY, order_id BIGINT, sku VARCHAR(8))",
+                "INSERT INTO count_order VALUES (1, 'new'), (2, 'new'), (3, 'paid'), (4, 'new')",
+                "INSERT INTO count_profile VALUES (1, 'x'), (3, 'y')",
+                "INSERT INTO count_line VALUES (10, 1, 'a'), (11, 1, 'b'), (12, 2, 'a'), (13, 3, 'c')"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void dropsOrderingPagingAndLocks() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+        StatementMapper.SelectSpec selectSpec = mapper.createSelect("count_order")
+                .withProjection("id", "status")
+                .withCriteria(Criteria.where("status").is("new"))
+                .withSort(Sort.by("id"))
+                .limit(2)
+                .offset(4)
+                .lock(LockMode.PESSIMISTIC_WRITE);
+
+        PreparedOperation<?> count = mapper.getMappedCountObject(selectSpec, null);
+
+        assertThat(count.toQuery()).startsWith("SELECT COUNT(*) FROM count_order WHERE")
+                .doesNotContain("ORDER BY", "LIMIT", "OFFSET", "FOR UPDATE", "status,");
+        assertThat(valuesOf(count)).containsExactly("new");
+    }
+
+    @Test
+    void distinctIsCountedOnASubquery() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+        StatementMapper.SelectSpec selectSpec = mapper.createSelect("count_order")
+                .withProjection("status")
+                .distinct();
+
+        PreparedOperation<?> count = mapper.getMappedCountObject(selectSpec, null);
+
+        assertThat(count.toQuery()).startsWith("SELECT COUNT(*) FROM (SELECT DISTINCT").contains("count_source");
+        Long total = template.getDatabaseClient().sql(count.toQuery()).map(row -> row.get(0, Long.class)).one().block();
+        assertThat(total).isEqualTo(2);
+    }
+
+    @Test
+    void toOneLeftJoinIsOmittedUnlessTheCriteriaReferenceTheRightTable() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+        RelationalPersistentEntity<?> entity = persistentEntity(OrderWithProfile.class);
+
+        String withoutJoin = countSql(mapper, entity, Criteria.where("status").is("new"));
+        String withJoin = countSql(mapper, entity, Criteria.where("count_profile.note").is("x"));
+
+        assertThat(withoutJoin).doesNotContain("JOIN", "count_profile");
+        assertThat(withJoin).contains("LEFT OUTER JOIN count_profile");
+    }
+
+    @Test
+    void joinsThatChangeTheRowCountAreKept() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+
+        assertThat(countSql(mapper, persistentEntity(OrderWithLines.class), Criteria.where("status").is("new")))
+                .contains("LEFT OUTER JOIN count_line");
+        assertThat(countSql(mapper, persistentEntity(OrderWithProfileInner.class), Criteria.where("status").is("new")))
+                .contains("JOIN count_profile");
+    }
+
+    @Test
+    void countMatchesTheRowsOfTheDataQuery() {
+        assertThat(countAndSize(OrderWithProfile.class, Query.query(Criteria.where("status").is("new")))).containsExactly(3L, 3L);
+        assertThat(countAndSize(OrderWithLines.class, Query.query(Criteria.where("status").is("new")))).containsExactly(4L, 4L);
+        assertThat(countAndSize(OrderWithProfileInner.class, Query.empty())).containsExactly(2L, 2L);
+    }
+
+    private static String countSql(R2dbcStatementMapper mapper, RelationalPersistentEntity<?> entity, Criteria criteria) {
+        StatementMapper.SelectSpec selectSpec = mapper.createSelect(entity.getTableName())
+                .withProjection(entity.getTableName().getReference() + ".id")
+                .withCriteria(criteria);
+        return mapper.getMappedCountObject(selectSpec, entity).toQuery();
+    }
+
+    private static Long[] countAndSize(Class<?> type, Query query) {
+        Long count = template.select(type).matching(query).count().block();
+        Long size = template.select(type).matching(query).all().count().block();
+        return new Long[]{count, size};
+    }
+
+    private static RelationalPersistentEntity<?> persistentEntity(Class<?> type) {
+        return context.getBean(MappingReactiveConverter.class).getMappingContext().getRequiredPersistentEntity(type);
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "count_order")
+    @TableJoin(leftTable = "count_order", rightTable = "count_profile", on = "count_order.id = count_profile.order_id",
+            joinType = TableJoin.JoinType.LEFT_JOIN, toOne = true)
+    public static class OrderWithProfile {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "status")
+        private String status;
+
+        @TableColumn(name = "note", fromTable = "count_profile")
+        private String note;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "count_order")
+    @TableJoin(leftTable = "count_order", rightTable = "count_profile", on = "count_order.id = count_profile.order_id")
+    public static class OrderWithProfileInner {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "status")
+        private String status;
+
+        @TableColumn(name = "note", fromTable = "count_profile")
+        private String note;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "count_order")
+    @TableJoin(leftTable = "count_order", rightTable = "count_line", on = "count_order.id = count_line.order_id",
+            joinType = TableJoin.JoinType.LEFT_JOIN)
+    public static class OrderWithLines {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "status")
+        private String status;
+
+        @TableColumn(name = "sku", fromTable = "count_line")
+        private String sku;
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.jxpanda.r2dbc.spring.data.core;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.InListStrategy;
+import com.jxpanda.r2dbc.spring.data.dialect.MySqlDialect;
+import com.jxpanda.r2dbc.spring.data.dialect.PostgresDialect;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.r2dbc.core.PreparedOperation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static com.jxpanda.r2dbc.spring.data.test.RecordingBindTarget.valuesOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * IN查询的渲染策略：PostgreSQL绑定一个数组，MySQL补齐到2的幂，其他数据库每个元素一个占位符
+ * 参数超过上限的时候拆分为多组条件
+ */
+class R2dbcStatementMapperInListTest {
+
+    private static R2dbcTestContext context;
+
+    private static R2dbcStatementMapper postgres;
+
+    private static R2dbcStatementMapper mysql;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        MappingReactiveConverter converter = context.getBean(MappingReactiveConverter.class);
+        postgres = new R2dbcStatementMapper(PostgresDialect.INSTANCE, converter);
+        mysql = new R2dbcStatementMapper(MySqlDialect.INSTANCE, converter);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void defaultStrategyFollowsTheDialect() {
+        assertThat(postgres.getInListStrategy()).isEqualTo(InListStrategy.ARRAY);
+        assertThat(mysql.getInListStrategy()).isEqualTo(InListStrategy.BUCKET);
+        assertThat(context.template().getStatementMapper().getInListStrategy()).isEqualTo(InListStrategy.EXPAND);
+        assertThatThrownBy(() -> mysql.setInListStrategy(InListStrategy.ARRAY)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void postgresBindsASingleArray() {
+        PreparedOperation<?> in = postgres.getMappedObject(select(postgres, Criteria.where("id").in(1L, 2L, 3L)));
+        assertThat(in.toQuery()).endsWith("WHERE in_item.id = ANY($1)");
+        assertThat(valuesOf(in)).singleElement().satisfies(value -> assertThat(Arrays.asList((Object[]) value)).containsExactly(1L, 2L, 3L));
+
+        // 元素数量不同，SQL也是一样的
+        PreparedOperation<?> larger = postgres.getMappedObject(select(postgres, Criteria.where("id").in(ids(500))));
+        assertThat(larger.toQuery()).isEqualTo(in.toQuery());
+
+        PreparedOperation<?> notIn = postgres.getMappedObject(select(postgres, Criteria.where("id").notIn(1L, 2L)));
+        assertThat(notIn.toQuery()).endsWith("WHERE in_item.id <> ALL($1)");
+    }
+
+    @Test
+    void singleElementAndBooleanListsAreNotRewritten() {
+        PreparedOperation<?> single = postgres.getMappedObject(select(postgres, Criteria.where("id").in(1L)));
+        assertThat(single.toQuery()).endsWith("IN ($1)");
+
+        PreparedOperation<?> booleans = mysql.getMappedObject(select(mysql, Criteria.where("name").in(true, false, true)));
+        assertThat(booleans.toQuery()).endsWith("IN (?, ?, ?)");
+    }
+
+    @Test
+    void mysqlPadsToPowerOfTwoBuckets() {
+        PreparedOperation<?> three = mysql.getMappedObject(select(mysql, Criteria.where("id").in(1L, 2L, 3L)));
+        assertThat(three.toQuery()).endsWith("WHERE in_item.id IN (?, ?, ?, ?)");
+        // 重复最后一个元素补齐
+        assertThat(valuesOf(three)).containsExactly(1L, 2L, 3L, 3L);
+
+        String five = mysql.getMappedObject(select(mysql, Criteria.where("id").in(ids(5)))).toQuery();
+        String eight = mysql.getMappedObject(select(mysql, Criteria.where("id").in(ids(8)))).toQuery();
+        assertThat(five).isEqualTo(eight);
+    }
+
+    @Test
+    void mysqlSplitsOversizedListsIntoMaxBuckets() {
+        PreparedOperation<?> in = mysql.getMappedObject(select(mysql, Criteria.where("id").in(ids(1500))));
+        assertThat(in.toQuery()).contains(" OR ");
+        // 1024 + 512（476个元素补齐到512）
+        assertThat(valuesOf(in)).hasSize(1536);
+
+        PreparedOperation<?> notIn = mysql.getMappedObject(select(mysql, Criteria.where("id").notIn(ids(1500))));
+        assertThat(notIn.toQuery()).contains("NOT IN").contains(" AND ");
+    }
+
+    @Test
+    void partitionInListSplitsOnlyForBuckets() {
+        List<Long> values = ids(2500);
+
+        assertThat(mysql.partitionInList(values)).extracting(List::size).containsExactly(1024, 1024, 452);
+        assertThat(postgres.partitionInList(values)).singleElement().asList().hasSize(2500);
+        assertThat(context.template().getStatementMapper().partitionInList(values)).hasSize(1);
+    }
+
+    @Test
+    void partitionCriteriaKeepsTheOtherConditionsInEveryPartition() {
+        R2dbcStatementMapper h2 = context.template().getStatementMapper();
+        Criteria criteria = Criteria.where("name").is("a").and("id").in(ids(70_000));
+
+        List<CriteriaDefinition> partitions = h2.partitionCriteria(criteria, 0, 65_535);
+        assertThat(partitions).hasSize(2);
+        for (CriteriaDefinition partition : partitions) {
+            assertThat(partition.toString()).contains("name = 'a'");
+        }
+
+        // ARRAY只绑定一个参数，不需要拆分
+        assertThat(postgres.partitionCriteria(criteria, 0, 65_535)).containsExactly(criteria);
+        // 参数没有超过上限
+        assertThat(h2.partitionCriteria(criteria, 0, 100_000)).containsExactly(criteria);
+        // OR连接的条件无法拆分
+        Criteria or = Criteria.where("id").in(ids(70_000)).or("name").is("a");
+        assertThat(h2.partitionCriteria(or, 0, 65_535)).containsExactly(or);
+    }
+
+    @Test
+    void bucketPartitionsAreAlignedToTheMaxBucket() {
+        Criteria criteria = Criteria.where("id").in(ids(10_000));
+
+        // 上限5000，对齐到4096（补齐之后也不会超过上限）
+        List<CriteriaDefinition> partitions = mysql.partitionCriteria(criteria, 0, 5000);
+
+        assertThat(partitions).hasSize(3);
+        for (CriteriaDefinition partition : partitions) {
+            assertThat(valuesOf(mysql.getMappedObject(select(mysql, partition)))).hasSizeLessThanOrEqualTo(5000);
+        }
+    }
+
+    private static StatementMapper.SelectSpec select(R2dbcStatementMapper mapper, CriteriaDefinition criteria) {
+        return mapper.createSelect("in_item")
+                .withProjection("id", "name")
+                .withCriteria(criteria);
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toList();
+    }
+
+}
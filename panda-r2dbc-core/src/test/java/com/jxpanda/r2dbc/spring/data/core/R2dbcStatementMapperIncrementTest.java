@@ -0,0 +1,107 @@
+package com.jxpanda.r2dbc.spring.data.core;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.dialect.MySqlDialect;
+import com.jxpanda.r2dbc.spring.data.dialect.PostgresDialect;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.r2dbc.core.PreparedOperation;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static com.jxpanda.r2dbc.spring.data.test.RecordingBindTarget.valuesOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 原子增量更新：SET c = c + ?，下限条件渲染为 c >= floor + delta，PostgreSQL可以返回更新后的值
+ */
+class R2dbcStatementMapperIncrementTest {
+
+    private static final SqlIdentifier TABLE = SqlIdentifier.unquoted("counter_item");
+
+    private static final SqlIdentifier STOCK = SqlIdentifier.unquoted("stock");
+
+    private static final SqlIdentifier VERSION = SqlIdentifier.unquoted("version");
+
+    private static R2dbcTestContext context;
+
+    private static R2dbcStatementMapper postgres;
+
+    private static R2dbcStatementMapper mysql;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        MappingReactiveConverter converter = context.getBean(MappingReactiveConverter.class);
+        postgres = new R2dbcStatementMapper(PostgresDialect.INSTANCE, converter);
+        mysql = new R2dbcStatementMapper(MySqlDialect.INSTANCE, converter);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void incrementAddsToTheColumnInPlace() {
+        PreparedOperation<?> postgresIncrement = postgres.getMappedIncrementObject(TABLE, STOCK, 5, false, null, null, Criteria.where("id").is(1L), false, null);
+        assertThat(postgresIncrement.toQuery()).isEqualTo("UPDATE counter_item SET stock = stock + $1 WHERE counter_item.id = $2");
+        assertThat(valuesOf(postgresIncrement)).containsExactly(5, 1L);
+
+        PreparedOperation<?> mysqlIncrement = mysql.getMappedIncrementObject(TABLE, STOCK, 5, false, null, null, Criteria.where("id").is(1L), false, null);
+        assertThat(mysqlIncrement.toQuery()).isEqualTo("UPDATE counter_item SET stock = stock + ? WHERE counter_item.id = ?");
+        assertThat(valuesOf(mysqlIncrement)).containsExactly(5, 1L);
+    }
+
+    @Test
+    void decrementFloorIsBoundAsFloorPlusDelta() {
+        PreparedOperation<?> decrement = mysql.getMappedIncrementObject(TABLE, STOCK, 3, true, 0, null, Criteria.where("id").is(1L), false, null);
+
+        assertThat(decrement.toQuery()).startsWith("UPDATE counter_item SET stock = stock - ? WHERE ").endsWith("stock >= ?");
+        // stock - 3 >= 0 等价于 stock >= 3，占位符按出现的顺序绑定
+        assertThat(valuesOf(decrement)).containsExactly(3, 1L, 3L);
+
+        PreparedOperation<?> withoutCriteria = postgres.getMappedIncrementObject(TABLE, STOCK, 2, true, 1, null, null, false, null);
+        assertThat(withoutCriteria.toQuery()).isEqualTo("UPDATE counter_item SET stock = stock - $1 WHERE stock >= $2");
+        assertThat(valuesOf(withoutCriteria)).containsExactly(2, 3L);
+    }
+
+    @Test
+    void floorBoundKeepsTheNumericKind() {
+        PreparedOperation<?> decimal = postgres.getMappedIncrementObject(TABLE, STOCK, new BigDecimal("0.5"), true, BigDecimal.ONE, null, null, false, null);
+        assertThat(valuesOf(decimal)).last().isEqualTo(new BigDecimal("1.5"));
+
+        // 超出long范围的时候使用BigInteger
+        PreparedOperation<?> large = postgres.getMappedIncrementObject(TABLE, STOCK, 1, true, Long.MAX_VALUE, null, null, false, null);
+        assertThat(valuesOf(large)).last().isEqualTo(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+
+        // 增加的时候下限是 floor - delta
+        PreparedOperation<?> increment = postgres.getMappedIncrementObject(TABLE, STOCK, 2, false, 10, null, null, false, null);
+        assertThat(valuesOf(increment)).last().isEqualTo(8L);
+    }
+
+    @Test
+    void versionColumnIsIncrementedAlongside() {
+        PreparedOperation<?> increment = postgres.getMappedIncrementObject(TABLE, STOCK, 1, false, null, VERSION, Criteria.where("id").is(1L), false, null);
+
+        assertThat(increment.toQuery()).isEqualTo("UPDATE counter_item SET stock = stock + $1, version = version + 1 WHERE counter_item.id = $2");
+    }
+
+    @Test
+    void returningIsOnlySupportedByPostgres() {
+        PreparedOperation<?> returning = postgres.getMappedIncrementObject(TABLE, STOCK, 1, false, null, null, Criteria.where("id").is(1L), true, null);
+        assertThat(returning.toQuery()).endsWith(" RETURNING stock");
+
+        assertThat(postgres.isReturningSupported()).isTrue();
+        assertThat(mysql.isReturningSupported()).isFalse();
+        assertThatThrownBy(() -> mysql.getMappedIncrementObject(TABLE, STOCK, 1, false, null, null, null, true, null))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.jxpanda.r2dbc.spring.data.core;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.dialect.MySqlDialect;
+import com.jxpanda.r2dbc.spring.data.dialect.PostgresDialect;
+import com.jxpanda.r2dbc.spring.data.infrastructure.cache.LruCache;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.LockMode;
+import org.springframework.r2dbc.core.PreparedOperation;
+
+import java.util.List;
+
+import static com.jxpanda.r2dbc.spring.data.test.RecordingBindTarget.valuesOf;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 查询SQL的缓存：命中缓存的时候按绑定计划绑定当前的值，分页不参与缓存
+ */
+class R2dbcStatementMapperSelectCacheTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        context.execute(
+                "CREATE TABLE cache_item (id BIGINT PRIMARY KEY, name VARCHAR(32), score INT)",
+                "INSERT INTO cache_item VALUES (1, 'a', 1), (2, 'a', 5), (3, 'b', 7), (4, 'b', 9), (5, NULL, 3), (6, 'c', 4)"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void cacheHitBindsCurrentValues() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+        LruCache.CacheStatistics before = mapper.getSqlCacheStatistics();
+
+        PreparedOperation<?> first = mapper.getMappedObject(select(mapper, Criteria.where("name").is("a").and("score").greaterThan(1)));
+        PreparedOperation<?> second = mapper.getMappedObject(select(mapper, Criteria.where("name").is("b").and("score").greaterThan(8)));
+
+        assertThat(second.toQuery()).isEqualTo(first.toQuery());
+        assertThat(valuesOf(first)).containsExactly("a", 1);
+        assertThat(valuesOf(second)).containsExactly("b", 8);
+
+        LruCache.CacheStatistics after = mapper.getSqlCacheStatistics();
+        assertThat(after.hitCount() - before.hitCount()).isEqualTo(1);
+        assertThat(after.missCount() - before.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void inListBindsEveryElementOnCacheHit() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+
+        PreparedOperation<?> first = mapper.getMappedObject(select(mapper, Criteria.where("id").in(1L, 2L, 3L)));
+        PreparedOperation<?> second = mapper.getMappedObject(select(mapper, Criteria.where("id").in(4L, 5L, 6L)));
+
+        assertThat(second.toQuery()).isEqualTo(first.toQuery());
+        assertThat(valuesOf(second)).containsExactly(4L, 5L, 6L);
+    }
+
+    @Test
+    void pagingIsRenderedPerCallOnTopOfTheCachedStatement() {
+        R2dbcStatementMapper mapper = template.getStatementMapper();
+        Criteria criteria = Criteria.where("score").greaterThan(0);
+
+        String unpaged = mapper.getMappedObject(select(mapper, criteria)).toQuery();
+        String firstPage = mapper.getMappedObject(select(mapper, criteria).limit(2)).toQuery();
+        String thirdPage = mapper.getMappedObject(select(mapper, criteria).limit(2).offset(4)).toQuery();
+
+        assertThat(unpaged).doesNotContain("LIMIT", "OFFSET");
+        assertThat(firstPage).startsWith(unpaged).contains("2");
+        assertThat(thirdPage).startsWith(unpaged).contains("4");
+        assertThat(firstPage).isNotEqualTo(thirdPage);
+    }
+
+    @Test
+    void pagingFollowsTheDialect() {
+        MappingReactiveConverter converter = context.getBean(MappingReactiveConverter.class);
+
+        R2dbcStatementMapper postgres = new R2dbcStatementMapper(PostgresDialect.INSTANCE, converter);
+        Criteria criteria = Criteria.where("name").is("a");
+        postgres.getMappedObject(select(postgres, criteria));
+        PreparedOperation<?> postgresPaged = postgres.getMappedObject(select(postgres, criteria).limit(10).offset(20).lock(LockMode.PESSIMISTIC_WRITE));
+        assertThat(postgresPaged.toQuery()).endsWith("LIMIT 10 OFFSET 20 FOR UPDATE OF cache_item");
+        assertThat(valuesOf(postgresPaged)).containsExactly("a");
+
+        R2dbcStatementMapper mysql = new R2dbcStatementMapper(MySqlDialect.INSTANCE, converter);
+        mysql.getMappedObject(select(mysql, criteria));
+        PreparedOperation<?> mysqlPaged = mysql.getMappedObject(select(mysql, criteria).limit(10).offset(20));
+        assertThat(mysqlPaged.toQuery()).endsWith("LIMIT 20, 10");
+        assertThat(valuesOf(mysqlPaged)).containsExactly("a");
+    }
+
+    @Test
+    void repeatedQueriesReturnTheMatchingRows() {
+        assertThat(names(Query.query(Criteria.where("name").is("a")).sort(Sort.by("id")))).containsExactly("a", "a");
+        assertThat(names(Query.query(Criteria.where("name").is("b")).sort(Sort.by("id")))).containsExactly("b", "b");
+        assertThat(ids(Query.query(Criteria.where("score").greaterThan(2)).sort(Sort.by("id")).limit(2))).containsExactly(2L, 3L);
+        assertThat(ids(Query.query(Criteria.where("score").greaterThan(2)).sort(Sort.by("id")).limit(2).offset(2))).containsExactly(4L, 5L);
+        assertThat(ids(Query.query(Criteria.where("name").isNull()))).containsExactly(5L);
+    }
+
+    private static StatementMapper.SelectSpec select(R2dbcStatementMapper mapper, Criteria criteria) {
+        return mapper.createSelect("cache_item")
+                .withProjection("id", "name", "score")
+                .withCriteria(criteria);
+    }
+
+    private static List<String> names(Query query) {
+        return template.select(CacheItem.class).matching(query).all().map(CacheItem::getName).collectList().block();
+    }
+
+    private static List<Long> ids(Query query) {
+        return template.select(CacheItem.class).matching(query).all().map(CacheItem::getId).collectList().block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "cache_item")
+    public static class CacheItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "score")
+        private Integer score;
+
+    }
+
+}
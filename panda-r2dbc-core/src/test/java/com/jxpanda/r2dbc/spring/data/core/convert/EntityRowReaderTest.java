@@ -0,0 +1,162 @@
+package com.jxpanda.r2dbc.spring.data.core.convert;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.EnumValue;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 预编译的行读取器，读取结果与Spring原生的读取流程一致
+ */
+class EntityRowReaderTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    private static MappingReactiveConverter converter;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        converter = context.getBean(MappingReactiveConverter.class);
+        context.execute(
+                "CREATE TABLE reader_item (id BIGINT PRIMARY KEY, name VARCHAR(32), amount DECIMAL(10, 2), quantity BIGINT, "
+                + "enabled BOOLEAN, status INT, created_date TIMESTAMP)",
+                "INSERT INTO reader_item VALUES (1, 'first', 12.50, 3, TRUE, 1, TIMESTAMP '2024-01-02 03:04:05'), "
+                + "(2, NULL, NULL, NULL, NULL, NULL, NULL)"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void readsMutableEntitiesWithTheCompiledReader() {
+        assertThat(rowReader(ReaderItem.class)).isNotNull();
+        assertThat(rowReader(ReaderItemRecord.class)).isNull();
+        assertThat(rowReader(ReaderItem.class)).isSameAs(rowReader(ReaderItem.class));
+    }
+
+    @Test
+    void compiledReaderMatchesTheSpringReadPath() {
+        List<ReaderItem> items = template.select(ReaderItem.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList().block();
+        // 构造器带参数的实体走Spring原生的读取流程，类型处理器不接受null，只比较没有null的那一行
+        ReaderItemRecord record = template.select(ReaderItemRecord.class).matching(Query.query(Criteria.where("id").is(1L))).one().block();
+
+        assertThat(items).hasSize(2);
+        ReaderItem first = items.get(0);
+        assertThat(first.getId()).isEqualTo(1L);
+        assertThat(first.getName()).isEqualTo("first");
+        assertThat(first.getAmount()).isEqualByComparingTo("12.50");
+        // BIGINT读取为Integer，需要经过类型转换
+        assertThat(first.getQuantity()).isEqualTo(3);
+        assertThat(first.getEnabled()).isTrue();
+        assertThat(first.getStatus()).isEqualTo(Status.ACTIVE);
+        assertThat(first.getCreatedDate()).isEqualTo(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+
+        assertThat(record).isNotNull();
+        assertThat(first.getId()).isEqualTo(record.id());
+        assertThat(first.getName()).isEqualTo(record.name());
+        assertThat(first.getAmount()).isEqualTo(record.amount());
+        assertThat(first.getQuantity()).isEqualTo(record.quantity());
+        assertThat(first.getEnabled()).isEqualTo(record.enabled());
+        assertThat(first.getStatus()).isEqualTo(record.status());
+        assertThat(first.getCreatedDate()).isEqualTo(record.createdDate());
+    }
+
+    @Test
+    void nullColumnsAndMissingColumnsKeepTheDefaults() {
+        ReaderItem empty = template.select(ReaderItem.class).matching(Query.query(Criteria.where("id").is(2L))).one().block();
+        assertThat(empty).isNotNull();
+        assertThat(empty.getName()).isEqualTo("unnamed");
+        assertThat(empty.getAmount()).isNull();
+
+        ReaderItem partial = template.select(ReaderItem.class)
+                .matching(Query.query(Criteria.where("id").is(1L)).columns("id", "amount"))
+                .one()
+                .block();
+        assertThat(partial).isNotNull();
+        assertThat(partial.getAmount()).isEqualByComparingTo("12.50");
+        assertThat(partial.getName()).isEqualTo("unnamed");
+    }
+
+    private static EntityRowReader<?> rowReader(Class<?> type) {
+        return context.databaseClient().sql("SELECT * FROM reader_item")
+                .map((row, rowMetadata) -> java.util.Optional.ofNullable(converter.getRowReader(type, rowMetadata)))
+                .first()
+                .block()
+                .orElse(null);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public enum Status {
+        UNKNOWN(0),
+        ACTIVE(1);
+
+        @EnumValue
+        private final Integer code;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "reader_item")
+    public static class ReaderItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name = "unnamed";
+
+        @TableColumn(name = "amount")
+        private BigDecimal amount;
+
+        @TableColumn(name = "quantity")
+        private Integer quantity;
+
+        @TableColumn(name = "enabled")
+        private Boolean enabled;
+
+        @TableColumn(name = "status")
+        private Status status;
+
+        @TableColumn(name = "created_date")
+        private LocalDateTime createdDate;
+
+    }
+
+    @TableEntity(name = "reader_item")
+    public record ReaderItemRecord(
+            @TableId Long id,
+            @TableColumn(name = "name") String name,
+            @TableColumn(name = "amount") BigDecimal amount,
+            @TableColumn(name = "quantity") Integer quantity,
+            @TableColumn(name = "enabled") Boolean enabled,
+            @TableColumn(name = "status") Status status,
+            @TableColumn(name = "created_date") LocalDateTime createdDate
+    ) {
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.jxpanda.r2dbc.spring.data.core.convert;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.EnumValue;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 预编译的写入计划，写入结果与逐个字段解析的写入流程一致
+ */
+class EntityWritePlanTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    private static MappingReactiveConverter converter;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        converter = context.getBean(MappingReactiveConverter.class);
+        context.execute("CREATE TABLE writer_item (id BIGINT PRIMARY KEY, name VARCHAR(32), amount DECIMAL(10, 2), "
+                        + "status INT, remark VARCHAR(32), created_date TIMESTAMP, tags VARCHAR(8) ARRAY)");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void planIsCompiledOncePerType() {
+        EntityWritePlan<WriterItem> plan = converter.getWritePlan(WriterItem.class);
+
+        assertThat(converter.getWritePlan(WriterItem.class)).isSameAs(plan);
+        assertThat(plan.isCustomRowWrite()).isFalse();
+        assertThat(Arrays.stream(plan.getColumnWriters()).map(EntityWritePlan.ColumnWriter::column).map(SqlIdentifier::getReference))
+                .containsExactlyInAnyOrder("id", "name", "amount", "status", "remark", "created_date", "tags");
+        EntityWritePlan.ColumnWriter status = columnWriter(plan, "status");
+        assertThat(status.typeHandler()).isTrue();
+        assertThat(columnWriter(plan, "remark").validationStrategy()).isEqualTo(ValidationStrategy.NOT_NULL);
+        assertThat(columnWriter(plan, "id").id()).isTrue();
+        // 只有集合类型的字段需要再做数组转换
+        assertThat(plan.getCollectionProperties()).extracting(RelationalPersistentProperty::getName).containsExactly("tags");
+    }
+
+    @Test
+    void writesEveryColumnInOnePass() {
+        WriterItem item = item();
+        OutboundRow row = new OutboundRow();
+
+        converter.write(item, row);
+
+        assertThat(row.get(SqlIdentifier.unquoted("id")).getValue()).isEqualTo(1L);
+        assertThat(row.get(SqlIdentifier.unquoted("name")).getValue()).isEqualTo("first");
+        assertThat(row.get(SqlIdentifier.unquoted("amount")).getValue()).isEqualTo(new BigDecimal("12.50"));
+        // 类型处理器写入的是枚举上标记的值
+        assertThat(row.get(SqlIdentifier.unquoted("status")).getValue()).isEqualTo(1);
+        assertThat(row.get(SqlIdentifier.unquoted("created_date")).getValue()).isEqualTo(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        // 校验策略NOT_NULL，null值不写入
+        assertThat(row.containsKey(SqlIdentifier.unquoted("remark"))).isFalse();
+    }
+
+    @Test
+    void nullValuesAreBoundWithTheResolvedType() {
+        WriterItem item = new WriterItem();
+        item.setId(2L);
+        OutboundRow row = new OutboundRow();
+
+        converter.write(item, row);
+
+        assertThat(row.get(SqlIdentifier.unquoted("name")).isEmpty()).isTrue();
+        assertThat(row.get(SqlIdentifier.unquoted("name")).getType()).isEqualTo(String.class);
+        assertThat(row.get(SqlIdentifier.unquoted("created_date")).getType()).isEqualTo(LocalDateTime.class);
+    }
+
+    @Test
+    void plainEntitiesMatchTheSpringWritePath() {
+        MappingR2dbcConverter reference = new MappingR2dbcConverter(context.getBean(R2dbcMappingContext.class), context.getBean(R2dbcCustomConversions.class));
+        PlainItem item = new PlainItem();
+        item.setId(3L);
+        item.setName("plain");
+        item.setAmount(new BigDecimal("1.5"));
+        item.setCreatedDate(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+
+        OutboundRow expected = new OutboundRow();
+        reference.write(item, expected);
+        OutboundRow actual = new OutboundRow();
+        converter.write(item, actual);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void writtenRowsRoundTrip() {
+        WriterItem item = item();
+        item.setId(10L);
+        item.setTags(null);
+
+        template.insert(item).block();
+
+        WriterItem loaded = template.select(WriterItem.class).byId(10L).block();
+        assertThat(loaded.getName()).isEqualTo("first");
+        assertThat(loaded.getAmount()).isEqualByComparingTo("12.50");
+        assertThat(loaded.getStatus()).isEqualTo(Status.ACTIVE);
+        assertThat(loaded.getRemark()).isNull();
+        assertThat(context.databaseClient().sql("SELECT status FROM writer_item WHERE id = 10").map(row -> row.get(0, Integer.class)).one().block())
+                .isEqualTo(1);
+    }
+
+    private static EntityWritePlan.ColumnWriter columnWriter(EntityWritePlan<?> plan, String column) {
+        return Arrays.stream(plan.getColumnWriters())
+                .filter(columnWriter -> columnWriter.column().getReference().equals(column))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static WriterItem item() {
+        WriterItem item = new WriterItem();
+        item.setId(1L);
+        item.setName("first");
+        item.setAmount(new BigDecimal("12.50"));
+        item.setStatus(Status.ACTIVE);
+        item.setCreatedDate(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        item.setTags(List.of("a", "b"));
+        return item;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public enum Status {
+        UNKNOWN(0),
+        ACTIVE(1);
+
+        @EnumValue
+        private final Integer code;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "writer_item")
+    public static class WriterItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "amount")
+        private BigDecimal amount;
+
+        @TableColumn(name = "status")
+        private Status status;
+
+        @TableColumn(name = "remark", validationPolicy = ValidationStrategy.NOT_NULL)
+        private String remark;
+
+        @TableColumn(name = "created_date")
+        private LocalDateTime createdDate;
+
+        @TableColumn(name = "tags", validationPolicy = ValidationStrategy.NOT_NULL)
+        private List<String> tags;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "writer_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "amount")
+        private BigDecimal amount;
+
+        @TableColumn(name = "created_date")
+        private LocalDateTime createdDate;
+
+    }
+
+}
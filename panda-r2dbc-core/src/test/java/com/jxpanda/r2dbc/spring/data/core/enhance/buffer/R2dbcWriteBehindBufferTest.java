@@ -0,0 +1,290 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.buffer;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 写入缓冲：按批次大小或者定时写入，同一个id的更新按字段合并，缓冲区满的时候等待或者拒绝，关闭的时候写入所有数据
+ */
+class R2dbcWriteBehindBufferTest {
+
+    /**
+     * 测试中不希望定时器触发的时候使用的间隔
+     */
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private GatedConnectionFactory connectionFactory;
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    private R2dbcWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new GatedConnectionFactory(ConnectionFactories.get("r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+        context = R2dbcTestContext.of(connectionFactory);
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE buffer_item (id BIGINT PRIMARY KEY, name VARCHAR(8), score INT, version BIGINT)",
+                "INSERT INTO buffer_item VALUES (1, 'a', 1, 1)"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.open();
+        if (buffer != null) {
+            buffer.close();
+        }
+        context.close();
+    }
+
+    @Test
+    void flushesWhenTheBatchIsFull() throws Exception {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setBatchSize(3).setFlushInterval(NEVER));
+
+        CompletableFuture<BufferItem> first = buffer.insert(item(10L, "x", null)).toFuture();
+        CompletableFuture<BufferItem> second = buffer.insert(item(11L, "y", null)).toFuture();
+        // 批次还没满，调用方的Mono不会完成
+        assertThat(first).isNotDone();
+        assertThat(buffer.pendingCount(BufferItem.class)).isEqualTo(2);
+
+        CompletableFuture<BufferItem> third = buffer.insert(item(12L, "z", null)).toFuture();
+
+        assertThat(third.get(5, TimeUnit.SECONDS).getName()).isEqualTo("z");
+        assertThat(first.get(5, TimeUnit.SECONDS).getName()).isEqualTo("x");
+        assertThat(second).isDone();
+        assertThat(recorder.count(sql -> sql.startsWith("INSERT"))).isEqualTo(1);
+        assertThat(names()).containsExactly("a", "x", "y", "z");
+    }
+
+    @Test
+    void flushesOnTheTimer() throws Exception {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setFlushInterval(Duration.ofMillis(50)));
+
+        BufferItem inserted = buffer.insert(item(10L, "x", null)).toFuture().get(5, TimeUnit.SECONDS);
+
+        assertThat(inserted.getId()).isEqualTo(10L);
+        assertThat(names()).containsExactly("a", "x");
+    }
+
+    @Test
+    void mergesUpdatesOfTheSameIdColumnByColumn() {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setFlushInterval(NEVER));
+        BufferItem nameOnly = item(1L, "x", null);
+        BufferItem scoreOnly = item(1L, null, 5);
+        BufferItem lastName = item(1L, "y", null);
+
+        List<CompletableFuture<BufferItem>> results = List.of(
+                buffer.updateById(nameOnly).toFuture(),
+                buffer.updateById(scoreOnly).toFuture(),
+                buffer.updateById(lastName).toFuture()
+        );
+        buffer.flush().block(Duration.ofSeconds(5));
+
+        assertThat(results).allMatch(CompletableFuture::isDone);
+        assertThat(recorder.count(sql -> sql.startsWith("UPDATE"))).isEqualTo(1);
+        BufferItem row = rows().get(0);
+        assertThat(row.getName()).isEqualTo("y");
+        assertThat(row.getScore()).isEqualTo(5);
+        // 合并写在拷贝上，不修改调用方的实体
+        assertThat(scoreOnly.getName()).isNull();
+        assertThat(lastName.getScore()).isNull();
+    }
+
+    @Test
+    void waitsForSpaceAndRejectsBeyondMaxWaiting() throws Exception {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config()
+                .setBatchSize(2).setMaxPending(2).setMaxWaiting(1).setFlushInterval(NEVER));
+        connectionFactory.close();
+
+        // 第一批开始写入，卡在获取连接上
+        CompletableFuture<BufferItem> inFlight = buffer.insert(item(10L, "a1", null)).toFuture();
+        buffer.insert(item(11L, "a2", null)).toFuture();
+        // 缓冲区再次写满，之后的写入进入等待队列，等待队列满了之后直接拒绝
+        buffer.insert(item(12L, "b1", null)).toFuture();
+        buffer.insert(item(13L, "b2", null)).toFuture();
+        CompletableFuture<BufferItem> waiting = buffer.insert(item(14L, "c1", null)).toFuture();
+
+        StepVerifier.create(buffer.insert(item(15L, "c2", null)))
+                .expectError(TransientDataAccessResourceException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(buffer.pendingCount(BufferItem.class)).isEqualTo(3);
+        assertThat(inFlight).isNotDone();
+
+        connectionFactory.open();
+        buffer.flush().block(Duration.ofSeconds(5));
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS).getId()).isEqualTo(14L);
+        assertThat(inFlight).isDone();
+        assertThat(rows()).hasSize(6);
+    }
+
+    @Test
+    void failedBatchFailsEveryWriteInIt() {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setBatchSize(2).setFlushInterval(NEVER));
+
+        CompletableFuture<BufferItem> valid = buffer.insert(item(10L, "x", null)).toFuture();
+        CompletableFuture<BufferItem> duplicate = buffer.insert(item(1L, "dup", null)).toFuture();
+
+        assertThatThrownBy(() -> valid.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(DataAccessException.class);
+        assertThatThrownBy(() -> duplicate.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(DataAccessException.class);
+        // 整批回滚
+        assertThat(names()).containsExactly("a");
+    }
+
+    @Test
+    void closeFlushesPendingWritesAndRejectsNewOnes() throws Exception {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setFlushInterval(NEVER));
+        CompletableFuture<BufferItem> pending = buffer.insert(item(10L, "x", null)).toFuture();
+
+        buffer.close();
+
+        assertThat(pending.get(5, TimeUnit.SECONDS).getName()).isEqualTo("x");
+        assertThat(names()).containsExactly("a", "x");
+        StepVerifier.create(buffer.insert(item(11L, "y", null)))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    @Test
+    void versionedUpdatesAreRejected() {
+        buffer = new R2dbcWriteBehindBuffer(template, new R2dbcWriteBehindBuffer.Config().setFlushInterval(NEVER));
+        VersionedBufferItem versioned = new VersionedBufferItem();
+        versioned.setId(1L);
+        versioned.setName("x");
+        versioned.setVersion(1L);
+
+        StepVerifier.create(buffer.updateById(versioned))
+                .expectError(UnsupportedOperationException.class)
+                .verify();
+    }
+
+    private List<BufferItem> rows() {
+        return template.select(BufferItem.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList().block();
+    }
+
+    private List<String> names() {
+        return rows().stream().map(BufferItem::getName).toList();
+    }
+
+    private static BufferItem item(Long id, String name, Integer score) {
+        BufferItem item = new BufferItem();
+        item.setId(id);
+        item.setName(name);
+        item.setScore(score);
+        return item;
+    }
+
+    /**
+     * 可以暂停获取连接的连接工厂，用于让批次停留在写入中
+     */
+    private static final class GatedConnectionFactory implements ConnectionFactory {
+
+        private final ConnectionFactory delegate;
+
+        private volatile Sinks.Empty<Void> gate;
+
+        private GatedConnectionFactory(ConnectionFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.defer(() -> {
+                Sinks.Empty<Void> current = this.gate;
+                return current == null ? Mono.empty() : current.asMono();
+            }).then(Mono.from(this.delegate.create()));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return this.delegate.getMetadata();
+        }
+
+        private void close() {
+            this.gate = Sinks.empty();
+        }
+
+        private void open() {
+            Sinks.Empty<Void> current = this.gate;
+            this.gate = null;
+            if (current != null) {
+                current.tryEmitEmpty();
+            }
+        }
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "buffer_item", validationPolicy = ValidationStrategy.NOT_NULL)
+    public static class BufferItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "score")
+        private Integer score;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "buffer_item")
+    public static class VersionedBufferItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @Version
+        @TableColumn(name = "version")
+        private Long version;
+
+    }
+
+}
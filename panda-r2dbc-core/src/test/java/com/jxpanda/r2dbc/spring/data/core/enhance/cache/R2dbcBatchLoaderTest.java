@@ -0,0 +1,250 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 批量加载：时间窗口内的按id查询合并为一次按id列表的查询，结果按id分发
+ * 选项、路由的key、Context不同的调用方放在不同的批次中
+ */
+class R2dbcBatchLoaderTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static R2dbcTestContext context;
+
+    private static MappingReactiveConverter converter;
+
+    /**
+     * 每次按id列表查询的id，以及执行查询时Context中的租户
+     */
+    private final List<Collection<?>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Object> tenants = Collections.synchronizedList(new ArrayList<>());
+
+    private R2dbcRoutingKeyResolver routingKeyResolver;
+
+    private RuntimeException loadError;
+
+    private R2dbcBatchLoader batchLoader;
+
+    @BeforeAll
+    static void setUpContext() {
+        context = R2dbcTestContext.h2();
+        converter = context.getBean(MappingReactiveConverter.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        routingKeyResolver = R2dbcRoutingKeyResolver.NONE;
+        loadError = null;
+        batchLoader = new R2dbcBatchLoader(converter, () -> routingKeyResolver, (domainType, option, ids) -> Flux.deferContextual(view -> {
+            batches.add(List.copyOf(ids));
+            tenants.add(view.getOrDefault("tenant", "none"));
+            if (loadError != null) {
+                return Flux.error(loadError);
+            }
+            // 只有小于10的id存在
+            return Flux.fromIterable(ids)
+                    .map(id -> ((Number) id).longValue())
+                    .filter(id -> id < 10)
+                    .map(id -> item(domainType, id));
+        }));
+    }
+
+    @Test
+    void loadsWithinTheWindowAreMerged() {
+        List<BatchItem> items = Flux.just(1L, 2L, 3L, 1L)
+                .flatMap(id -> load(BatchItem.class, id))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertThat(batches).containsExactly(List.of(1L, 2L, 3L));
+        assertThat(items).extracting(BatchItem::getId).containsExactlyInAnyOrder(1L, 1L, 2L, 3L);
+        // 同一个id的调用方拿到各自的拷贝
+        assertThat(items).filteredOn(item -> item.getId() == 1L).doesNotHaveDuplicates();
+
+        R2dbcBatchLoader.Statistics statistics = batchLoader.getStatistics(BatchItem.class);
+        assertThat(statistics.batchCount()).isEqualTo(1);
+        assertThat(statistics.idCount()).isEqualTo(3);
+        assertThat(statistics.averageBatchSize()).isEqualTo(3.0);
+    }
+
+    @Test
+    void missingIdsCompleteEmpty() {
+        StepVerifier.create(load(BatchItem.class, 42L)).expectComplete().verify(TIMEOUT);
+    }
+
+    @Test
+    void idsOfAnotherTypeShareTheEntry() {
+        List<BatchItem> items = Flux.<Object>just(1L, 1, "1")
+                .flatMap(id -> load(BatchItem.class, id))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertThat(items).hasSize(3);
+        assertThat(batches).singleElement().asString().isEqualTo("[1]");
+    }
+
+    @Test
+    void fullBatchesAreDispatchedWithoutWaitingForTheWindow() {
+        // 时间窗口是一分钟，收集满了立即执行
+        List<SmallBatchItem> items = Flux.just(1L, 2L, 3L, 4L)
+                .flatMap(id -> load(SmallBatchItem.class, id))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertThat(items).hasSize(4);
+        assertThat(batches).containsExactly(List.of(1L, 2L), List.of(3L, 4L));
+    }
+
+    @Test
+    void errorsReachTheWholeBatch() {
+        loadError = new IllegalStateException("boom");
+
+        CompletableFuture<BatchItem> first = load(BatchItem.class, 1L).toFuture();
+        CompletableFuture<BatchItem> second = load(BatchItem.class, 2L).toFuture();
+
+        assertThatThrownBy(first::join).hasCause(loadError);
+        assertThatThrownBy(second::join).hasCause(loadError);
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    void cancelledCallersAreRemovedFromTheBatch() {
+        Disposable cancelled = load(BatchItem.class, 1L).subscribe();
+        cancelled.dispose();
+
+        load(BatchItem.class, 2L).block(TIMEOUT);
+
+        assertThat(batches).containsExactly(List.of(2L));
+    }
+
+    @Test
+    void routingKeysOptionsAndContextsSeparateBatches() {
+        routingKeyResolver = view -> view.getOrDefault("tenant", null);
+
+        Flux.merge(
+                        load(BatchItem.class, 1L).contextWrite(ctx -> ctx.put("tenant", "a")),
+                        load(BatchItem.class, 2L).contextWrite(ctx -> ctx.put("tenant", "b")),
+                        load(BatchItem.class, 3L).contextWrite(ctx -> ctx.put("tenant", "a"))
+                )
+                .blockLast(TIMEOUT);
+        // 批次的查询在调用方的Context中执行
+        assertThat(batches).containsExactlyInAnyOrder(List.of(1L, 3L), List.of(2L));
+        assertThat(tenants).containsExactlyInAnyOrder("a", "b");
+
+        batches.clear();
+        Flux.merge(
+                        batchLoader.load(BatchItem.class, 1L, new R2dbcOperationOption()),
+                        batchLoader.load(BatchItem.class, 2L, new R2dbcOperationOption().setReferenceBatchSize(8)),
+                        batchLoader.load(BatchItem.class, 3L, new R2dbcOperationOption(false))
+                )
+                .blockLast(TIMEOUT);
+        assertThat(batches).hasSize(3);
+    }
+
+    @Test
+    void ignoredContextKeysDoNotSeparateBatches() {
+        Flux.merge(
+                        load(BatchItem.class, 1L).contextWrite(ctx -> ctx.put("trace", "t1")),
+                        load(BatchItem.class, 2L).contextWrite(ctx -> ctx.put("trace", "t2"))
+                )
+                .blockLast(TIMEOUT);
+        assertThat(batches).hasSize(2);
+
+        batches.clear();
+        batchLoader.ignoreContextKey("trace");
+        Flux.merge(
+                        load(BatchItem.class, 1L).contextWrite(ctx -> ctx.put("trace", "t1")),
+                        load(BatchItem.class, 2L).contextWrite(ctx -> ctx.put("trace", "t2"))
+                )
+                .blockLast(TIMEOUT);
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    void statisticsAreOnlyAvailableForBatchLoadableTypes() {
+        assertThat(batchLoader.getStatistics(BatchItem.class).batchCount()).isZero();
+        assertThat(batchLoader.getStatistics(PlainItem.class)).isNull();
+    }
+
+    private <T> Mono<T> load(Class<T> domainType, Object id) {
+        return batchLoader.load(domainType, id, new R2dbcOperationOption());
+    }
+
+    private static Object item(Class<?> domainType, Long id) {
+        if (domainType == SmallBatchItem.class) {
+            SmallBatchItem item = new SmallBatchItem();
+            item.setId(id);
+            return item;
+        }
+        BatchItem item = new BatchItem();
+        item.setId(id);
+        item.setName("item-" + id);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_item", batchLoad = true, batchLoadWindow = 50)
+    public static class BatchItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "small_batch_item", batchLoad = true, batchLoadWindow = 60_000, batchLoadSize = 2)
+    public static class SmallBatchItem {
+
+        @TableId
+        private Long id;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "plain_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+    }
+
+}
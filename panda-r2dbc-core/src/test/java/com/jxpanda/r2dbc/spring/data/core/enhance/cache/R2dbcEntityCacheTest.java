@@ -0,0 +1,179 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 实体缓存：按路由的key和id缓存实体的拷贝，淘汰之后开始的加载才能放入缓存
+ */
+class R2dbcEntityCacheTest {
+
+    private static R2dbcTestContext context;
+
+    private static MappingReactiveConverter converter;
+
+    private R2dbcEntityCache entityCache;
+
+    @BeforeAll
+    static void setUpContext() {
+        context = R2dbcTestContext.h2();
+        converter = context.getBean(MappingReactiveConverter.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        entityCache = new R2dbcEntityCache(converter, new R2dbcEntitySnapshots(converter));
+    }
+
+    @Test
+    void storesAndReturnsCopies() {
+        CachedItem item = item(1L, "a");
+        entityCache.put(CachedItem.class, null, item, entityCache.generation(CachedItem.class));
+        item.setName("changed");
+
+        CachedItem cached = entityCache.get(CachedItem.class, null, 1L);
+        assertThat(cached).isNotSameAs(item);
+        assertThat(cached.getName()).isEqualTo("a");
+
+        cached.setName("changed");
+        assertThat(entityCache.get(CachedItem.class, null, 1L).getName()).isEqualTo("a");
+    }
+
+    @Test
+    void idsOfAnotherTypeHitTheSameEntry() {
+        entityCache.put(CachedItem.class, null, item(1L, "a"), entityCache.generation(CachedItem.class));
+
+        assertThat(entityCache.get(CachedItem.class, null, 1)).isNotNull();
+        assertThat(entityCache.get(CachedItem.class, null, "1")).isNotNull();
+        assertThat(entityCache.get(CachedItem.class, null, null)).isNull();
+    }
+
+    @Test
+    void routingKeysAreSeparated() {
+        long generation = entityCache.generation(CachedItem.class);
+        entityCache.put(CachedItem.class, "tenant-a", item(1L, "a"), generation);
+        entityCache.put(CachedItem.class, "tenant-b", item(1L, "b"), generation);
+
+        assertThat(entityCache.get(CachedItem.class, "tenant-a", 1L).getName()).isEqualTo("a");
+        assertThat(entityCache.get(CachedItem.class, "tenant-b", 1L).getName()).isEqualTo("b");
+        assertThat(entityCache.get(CachedItem.class, null, 1L)).isNull();
+
+        entityCache.onWrite(CachedItem.class, List.of(1L), "tenant-a");
+        assertThat(entityCache.get(CachedItem.class, "tenant-a", 1L)).isNull();
+        assertThat(entityCache.get(CachedItem.class, "tenant-b", 1L)).isNotNull();
+    }
+
+    @Test
+    void loadsStartedBeforeAnEvictionAreNotCached() {
+        long generation = entityCache.generation(CachedItem.class);
+
+        entityCache.evict(CachedItem.class, null, List.of(2L));
+        entityCache.put(CachedItem.class, null, item(1L, "stale"), generation);
+
+        assertThat(entityCache.get(CachedItem.class, null, 1L)).isNull();
+    }
+
+    @Test
+    void queryWritesInvalidateTheWholeType() {
+        long generation = entityCache.generation(CachedItem.class);
+        entityCache.put(CachedItem.class, null, item(1L, "a"), generation);
+        entityCache.put(CachedItem.class, null, item(2L, "b"), generation);
+
+        entityCache.onWrite(CachedItem.class);
+
+        assertThat(entityCache.get(CachedItem.class, null, 1L)).isNull();
+        assertThat(entityCache.get(CachedItem.class, null, 2L)).isNull();
+    }
+
+    @Test
+    void boundedBySizeAndTimeToLive() throws InterruptedException {
+        long generation = entityCache.generation(SmallCachedItem.class);
+        for (long id = 1; id <= 3; id++) {
+            SmallCachedItem item = new SmallCachedItem();
+            item.setId(id);
+            entityCache.put(SmallCachedItem.class, null, item, generation);
+        }
+
+        // 容量为2，最早放入的被淘汰
+        assertThat(entityCache.get(SmallCachedItem.class, null, 1L)).isNull();
+        assertThat(entityCache.get(SmallCachedItem.class, null, 3L)).isNotNull();
+        assertThat(entityCache.getStatistics(SmallCachedItem.class).evictionCount()).isEqualTo(1);
+
+        Thread.sleep(1100);
+        assertThat(entityCache.get(SmallCachedItem.class, null, 3L)).isNull();
+    }
+
+    @Test
+    void statisticsAreOnlyAvailableForCacheableTypes() {
+        entityCache.put(CachedItem.class, null, item(1L, "a"), entityCache.generation(CachedItem.class));
+        entityCache.get(CachedItem.class, null, 1L);
+        entityCache.get(CachedItem.class, null, 2L);
+        entityCache.recordLoad(CachedItem.class, 2_000_000);
+        entityCache.recordLoad(CachedItem.class, 4_000_000);
+
+        R2dbcEntityCache.Statistics statistics = entityCache.getStatistics(CachedItem.class);
+        assertThat(statistics.hitRate()).isEqualTo(0.5);
+        assertThat(statistics.loadCount()).isEqualTo(2);
+        assertThat(statistics.averageLoadTime()).hasMillis(3);
+        assertThat(entityCache.getStatistics(PlainItem.class)).isNull();
+    }
+
+    private static CachedItem item(Long id, String name) {
+        CachedItem item = new CachedItem();
+        item.setId(id);
+        item.setName(name);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "cached_item", cache = true)
+    public static class CachedItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "small_cached_item", cache = true, cacheMaximumSize = 2, cacheTimeToLive = 1)
+    public static class SmallCachedItem {
+
+        @TableId
+        private Long id;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "plain_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 实体快照：字段都是不可变的值的实体延迟转换为行数据，其他实体加载时就转换
+ */
+class R2dbcEntitySnapshotsTest {
+
+    private static R2dbcTestContext context;
+
+    private static MappingReactiveConverter converter;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        converter = context.getBean(MappingReactiveConverter.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void immutableFieldsAreConvertedOnlyOnFirstUse() {
+        R2dbcEntitySnapshots snapshots = new R2dbcEntitySnapshots(converter);
+        AtomicInteger conversions = new AtomicInteger();
+        Function<Object, OutboundRow> rowWriter = countingWriter(conversions);
+        ValueItem item = new ValueItem();
+        item.setId(1L);
+        item.setName("a");
+        item.setDay(LocalDate.of(2024, 1, 1));
+
+        snapshots.record(item, entity(ValueItem.class), rowWriter);
+        R2dbcEntitySnapshots.Snapshot recorded = snapshots.get(item);
+        assertThat(recorded.resolved()).isFalse();
+        assertThat(conversions).hasValue(0);
+
+        // 修改之后还原出的是加载时的行数据
+        item.setName("b");
+        R2dbcEntitySnapshots.Snapshot resolved = snapshots.resolve(recorded, item, rowWriter);
+        assertThat(resolved.resolved()).isTrue();
+        assertThat(conversions).hasValue(1);
+        assertThat(resolved.isUnchanged(SqlIdentifier.unquoted("name"), rowWriter.apply(item).get(SqlIdentifier.unquoted("name")))).isFalse();
+        item.setName("a");
+        assertThat(resolved.isUnchanged(SqlIdentifier.unquoted("name"), rowWriter.apply(item).get(SqlIdentifier.unquoted("name")))).isTrue();
+        // 调用方的实体没有被修改
+        assertThat(item.getDay()).isEqualTo(LocalDate.of(2024, 1, 1));
+    }
+
+    @Test
+    void mutableFieldsAreConvertedWhenRecorded() {
+        R2dbcEntitySnapshots snapshots = new R2dbcEntitySnapshots(converter);
+        AtomicInteger conversions = new AtomicInteger();
+        MutableItem item = new MutableItem();
+        item.setId(1L);
+        item.setData(new StringBuilder("a"));
+
+        snapshots.record(item, entity(MutableItem.class), countingWriter(conversions));
+
+        assertThat(snapshots.get(item).resolved()).isTrue();
+        assertThat(conversions).hasValue(1);
+    }
+
+    @Test
+    void snapshotsAreKeyedByIdentity() {
+        R2dbcEntitySnapshots snapshots = new R2dbcEntitySnapshots(converter);
+        ValueItem item = new ValueItem();
+        item.setId(1L);
+        ValueItem equalButDifferent = new ValueItem();
+        equalButDifferent.setId(1L);
+
+        snapshots.record(item, entity(ValueItem.class), countingWriter(new AtomicInteger()));
+
+        assertThat(snapshots.get(item)).isNotNull();
+        assertThat(snapshots.get(equalButDifferent)).isNull();
+        assertThat(snapshots.size()).isEqualTo(1);
+        snapshots.remove(item);
+        assertThat(snapshots.size()).isZero();
+    }
+
+    private static RelationalPersistentEntity<?> entity(Class<?> type) {
+        return converter.getMappingContext().getRequiredPersistentEntity(type);
+    }
+
+    private static Function<Object, OutboundRow> countingWriter(AtomicInteger conversions) {
+        return entity -> {
+            conversions.incrementAndGet();
+            OutboundRow row = new OutboundRow();
+            converter.write(entity, row);
+            return row;
+        };
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "value_item", dirtyTracking = true)
+    public static class ValueItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "day")
+        private LocalDate day;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "mutable_item", dirtyTracking = true)
+    public static class MutableItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "data")
+        private StringBuilder data;
+
+    }
+
+}
@@ -0,0 +1,268 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.core.mapping.EntityDescriptor;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.query.Criteria;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 常驻内存的表：整张表加载为快照，按索引回答等值查询，失效之后重新加载，失效之前开始的加载不会被保留
+ */
+class R2dbcResidentTablesTest {
+
+    private static R2dbcTestContext context;
+
+    private static MappingReactiveConverter converter;
+
+    private static RelationalPersistentEntity<?> regionEntity;
+
+    /**
+     * 表中的数据，每次加载读取的都是当时的数据
+     */
+    private final List<Object> rows = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每次加载时Context中的租户
+     */
+    private final List<Object> loads = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 不为null的时候加载等待这个信号
+     */
+    private volatile Sinks.Empty<Void> gate;
+
+    private R2dbcRoutingKeyResolver routingKeyResolver;
+
+    private R2dbcResidentTables residentTables;
+
+    @BeforeAll
+    static void setUpContext() {
+        context = R2dbcTestContext.h2();
+        converter = context.getBean(MappingReactiveConverter.class);
+        regionEntity = converter.getMappingContext().getRequiredPersistentEntity(ResidentRegion.class);
+    }
+
+    @AfterAll
+    static void tearDownContext() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        rows.add(region(1L, "CN", null, "1.00"));
+        rows.add(region(2L, "GD", 1L, "0.50"));
+        rows.add(region(3L, "SZ", 2L, "0.25"));
+        rows.add(region(4L, "GZ", 2L, "0.25"));
+        routingKeyResolver = R2dbcRoutingKeyResolver.NONE;
+        residentTables = new R2dbcResidentTables(converter, () -> routingKeyResolver, domainType -> Flux.deferContextual(view -> {
+            loads.add(view.getOrDefault("tenant", "none"));
+            Sinks.Empty<Void> current = gate;
+            List<Object> snapshot = domainType == RefreshedRegion.class ? List.of(new RefreshedRegion()) : List.copyOf(rows);
+            return current == null ? Flux.fromIterable(snapshot) : current.asMono().thenMany(Flux.fromIterable(snapshot));
+        }));
+    }
+
+    @AfterEach
+    void tearDown() {
+        residentTables.close();
+    }
+
+    @Test
+    void queriesAreAnsweredFromOneLoadWithCopies() {
+        ResidentRegion first = residentTables.findByIds(ResidentRegion.class, List.of(1L)).blockFirst();
+        first.setCode("changed");
+
+        List<ResidentRegion> regions = residentTables.findByIds(ResidentRegion.class, List.of(1L, "2", 3, 99L)).collectList().block();
+
+        assertThat(regions).extracting(ResidentRegion::getCode).containsExactly("CN", "GD", "SZ");
+        assertThat(loads).hasSize(1);
+    }
+
+    @Test
+    void conditionsAreCombinedWithAndAndLimited() {
+        List<R2dbcResidentTables.Condition> conditions = R2dbcResidentTables.parse(regionEntity,
+                Criteria.where("parentId").is(2L).and("code").in("SZ", "GZ", "FS"));
+
+        assertThat(residentTables.find(ResidentRegion.class, conditions, Integer.MAX_VALUE).map(ResidentRegion::getCode).collectList().block())
+                .containsExactly("SZ", "GZ");
+        assertThat(residentTables.find(ResidentRegion.class, conditions, 1).collectList().block()).hasSize(1);
+        assertThat(residentTables.find(ResidentRegion.class, List.of(), Integer.MAX_VALUE).collectList().block()).hasSize(4);
+    }
+
+    @Test
+    void numericKeysMatchRegardlessOfScale() {
+        List<R2dbcResidentTables.Condition> conditions = R2dbcResidentTables.parse(regionEntity, Criteria.where("ratio").is(new BigDecimal("0.5")));
+
+        assertThat(residentTables.find(ResidentRegion.class, conditions, Integer.MAX_VALUE).map(ResidentRegion::getCode).collectList().block())
+                .containsExactly("GD");
+    }
+
+    @Test
+    void onlyAndConnectedEqualityCriteriaCanBeAnswered() {
+        assertThat(R2dbcResidentTables.parse(regionEntity, null)).isEmpty();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.empty())).isEmpty();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("parent_id").is(1L).and("id").in(2L, 3L)))
+                .extracting(condition -> condition.property().getName())
+                .containsExactly("parentId", "id");
+
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("id").is(1L).or("id").is(2L))).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("id").greaterThan(1L))).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("code").like("S%"))).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("code").is("sz").ignoreCase(true))).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("parentId").isNull())).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("missing").is(1L))).isNull();
+        assertThat(R2dbcResidentTables.parse(regionEntity, Criteria.where("id").is(1L).and(Criteria.where("code").is("CN")))).isNull();
+    }
+
+    @Test
+    void invalidationReloadsOnTheNextRead() {
+        residentTables.findByIds(ResidentRegion.class, List.of(1L)).blockFirst();
+        rows.set(0, region(1L, "CHN", null, "1.00"));
+
+        assertThat(residentTables.findByIds(ResidentRegion.class, List.of(1L)).blockFirst().getCode()).isEqualTo("CN");
+        residentTables.onWrite(ResidentRegion.class);
+        assertThat(residentTables.findByIds(ResidentRegion.class, List.of(1L)).blockFirst().getCode()).isEqualTo("CHN");
+        assertThat(loads).hasSize(2);
+    }
+
+    @Test
+    void loadsStartedBeforeAnInvalidationAreNotKept() {
+        residentTables.preload(ResidentRegion.class).block();
+        gate = Sinks.empty();
+        CompletableFuture<Void> refreshing = residentTables.refresh(ResidentRegion.class).toFuture();
+
+        // 刷新期间发生了写入，刷新读到的可能是写入之前的数据
+        residentTables.invalidate(ResidentRegion.class);
+        Sinks.Empty<Void> current = gate;
+        gate = null;
+        current.tryEmitEmpty();
+        refreshing.join();
+
+        residentTables.findByIds(ResidentRegion.class, List.of(1L)).blockFirst();
+        assertThat(loads).hasSize(3);
+    }
+
+    @Test
+    void refreshReplacesTheSnapshot() {
+        residentTables.preload(ResidentRegion.class).block();
+        assertThat(loads).hasSize(1);
+
+        rows.add(region(5L, "FS", 2L, "0.25"));
+        residentTables.refresh(ResidentRegion.class).block();
+
+        assertThat(residentTables.findByIds(ResidentRegion.class, List.of(5L)).blockFirst().getCode()).isEqualTo("FS");
+        assertThat(loads).hasSize(2);
+    }
+
+    @Test
+    void routingKeysHaveTheirOwnSnapshots() {
+        routingKeyResolver = view -> view.getOrDefault("tenant", null);
+
+        residentTables.findByIds(ResidentRegion.class, List.of(1L)).contextWrite(ctx -> ctx.put("tenant", "a")).blockFirst();
+        residentTables.findByIds(ResidentRegion.class, List.of(1L)).contextWrite(ctx -> ctx.put("tenant", "b")).blockFirst();
+        residentTables.findByIds(ResidentRegion.class, List.of(2L)).contextWrite(ctx -> ctx.put("tenant", "a")).blockFirst();
+        assertThat(loads).containsExactly("a", "b");
+
+        // 失效的是所有路由下的快照
+        residentTables.invalidate(ResidentRegion.class);
+        residentTables.findByIds(ResidentRegion.class, List.of(1L)).contextWrite(ctx -> ctx.put("tenant", "b")).blockFirst();
+        assertThat(loads).containsExactly("a", "b", "b");
+    }
+
+    @Test
+    void scheduledRefreshStopsOnClose() throws InterruptedException {
+        residentTables.findByIds(RefreshedRegion.class, List.of(1L)).blockFirst();
+        Thread.sleep(1500);
+        int refreshed = loads.size();
+        assertThat(refreshed).isGreaterThan(1);
+
+        residentTables.close();
+        Thread.sleep(1200);
+        assertThat(loads).hasSize(refreshed);
+    }
+
+    @Test
+    void residentEntitiesMustNotHaveReferences() {
+        assertThatThrownBy(() -> EntityDescriptor.of(ReferencingRegion.class))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ResidentRegion region(Long id, String code, Long parentId, String ratio) {
+        ResidentRegion region = new ResidentRegion();
+        region.setId(id);
+        region.setCode(code);
+        region.setParentId(parentId);
+        region.setRatio(new BigDecimal(ratio));
+        return region;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "resident_region", resident = true)
+    public static class ResidentRegion {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "code")
+        private String code;
+
+        @TableColumn(name = "parent_id")
+        private Long parentId;
+
+        @TableColumn(name = "ratio")
+        private BigDecimal ratio;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "resident_region", resident = true, residentRefreshInterval = 1)
+    public static class RefreshedRegion {
+
+        @TableId
+        private Long id;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "resident_region", resident = true)
+    public static class ReferencingRegion {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "parent_id")
+        private Long parentId;
+
+        @TableReference(keyColumn = "parentId", referenceColumn = "id")
+        private ResidentRegion parent;
+
+    }
+
+}
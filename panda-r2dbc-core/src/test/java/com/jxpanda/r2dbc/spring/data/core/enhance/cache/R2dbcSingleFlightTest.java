@@ -0,0 +1,143 @@
+package com.jxpanda.r2dbc.spring.data.core.enhance.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.r2dbc.core.binding.BindTarget;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 相同查询的合并：执行中的查询被后到的调用方共享，结束之后从表中移除，不缓存结果
+ */
+class R2dbcSingleFlightTest {
+
+    private R2dbcSingleFlight singleFlight;
+
+    private AtomicInteger loads;
+
+    private Sinks.One<List<String>> result;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new R2dbcSingleFlight();
+        loads = new AtomicInteger();
+        result = Sinks.one();
+    }
+
+    @Test
+    void callersShareTheQueryInFlight() {
+        R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L));
+
+        CompletableFuture<List<String>> first = execute(key).toFuture();
+        CompletableFuture<List<String>> second = execute(key).toFuture();
+
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.getInFlightCount()).isEqualTo(1);
+        assertThat(singleFlight.getCoalescedCount(String.class)).isEqualTo(1);
+        assertThat(singleFlight.getCoalescedCount(Integer.class)).isZero();
+
+        result.tryEmitValue(List.of("a"));
+        assertThat(first.join()).containsExactly("a");
+        assertThat(second.join()).containsExactly("a");
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void finishedQueriesAreNotReused() {
+        R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L));
+        result.tryEmitValue(List.of("a"));
+
+        execute(key).block();
+        execute(key).block();
+
+        assertThat(loads).hasValue(2);
+        assertThat(singleFlight.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    void errorsAreSharedAndTheQueryIsRemoved() {
+        R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L));
+
+        CompletableFuture<List<String>> first = execute(key).toFuture();
+        CompletableFuture<List<String>> second = execute(key).toFuture();
+        result.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(singleFlight.getInFlightCount()).isZero();
+        StepVerifier.create(execute(key)).expectError(IllegalStateException.class).verify();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void keysIncludeTheReturnTypeBindingsAndRoutingKey() {
+        R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L));
+
+        assertThat(R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L))).isEqualTo(key);
+        assertThat(R2dbcSingleFlight.key(String.class, operation("SELECT 1", 2L))).isNotEqualTo(key);
+        assertThat(R2dbcSingleFlight.key(String.class, operation("SELECT 2", 1L))).isNotEqualTo(key);
+        assertThat(R2dbcSingleFlight.key(Integer.class, operation("SELECT 1", 1L))).isNotEqualTo(key);
+        assertThat(R2dbcSingleFlight.key(String.class, operation("SELECT 1", null))).isNotEqualTo(key);
+        assertThat(key.withRoutingKey("tenant-a")).isNotEqualTo(key.withRoutingKey("tenant-b"))
+                .isEqualTo(key.withRoutingKey("tenant-a"));
+    }
+
+    @Test
+    void differentRoutingKeysDoNotShare() {
+        R2dbcSingleFlight.FlightKey key = R2dbcSingleFlight.key(String.class, operation("SELECT 1", 1L));
+
+        execute(key.withRoutingKey("tenant-a")).subscribe();
+        execute(key.withRoutingKey("tenant-b")).subscribe();
+
+        assertThat(loads).hasValue(2);
+        assertThat(singleFlight.getInFlightCount()).isEqualTo(2);
+        assertThat(singleFlight.getCoalescedCount()).isZero();
+    }
+
+    private Mono<List<String>> execute(R2dbcSingleFlight.FlightKey key) {
+        return singleFlight.execute(String.class, key, () -> {
+            loads.incrementAndGet();
+            return result.asMono();
+        });
+    }
+
+    /**
+     * 只有一个参数的查询，参数为null的时候绑定为null
+     */
+    private static PreparedOperation<String> operation(String sql, Long id) {
+        return new PreparedOperation<>() {
+
+            @NonNull
+            @Override
+            public String getSource() {
+                return sql;
+            }
+
+            @Override
+            public void bindTo(@NonNull BindTarget target) {
+                if (id == null) {
+                    target.bindNull(0, Long.class);
+                } else {
+                    target.bind(0, id);
+                }
+            }
+
+            @NonNull
+            @Override
+            public String toQuery() {
+                return sql;
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.jxpanda.r2dbc.spring.data.core.mapping;
+
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 实体元数据的预解析
+ */
+class EntityDescriptorTest {
+
+    private static R2dbcTestContext context;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void descriptorIsBuiltOncePerMappingContext() {
+        EntityDescriptor<Account> descriptor = EntityDescriptor.of(Account.class);
+        assertThat(EntityDescriptor.of(Account.class)).isSameAs(descriptor);
+
+        R2dbcMappingContext otherContext = new R2dbcMappingContext();
+        RelationalPersistentEntity<?> otherEntity = otherContext.getRequiredPersistentEntity(Account.class);
+        assertThat(EntityDescriptor.of(otherEntity)).isNotSameAs(descriptor);
+    }
+
+    @Test
+    void resolvesPropertiesOnce() {
+        EntityDescriptor<Account> descriptor = EntityDescriptor.of(Account.class);
+
+        assertThat(descriptor.getTableName().getReference()).isEqualTo("account");
+        assertThat(descriptor.getIdColumn()).isNotNull();
+        assertThat(descriptor.getIdColumn().getReference()).isEqualTo("id");
+        assertThat(descriptor.getExistsProperties())
+                .extracting(propertyDescriptor -> propertyDescriptor.property().getName())
+                .containsExactly("id", "name", "nickname");
+        assertThat(descriptor.getReferenceProperties())
+                .extracting(property -> property.getName())
+                .containsExactly("orders");
+
+        RelationalPersistentEntity<Account> entity = descriptor.getEntity();
+        EntityDescriptor.PropertyDescriptor nickname = descriptor.getRequiredProperty(entity.getRequiredPersistentProperty("nickname"));
+        assertThat(nickname.hasAlias()).isTrue();
+        assertThat(nickname.getColumnLabel()).isEqualTo("nick");
+        assertThat(nickname.validationStrategy()).isEqualTo(ValidationStrategy.NOT_NULL);
+        assertThat(nickname.isEffective(null)).isFalse();
+
+        EntityDescriptor.PropertyDescriptor name = descriptor.getRequiredProperty(entity.getRequiredPersistentProperty("name"));
+        assertThat(name.getColumnLabel()).isEqualTo("name");
+        assertThat(name.validationStrategy()).isEqualTo(ValidationStrategy.NOT_EMPTY);
+        assertThat(name.isEffective("")).isFalse();
+    }
+
+    @Test
+    void resolvesEntityLevelConfiguration() {
+        EntityDescriptor<Account> account = EntityDescriptor.of(Account.class);
+        assertThat(account.getPageStrategy()).isEqualTo(PageStrategy.LAZY);
+        assertThat(account.getTotalPolicy()).isEqualTo(TotalPolicy.EXACT);
+        assertThat(account.isDirtyTracking()).isFalse();
+        // 带有关联字段的实体即使开启了缓存也不会被缓存
+        assertThat(account.isCacheable()).isFalse();
+
+        EntityDescriptor<Currency> currency = EntityDescriptor.of(Currency.class);
+        assertThat(currency.isCacheable()).isTrue();
+        assertThat(currency.getCache().maximumSize()).isEqualTo(16);
+        assertThat(currency.getCache().timeToLive()).isEqualTo(Duration.ofSeconds(60));
+        assertThat(currency.isDirtyTracking()).isTrue();
+        assertThat(currency.getBatchLoad()).isNull();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "account", cache = true, validationPolicy = ValidationStrategy.NOT_EMPTY)
+    public static class Account {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "nickname", alias = "nick", validationPolicy = ValidationStrategy.NOT_NULL)
+        private String nickname;
+
+        @TableColumn(name = "virtual_value", exists = false)
+        private String virtualValue;
+
+        @TableReference(referenceColumn = "account_id")
+        private List<Currency> orders;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "currency", cache = true, cacheMaximumSize = 16, cacheTimeToLive = 60, dirtyTracking = true)
+    public static class Currency {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "account_id")
+        private Long accountId;
+
+    }
+
+}
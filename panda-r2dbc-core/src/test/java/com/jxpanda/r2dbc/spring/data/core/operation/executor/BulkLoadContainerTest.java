@@ -0,0 +1,77 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcBulkLoadTest.BulkItem;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PostgreSQL使用 COPY ... FROM STDIN 导入，MySQL退化为多行INSERT
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class BulkLoadContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE bulk_item (id BIGINT PRIMARY KEY, name VARCHAR(16))";
+
+    @Test
+    void postgresStreamsRowsThroughCopy() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE);
+            context.recorder().clear();
+
+            Long loaded = context.template().bulkLoad(BulkItem.class, items(1000)).block();
+
+            assertThat(loaded).isEqualTo(1000);
+            assertThat(context.recorder().count(sql -> sql.startsWith("INSERT"))).isZero();
+            assertThat(names(context)).hasSize(1000).contains("n1", "tab\there", "n1000");
+        }
+    }
+
+    @Test
+    void mysqlFallsBackToMultiRowInsert() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE);
+            context.recorder().clear();
+
+            Long loaded = context.template().insert(BulkItem.class)
+                    .withOption(new R2dbcOperationOption().setInsertBatchSize(400))
+                    .bulkLoad(items(1000))
+                    .block();
+
+            assertThat(loaded).isEqualTo(1000);
+            assertThat(context.recorder().count(sql -> sql.startsWith("INSERT INTO bulk_item"))).isEqualTo(3);
+            assertThat(names(context)).hasSize(1000).contains("n1", "tab\there", "n1000");
+        }
+    }
+
+    private static Flux<BulkItem> items(int count) {
+        // 其中一行带有需要转义的制表符
+        return Flux.range(1, count).map(i -> R2dbcBulkLoadTest.item(i == 2 ? "tab\there" : "n" + i));
+    }
+
+    private static List<String> names(R2dbcTestContext context) {
+        return context.template().select(BulkItem.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all()
+                .map(BulkItem::getName)
+                .collectList()
+                .block();
+    }
+
+}
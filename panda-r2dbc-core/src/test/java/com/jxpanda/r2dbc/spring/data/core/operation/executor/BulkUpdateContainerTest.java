@@ -0,0 +1,123 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcBatchUpdateTest.BatchUpdateItem;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcBatchUpdateTest.PlainItem;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcBatchUpdateTest.item;
+import static com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcBatchUpdateTest.plain;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 单条语句的批量更新
+ * PostgreSQL：UPDATE ... FROM (VALUES ...) RETURNING，按返回的id逐行判断是否成功，版本号加入到匹配条件中
+ * MySQL：UPDATE ... JOIN (SELECT ... UNION ALL ...)，有版本号的实体退回到预编译语句批量执行
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class BulkUpdateContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE batch_update_item (id BIGINT PRIMARY KEY, name VARCHAR(8), version BIGINT)";
+
+    private static final String INSERT_ROWS = "INSERT INTO batch_update_item VALUES (1, 'a', 1), (2, 'b', 1), (3, 'c', 1)";
+
+    private static final String DELETE_ROWS = "DELETE FROM batch_update_item";
+
+    @Test
+    void postgresUpdatesEveryRowInOneStatement() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            ReactiveEntityTemplate template = context.template();
+
+            context.recorder().clear();
+            template.updateBatch(List.of(plain(1L, "x"), plain(2L, "y"), plain(3L, "z")), PlainItem.class).blockLast();
+            assertThat(updates(context)).singleElement().asString().contains(" FROM (VALUES ");
+            assertThat(names(template)).containsExactly("x", "y", "z");
+
+            // 版本号不匹配的行没有被更新，报告乐观锁失败，整批回滚
+            context.recorder().clear();
+            StepVerifier.create(template.updateBatch(List.of(item(1L, "p", 1L), item(2L, "q", 0L), item(3L, "r", 1L)), BatchUpdateItem.class))
+                    .expectNextCount(1)
+                    .expectError(OptimisticLockingFailureException.class)
+                    .verify();
+            assertThat(updates(context)).singleElement().asString().contains("IS NOT DISTINCT FROM");
+            assertThat(names(template)).containsExactly("x", "y", "z");
+
+            duplicateIdsAreAppliedInOrder(context);
+        }
+    }
+
+    @Test
+    void mysqlUpdatesUnversionedRowsInOneStatement() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            ReactiveEntityTemplate template = context.template();
+
+            context.recorder().clear();
+            template.updateBatch(List.of(plain(1L, "x"), plain(2L, "y"), plain(3L, "z")), PlainItem.class).blockLast();
+            assertThat(updates(context)).singleElement().asString().contains(" JOIN (SELECT ");
+            assertThat(names(template)).containsExactly("x", "y", "z");
+
+            // 影响行数不够的时候查询确认每一行是否存在
+            StepVerifier.create(template.updateBatch(List.of(plain(1L, "p"), plain(9L, "q")), PlainItem.class))
+                    .expectNextCount(1)
+                    .expectError(TransientDataAccessResourceException.class)
+                    .verify();
+
+            // 有版本号的实体逐行检查影响行数，不使用单条语句
+            context.recorder().clear();
+            StepVerifier.create(template.updateBatch(List.of(item(1L, "p", 1L), item(2L, "q", 0L)), BatchUpdateItem.class))
+                    .expectNextCount(1)
+                    .expectError(OptimisticLockingFailureException.class)
+                    .verify();
+            assertThat(updates(context)).noneMatch(sql -> sql.contains(" JOIN "));
+
+            duplicateIdsAreAppliedInOrder(context);
+        }
+    }
+
+    /**
+     * 同一个id出现多次的时候分轮执行，后写入的生效
+     */
+    private static void duplicateIdsAreAppliedInOrder(R2dbcTestContext context) {
+        context.execute(DELETE_ROWS, INSERT_ROWS);
+        context.recorder().clear();
+
+        context.template().updateBatch(List.of(plain(1L, "x1"), plain(2L, "y"), plain(1L, "x2")), PlainItem.class).blockLast();
+
+        assertThat(updates(context)).hasSize(2);
+        assertThat(names(context.template())).containsExactly("x2", "y", "c");
+    }
+
+    private static List<String> updates(R2dbcTestContext context) {
+        return context.recorder().statements().stream().filter(sql -> sql.startsWith("UPDATE")).toList();
+    }
+
+    private static List<String> names(ReactiveEntityTemplate template) {
+        return template.select(BatchUpdateItem.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all()
+                .map(BatchUpdateItem::getName)
+                .collectList()
+                .block();
+    }
+
+}
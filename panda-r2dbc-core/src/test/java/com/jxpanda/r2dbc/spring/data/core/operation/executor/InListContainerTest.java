@@ -0,0 +1,78 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcInListTest.InItem;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PostgreSQL的IN查询绑定一个数组，MySQL按2的幂补齐并按最大分桶拆分执行
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class InListContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE in_item (id BIGINT PRIMARY KEY, name VARCHAR(8))";
+
+    @Test
+    void postgresBindsOneArrayForAnyNumberOfIds() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE, "INSERT INTO in_item SELECT x, 'a' FROM generate_series(1, 3000) AS x");
+            ReactiveEntityTemplate template = context.template();
+            context.recorder().clear();
+
+            assertThat(template.select(InItem.class).byIds(ids(2500)).collectList().block()).hasSize(2500);
+            assertThat(template.select(InItem.class).byIds(ids(10)).collectList().block()).hasSize(10);
+            assertThat(template.select(InItem.class).matching(Query.query(Criteria.where("id").notIn(ids(2990)))).count().block()).isEqualTo(10);
+
+            List<String> selects = context.recorder().statements();
+            assertThat(selects).hasSize(3).allMatch(sql -> sql.contains("ANY($1)") || sql.contains("ALL($1)"));
+            // 元素数量不同，SQL是一样的
+            assertThat(selects.get(0)).isEqualTo(selects.get(1));
+        }
+    }
+
+    @Test
+    void mysqlSplitsByIdsIntoPaddedBuckets() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE);
+            context.template().insertBatch(LongStream.rangeClosed(1, 3000).mapToObj(InListContainerTest::item).toList(), InItem.class).blockLast();
+            ReactiveEntityTemplate template = context.template();
+            context.recorder().clear();
+
+            List<InItem> items = template.select(InItem.class).byIds(ids(2500)).collectList().block();
+
+            assertThat(items).hasSize(2500).extracting(InItem::getId).doesNotHaveDuplicates();
+            assertThat(context.recorder().statements()).hasSize(3);
+            assertThat(template.destroy(InItem.class).byIds(ids(2500)).block()).isEqualTo(2500);
+        }
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toList();
+    }
+
+    private static InItem item(long id) {
+        InItem item = new InItem();
+        item.setId(id);
+        item.setName("a");
+        return item;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcIncrementTest.CounterItem;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 原子增量更新：PostgreSQL可以通过RETURNING返回更新后的值，MySQL只返回影响行数
+ * 并发扣减的时候下限条件保证不会扣成负数
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class IncrementContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE counter_item (id BIGINT PRIMARY KEY, stock INT, views BIGINT, version BIGINT)";
+
+    private static final String INSERT_ROWS = "INSERT INTO counter_item VALUES (1, 5, 0, 1), (2, 1, 0, 1)";
+
+    private static final Query FIRST = Query.query(Criteria.where("id").is(1L));
+
+    @Test
+    void postgresReturnsTheUpdatedValues() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            ReactiveEntityTemplate template = context.template();
+
+            StepVerifier.create(template.update(CounterItem.class).matching(FIRST).incrementAndGet(CounterItem::getViewCount, 3))
+                    .expectNext(3L)
+                    .verifyComplete();
+            StepVerifier.create(template.update(CounterItem.class).matching(FIRST).decrementAndGet(CounterItem::getStock, 2, 0))
+                    .expectNext(3)
+                    .verifyComplete();
+            // 不满足下限的行不会被更新，也不会返回
+            StepVerifier.create(template.update(CounterItem.class).matching(FIRST).decrementAndGet(CounterItem::getStock, 4, 0))
+                    .verifyComplete();
+            StepVerifier.create(template.update(CounterItem.class).matchingAll().incrementAndGet(CounterItem::getViewCount, 1).sort())
+                    .expectNext(1L, 4L)
+                    .verifyComplete();
+
+            concurrentDecrementsNeverOversell(template);
+        }
+    }
+
+    @Test
+    void mysqlReportsRowsAffected() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            ReactiveEntityTemplate template = context.template();
+
+            assertThat(template.update(CounterItem.class).matching(FIRST).increment(CounterItem::getViewCount, 3).block()).isEqualTo(1L);
+            assertThat(template.update(CounterItem.class).matching(FIRST).decrement(CounterItem::getStock, 6, 0).block()).isZero();
+            StepVerifier.create(template.update(CounterItem.class).matching(FIRST).incrementAndGet(CounterItem::getViewCount, 1))
+                    .expectError(UnsupportedOperationException.class)
+                    .verify();
+            assertThat(template.select(CounterItem.class).byId(1L).map(CounterItem::getViewCount).block()).isEqualTo(3L);
+
+            concurrentDecrementsNeverOversell(template);
+        }
+    }
+
+    private static void concurrentDecrementsNeverOversell(ReactiveEntityTemplate template) {
+        int stock = template.select(CounterItem.class).byId(1L).map(CounterItem::getStock).block();
+
+        Long sold = Flux.range(0, 20)
+                .flatMap(i -> template.update(CounterItem.class).matching(FIRST).decrement(CounterItem::getStock, 1, 0))
+                .reduce(0L, Long::sum)
+                .block();
+
+        assertThat(sold).isEqualTo(stock);
+        assertThat(template.select(CounterItem.class).byId(1L).map(CounterItem::getStock).block()).isZero();
+    }
+
+}
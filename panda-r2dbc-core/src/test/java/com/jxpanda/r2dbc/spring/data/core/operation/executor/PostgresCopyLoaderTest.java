@@ -0,0 +1,67 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.sql.IdentifierProcessing;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.r2dbc.core.Parameter;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * COPY文本格式的编码：制表符分隔，\N表示null，特殊字符转义
+ */
+class PostgresCopyLoaderTest {
+
+    private static final SqlIdentifier ID = SqlIdentifier.unquoted("id");
+
+    private static final SqlIdentifier VALUE = SqlIdentifier.unquoted("value");
+
+    private static final List<SqlIdentifier> COLUMNS = List.of(ID, VALUE);
+
+    @Test
+    void rendersTheCopyStatementWithTheColumnList() {
+        String sql = PostgresCopyLoader.copySql(SqlIdentifier.unquoted("copy_item"), COLUMNS, IdentifierProcessing.NONE);
+
+        assertThat(sql).isEqualTo("COPY copy_item (id, value) FROM STDIN");
+    }
+
+    @Test
+    void nullAndMissingColumnsAreWrittenAsNull() {
+        OutboundRow row = new OutboundRow();
+        row.put(ID, Parameter.from(1L));
+
+        assertThat(PostgresCopyLoader.encodeRow(COLUMNS, row)).isEqualTo("1\t\\N\n");
+
+        row.put(VALUE, Parameter.empty(String.class));
+        assertThat(PostgresCopyLoader.encodeRow(COLUMNS, row)).isEqualTo("1\t\\N\n");
+    }
+
+    @Test
+    void escapesControlCharacters() {
+        assertThat(encode("a\tb\nc\rd\\e")).isEqualTo("1\ta\\tb\\nc\\rd\\\\e\n");
+    }
+
+    @Test
+    void convertsValuesToTheTextInputFormat() {
+        assertThat(encode(true)).isEqualTo("1\tt\n");
+        assertThat(encode(new byte[]{0x0a, (byte) 0xff})).isEqualTo("1\t\\\\x0aff\n");
+        assertThat(encode(Kind.SMALL)).isEqualTo("1\tSMALL\n");
+        assertThat(encode(new String[]{"a", null, "b\"c"})).isEqualTo("1\t{\"a\",NULL,\"b\\\\\"c\"}\n");
+        assertThat(encode(List.of(1, 2))).isEqualTo("1\t{\"1\",\"2\"}\n");
+    }
+
+    private static String encode(Object value) {
+        OutboundRow row = new OutboundRow();
+        row.put(ID, Parameter.from(1L));
+        row.put(VALUE, Parameter.from(value));
+        return PostgresCopyLoader.encodeRow(COLUMNS, row);
+    }
+
+    private enum Kind {
+        SMALL
+    }
+
+}
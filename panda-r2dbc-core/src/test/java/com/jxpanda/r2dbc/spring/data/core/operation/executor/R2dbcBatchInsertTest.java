@@ -0,0 +1,150 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.IdStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多行INSERT：按批次大小和绑定参数的上限分块，插入的列不同的行分开执行
+ */
+class R2dbcBatchInsertTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE batch_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "CREATE TABLE batch_auto_item (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(8))"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void splitsIntoChunksOfTheBatchSize() {
+        List<BatchItem> items = LongStream.rangeClosed(1, 5).mapToObj(id -> item(id, "n" + id)).toList();
+
+        List<BatchItem> inserted = template.insert(BatchItem.class)
+                .withOption(new R2dbcOperationOption().setInsertBatchSize(2))
+                .batch(items)
+                .collectList()
+                .block();
+
+        assertThat(inserted).extracting(BatchItem::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(recorder.statements()).hasSize(3);
+        assertThat(recorder.statements().get(0)).contains("), (");
+        assertThat(names()).containsExactly("n1", "n2", "n3", "n4", "n5");
+    }
+
+    @Test
+    void bindParameterLimitShrinksTheChunk() {
+        List<BatchItem> items = LongStream.rangeClosed(1, 4).mapToObj(id -> item(id, "n" + id)).toList();
+
+        template.insert(BatchItem.class)
+                .withOption(new R2dbcOperationOption().setInsertBatchSize(100).setMaxBindParameters(4))
+                .batch(items)
+                .blockLast();
+
+        // 每行2个参数，最多4个参数，每条语句2行
+        assertThat(recorder.statements()).hasSize(2);
+        assertThat(names()).containsExactly("n1", "n2", "n3", "n4");
+    }
+
+    @Test
+    void rowsWithDifferentColumnsAreNotMixed() {
+        List<BatchItem> items = List.of(item(1L, "a"), item(2L, "b"), item(3L, null), item(4L, null), item(5L, "e"));
+
+        template.insert(BatchItem.class).batch(items).blockLast();
+
+        assertThat(recorder.statements()).hasSize(3);
+        assertThat(recorder.statements().get(1)).doesNotContain("name");
+        assertThat(names()).containsExactly("a", "b", null, null, "e");
+    }
+
+    @Test
+    void generatedIdsAreWrittenBackInOrder() {
+        List<BatchAutoItem> items = List.of(autoItem("a"), autoItem("b"), autoItem("c"));
+
+        List<BatchAutoItem> inserted = template.insert(BatchAutoItem.class).batch(items).collectList().block();
+
+        assertThat(inserted).extracting(BatchAutoItem::getName).containsExactly("a", "b", "c");
+        assertThat(inserted).extracting(BatchAutoItem::getId).containsExactly(1L, 2L, 3L);
+    }
+
+    private List<String> names() {
+        return template.select(BatchItem.class).matching(Query.empty().sort(Sort.by("id"))).all()
+                .collectList()
+                .block()
+                .stream()
+                .map(BatchItem::getName)
+                .toList();
+    }
+
+    private static BatchItem item(Long id, String name) {
+        BatchItem item = new BatchItem();
+        item.setId(id);
+        item.setName(name);
+        return item;
+    }
+
+    private static BatchAutoItem autoItem(String name) {
+        BatchAutoItem item = new BatchAutoItem();
+        item.setName(name);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_item")
+    public static class BatchItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_auto_item")
+    public static class BatchAutoItem {
+
+        @TableId(idStrategy = IdStrategy.DATABASE_AUTO)
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 开启了批量加载的实体，并发的按id查询合并为一次IN查询
+ * 事务、会话中的查询不合并
+ */
+class R2dbcBatchLoadSelectTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE batch_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO batch_item VALUES (1, 'a'), (2, 'b'), (3, 'c')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void concurrentByIdsAreMergedIntoOneQuery() {
+        List<BatchItem> items = Flux.just(1L, 2L, 3L, 4L, 2L)
+                .flatMap(id -> template.select(BatchItem.class).byId(id))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertThat(items).extracting(BatchItem::getName).containsExactlyInAnyOrder("a", "b", "b", "c");
+        assertThat(recorder.statements()).singleElement().asString().endsWith("IN ($1, $2, $3, $4)");
+        assertThat(template.getBatchLoader().getStatistics(BatchItem.class).idCount()).isEqualTo(4);
+    }
+
+    @Test
+    void batchedEntitiesAreCached() {
+        Flux.just(1L, 2L)
+                .flatMap(id -> template.select(CachedBatchItem.class).byId(id))
+                .blockLast(TIMEOUT);
+        recorder.clear();
+
+        assertThat(template.select(CachedBatchItem.class).byId(1L).map(CachedBatchItem::getName).block(TIMEOUT)).isEqualTo("a");
+        assertThat(template.select(CachedBatchItem.class).byId(2L).map(CachedBatchItem::getName).block(TIMEOUT)).isEqualTo("b");
+        assertThat(recorder.statements()).isEmpty();
+    }
+
+    @Test
+    void transactionsAreNotBatched() {
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+
+        Mono.zip(template.select(BatchItem.class).byId(1L), template.select(BatchItem.class).byId(2L))
+                .as(transactionalOperator::transactional)
+                .block(TIMEOUT);
+
+        assertThat(selects()).isEqualTo(2);
+        assertThat(template.getBatchLoader().getStatistics(BatchItem.class).batchCount()).isZero();
+    }
+
+    @Test
+    void sessionsAreNotBatched() {
+        template.withSession(Mono.zip(template.select(BatchItem.class).byId(1L), template.select(BatchItem.class).byId(2L)))
+                .block(TIMEOUT);
+
+        assertThat(selects()).isEqualTo(2);
+        assertThat(template.getBatchLoader().getStatistics(BatchItem.class).batchCount()).isZero();
+    }
+
+    @Test
+    void entitiesWithoutBatchLoadQueryOneByOne() {
+        Flux.just(1L, 2L)
+                .flatMap(id -> template.select(PlainItem.class).byId(id))
+                .blockLast(TIMEOUT);
+
+        assertThat(recorder.statements()).hasSize(2).allMatch(sql -> sql.endsWith("= $1"));
+    }
+
+    private long selects() {
+        return recorder.count(sql -> sql.startsWith("SELECT"));
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_item", batchLoad = true, batchLoadWindow = 50)
+    public static class BatchItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_item", batchLoad = true, batchLoadWindow = 50, cache = true)
+    public static class CachedBatchItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.IdStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.ValidationStrategy;
+import com.jxpanda.r2dbc.spring.data.core.operation.support.R2dbcUpdateOperationSupport;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 预编译语句批量更新（Statement.add）：一组SQL相同的实体只执行一次，逐行检查影响行数，异常带上SQL
+ * H2不支持单条语句的批量更新，所以这里走的都是Statement.add的路径
+ */
+class R2dbcBatchUpdateTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE batch_update_item (id BIGINT PRIMARY KEY, name VARCHAR(8) UNIQUE, version BIGINT)",
+                "INSERT INTO batch_update_item VALUES (1, 'a', 1), (2, 'b', 1), (3, 'c', 1), (4, 'd', 1), (5, 'e', 1)"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void bindsEachEntityOnOneStatementPerChunk() {
+        List<BatchUpdateItem> items = LongStream.rangeClosed(1, 5).mapToObj(id -> item(id, "n" + id, 1L)).toList();
+
+        List<BatchUpdateItem> updated = new R2dbcUpdateOperationSupport(template).update(BatchUpdateItem.class)
+                .withOption(new R2dbcOperationOption().setStatementBatchSize(2))
+                .batch(items)
+                .collectList()
+                .block();
+
+        assertThat(updated).extracting(BatchUpdateItem::getVersion).containsOnly(2L);
+        assertThat(recorder.statements()).hasSize(3).allMatch(sql -> sql.startsWith("UPDATE"));
+        assertThat(rows()).extracting(BatchUpdateItem::getName).containsExactly("n1", "n2", "n3", "n4", "n5");
+    }
+
+    @Test
+    void entitiesWithDifferentColumnsUseSeparateStatements() {
+        List<BatchUpdateItem> items = List.of(item(1L, "x", 1L), item(2L, null, 1L), item(3L, "z", 1L));
+
+        template.updateBatch(items, BatchUpdateItem.class).blockLast();
+
+        assertThat(recorder.statements()).hasSize(3);
+        assertThat(rows()).extracting(BatchUpdateItem::getName).containsExactly("x", "b", "z", "d", "e");
+    }
+
+    @Test
+    void staleVersionFailsForThatEntity() {
+        List<BatchUpdateItem> items = List.of(item(1L, "x", 1L), item(2L, "y", 0L));
+
+        StepVerifier.create(template.updateBatch(items, BatchUpdateItem.class))
+                .expectNextCount(1)
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        // 整批在一个事务中，失败之后回滚
+        assertThat(rows()).extracting(BatchUpdateItem::getName).startsWith("a", "b");
+    }
+
+    @Test
+    void missingRowFails() {
+        StepVerifier.create(template.updateBatch(List.of(item(1L, "x", 1L), item(9L, "y", 1L)), BatchUpdateItem.class))
+                .expectNextCount(1)
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+
+        StepVerifier.create(template.updateBatch(List.of(plain(1L, "x"), plain(9L, "y")), PlainItem.class))
+                .expectNextCount(1)
+                .expectError(TransientDataAccessResourceException.class)
+                .verify();
+    }
+
+    @Test
+    void constraintViolationIsTranslatedWithTheSql() {
+        StepVerifier.create(template.updateBatch(List.of(plain(1L, "same"), plain(2L, "same")), PlainItem.class))
+                .expectErrorSatisfies(error -> assertThat(error)
+                        .isInstanceOf(DataAccessException.class)
+                        .hasMessageContaining("UPDATE batch_update_item"))
+                .verify();
+    }
+
+    @Test
+    void saveBatchInsertsNewAndUpdatesExistingEntities() {
+        List<PlainItem> items = List.of(plain(1L, "x"), plain(null, "new"), plain(2L, "y"));
+
+        List<PlainItem> saved = template.save(PlainItem.class)
+                .withOption(new R2dbcOperationOption().setStatementBatchSize(10))
+                .batch(items)
+                .collectList()
+                .block();
+
+        assertThat(saved).extracting(PlainItem::getName).containsExactlyInAnyOrder("x", "new", "y");
+        assertThat(rows()).extracting(BatchUpdateItem::getName).contains("x", "y", "new");
+        // 一条插入，两条更新共用一个语句
+        assertThat(recorder.count(sql -> sql.startsWith("UPDATE"))).isEqualTo(1);
+        assertThat(recorder.count(sql -> sql.startsWith("INSERT"))).isEqualTo(1);
+    }
+
+    private List<BatchUpdateItem> rows() {
+        return template.select(BatchUpdateItem.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList().block();
+    }
+
+    static BatchUpdateItem item(Long id, String name, Long version) {
+        BatchUpdateItem item = new BatchUpdateItem();
+        item.setId(id);
+        item.setName(name);
+        item.setVersion(version);
+        return item;
+    }
+
+    static PlainItem plain(Long id, String name) {
+        PlainItem item = new PlainItem();
+        item.setId(id);
+        item.setName(name);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_update_item", validationPolicy = ValidationStrategy.NOT_NULL)
+    public static class BatchUpdateItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @Version
+        @TableColumn(name = "version")
+        private Long version;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "batch_update_item")
+    public static class PlainItem {
+
+        @TableId(idStrategy = IdStrategy.USE_GENERATOR, validationPolicy = ValidationStrategy.NOT_NULL)
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
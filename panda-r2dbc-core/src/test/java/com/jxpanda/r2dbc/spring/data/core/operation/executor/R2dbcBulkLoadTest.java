@@ -0,0 +1,110 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.IdStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 批量导入：没有COPY的数据库（H2）退化为分块的多行INSERT，id生成与普通插入一致
+ */
+class R2dbcBulkLoadTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute("CREATE TABLE bulk_item (id BIGINT PRIMARY KEY, name VARCHAR(16))");
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void fallsBackToChunkedMultiRowInsert() {
+        Flux<BulkItem> items = Flux.range(1, 5).map(i -> item("n" + i));
+
+        Long loaded = template.insert(BulkItem.class)
+                .withOption(new R2dbcOperationOption().setInsertBatchSize(2))
+                .bulkLoad(items)
+                .block();
+
+        assertThat(loaded).isEqualTo(5);
+        assertThat(recorder.statements()).hasSize(3).allMatch(sql -> sql.startsWith("INSERT INTO bulk_item"));
+        List<BulkItem> rows = rows();
+        assertThat(rows).extracting(BulkItem::getName).containsExactly("n1", "n2", "n3", "n4", "n5");
+        // 使用ID生成器生成的id
+        assertThat(rows).extracting(BulkItem::getId).allMatch(id -> id > 1_000_000L);
+    }
+
+    @Test
+    void pullsEntitiesUnderBackpressure() {
+        List<Integer> requested = new CopyOnWriteArrayList<>();
+        Flux<BulkItem> items = Flux.fromStream(IntStream.rangeClosed(1, 100).mapToObj(i -> item("n" + i)))
+                .doOnRequest(n -> requested.add((int) Math.min(n, Integer.MAX_VALUE)));
+
+        Long loaded = template.bulkLoad(BulkItem.class, items).block();
+
+        assertThat(loaded).isEqualTo(100);
+        assertThat(rows()).hasSize(100);
+        // 按需拉取，不会一次请求无限多的数据
+        assertThat(requested).isNotEmpty().allMatch(n -> n < Integer.MAX_VALUE);
+    }
+
+    @Test
+    void emptySourceLoadsNothing() {
+        assertThat(template.bulkLoad(BulkItem.class, Flux.empty()).block()).isZero();
+        assertThat(recorder.statements()).isEmpty();
+    }
+
+    private List<BulkItem> rows() {
+        return template.select(BulkItem.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList().block();
+    }
+
+    static BulkItem item(String name) {
+        BulkItem item = new BulkItem();
+        item.setName(name);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "bulk_item")
+    public static class BulkItem {
+
+        @TableId(idStrategy = IdStrategy.USE_GENERATOR)
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
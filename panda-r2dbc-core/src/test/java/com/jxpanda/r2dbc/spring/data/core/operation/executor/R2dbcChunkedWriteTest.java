@@ -0,0 +1,173 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableLogic;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.value.LogicDeleteValueType;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 分片更新/删除：按主键顺序每次处理一片，每一片在独立的事务中提交，按片发出影响的行数
+ */
+class R2dbcChunkedWriteTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE chunk_item (id BIGINT PRIMARY KEY, name VARCHAR(8), score INT, deleted INT DEFAULT 0)",
+                "CREATE UNIQUE INDEX chunk_item_name ON chunk_item (name)",
+                "INSERT INTO chunk_item (id, name, score) SELECT X, 'n' || X, MOD(X, 2) FROM SYSTEM_RANGE(1, 25)"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void updateEmitsRowsAffectedPerSlice() {
+        List<Long> progress = template.update(ChunkItem.class)
+                .matching(Query.query(Criteria.where("score").is(1)))
+                .applyChunked(Update.update("name", null), 5)
+                .collectList()
+                .block();
+
+        // 13个奇数id，按5个一片
+        assertThat(progress).containsExactly(5L, 5L, 3L);
+        assertThat(count("name IS NULL")).isEqualTo(13);
+        // 每一片查询一次id，更新一次
+        assertThat(recorder.count(sql -> sql.startsWith("UPDATE"))).isEqualTo(3);
+        assertThat(recorder.count(sql -> sql.startsWith("SELECT") && sql.contains("LIMIT 5"))).isEqualTo(3);
+    }
+
+    @Test
+    void deleteFollowsLogicDeleteAndSkipsDeletedRows() {
+        template.update(ChunkItem.class).matching(Query.query(Criteria.where("id").lessThanOrEquals(5L))).apply(Update.update("deleted", 1)).block();
+
+        List<Long> progress = template.deleteChunked(Query.query(Criteria.where("score").is(1)), ChunkItem.class, 4, Duration.ZERO)
+                .collectList()
+                .block();
+
+        // id 1、3、5 已经逻辑删除，剩下10个奇数id
+        assertThat(progress).containsExactly(4L, 4L, 2L);
+        assertThat(count("deleted = 1")).isEqualTo(5 + 10);
+        assertThat(count("1 = 1")).isEqualTo(25);
+    }
+
+    @Test
+    void destroyRemovesTheRows() {
+        List<Long> progress = template.destroyChunked(Query.query(Criteria.where("id").greaterThan(5L)), ChunkItem.class, 10, Duration.ZERO)
+                .collectList()
+                .block();
+
+        assertThat(progress).containsExactly(10L, 10L);
+        assertThat(count("1 = 1")).isEqualTo(5);
+    }
+
+    @Test
+    void pausesBetweenSlices() {
+        long start = System.nanoTime();
+
+        List<Long> progress = template.destroy(ChunkItem.class)
+                .matchingAll()
+                .chunked(10, Duration.ofMillis(100))
+                .collectList()
+                .block();
+
+        assertThat(progress).containsExactly(10L, 10L, 5L);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void emptyCriteriaIsRejectedUnlessMatchingAll() {
+        StepVerifier.create(template.destroyChunked(Query.empty(), ChunkItem.class, 10, Duration.ZERO))
+                .expectError(InvalidDataAccessApiUsageException.class)
+                .verify();
+        StepVerifier.create(template.updateChunked(Query.empty(), Update.update("score", 0), ChunkItem.class, 10, Duration.ZERO))
+                .expectError(InvalidDataAccessApiUsageException.class)
+                .verify();
+        assertThat(recorder.statements()).isEmpty();
+
+        StepVerifier.create(template.update(ChunkItem.class).matchingAll().applyChunked(Update.update("score", 0), 10))
+                .expectNext(10L, 10L, 5L)
+                .verifyComplete();
+    }
+
+    @Test
+    void committedSlicesSurviveAFailureAndTheOuterTransaction() {
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+
+        // 第二片会违反唯一索引
+        StepVerifier.create(template.update(ChunkItem.class)
+                        .matching(Query.query(Criteria.where("id").in(1L, 2L)))
+                        .applyChunked(Update.update("name", "dup"), 1)
+                        .then(Mono.error(new IllegalStateException("unreachable")))
+                        .as(transactionalOperator::transactional))
+                .expectError(DataAccessException.class)
+                .verify();
+
+        // 第一片已经在自己的事务中提交，不受外层事务回滚的影响
+        assertThat(count("name = 'dup'")).isEqualTo(1);
+        assertThat(count("id = 1 AND name = 'dup'")).isEqualTo(1);
+    }
+
+    private long count(String condition) {
+        return context.databaseClient().sql("SELECT COUNT(*) FROM chunk_item WHERE " + condition)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "chunk_item")
+    public static class ChunkItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "score")
+        private Integer score;
+
+        @TableLogic(type = LogicDeleteValueType.NUMBER)
+        @TableColumn(name = "deleted")
+        private Integer deleted;
+
+    }
+
+}
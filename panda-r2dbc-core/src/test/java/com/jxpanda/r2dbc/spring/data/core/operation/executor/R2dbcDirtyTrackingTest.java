@@ -0,0 +1,199 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.annotation.Version;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 脏检查：查询出来的实体更新的时候只写入变化了的列，没有变化的时候不执行更新
+ */
+class R2dbcDirtyTrackingTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE dirty_item (id BIGINT PRIMARY KEY, name VARCHAR(8), score INT, note VARCHAR(16), version BIGINT)",
+                "INSERT INTO dirty_item VALUES (1, 'a', 1, 'n', 1), (2, 'b', 2, 'm', 1)"
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void writesOnlyTheChangedColumns() {
+        DirtyItem item = load(1L);
+        item.setName("x");
+
+        template.update(item).block();
+
+        assertThat(updates()).singleElement().asString()
+                .startsWith("UPDATE dirty_item SET name = ")
+                .doesNotContain("score", "note");
+        assertThat(template.select(DirtyItem.class).byId(1L).map(DirtyItem::getName).block()).isEqualTo("x");
+    }
+
+    @Test
+    void skipsTheUpdateWhenNothingChanged() {
+        DirtyItem item = load(1L);
+
+        DirtyItem updated = template.update(item).block();
+
+        assertThat(updated).isSameAs(item);
+        assertThat(updates()).isEmpty();
+    }
+
+    @Test
+    void theSnapshotFollowsTheLastWrite() {
+        DirtyItem item = load(1L);
+        item.setName("x");
+        template.update(item).block();
+
+        recorder.clear();
+        item.setScore(9);
+        template.update(item).block();
+        assertThat(updates()).singleElement().asString().contains("score").doesNotContain("name");
+
+        // 写回原来的值也是变化
+        recorder.clear();
+        item.setName("a");
+        template.update(item).block();
+        assertThat(updates()).singleElement().asString().contains("name");
+    }
+
+    @Test
+    void entitiesNotLoadedWriteEveryColumn() {
+        DirtyItem item = new DirtyItem();
+        item.setId(1L);
+        item.setName("x");
+        item.setScore(1);
+        item.setNote("n");
+        recorder.clear();
+
+        template.update(item).block();
+
+        assertThat(updates()).singleElement().asString().contains("name", "score", "note");
+    }
+
+    @Test
+    void batchUpdateGroupsEntitiesByTheirChangedColumns() {
+        List<DirtyItem> items = template.select(DirtyItem.class).byIds(List.of(1L, 2L)).collectList().block();
+        items.forEach(item -> item.setNote("z"));
+        recorder.clear();
+
+        template.updateBatch(items, DirtyItem.class).blockLast();
+
+        // 两个实体变化的列一样，共用一条语句
+        assertThat(updates()).singleElement().asString().contains("note").doesNotContain("name");
+    }
+
+    @Test
+    void versionIsKeptWhenNothingChangedAndIncrementedOtherwise() {
+        VersionedDirtyItem item = template.select(VersionedDirtyItem.class).byId(1L).block();
+        recorder.clear();
+
+        template.update(item).block();
+        assertThat(item.getVersion()).isEqualTo(1L);
+        assertThat(updates()).isEmpty();
+
+        item.setName("x");
+        template.update(item).block();
+        assertThat(item.getVersion()).isEqualTo(2L);
+        assertThat(updates()).singleElement().asString().contains("name", "version").doesNotContain("score");
+    }
+
+    @Test
+    void rolledBackUpdateDoesNotKeepTheMergedSnapshot() {
+        DirtyItem item = load(1L);
+        item.setName("x");
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+
+        StepVerifier.create(template.update(item).then(Mono.error(new IllegalStateException("rollback"))).as(transactionalOperator::transactional))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        // 快照被移除，下一次更新写入所有的列，回滚掉的修改能重新写入
+        assertThat(template.getEntitySnapshots().get(item)).isNull();
+        recorder.clear();
+        template.update(item).block();
+        assertThat(updates()).singleElement().asString().contains("name", "score", "note");
+        assertThat(template.select(DirtyItem.class).byId(1L).map(DirtyItem::getName).block()).isEqualTo("x");
+    }
+
+    private DirtyItem load(Long id) {
+        DirtyItem item = template.select(DirtyItem.class).byId(id).block();
+        recorder.clear();
+        return item;
+    }
+
+    private List<String> updates() {
+        return recorder.statements().stream().filter(sql -> sql.startsWith("UPDATE")).toList();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "dirty_item", dirtyTracking = true)
+    public static class DirtyItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "score")
+        private Integer score;
+
+        @TableColumn(name = "note")
+        private String note;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "dirty_item", dirtyTracking = true)
+    public static class VersionedDirtyItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "score")
+        private Integer score;
+
+        @Version
+        @TableColumn(name = "version")
+        private Long version;
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcEntityCache;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 开启了缓存的实体，按id查询先从缓存获取，只查询缓存中没有的id，通过模板写入之后缓存自动失效
+ */
+class R2dbcEntityCacheSelectTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE cached_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO cached_item VALUES (1, 'a'), (2, 'b'), (3, 'c')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void byIdIsServedFromTheCacheAfterTheFirstLoad() {
+        assertThat(byId(1L).getName()).isEqualTo("a");
+        assertThat(byId(1L).getName()).isEqualTo("a");
+
+        assertThat(selects()).isEqualTo(1);
+        R2dbcEntityCache.Statistics statistics = template.getEntityCache().getStatistics(CachedItem.class);
+        assertThat(statistics.cache().hitCount()).isEqualTo(1);
+        assertThat(statistics.loadCount()).isEqualTo(1);
+    }
+
+    @Test
+    void byIdsQueriesOnlyTheMissingIds() {
+        byId(1L);
+        recorder.clear();
+
+        List<CachedItem> items = template.select(CachedItem.class).byIds(List.of(1L, 2L, 3L)).collectList().block();
+
+        assertThat(items).extracting(CachedItem::getName).containsExactlyInAnyOrder("a", "b", "c");
+        // 只查询缓存中没有的两个id
+        assertThat(recorder.statements()).singleElement().asString().endsWith("IN ($1, $2)");
+        recorder.clear();
+        assertThat(template.select(CachedItem.class).byIds(List.of(1L, 2L, 3L)).collectList().block()).hasSize(3);
+        assertThat(recorder.statements()).isEmpty();
+    }
+
+    @Test
+    void entityWritesEvictTheWrittenIds() {
+        CachedItem first = byId(1L);
+        byId(2L);
+
+        first.setName("x");
+        template.update(first).block();
+        recorder.clear();
+
+        assertThat(byId(1L).getName()).isEqualTo("x");
+        assertThat(byId(2L).getName()).isEqualTo("b");
+        assertThat(selects()).isEqualTo(1);
+
+        template.destroy(first).block();
+        assertThat(template.select(CachedItem.class).byId(1L).block()).isNull();
+    }
+
+    @Test
+    void queryWritesInvalidateTheType() {
+        byId(1L);
+        byId(2L);
+
+        template.update(Query.query(Criteria.where("name").is("b")), Update.update("name", "y"), CachedItem.class).block();
+        recorder.clear();
+
+        assertThat(byId(2L).getName()).isEqualTo("y");
+        assertThat(byId(1L).getName()).isEqualTo("a");
+        assertThat(selects()).isEqualTo(2);
+    }
+
+    @Test
+    void cachedEntitiesAreCopies() {
+        byId(1L).setName("changed");
+
+        assertThat(byId(1L).getName()).isEqualTo("a");
+    }
+
+    @Test
+    void transactionsBypassTheCache() {
+        byId(1L);
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+        recorder.clear();
+
+        // 事务中读到的是事务自己写入的数据
+        String name = template.update(Query.query(Criteria.where("id").is(1L)), Update.update("name", "t"), CachedItem.class)
+                .then(template.select(CachedItem.class).byId(1L))
+                .map(CachedItem::getName)
+                .as(transactionalOperator::transactional)
+                .block();
+
+        assertThat(name).isEqualTo("t");
+        assertThat(selects()).isEqualTo(1);
+        assertThat(byId(1L).getName()).isEqualTo("t");
+    }
+
+    private CachedItem byId(Long id) {
+        return template.select(CachedItem.class).byId(id).block();
+    }
+
+    private long selects() {
+        return recorder.count(sql -> sql.startsWith("SELECT"));
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "cached_item", cache = true)
+    public static class CachedItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.InListStrategy;
+import com.jxpanda.r2dbc.spring.data.core.operation.support.R2dbcUpdateOperationSupport;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * IN列表绑定的参数超过上限的时候拆分为多条语句执行，结果合并
+ * 对select、update、delete（物理删除destroy）统一生效
+ */
+class R2dbcInListTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE in_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO in_item SELECT X, 'a' FROM SYSTEM_RANGE(1, 3000)"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void selectRunsOneStatementPerPartition() {
+        List<InItem> items = template.select(InItem.class)
+                .withOption(new R2dbcOperationOption().setMaxBindParameters(1000))
+                .matching(Query.query(Criteria.where("id").in(ids(2500))))
+                .all()
+                .collectList()
+                .block();
+
+        assertThat(items).hasSize(2500).extracting(InItem::getId).doesNotHaveDuplicates();
+        assertThat(selects()).isEqualTo(3);
+    }
+
+    @Test
+    void updateReservesTheSetParameters() {
+        Long updated = new R2dbcUpdateOperationSupport(template).update(InItem.class)
+                .withOption(new R2dbcOperationOption().setMaxBindParameters(1000))
+                .matching(Query.query(Criteria.where("id").in(ids(2500))))
+                .apply(Update.update("name", "b"))
+                .block();
+
+        assertThat(updated).isEqualTo(2500);
+        // SET占用一个参数，每一组最多999个id
+        assertThat(recorder.count(sql -> sql.startsWith("UPDATE"))).isEqualTo(3);
+        assertThat(template.select(InItem.class).matching(Query.query(Criteria.where("name").is("b"))).count().block()).isEqualTo(2500);
+    }
+
+    @Test
+    void destroySumsTheAffectedRowsOfEveryPartition() {
+        // 默认的上限是32767
+        Long deleted = template.destroy(InItem.class)
+                .matching(Query.query(Criteria.where("id").in(LongStream.rangeClosed(1, 40_000).boxed().toList())))
+                .all()
+                .block();
+
+        assertThat(deleted).isEqualTo(3000);
+        assertThat(recorder.count(sql -> sql.startsWith("DELETE"))).isEqualTo(2);
+    }
+
+    @Test
+    void bucketStrategySplitsByIdsIntoMaxBuckets() {
+        template.getStatementMapper().setInListStrategy(InListStrategy.BUCKET);
+
+        List<InItem> items = template.select(InItem.class).byIds(ids(2500)).collectList().block();
+
+        assertThat(items).hasSize(2500);
+        assertThat(selects()).isEqualTo(3);
+        // 补齐重复的元素不会产生重复的行
+        assertThat(items).extracting(InItem::getId).doesNotHaveDuplicates();
+
+        assertThat(template.destroy(InItem.class).byIds(ids(2500)).block()).isEqualTo(2500);
+    }
+
+    private long selects() {
+        return recorder.count(sql -> sql.startsWith("SELECT"));
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toList();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "in_item")
+    public static class InItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.criteria.EnhancedCriteria;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 原子增量更新：在数据库中完成计算，扣减的时候可以限制下限，影响行数为0说明不满足条件
+ */
+class R2dbcIncrementTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        context.execute(
+                "CREATE TABLE counter_item (id BIGINT PRIMARY KEY, stock INT, views BIGINT, version BIGINT)",
+                "INSERT INTO counter_item VALUES (1, 5, 0, 1), (2, 1, 0, 1)"
+        );
+        context.recorder().clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void incrementWithLambdaColumnAndCriteria() {
+        Long updated = template.update(CounterItem.class)
+                .matching(Query.query(EnhancedCriteria.where(CounterItem::getId).is(1L)))
+                .increment(CounterItem::getViewCount, 3)
+                .block();
+
+        assertThat(updated).isEqualTo(1L);
+        assertThat(load(1L).getViewCount()).isEqualTo(3L);
+        assertThat(load(2L).getViewCount()).isZero();
+        assertThat(context.recorder().statements()).filteredOn(sql -> sql.startsWith("UPDATE"))
+                .singleElement().asString().contains("views = views + ");
+    }
+
+    @Test
+    void decrementStopsAtTheFloor() {
+        Query query = Query.query(Criteria.where("id").is(1L));
+
+        assertThat(template.update(CounterItem.class).matching(query).decrement("stock", 3, 0).block()).isEqualTo(1L);
+        // 剩下2个，不够再扣3个
+        assertThat(template.update(CounterItem.class).matching(query).decrement("stock", 3, 0).block()).isZero();
+        assertThat(load(1L).getStock()).isEqualTo(2);
+        assertThat(template.update(CounterItem.class).matching(query).decrement(CounterItem::getStock, 2, 0).block()).isEqualTo(1L);
+        assertThat(load(1L).getStock()).isZero();
+    }
+
+    @Test
+    void concurrentDecrementsNeverOversell() {
+        Query query = Query.query(Criteria.where("id").is(1L));
+
+        Long sold = Flux.range(0, 20)
+                .flatMap(i -> template.update(CounterItem.class).matching(query).decrement("stock", 1, 0))
+                .reduce(0L, Long::sum)
+                .block();
+
+        assertThat(sold).isEqualTo(5L);
+        assertThat(load(1L).getStock()).isZero();
+    }
+
+    @Test
+    void versionIsIncrementedSoLoadedCopiesGoStale() {
+        template.update(VersionedCounterItem.class).matching(Query.query(Criteria.where("id").is(1L))).increment("stock", 1).block();
+
+        assertThat(template.select(VersionedCounterItem.class).byId(1L).block().getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void columnMayBeThePropertyOrTheColumnName() {
+        Query query = Query.query(Criteria.where("id").is(2L));
+
+        template.update(CounterItem.class).matching(query).increment("viewCount", 1).block();
+        template.update(CounterItem.class).matching(query).increment("views", 1).block();
+        assertThat(load(2L).getViewCount()).isEqualTo(2L);
+
+        StepVerifier.create(template.update(CounterItem.class).matching(query).increment("missing", 1))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void emptyCriteriaIsRejectedUnlessMatchingAll() {
+        StepVerifier.create(template.update(CounterItem.class).matching(Query.empty()).increment("views", 1))
+                .expectError(InvalidDataAccessApiUsageException.class)
+                .verify();
+        assertThat(context.recorder().statements()).isEmpty();
+
+        assertThat(template.update(CounterItem.class).matchingAll().increment("views", 1).block()).isEqualTo(2L);
+    }
+
+    @Test
+    void returningIsRejectedWithoutSupport() {
+        StepVerifier.create(template.update(CounterItem.class).matching(Query.query(Criteria.where("id").is(1L))).incrementAndGet(CounterItem::getViewCount, 1))
+                .expectError(UnsupportedOperationException.class)
+                .verify();
+        assertThat(load(1L).getViewCount()).isZero();
+    }
+
+    private CounterItem load(Long id) {
+        return template.select(CounterItem.class).byId(id).block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "counter_item")
+    public static class CounterItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "stock")
+        private Integer stock;
+
+        @TableColumn(name = "views")
+        private Long viewCount;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "counter_item")
+    public static class VersionedCounterItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "stock")
+        private Integer stock;
+
+        @Version
+        @TableColumn(name = "version")
+        private Long version;
+
+    }
+
+}
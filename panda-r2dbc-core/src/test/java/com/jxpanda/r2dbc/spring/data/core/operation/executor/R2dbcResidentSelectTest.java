@@ -0,0 +1,166 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 常驻内存的表：按id、等值条件和关联字段的查询从快照中获取，其他查询、事务中的查询走数据库，通过模板写入之后重新加载
+ */
+class R2dbcResidentSelectTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE resident_region (id BIGINT PRIMARY KEY, code VARCHAR(8), parent_id BIGINT)",
+                "CREATE TABLE resident_address (id BIGINT PRIMARY KEY, region_code VARCHAR(8))",
+                "INSERT INTO resident_region VALUES (1, 'CN', NULL), (2, 'GD', 1), (3, 'SZ', 2), (4, 'GZ', 2)",
+                "INSERT INTO resident_address VALUES (1, 'SZ'), (2, 'GZ'), (3, 'SZ')"
+        );
+        template.getResidentTables().preload(ResidentRegion.class).block();
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void selectsByIdAndEqualityAreAnsweredFromMemory() {
+        assertThat(template.select(ResidentRegion.class).byId(2L).map(ResidentRegion::getCode).block()).isEqualTo("GD");
+        assertThat(template.select(ResidentRegion.class).byIds(List.of(3L, 4L)).map(ResidentRegion::getCode).collectList().block())
+                .containsExactly("SZ", "GZ");
+        assertThat(template.select(ResidentRegion.class)
+                .matching(Query.query(Criteria.where("parentId").is(2L).and("code").in("SZ", "FS")))
+                .all().map(ResidentRegion::getCode).collectList().block())
+                .containsExactly("SZ");
+        assertThat(template.select(ResidentRegion.class).matching(Query.query(Criteria.where("code").is("CN"))).one().block()).isNotNull();
+        assertThat(template.select(ResidentRegion.class).all().count().block()).isEqualTo(4);
+
+        assertThat(recorder.statements()).isEmpty();
+    }
+
+    @Test
+    void referencesAreAnsweredFromMemory() {
+        List<ResidentAddress> addresses = template.select(ResidentAddress.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all()
+                .collectList()
+                .block();
+
+        assertThat(addresses).extracting(address -> address.getRegion().getCode()).containsExactly("SZ", "GZ", "SZ");
+        // 只查询了主表
+        assertThat(recorder.statements()).singleElement().asString().contains("resident_address");
+    }
+
+    @Test
+    void otherQueriesGoToTheDatabase() {
+        template.select(ResidentRegion.class).matching(Query.query(Criteria.where("id").greaterThan(1L))).all().blockLast();
+        template.select(ResidentRegion.class).matching(Query.empty().sort(Sort.by("id"))).all().blockLast();
+        template.select(ResidentRegion.class).matching(Query.empty().offset(1)).all().blockLast();
+        template.select(ResidentRegion.class).matching(Query.query(Criteria.where("id").is(1L)).columns("code")).all().blockLast();
+        template.select(ResidentRegion.class).matching(Query.query(Criteria.where("id").is(1L).or("id").is(2L))).all().blockLast();
+        template.select(ResidentRegion.class).withOption(new R2dbcOperationOption().setResident(false)).byId(1L).block();
+
+        assertThat(recorder.statements()).hasSize(6);
+    }
+
+    @Test
+    void writesReloadTheSnapshot() {
+        ResidentRegion region = template.select(ResidentRegion.class).byId(3L).block();
+        region.setCode("SZX");
+        template.update(region).block();
+        template.update(Query.query(Criteria.where("id").is(4L)), Update.update("code", "GZX"), ResidentRegion.class).block();
+        recorder.clear();
+
+        assertThat(template.select(ResidentRegion.class).byIds(List.of(3L, 4L)).map(ResidentRegion::getCode).collectList().block())
+                .containsExactly("SZX", "GZX");
+        assertThat(template.select(ResidentRegion.class).byId(1L).map(ResidentRegion::getCode).block()).isEqualTo("CN");
+        assertThat(recorder.statements()).singleElement().asString().contains("resident_region");
+    }
+
+    @Test
+    void returnedEntitiesAreCopies() {
+        template.select(ResidentRegion.class).byId(1L).block().setCode("changed");
+
+        assertThat(template.select(ResidentRegion.class).byId(1L).map(ResidentRegion::getCode).block()).isEqualTo("CN");
+    }
+
+    @Test
+    void transactionsReadTheDatabase() {
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+
+        // 事务中读到的是事务自己写入的数据
+        String code = template.update(Query.query(Criteria.where("id").is(1L)), Update.update("code", "CHN"), ResidentRegion.class)
+                .then(template.select(ResidentRegion.class).byId(1L))
+                .map(ResidentRegion::getCode)
+                .as(transactionalOperator::transactional)
+                .block();
+
+        assertThat(code).isEqualTo("CHN");
+        assertThat(recorder.count(sql -> sql.startsWith("SELECT"))).isEqualTo(1);
+        // 事务提交之后快照重新加载
+        assertThat(template.select(ResidentRegion.class).byId(1L).map(ResidentRegion::getCode).block()).isEqualTo("CHN");
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "resident_region", resident = true)
+    public static class ResidentRegion {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "code")
+        private String code;
+
+        @TableColumn(name = "parent_id")
+        private Long parentId;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "resident_address")
+    public static class ResidentAddress {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "region_code")
+        private String regionCode;
+
+        @TableReference(keyColumn = "regionCode", referenceColumn = "code")
+        private ResidentRegion region;
+
+    }
+
+}
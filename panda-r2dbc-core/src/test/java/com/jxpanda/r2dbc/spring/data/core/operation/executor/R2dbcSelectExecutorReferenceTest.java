@@ -0,0 +1,153 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 批量加载关联字段（@TableReference）
+ */
+class R2dbcSelectExecutorReferenceTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        context.execute(
+                "CREATE TABLE ref_parent (id BIGINT PRIMARY KEY, name VARCHAR(32), owner_id BIGINT)",
+                "CREATE TABLE ref_child (id BIGINT PRIMARY KEY, parent_id BIGINT, name VARCHAR(32))",
+                "CREATE TABLE ref_owner (id BIGINT PRIMARY KEY, name VARCHAR(32))",
+                "INSERT INTO ref_parent VALUES (1, 'p1', 10), (2, 'p2', 20), (3, 'p3', NULL), (4, 'p4', 10), (5, 'p5', 99)",
+                "INSERT INTO ref_child VALUES (1, 1, 'c1'), (2, 1, 'c2'), (3, 2, 'c3'), (4, 4, 'c4'), (5, 5, 'c5'), (6, 5, 'c6')",
+                "INSERT INTO ref_owner VALUES (10, 'o10'), (20, 'o20')"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void assignsChildrenToEachParentAcrossBatches() {
+        List<Parent> parents = template.select(Parent.class)
+                .withOption(new R2dbcOperationOption().setReferenceBatchSize(2))
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all()
+                .collectList()
+                .block();
+
+        assertThat(parents).extracting(Parent::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(parents.get(0).getChildren()).extracting(Child::getName).containsExactlyInAnyOrder("c1", "c2");
+        assertThat(parents.get(1).getChildren()).extracting(Child::getName).containsExactly("c3");
+        assertThat(parents.get(3).getChildren()).extracting(Child::getName).containsExactly("c4");
+        assertThat(parents.get(4).getChildren()).extracting(Child::getName).containsExactlyInAnyOrder("c5", "c6");
+    }
+
+    @Test
+    void keyWithoutChildrenGetsEmptyCollection() {
+        Parent parent = template.select(Parent.class)
+                .matching(Query.query(Criteria.where("id").is(3L)))
+                .one()
+                .block();
+
+        assertThat(parent).isNotNull();
+        assertThat(parent.getChildren()).isEmpty();
+    }
+
+    @Test
+    void missingKeyLeavesSingleReferenceNull() {
+        List<Parent> parents = template.select(Parent.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all()
+                .collectList()
+                .block();
+
+        assertThat(parents).extracting(parent -> parent.getOwner() == null ? null : parent.getOwner().getName())
+                .containsExactly("o10", "o20", null, "o10", null);
+    }
+
+    @Test
+    void referencesAreSkippedWhenDisabled() {
+        Parent parent = template.select(Parent.class)
+                .withOption(new R2dbcOperationOption(false))
+                .matching(Query.query(Criteria.where("id").is(1L)))
+                .one()
+                .block();
+
+        assertThat(parent).isNotNull();
+        assertThat(parent.getChildren()).isNull();
+        assertThat(parent.getOwner()).isNull();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "ref_parent")
+    public static class Parent {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+        @TableColumn(name = "owner_id")
+        private Long ownerId;
+
+        @TableReference(referenceColumn = "parent_id")
+        private List<Child> children;
+
+        @TableReference(keyColumn = "ownerId", referenceColumn = "id")
+        private Owner owner;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "ref_child")
+    public static class Child {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "parent_id")
+        private Long parentId;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "ref_owner")
+    public static class Owner {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableReference;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSession;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 会话（一级缓存）：会话中按id查询已经加载过的实例直接返回同一个实例，写入之后淘汰，会话结束之后丢弃
+ */
+class R2dbcSessionSelectTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE session_order (id BIGINT PRIMARY KEY, member_id BIGINT)",
+                "CREATE TABLE session_member (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO session_order VALUES (1, 10), (2, 10), (3, 20)",
+                "INSERT INTO session_member VALUES (10, 'a'), (20, 'b'), (30, 'c')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void sameIdReturnsTheSameInstanceWithinASession() {
+        Tuple2<SessionMember, SessionMember> members = template.withSession(member(10L).zipWhen(first -> member(10L))).block();
+
+        assertThat(members.getT1()).isSameAs(members.getT2());
+        assertThat(memberSelects()).isEqualTo(1);
+    }
+
+    @Test
+    void withoutASessionEveryLoadIsFresh() {
+        Tuple2<SessionMember, SessionMember> members = member(10L).zipWhen(first -> member(10L)).block();
+
+        assertThat(members.getT1()).isNotSameAs(members.getT2());
+        assertThat(memberSelects()).isEqualTo(2);
+    }
+
+    @Test
+    void byIdsLoadsOnlyIdsNotInTheSession() {
+        List<SessionMember> members = template.withSession(member(10L)
+                        .thenMany(template.select(SessionMember.class).byIds(List.of(10L, 20L, 30L))))
+                .collectList()
+                .block();
+
+        assertThat(members).extracting(SessionMember::getName).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(recorder.statements()).filteredOn(sql -> sql.contains("session_member"))
+                .hasSize(2)
+                .last().asString().endsWith("IN ($1, $2)");
+    }
+
+    @Test
+    void referencesReuseLoadedInstances() {
+        Tuple2<SessionMember, List<SessionOrder>> result = template.withSession(member(10L)
+                        .zipWhen(member -> template.select(SessionOrder.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList()))
+                .block();
+
+        SessionMember member = result.getT1();
+        List<SessionOrder> orders = result.getT2();
+        assertThat(orders.get(0).getMember()).isSameAs(member);
+        assertThat(orders.get(1).getMember()).isSameAs(member);
+        assertThat(orders.get(2).getMember().getName()).isEqualTo("b");
+        // 关联查询只查询会话中没有的id
+        assertThat(memberSelects()).isEqualTo(2);
+    }
+
+    @Test
+    void entityWritesEvictTheInstance() {
+        Tuple2<SessionMember, SessionMember> members = template.withSession(member(10L)
+                        .flatMap(member -> {
+                            member.setName("x");
+                            return template.update(member);
+                        })
+                        .zipWhen(updated -> member(10L)))
+                .block();
+
+        assertThat(members.getT2()).isNotSameAs(members.getT1());
+        assertThat(members.getT2().getName()).isEqualTo("x");
+        assertThat(memberSelects()).isEqualTo(2);
+    }
+
+    @Test
+    void queryWritesInvalidateTheType() {
+        Tuple2<SessionMember, SessionMember> members = template.withSession(member(20L)
+                        .flatMap(first -> template.update(Query.query(Criteria.where("id").is(10L)), Update.update("name", "y"), SessionMember.class)
+                                .then(member(20L))
+                                .map(second -> Tuples.of(first, second))))
+                .block();
+
+        // 不知道按条件写入影响了哪些行，会话中这个类型的实例全部失效
+        assertThat(members.getT2()).isNotSameAs(members.getT1());
+        assertThat(memberSelects()).isEqualTo(2);
+    }
+
+    @Test
+    void nestedSessionsShareTheOuterSessionAndEndWithIt() {
+        Integer size = template.withSession(member(10L)
+                        .then(template.withSession(member(20L)))
+                        .then(Mono.deferContextual(view -> Mono.just(R2dbcSession.current(view).orElseThrow().size()))))
+                .block();
+        assertThat(size).isEqualTo(2);
+
+        // 会话随订阅结束，下一次会话重新加载
+        template.withSession(member(10L)).block();
+        assertThat(memberSelects()).isEqualTo(3);
+    }
+
+    private Mono<SessionMember> member(Long id) {
+        return template.select(SessionMember.class).byId(id);
+    }
+
+    private long memberSelects() {
+        return recorder.count(sql -> sql.startsWith("SELECT") && sql.contains("session_member"));
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "session_order")
+    public static class SessionOrder {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "member_id")
+        private Long memberId;
+
+        @TableReference(keyColumn = "memberId", referenceColumn = "id")
+        private SessionMember member;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "session_member")
+    public static class SessionMember {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.cache.R2dbcSingleFlight;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 开启了合并的实体，并发的相同查询只执行一次，每个调用方拿到各自的拷贝
+ * 事务、会话中的查询以及路由的key不同的查询不合并
+ */
+class R2dbcSingleFlightSelectTest {
+
+    private GatedConnectionFactory connectionFactory;
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    private R2dbcSingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new GatedConnectionFactory(ConnectionFactories.get("r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+        context = R2dbcTestContext.of(connectionFactory);
+        template = context.template();
+        recorder = context.recorder();
+        singleFlight = template.getSingleFlight();
+        context.execute(
+                "CREATE TABLE flight_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO flight_item VALUES (1, 'a'), (2, 'b')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.open();
+        context.close();
+    }
+
+    @Test
+    void concurrentIdenticalSelectsShareOneQuery() {
+        connectionFactory.close();
+        CompletableFuture<List<FlightItem>> items = Flux.range(0, 4)
+                .flatMap(i -> template.select(FlightItem.class).byId(1L))
+                .collectList()
+                .toFuture();
+
+        assertThat(singleFlight.getInFlightCount()).isEqualTo(1);
+        assertThat(singleFlight.getCoalescedCount(FlightItem.class)).isEqualTo(3);
+        connectionFactory.open();
+
+        List<FlightItem> results = items.join();
+        assertThat(results).hasSize(4).extracting(FlightItem::getName).containsOnly("a");
+        // 每个调用方拿到的是各自的拷贝
+        assertThat(results).doesNotHaveDuplicates();
+        assertThat(selects()).isEqualTo(1);
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void listQueriesAreSharedToo() {
+        Query query = Query.empty().sort(Sort.by("id"));
+
+        connectionFactory.close();
+        CompletableFuture<List<FlightItem>> first = template.select(FlightItem.class).matching(query).all().collectList().toFuture();
+        CompletableFuture<List<FlightItem>> second = template.select(FlightItem.class).matching(query).all().collectList().toFuture();
+        connectionFactory.open();
+
+        assertThat(first.join()).extracting(FlightItem::getName).containsExactly("a", "b");
+        assertThat(second.join()).extracting(FlightItem::getName).containsExactly("a", "b");
+        assertThat(selects()).isEqualTo(1);
+    }
+
+    @Test
+    void differentBindingsAreNotMerged() {
+        connectionFactory.close();
+        CompletableFuture<List<FlightItem>> items = Flux.just(1L, 2L, 1L)
+                .flatMap(id -> template.select(FlightItem.class).byId(id))
+                .collectList()
+                .toFuture();
+        connectionFactory.open();
+
+        assertThat(items.join()).extracting(FlightItem::getName).containsExactlyInAnyOrder("a", "b", "a");
+        assertThat(selects()).isEqualTo(2);
+        assertThat(singleFlight.getCoalescedCount(FlightItem.class)).isEqualTo(1);
+    }
+
+    @Test
+    void finishedQueriesAreNotReused() {
+        template.select(FlightItem.class).byId(1L).block();
+        context.execute("UPDATE flight_item SET name = 'x' WHERE id = 1");
+
+        // 不缓存结果，查询结束之后的调用读到的是最新的数据
+        assertThat(template.select(FlightItem.class).byId(1L).map(FlightItem::getName).block()).isEqualTo("x");
+        assertThat(selects()).isEqualTo(2);
+        assertThat(singleFlight.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    void differentRoutingKeysAreNotMerged() {
+        template.setRoutingKeyResolver(view -> view.getOrDefault("tenant", null));
+
+        connectionFactory.close();
+        CompletableFuture<List<FlightItem>> items = Flux.just("tenant-a", "tenant-b", "tenant-a")
+                .flatMap(tenant -> template.select(FlightItem.class).byId(1L).contextWrite(ctx -> ctx.put("tenant", tenant)))
+                .collectList()
+                .toFuture();
+        connectionFactory.open();
+
+        assertThat(items.join()).hasSize(3);
+        assertThat(selects()).isEqualTo(2);
+        assertThat(singleFlight.getCoalescedCount(FlightItem.class)).isEqualTo(1);
+    }
+
+    @Test
+    void transactionsAndSessionsAreNotMerged() {
+        TransactionalOperator transactionalOperator = context.getBean(TransactionalOperator.class);
+
+        Mono.zip(template.select(FlightItem.class).byId(1L), template.select(FlightItem.class).byId(1L))
+                .as(transactionalOperator::transactional)
+                .block();
+        template.withSession(Mono.zip(template.select(FlightItem.class).byId(2L), template.select(FlightItem.class).byId(2L)))
+                .block();
+
+        assertThat(singleFlight.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    void entitiesWithoutSingleFlightAreNotMerged() {
+        connectionFactory.close();
+        CompletableFuture<List<PlainItem>> items = Flux.range(0, 2)
+                .flatMap(i -> template.select(PlainItem.class).byId(1L))
+                .collectList()
+                .toFuture();
+        assertThat(singleFlight.getInFlightCount()).isZero();
+        connectionFactory.open();
+
+        assertThat(items.join()).hasSize(2);
+        assertThat(selects()).isEqualTo(2);
+        assertThat(singleFlight.getCoalescedCount()).isZero();
+    }
+
+    private long selects() {
+        return recorder.count(sql -> sql.startsWith("SELECT"));
+    }
+
+    /**
+     * 可以暂停获取连接的连接工厂，用于让查询停留在执行中
+     */
+    private static final class GatedConnectionFactory implements ConnectionFactory {
+
+        private final ConnectionFactory delegate;
+
+        private volatile Sinks.Empty<Void> gate;
+
+        private GatedConnectionFactory(ConnectionFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.defer(() -> {
+                Sinks.Empty<Void> current = this.gate;
+                return current == null ? Mono.empty() : current.asMono();
+            }).then(Mono.from(this.delegate.create()));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return this.delegate.getMetadata();
+        }
+
+        private void close() {
+            this.gate = Sinks.empty();
+        }
+
+        private void open() {
+            Sinks.Empty<Void> current = this.gate;
+            this.gate = null;
+            if (current != null) {
+                current.tryEmitEmpty();
+            }
+        }
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "flight_item", singleFlight = true)
+    public static class FlightItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "flight_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
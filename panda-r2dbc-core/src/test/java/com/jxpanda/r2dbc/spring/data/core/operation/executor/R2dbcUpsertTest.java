@@ -0,0 +1,95 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * upsert是显式开启的，不支持的数据库（H2）通过返回的Mono/Flux发出错误，不降级为插入或更新
+ */
+class R2dbcUpsertTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE upsert_item (id BIGINT PRIMARY KEY, code VARCHAR(8) UNIQUE, name VARCHAR(16))",
+                "INSERT INTO upsert_item VALUES (1, 'c1', 'a')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void unsupportedDialectFailsThroughThePublisher() {
+        StepVerifier.create(template.save(UpsertItem.class).upsert().batch(List.of(item(1L, "c1", "x"), item(2L, "c2", "y"))))
+                .expectError(UnsupportedOperationException.class)
+                .verify();
+        StepVerifier.create(template.save(UpsertItem.class).onConflict("code").using(item(1L, "c1", "x")))
+                .expectError(UnsupportedOperationException.class)
+                .verify();
+
+        assertThat(recorder.statements()).isEmpty();
+    }
+
+    @Test
+    void saveWithoutUpsertKeepsTheInsertOrUpdateDecision() {
+        List<UpsertItem> saved = template.save(UpsertItem.class)
+                .batch(List.of(item(1L, "c1", "x")))
+                .collectList()
+                .block();
+
+        assertThat(saved).extracting(UpsertItem::getName).containsExactly("x");
+        assertThat(recorder.statements()).singleElement().asString().startsWith("UPDATE upsert_item");
+    }
+
+    static UpsertItem item(Long id, String code, String name) {
+        UpsertItem item = new UpsertItem();
+        item.setId(id);
+        item.setCode(code);
+        item.setName(name);
+        return item;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "upsert_item")
+    public static class UpsertItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "code")
+        private String code;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
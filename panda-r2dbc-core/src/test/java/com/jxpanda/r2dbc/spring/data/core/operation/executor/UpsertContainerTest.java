@@ -0,0 +1,90 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.executor;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcUpsertTest.UpsertItem;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcUpsertTest.item;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * upsert：PostgreSQL使用 ON CONFLICT ... DO UPDATE，MySQL使用 ON DUPLICATE KEY UPDATE
+ * 一批实体只执行一条语句，已存在的行被更新，不存在的行被插入，值为null的字段不覆盖原有的值
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class UpsertContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE upsert_item (id BIGINT PRIMARY KEY, code VARCHAR(8) UNIQUE, name VARCHAR(16))";
+
+    private static final String INSERT_ROWS = "INSERT INTO upsert_item VALUES (1, 'c1', 'a')";
+
+    @Test
+    void postgresUpsertsWithOnConflict() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            context.recorder().clear();
+
+            upsertInsertsAndUpdatesInOneStatement(context);
+            assertThat(context.recorder().statements()).filteredOn(sql -> sql.startsWith("INSERT")).singleElement().asString().contains("ON CONFLICT (id) DO UPDATE SET");
+
+            // 按其他唯一约束冲突，更新的是code相同的行
+            context.template().save(UpsertItem.class).onConflict("code").using(item(9L, "c2", "z")).block();
+            assertThat(rows(context.template())).extracting(UpsertItem::getId, UpsertItem::getName)
+                    .containsExactly(tuple(1L, "x"), tuple(2L, "z"));
+
+            nullFieldsKeepTheStoredValue(context.template());
+        }
+    }
+
+    @Test
+    void mysqlUpsertsWithOnDuplicateKeyUpdate() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS);
+            context.recorder().clear();
+
+            upsertInsertsAndUpdatesInOneStatement(context);
+            // 8.0.19及以上的版本使用行别名
+            assertThat(context.recorder().statements()).filteredOn(sql -> sql.startsWith("INSERT")).singleElement().asString().contains(" AS new ON DUPLICATE KEY UPDATE");
+
+            nullFieldsKeepTheStoredValue(context.template());
+        }
+    }
+
+    private static void upsertInsertsAndUpdatesInOneStatement(R2dbcTestContext context) {
+        List<UpsertItem> saved = context.template().save(UpsertItem.class)
+                .upsert()
+                .batch(List.of(item(1L, "c1", "x"), item(2L, "c2", "y")))
+                .collectList()
+                .block();
+
+        assertThat(saved).hasSize(2);
+        assertThat(rows(context.template())).extracting(UpsertItem::getName).containsExactly("x", "y");
+    }
+
+    private static void nullFieldsKeepTheStoredValue(ReactiveEntityTemplate template) {
+        template.save(UpsertItem.class).upsert().using(item(1L, "c1", null)).block();
+
+        assertThat(rows(template).get(0).getName()).isEqualTo("x");
+    }
+
+    private static List<UpsertItem> rows(ReactiveEntityTemplate template) {
+        return template.select(UpsertItem.class).matching(Query.empty().sort(Sort.by("id"))).all().collectList().block();
+    }
+
+}
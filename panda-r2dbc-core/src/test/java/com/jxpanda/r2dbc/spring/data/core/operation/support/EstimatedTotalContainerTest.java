@@ -0,0 +1,90 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ESTIMATED：PostgreSQL使用pg_class和EXPLAIN估算，MySQL没有条件的时候使用information_schema估算
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class EstimatedTotalContainerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final String CREATE_TABLE = "CREATE TABLE estimate_item (id BIGINT PRIMARY KEY, kind VARCHAR(8))";
+
+    private static final String INSERT_ROWS = "INSERT INTO estimate_item VALUES (1, 'a'), (2, 'a'), (3, 'a'), (4, 'b'), (5, 'b')";
+
+    @Test
+    void postgresEstimatesFromStatistics() {
+        try (R2dbcTestContext context = R2dbcTestContext.postgres(POSTGRES)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS, "ANALYZE estimate_item");
+
+            Pagination<EstimateItem> all = page(context, Query.empty());
+            assertThat(all.isTotalExact()).isFalse();
+            assertThat(all.getTotalElements()).isEqualTo(5);
+
+            // 有条件的时候使用EXPLAIN的估算行数，只保证是估算值
+            Pagination<EstimateItem> filtered = page(context, Query.query(Criteria.where("kind").is("b")));
+            assertThat(filtered.isTotalExact()).isFalse();
+            assertThat(filtered.getTotalElements()).isPositive();
+        }
+    }
+
+    @Test
+    void mysqlEstimatesOnlyWithoutCriteria() {
+        try (R2dbcTestContext context = R2dbcTestContext.mysql(MYSQL)) {
+            context.execute(CREATE_TABLE, INSERT_ROWS, "ANALYZE TABLE estimate_item");
+
+            Pagination<EstimateItem> all = page(context, Query.empty());
+            assertThat(all.isTotalExact()).isFalse();
+            assertThat(all.getTotalElements()).isPositive();
+
+            Pagination<EstimateItem> filtered = page(context, Query.query(Criteria.where("kind").is("b")));
+            assertThat(filtered.isTotalExact()).isTrue();
+            assertThat(filtered.getTotalElements()).isEqualTo(2);
+        }
+    }
+
+    private static Pagination<EstimateItem> page(R2dbcTestContext context, Query query) {
+        return context.template().select(EstimateItem.class)
+                .matching(query.sort(Sort.by("id")))
+                .page(Pagination.of(1, 1), PageStrategy.LAZY)
+                .block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "estimate_item", totalPolicy = TotalPolicy.ESTIMATED)
+    public static class EstimateItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "kind")
+        private String kind;
+
+    }
+
+}
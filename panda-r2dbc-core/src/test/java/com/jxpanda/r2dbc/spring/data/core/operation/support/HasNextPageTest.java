@@ -0,0 +1,128 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HAS_NEXT分页：多查询一条判断是否有下一页，不做count查询
+ */
+class HasNextPageTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    private static RecordingConnectionFactory recorder;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE has_next_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO has_next_item VALUES (1, 'a'), (2, 'b'), (3, 'c'), (4, 'd'), (5, 'e'), (6, 'f')"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    void clearStatements() {
+        recorder.clear();
+    }
+
+    @Test
+    void pageWithMoreRowsHasNext() {
+        Pagination<HasNextItem> page = page(1, 4);
+
+        assertThat(page.getContent()).extracting(HasNextItem::getId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.isCountless()).isTrue();
+        assertThat(page.isTotalExact()).isFalse();
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(recorder.statements()).hasSize(1);
+        assertThat(recorder.count(sql -> sql.toUpperCase(Locale.ROOT).contains("COUNT("))).isZero();
+    }
+
+    @Test
+    void lastPageHasNoNext() {
+        Pagination<HasNextItem> page = page(2, 4);
+
+        assertThat(page.getContent()).extracting(HasNextItem::getId).containsExactly(5L, 6L);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(page.hasPrevious()).isTrue();
+        assertThat(page.getTotalElements()).isEqualTo(6);
+    }
+
+    @Test
+    void exactlyFullLastPageHasNoNext() {
+        Pagination<HasNextItem> page = page(2, 3);
+
+        assertThat(page.getContent()).extracting(HasNextItem::getId).containsExactly(4L, 5L, 6L);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    @Test
+    void pageOutOfRangeIsEmpty() {
+        Pagination<HasNextItem> page = page(5, 3);
+
+        assertThat(page.getContent()).isEmpty();
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    @Test
+    void requestCarriesTheStrategy() {
+        Pagination<HasNextItem> page = template.select(HasNextItem.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .page(Pagination.Request.hasNextOnly(1, 5))
+                .block();
+
+        assertThat(page.isCountless()).isTrue();
+        assertThat(page.hasNext()).isTrue();
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    private static Pagination<HasNextItem> page(int pageNumber, int pageSize) {
+        return template.select(HasNextItem.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .page(Pagination.of(pageNumber, pageSize), PageStrategy.HAS_NEXT)
+                .block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "has_next_item")
+    public static class HasNextItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 游标分页：正序/倒序、null值、向前翻页
+ */
+class KeysetPaginationTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        context.execute(
+                "CREATE TABLE keyset_item (id BIGINT PRIMARY KEY, score_value INT, kind VARCHAR(8))",
+                "INSERT INTO keyset_item VALUES (1, 10, 'a'), (2, NULL, 'a'), (3, 5, 'a'), (4, 10, 'a'), (5, NULL, 'a'), (6, 7, 'a'), (7, 5, 'a'), (8, 1, 'b')"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void walksForwardInAscendingOrderWithNullsFirst() {
+        Query query = Query.query(Criteria.where("kind").is("a")).sort(Sort.by("score"));
+        assertThat(walkForward(query, 2)).containsExactly(2L, 5L, 3L, 7L, 6L, 1L, 4L);
+    }
+
+    @Test
+    void walksForwardInDescendingOrderWithNullsLast() {
+        Query query = Query.query(Criteria.where("kind").is("a")).sort(Sort.by(Sort.Direction.DESC, "score"));
+        assertThat(walkForward(query, 3)).containsExactly(4L, 1L, 6L, 7L, 3L, 5L, 2L);
+    }
+
+    @Test
+    void sortByColumnNameIsResolvedToTheProperty() {
+        Query query = Query.query(Criteria.where("kind").is("a")).sort(Sort.by("score_value"));
+        assertThat(walkForward(query, 4)).containsExactly(2L, 5L, 3L, 7L, 6L, 1L, 4L);
+    }
+
+    @Test
+    void walksBackwardFromTheLastPage() {
+        Query query = Query.query(Criteria.where("kind").is("a")).sort(Sort.by("score"));
+        Pagination<KeysetItem> page = template.select(KeysetItem.class).matching(query).keyset(null, 2).block();
+        assertThat(page.getPreviousCursor()).isNull();
+        while (page.getNextCursor() != null) {
+            page = template.select(KeysetItem.class).matching(query).keyset(page.getNextCursor(), 2).block();
+        }
+        assertThat(page.getContent()).extracting(KeysetItem::getId).containsExactly(4L);
+
+        List<List<Long>> pages = new ArrayList<>();
+        while (page.getPreviousCursor() != null) {
+            page = template.select(KeysetItem.class).matching(query).keyset(page.getPreviousCursor(), 2).block();
+            pages.add(page.getContent().stream().map(KeysetItem::getId).toList());
+        }
+        assertThat(pages).containsExactly(List.of(6L, 1L), List.of(3L, 7L), List.of(2L, 5L));
+    }
+
+    @Test
+    void rejectsCursorOfAnotherSort() {
+        Query byScore = Query.query(Criteria.where("kind").is("a")).sort(Sort.by("score"));
+        String cursor = template.select(KeysetItem.class).matching(byScore).keyset(null, 2).block().getNextCursor();
+
+        StepVerifier.create(template.select(KeysetItem.class).matching(Query.empty().sort(Sort.by("kind"))).keyset(cursor, 2))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    private static List<Long> walkForward(Query query, int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Pagination<KeysetItem> page = template.select(KeysetItem.class).matching(query).keyset(cursor, pageSize).block();
+            assertThat(page.isKeyset()).isTrue();
+            assertThat(page.getContent().size()).isLessThanOrEqualTo(pageSize);
+            page.getContent().forEach(item -> ids.add(item.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "keyset_item")
+    public static class KeysetItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "score_value")
+        private Integer score;
+
+        @TableColumn(name = "kind")
+        private String kind;
+
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Query;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 分页策略：WINDOW、PARALLEL、LAZY的结果一致，查询次数符合各自的规则，策略的优先级
+ */
+class PageStrategyTest {
+
+    private static R2dbcTestContext context;
+
+    private static ReactiveEntityTemplate template;
+
+    private static RecordingConnectionFactory recorder;
+
+    @BeforeAll
+    static void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE page_item (id BIGINT PRIMARY KEY, name VARCHAR(8))",
+                "INSERT INTO page_item VALUES (1, 'a'), (2, 'b'), (3, 'c'), (4, 'd'), (5, 'e'), (6, 'f'), (7, 'g')"
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    void clearStatements() {
+        recorder.clear();
+    }
+
+    @Test
+    void windowReadsTotalFromTheDataQuery() {
+        Pagination<PageItem> page = page(PageItem.class, 1, PageStrategy.WINDOW);
+
+        assertThat(page.getContent()).extracting(PageItem::getId).containsExactly(1L, 2L, 3L);
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(1);
+        assertThat(recorder.count(sql -> sql.toUpperCase(Locale.ROOT).contains("COUNT(*) OVER()"))).isEqualTo(1);
+    }
+
+    @Test
+    void windowOnTheLastPageStillNeedsOneQuery() {
+        Pagination<PageItem> page = page(PageItem.class, 3, PageStrategy.WINDOW);
+
+        assertThat(page.getContent()).extracting(PageItem::getId).containsExactly(7L);
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    @Test
+    void windowCountsSeparatelyWhenThePageIsOutOfRange() {
+        Pagination<PageItem> page = page(PageItem.class, 5, PageStrategy.WINDOW);
+
+        assertThat(page.getContent()).isEmpty();
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(2);
+        assertThat(recorder.statements().get(1).toUpperCase(Locale.ROOT)).contains("COUNT(").doesNotContain("OVER()");
+    }
+
+    @Test
+    void parallelRunsDataAndCountQueries() {
+        Pagination<PageItem> page = page(PageItem.class, 3, PageStrategy.PARALLEL);
+
+        assertThat(page.getContent()).extracting(PageItem::getId).containsExactly(7L);
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        // 即使不满一页也会执行count
+        assertThat(recorder.statements()).hasSize(2);
+    }
+
+    @Test
+    void lazyCountsOnlyWhenThePageIsFull() {
+        Pagination<PageItem> full = page(PageItem.class, 2, PageStrategy.LAZY);
+        assertThat(full.getContent()).extracting(PageItem::getId).containsExactly(4L, 5L, 6L);
+        assertThat(full.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(2);
+
+        recorder.clear();
+        Pagination<PageItem> last = page(PageItem.class, 3, PageStrategy.LAZY);
+        assertThat(last.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    @Test
+    void strategiesAgreeOnEveryPage() {
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            Pagination<PageItem> lazy = page(PageItem.class, pageNumber, PageStrategy.LAZY);
+            for (PageStrategy strategy : new PageStrategy[]{PageStrategy.WINDOW, PageStrategy.PARALLEL}) {
+                Pagination<PageItem> page = page(PageItem.class, pageNumber, strategy);
+                assertThat(page.getContent()).extracting(PageItem::getId)
+                        .containsExactlyElementsOf(lazy.getContent().stream().map(PageItem::getId).toList());
+                assertThat(page.getTotalElements()).as("%s page %d", strategy, pageNumber).isEqualTo(lazy.getTotalElements());
+                assertThat(page.getTotalPages()).isEqualTo(lazy.getTotalPages());
+            }
+        }
+    }
+
+    @Test
+    void annotationStrategyIsUsedByDefault() {
+        Pagination<WindowItem> page = page(WindowItem.class, 1, PageStrategy.DEFAULT);
+
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    @Test
+    void optionOverridesAnnotationAndRequestOverridesOption() {
+        Pagination<WindowItem> byOption = template.select(WindowItem.class)
+                .withOption(new R2dbcOperationOption().setPageStrategy(PageStrategy.PARALLEL))
+                .matching(Query.empty().sort(Sort.by("id")))
+                .page(Pagination.of(1, 3))
+                .block();
+        assertThat(byOption.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(2);
+
+        recorder.clear();
+        Pagination<WindowItem> byRequest = template.select(WindowItem.class)
+                .withOption(new R2dbcOperationOption().setPageStrategy(PageStrategy.PARALLEL))
+                .matching(Query.empty().sort(Sort.by("id")))
+                .page(Pagination.of(1, 3), PageStrategy.WINDOW)
+                .block();
+        assertThat(byRequest.getTotalElements()).isEqualTo(7);
+        assertThat(recorder.statements()).hasSize(1);
+    }
+
+    private static <T> Pagination<T> page(Class<T> type, int pageNumber, PageStrategy strategy) {
+        return template.select(type)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .page(Pagination.of(pageNumber, 3), strategy)
+                .block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "page_item")
+    public static class PageItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "page_item", pageStrategy = PageStrategy.WINDOW)
+    public static class WindowItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "name")
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.jxpanda.r2dbc.spring.data.core.operation.support;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableColumn;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableId;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.PageStrategy;
+import com.jxpanda.r2dbc.spring.data.core.enhance.strategy.TotalPolicy;
+import com.jxpanda.r2dbc.spring.data.core.operation.executor.R2dbcOperationOption;
+import com.jxpanda.r2dbc.spring.data.test.R2dbcTestContext;
+import com.jxpanda.r2dbc.spring.data.test.RecordingConnectionFactory;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 总数统计策略：CACHED命中缓存、写入后失效，ESTIMATED在不支持估算的数据库上退化为EXACT
+ */
+class TotalPolicyTest {
+
+    private R2dbcTestContext context;
+
+    private ReactiveEntityTemplate template;
+
+    private RecordingConnectionFactory recorder;
+
+    @BeforeEach
+    void setUp() {
+        context = R2dbcTestContext.h2();
+        template = context.template();
+        recorder = context.recorder();
+        context.execute(
+                "CREATE TABLE total_item (id BIGINT PRIMARY KEY, kind VARCHAR(8))",
+                "INSERT INTO total_item VALUES (1, 'a'), (2, 'a'), (3, 'a'), (4, 'b'), (5, 'b')"
+        );
+        recorder.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void cachedTotalIsReusedAndMarkedApproximate() {
+        Pagination<CachedItem> first = page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.DEFAULT);
+        Pagination<CachedItem> second = page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.DEFAULT);
+
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(first.isTotalExact()).isTrue();
+        assertThat(second.getTotalElements()).isEqualTo(3);
+        assertThat(second.isTotalExact()).isFalse();
+        assertThat(countStatements()).isEqualTo(1);
+    }
+
+    @Test
+    void cachedTotalIsKeptPerCondition() {
+        assertThat(page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.DEFAULT).getTotalElements()).isEqualTo(3);
+        assertThat(page(CachedItem.class, Criteria.where("kind").is("b"), TotalPolicy.DEFAULT).getTotalElements()).isEqualTo(2);
+        assertThat(page(CachedItem.class, Criteria.where("kind").is("b"), TotalPolicy.DEFAULT).getTotalElements()).isEqualTo(2);
+        assertThat(countStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void writesThroughTheTemplateInvalidateTheCachedTotal() {
+        page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.DEFAULT);
+
+        CachedItem item = new CachedItem();
+        item.setId(6L);
+        item.setKind("a");
+        template.insert(item).block();
+
+        Pagination<CachedItem> page = page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.DEFAULT);
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.isTotalExact()).isTrue();
+        assertThat(countStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void optionOverridesTheAnnotation() {
+        page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.EXACT);
+        Pagination<CachedItem> page = page(CachedItem.class, Criteria.where("kind").is("a"), TotalPolicy.EXACT);
+
+        assertThat(page.isTotalExact()).isTrue();
+        assertThat(countStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void estimatedFallsBackToAnExactCountOnH2() {
+        Pagination<PlainItem> all = page(PlainItem.class, null, TotalPolicy.ESTIMATED);
+        Pagination<PlainItem> filtered = page(PlainItem.class, Criteria.where("kind").is("b"), TotalPolicy.ESTIMATED);
+
+        assertThat(all.getTotalElements()).isEqualTo(5);
+        assertThat(all.isTotalExact()).isTrue();
+        assertThat(filtered.getTotalElements()).isEqualTo(2);
+        assertThat(filtered.isTotalExact()).isTrue();
+    }
+
+    private long countStatements() {
+        return recorder.count(sql -> sql.toUpperCase(Locale.ROOT).startsWith("SELECT COUNT("));
+    }
+
+    private <T> Pagination<T> page(Class<T> type, Criteria criteria, TotalPolicy totalPolicy) {
+        Query query = criteria == null ? Query.empty() : Query.query(criteria);
+        return template.select(type)
+                .withOption(new R2dbcOperationOption().setTotalPolicy(totalPolicy))
+                .matching(query.sort(Sort.by("id")))
+                // 页长为1，保证LAZY分页总是需要count
+                .page(Pagination.of(1, 1), PageStrategy.LAZY)
+                .block();
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "total_item", totalPolicy = TotalPolicy.CACHED)
+    public static class CachedItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "kind")
+        private String kind;
+
+    }
+
+    @Getter
+    @Setter
+    @TableEntity(name = "total_item")
+    public static class PlainItem {
+
+        @TableId
+        private Long id;
+
+        @TableColumn(name = "kind")
+        private String kind;
+
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.jxpanda.r2dbc.spring.data.test;
+
+import com.jxpanda.r2dbc.spring.data.config.R2dbcConfigProperties;
+import com.jxpanda.r2dbc.spring.data.config.R2dbcEnvironment;
+import com.jxpanda.r2dbc.spring.data.config.properties.DatabaseProperties;
+import com.jxpanda.r2dbc.spring.data.config.properties.LogicDeletePluginProperties;
+import com.jxpanda.r2dbc.spring.data.config.properties.MappingProperties;
+import com.jxpanda.r2dbc.spring.data.config.properties.PluginProperties;
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcCustomTypeHandlers;
+import com.jxpanda.r2dbc.spring.data.core.enhance.key.IdGenerator;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2DbcLogicDeletePlugin;
+import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginExecutor;
+import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
+import com.jxpanda.r2dbc.spring.data.dialect.DialectResolver;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.convert.CustomConversions;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.data.relational.core.mapping.NamingStrategy;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测试用的Spring配置，与自动配置（R2dbcAutoConfiguration）注册的bean一致
+ * 连接工厂由 ${@link R2dbcTestContext} 注册
+ *
+ * @author Panda
+ */
+@Configuration(proxyBeanMethods = false)
+@Import({R2dbcEnvironment.class, R2dbcMappingKit.class})
+public class R2dbcTestConfiguration {
+
+    @Bean
+    public R2dbcConfigProperties r2dbcConfigProperties() {
+        return new R2dbcConfigProperties(DatabaseProperties.empty(), MappingProperties.empty(), new PluginProperties(LogicDeletePluginProperties.empty()));
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    public R2dbcDialect r2dbcDialect(ConnectionFactory connectionFactory) {
+        return DialectResolver.getDialect(connectionFactory);
+    }
+
+    @Bean
+    public NamingStrategy namingStrategy(R2dbcConfigProperties r2dbcConfigProperties) {
+        return r2dbcConfigProperties.mapping().namingStrategy();
+    }
+
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions(R2dbcDialect r2dbcDialect) {
+        List<Object> converters = new ArrayList<>(r2dbcDialect.getConverters());
+        converters.addAll(R2dbcCustomConversions.STORE_CONVERTERS);
+        return new R2dbcCustomConversions(CustomConversions.StoreConversions.of(r2dbcDialect.getSimpleTypeHolder(), converters), Collections.emptyList());
+    }
+
+    @Bean
+    public R2dbcMappingContext r2dbcMappingContext(NamingStrategy namingStrategy, R2dbcCustomConversions r2dbcCustomConversions) {
+        R2dbcMappingContext mappingContext = new R2dbcMappingContext(namingStrategy);
+        mappingContext.setSimpleTypeHolder(r2dbcCustomConversions.getSimpleTypeHolder());
+        return mappingContext;
+    }
+
+    @Bean
+    public R2dbcCustomTypeHandlers r2dbcCustomTypeHandlers() {
+        return new R2dbcCustomTypeHandlers();
+    }
+
+    @Bean
+    public MappingReactiveConverter r2dbcConverter(R2dbcMappingContext mappingContext, R2dbcCustomConversions r2dbcCustomConversions,
+                                                   R2dbcCustomTypeHandlers r2dbcCustomTypeHandlers, NamingStrategy namingStrategy) {
+        return new MappingReactiveConverter(mappingContext, r2dbcCustomConversions, r2dbcCustomTypeHandlers, namingStrategy);
+    }
+
+    @Bean
+    public ReactiveEntityTemplate reactiveEntityTemplate(DatabaseClient databaseClient, R2dbcDialect r2dbcDialect, MappingReactiveConverter r2dbcConverter) {
+        return new ReactiveEntityTemplate(databaseClient, r2dbcDialect, r2dbcConverter);
+    }
+
+    @Bean
+    public R2dbcTransactionManager r2dbcTransactionManager(ConnectionFactory connectionFactory) {
+        return new R2dbcTransactionManager(connectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(R2dbcTransactionManager r2dbcTransactionManager) {
+        return TransactionalOperator.create(r2dbcTransactionManager);
+    }
+
+    @Bean
+    public R2dbcPluginExecutor r2dbcPluginExecutor() {
+        return new R2dbcPluginExecutor().addPlugin(new R2DbcLogicDeletePlugin());
+    }
+
+    /**
+     * 测试中的id都是手动赋值的，生成器只用于显式使用USE_GENERATOR策略的实体
+     */
+    @Bean
+    public IdGenerator<Long> idGenerator() {
+        AtomicLong sequence = new AtomicLong(1_000_000);
+        return new IdGenerator<>() {
+            @Override
+            public Long generate() {
+                return sequence.incrementAndGet();
+            }
+
+            @Override
+            public boolean isIdEffective(Long id) {
+                return id != null && id > 0;
+            }
+        };
+    }
+
+}
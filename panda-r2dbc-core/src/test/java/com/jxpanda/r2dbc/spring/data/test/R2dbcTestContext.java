@@ -0,0 +1,105 @@
+package com.jxpanda.r2dbc.spring.data.test;
+
+import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.testcontainers.containers.JdbcDatabaseContainer;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import reactor.core.publisher.Flux;
+
+import java.util.UUID;
+
+/**
+ * 测试用的Spring容器，每个测试类使用独立的数据库
+ * H2使用内存库，PostgreSQL和MySQL由测试类通过Testcontainers提供连接工厂
+ *
+ * @author Panda
+ */
+public final class R2dbcTestContext implements AutoCloseable {
+
+    private final AnnotationConfigApplicationContext applicationContext;
+
+    private final RecordingConnectionFactory connectionFactory;
+
+    private R2dbcTestContext(ConnectionFactory connectionFactory) {
+        this.connectionFactory = new RecordingConnectionFactory(connectionFactory);
+        this.applicationContext = new AnnotationConfigApplicationContext();
+        this.applicationContext.registerBean(ConnectionFactory.class, () -> this.connectionFactory);
+        this.applicationContext.register(R2dbcTestConfiguration.class);
+        this.applicationContext.refresh();
+    }
+
+    /**
+     * 独立的H2内存库，连接全部关闭之前数据库不会被销毁
+     */
+    public static R2dbcTestContext h2() {
+        return of(ConnectionFactories.get("r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1"));
+    }
+
+    /**
+     * 连接到Testcontainers启动的PostgreSQL
+     */
+    public static R2dbcTestContext postgres(PostgreSQLContainer<?> container) {
+        return of(container, "postgresql", PostgreSQLContainer.POSTGRESQL_PORT);
+    }
+
+    /**
+     * 连接到Testcontainers启动的MySQL
+     */
+    public static R2dbcTestContext mysql(MySQLContainer<?> container) {
+        return of(container, "mysql", MySQLContainer.MYSQL_PORT);
+    }
+
+    private static R2dbcTestContext of(JdbcDatabaseContainer<?> container, String driver, int port) {
+        return of(ConnectionFactories.get(ConnectionFactoryOptions.builder()
+                .option(ConnectionFactoryOptions.DRIVER, driver)
+                .option(ConnectionFactoryOptions.HOST, container.getHost())
+                .option(ConnectionFactoryOptions.PORT, container.getMappedPort(port))
+                .option(ConnectionFactoryOptions.USER, container.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, container.getPassword())
+                .option(ConnectionFactoryOptions.DATABASE, container.getDatabaseName())
+                .build()));
+    }
+
+    public static R2dbcTestContext of(ConnectionFactory connectionFactory) {
+        return new R2dbcTestContext(connectionFactory);
+    }
+
+    public ReactiveEntityTemplate template() {
+        return applicationContext.getBean(ReactiveEntityTemplate.class);
+    }
+
+    public DatabaseClient databaseClient() {
+        return applicationContext.getBean(DatabaseClient.class);
+    }
+
+    /**
+     * 执行过的SQL的记录
+     */
+    public RecordingConnectionFactory recorder() {
+        return connectionFactory;
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return applicationContext.getBean(type);
+    }
+
+    /**
+     * 按顺序执行SQL（建表、初始化数据等）
+     */
+    public void execute(String... sqlList) {
+        Flux.fromArray(sqlList)
+                .concatMap(sql -> databaseClient().sql(sql).then())
+                .blockLast();
+    }
+
+    @Override
+    public void close() {
+        applicationContext.close();
+    }
+
+}
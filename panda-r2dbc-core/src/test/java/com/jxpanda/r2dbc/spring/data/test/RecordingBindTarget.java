@@ -0,0 +1,52 @@
+package com.jxpanda.r2dbc.spring.data.test;
+
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.PreparedOperation;
+import org.springframework.r2dbc.core.binding.BindTarget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按绑定的顺序记录参数的值，用于断言渲染出来的语句绑定了哪些参数
+ *
+ * @author Panda
+ */
+public final class RecordingBindTarget implements BindTarget {
+
+    private final List<Object> values = new ArrayList<>();
+
+    /**
+     * 按绑定的顺序返回语句绑定的值，绑定null的位置是null
+     */
+    public static List<Object> valuesOf(PreparedOperation<?> operation) {
+        RecordingBindTarget target = new RecordingBindTarget();
+        operation.bindTo(target);
+        return target.values;
+    }
+
+    @Override
+    public void bind(String identifier, Object value) {
+        values.add(value);
+    }
+
+    @Override
+    public void bind(int index, Object value) {
+        values.add(value);
+    }
+
+    @Override
+    public void bindNull(String identifier, Class<?> type) {
+        add(null);
+    }
+
+    @Override
+    public void bindNull(int index, Class<?> type) {
+        add(null);
+    }
+
+    private void add(@Nullable Object value) {
+        values.add(value);
+    }
+
+}
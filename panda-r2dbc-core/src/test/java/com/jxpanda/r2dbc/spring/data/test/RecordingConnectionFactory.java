@@ -0,0 +1,105 @@
+package com.jxpanda.r2dbc.spring.data.test;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 记录执行过的SQL的连接工厂，用于断言查询的次数和内容
+ * 记录的是创建Statement（以及Batch.add）时的SQL，按创建的顺序保存
+ *
+ * @author Panda
+ */
+public final class RecordingConnectionFactory implements ConnectionFactory {
+
+    private final ConnectionFactory delegate;
+
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+
+    public RecordingConnectionFactory(ConnectionFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.from(delegate.create()).map(connection -> proxy(Connection.class, connection, (method, args) -> {
+            if (method.getName().equals("createStatement")) {
+                statements.add((String) args[0]);
+            }
+        }, this::proxyBatch));
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    public List<String> statements() {
+        return List.copyOf(statements);
+    }
+
+    /**
+     * 满足条件的SQL的数量
+     */
+    public long count(Predicate<String> predicate) {
+        return statements.stream().filter(predicate).count();
+    }
+
+    public void clear() {
+        statements.clear();
+    }
+
+    private Object proxyBatch(Object result) {
+        if (result instanceof Batch batch) {
+            return proxy(Batch.class, batch, (method, args) -> {
+                if (method.getName().equals("add")) {
+                    statements.add((String) args[0]);
+                }
+            }, UnaryOperator.identity());
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Recorder recorder, UnaryOperator<Object> resultHandler) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            // 实现Wrapped，使用驱动特有API的代码（例如PostgreSQL的COPY）可以解开代理拿到原始的对象
+            if (method.getDeclaringClass() == Wrapped.class) {
+                return args == null || ((Class<?>) args[0]).isInstance(target) ? target : null;
+            }
+            recorder.record(method, args);
+            try {
+                Object result = method.invoke(target, args);
+                // 返回自身的方法（例如Batch.add）返回代理，保证链式调用仍然被记录
+                if (result == target) {
+                    return proxy;
+                }
+                return resultHandler.apply(result);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type, Wrapped.class}, handler);
+    }
+
+    @FunctionalInterface
+    private interface Recorder {
+
+        void record(Method method, Object[] args);
+
+    }
+
+}
@@ -1,13 +1,16 @@
 package com.jxpanda.r2dbc.spring.data.extension.service;
 
 import com.jxpanda.r2dbc.spring.data.core.*;
+import com.jxpanda.r2dbc.spring.data.core.enhance.query.criteria.AccessorFunction;
 import com.jxpanda.r2dbc.spring.data.core.enhance.query.page.Pagination;
+import com.jxpanda.r2dbc.spring.data.core.kit.QueryKit;
 import com.jxpanda.r2dbc.spring.data.core.kit.R2dbcMappingKit;
 import com.jxpanda.r2dbc.spring.data.core.operation.*;
 import com.jxpanda.r2dbc.spring.data.core.operation.support.*;
 import com.jxpanda.r2dbc.spring.data.extension.entity.Entity;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.relational.core.query.Query;
+import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -106,6 +109,58 @@ public interface Service<T extends Entity<ID>, ID> {
                 .thenReturn(entity);
     }
 
+    /**
+     * 基于条件原子增加字段的值（SET c = c + delta），在数据库中完成计算，适用于计数器
+     *
+     * @param query  query
+     * @param column 字段
+     * @param delta  增量
+     * @return 影响了多少条数据
+     */
+    default Mono<Long> increment(Query query, AccessorFunction<T, ? extends Number> column, Number delta) {
+        return update().matching(query).increment(column, delta);
+    }
+
+    /**
+     * 基于条件原子扣减字段的值（SET c = c - delta），floor不为null的时候扣减之后不能小于floor
+     *
+     * @param query  query
+     * @param column 字段
+     * @param delta  扣减的数量
+     * @param floor  扣减之后的下限，不限制传null
+     * @return 影响了多少条数据
+     */
+    default Mono<Long> decrement(Query query, AccessorFunction<T, ? extends Number> column, Number delta, @Nullable Number floor) {
+        return update().matching(query).decrement(column, delta, floor);
+    }
+
+    /**
+     * 基于id原子增加字段的值
+     *
+     * @param id     id
+     * @param column 字段
+     * @param delta  增量
+     * @return 成功/失败
+     */
+    default Mono<Boolean> incrementById(ID id, AccessorFunction<T, ? extends Number> column, Number delta) {
+        return increment(QueryKit.queryById(getEntityClass(), id), column, delta)
+                .map(it -> it > 0);
+    }
+
+    /**
+     * 基于id原子扣减字段的值，例如扣减库存：decrementById(id, Product::getStock, 1, 0)
+     *
+     * @param id     id
+     * @param column 字段
+     * @param delta  扣减的数量
+     * @param floor  扣减之后的下限，不限制传null
+     * @return 成功/失败，扣减之后小于下限的时候返回false
+     */
+    default Mono<Boolean> decrementById(ID id, AccessorFunction<T, ? extends Number> column, Number delta, @Nullable Number floor) {
+        return decrement(QueryKit.queryById(getEntityClass(), id), column, delta, floor)
+                .map(it -> it > 0);
+    }
+
     /**
      * 保存一条数据
      * 有ID则更新，无ID则创建
@@ -279,5 +334,31 @@ public interface Service<T extends Entity<ID>, ID> {
                 .page(pageable);
     }
 
+    /**
+     * 分页查询
+     * 分页请求中可以指定只判断是否有下一页（hasNextOnly），此时不会做count查询
+     *
+     * @param query   查询条件
+     * @param request 分页请求
+     * @return 分页后的数据
+     */
+    default Mono<Pagination<T>> page(Query query, Pagination.Request request) {
+        return select().matching(query)
+                .page(request);
+    }
+
+    /**
+     * 游标分页（keyset分页）查询
+     *
+     * @param query    查询条件，排序规则决定游标的内容
+     * @param cursor   上一次查询返回的游标，为空表示查询第一页
+     * @param pageSize 页长
+     * @return 分页后的数据，携带上一页/下一页的游标
+     */
+    default Mono<Pagination<T>> keyset(Query query, @Nullable String cursor, int pageSize) {
+        return select().matching(query)
+                .keyset(cursor, pageSize);
+    }
+
 
 }
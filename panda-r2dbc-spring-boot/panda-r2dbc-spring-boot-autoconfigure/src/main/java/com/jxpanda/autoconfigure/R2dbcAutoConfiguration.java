@@ -4,6 +4,7 @@ import com.jxpanda.r2dbc.spring.data.config.R2dbcConfigProperties;
 import com.jxpanda.r2dbc.spring.data.core.R2dbcEntityTemplateAdapter;
 import com.jxpanda.r2dbc.spring.data.core.ReactiveEntityTemplate;
 import com.jxpanda.r2dbc.spring.data.core.convert.MappingReactiveConverter;
+import com.jxpanda.r2dbc.spring.data.core.enhance.annotation.TableEntity;
 import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcCustomTypeHandlers;
 import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcJsonTypeHandler;
 import com.jxpanda.r2dbc.spring.data.core.enhance.handler.R2dbcPostgresJsonTypeHandler;
@@ -14,11 +15,15 @@ import com.jxpanda.r2dbc.spring.data.core.enhance.plugin.R2dbcPluginExecutor;
 import com.jxpanda.r2dbc.spring.data.dialect.DialectResolver;
 import com.jxpanda.r2dbc.spring.data.infrastructure.constant.StringConstant;
 import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.domain.EntityScanner;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.convert.CustomConversions;
@@ -38,6 +43,7 @@ import java.util.List;
 /**
  * @author Panda
  */
+@Slf4j
 @AutoConfiguration(after = org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration.class)
 @EnableConfigurationProperties(R2dbcConfigProperties.class)
 @ComponentScan(basePackages = {"com.jxpanda.r2dbc.spring.data.config", "com.jxpanda.r2dbc.spring.data.core.kit"})
@@ -67,6 +73,26 @@ public class R2dbcAutoConfiguration {
         return new ReactiveEntityTemplate(this.databaseClient, this.r2dbcDialect, r2dbcConverter);
     }
 
+    /**
+     * 应用启动的时候预先加载常驻内存的表（@TableEntity(resident = true)），扫描范围与@EntityScan（默认是启动类所在的包）一致
+     * 加载失败的时候只记录日志，不影响启动，这些表会在第一次使用的时候加载
+     */
+    @Bean
+    public ApplicationRunner residentTablesPreloader(ApplicationContext applicationContext, ReactiveEntityTemplate reactiveEntityTemplate) {
+        return args -> {
+            Class<?>[] residentTypes = new EntityScanner(applicationContext).scan(TableEntity.class).stream()
+                    .filter(type -> type.getAnnotation(TableEntity.class).resident())
+                    .toArray(Class<?>[]::new);
+            if (residentTypes.length == 0) {
+                return;
+            }
+            reactiveEntityTemplate.getResidentTables().preload(residentTypes)
+                    .doOnError(error -> log.warn("Preload resident tables failed, they will be loaded on first use", error))
+                    .onErrorComplete()
+                    .block();
+        };
+    }
+
     @Bean
     public R2dbcEntityTemplate r2dbcEntityTemplate(ReactiveEntityTemplate reactiveEntityTemplate) {
         return new R2dbcEntityTemplateAdapter(reactiveEntityTemplate);